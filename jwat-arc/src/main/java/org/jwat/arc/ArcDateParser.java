@@ -22,17 +22,23 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
+import org.jwat.common.TimestampCodec;
+
 /**
  * ARC Date parser and format validator ("yyyyMMddHHmmss").
+ * Parsing and formatting is done by a per thread <code>TimestampCodec</code>.
  *
  * @author lbihanic, selghissassi
  */
 public final class ArcDateParser {
 
+    /** Timestamp codec used to parse and format ARC dates. */
+    private final TimestampCodec codec = new TimestampCodec();
+
     /** ARC <code>DateFormat</code> as specified in the ARC documentation. */
-    private final DateFormat dateFormat;
+    private DateFormat dateFormat;
 
-    /** Basic <code>DateFormat</code> is not thread safe. */
+    /** Timestamp codec and basic <code>DateFormat</code> are not thread safe. */
     private static final ThreadLocal<ArcDateParser> DateParserTL =
         new ThreadLocal<ArcDateParser>() {
         @Override
@@ -45,25 +51,6 @@ public final class ArcDateParser {
      * Creates a new <code>DateParser</code>.
      */
     private ArcDateParser() {
-        dateFormat = new SimpleDateFormat(ArcConstants.ARC_DATE_FORMAT);
-        dateFormat.setLenient(false);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
-    /**
-     * Parses a date.
-     * @param dateStr date to parse
-     * @return the formatted date or null if unable to parse date
-     */
-    private Date parseDate(String dateStr) {
-        Date date = null;
-        try {
-            if ((dateStr != null)
-                            && dateStr.length() == ArcConstants.ARC_DATE_FORMAT.length()) {
-                date = dateFormat.parse(dateStr);
-            }
-        } catch (Exception e) { /* Ignore */ }
-        return date;
     }
 
     /**
@@ -73,10 +60,18 @@ public final class ArcDateParser {
      * to parse is compliant with the format yyyyMMddHHmmss or not
      */
     public static Date getDate(String dateStr) {
-        Date date = DateParserTL.get().parseDate(dateStr);
-        boolean isValid = (date == null) ? false
-                                         : (date.getTime() > 0);
-        return isValid ? date : null;
+        long millis = DateParserTL.get().codec.parseArcDate(dateStr);
+        boolean isValid = (millis != TimestampCodec.INVALID) && (millis > 0);
+        return isValid ? new Date(millis) : null;
+    }
+
+    /**
+     * Format a date using the format yyyyMMddHHmmss.
+     * @param date the date to format
+     * @return ARC date string
+     */
+    public static String formatDate(Date date) {
+        return DateParserTL.get().codec.formatArcDate(date.getTime());
     }
 
     /**
@@ -86,7 +81,13 @@ public final class ArcDateParser {
      * format ARC dates.
      */
     public static DateFormat getDateFormat() {
-        return DateParserTL.get().dateFormat;
+        ArcDateParser parser = DateParserTL.get();
+        if (parser.dateFormat == null) {
+            parser.dateFormat = new SimpleDateFormat(ArcConstants.ARC_DATE_FORMAT);
+            parser.dateFormat.setLenient(false);
+            parser.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        return parser.dateFormat;
     }
 
 }
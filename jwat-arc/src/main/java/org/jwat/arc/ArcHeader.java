@@ -19,7 +19,6 @@ package org.jwat.arc;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.text.DateFormat;
 import java.util.Date;
 
 import org.jwat.common.ByteCountingPushBackInputStream;
@@ -55,9 +54,6 @@ public class ArcHeader {
      * Must be set prior to calling the various methods. */
     protected ArcFieldParsers fieldParsers;
 
-    /** ARC <code>DateFormat</code> as specified by the ARC specifications. */
-    protected DateFormat warcDateFormat;
-
     /** ARC record starting offset relative to the source ARC file input
      *  stream. The offset is correct for both compressed and uncompressed streams. */
     protected long startOffset = -1;
@@ -135,7 +131,6 @@ public class ArcHeader {
     public static ArcHeader initHeader(ArcWriter writer, Diagnostics<Diagnosis> diagnostics) {
         ArcHeader header = new ArcHeader();
         header.fieldParsers = writer.fieldParsers;
-        header.warcDateFormat = writer.arcDateFormat;
         header.diagnostics = diagnostics;
         return header;
     }
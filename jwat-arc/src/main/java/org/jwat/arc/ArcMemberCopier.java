@@ -0,0 +1,219 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.jwat.gzip.GzipChannelReader;
+import org.jwat.gzip.GzipEntry;
+
+/**
+ * Copies the GZip members of a compressed ARC file byte for byte to other
+ * channels without inflating and deflating the records again.
+ * The ARC header, and HTTP header if present, of each record is parsed so
+ * it can be used to decide whether the record is kept or dropped. Filtering,
+ * splitting and merging of compressed ARC files can be done this way.
+ * <p>
+ * Members with a skip-length extra subfield are skipped without inflating
+ * the data following the record headers. Other members must be inflated to
+ * find their end, but are still copied without being deflated again.
+ * Digests are not computed since the record payloads are not read.
+ * The version block is the first record of an ARC file, so it should be
+ * copied to the start of every file produced by splitting.
+ * The channel is not closed by this class.
+ *
+ * @author nicl
+ */
+public class ArcMemberCopier implements Closeable {
+
+    /** GZip reader of the source channel. */
+    protected GzipChannelReader gzipReader;
+
+    /** ARC reader used to parse the records. */
+    protected ArcReaderCompressed reader;
+
+    /** Current record. */
+    protected ArcRecordBase record;
+
+    /** GZip entry of the current record. */
+    protected GzipEntry entry;
+
+    /** Number of records copied. */
+    protected long recordsCopied;
+
+    /** Number of bytes copied. */
+    protected long bytesCopied;
+
+    /** Number of records dropped. */
+    protected long recordsDropped;
+
+    /**
+     * Construct a copier reading the compressed ARC records of a channel
+     * starting at the supplied position.
+     * @param channel <code>FileChannel</code> of compressed ARC file
+     * @param position position of the first GZip member
+     */
+    public ArcMemberCopier(FileChannel channel, long position) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel is null!");
+        }
+        gzipReader = new GzipChannelReader(channel, position);
+        gzipReader.setSkipLengthSeek(true);
+        reader = new ArcReaderCompressed(gzipReader);
+        reader.setBlockDigestEnabled(false);
+        reader.setPayloadDigestEnabled(false);
+    }
+
+    /**
+     * Returns the ARC reader used to parse the records, which can be used
+     * to change the parser configuration.
+     * @return ARC reader used to parse the records
+     */
+    public ArcReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Parse the headers of the next record. The previous record is dropped
+     * unless it has been copied.
+     * @return next record or null
+     * @throws IOException if an i/o error occurs while reading the record
+     */
+    public ArcRecordBase getNextRecord() throws IOException {
+        if (record != null) {
+            dropRecord();
+        }
+        record = reader.getNextRecord();
+        if (record != null) {
+            entry = reader.currentEntry;
+        }
+        return record;
+    }
+
+    /**
+     * Copy the GZip member of the current record to the supplied channel.
+     * @param target destination channel
+     * @return number of bytes copied
+     * @throws IOException if an i/o error occurs while copying the member
+     */
+    public long transferRecord(WritableByteChannel target) throws IOException {
+        if (record == null) {
+            throw new IllegalStateException("No current record!");
+        }
+        long copied = gzipReader.transferEntry(entry, target);
+        closeRecord();
+        ++recordsCopied;
+        bytesCopied += copied;
+        return copied;
+    }
+
+    /**
+     * Skip the GZip member of the current record without copying it.
+     * @throws IOException if an i/o error occurs while skipping the member
+     */
+    public void dropRecord() throws IOException {
+        if (record == null) {
+            throw new IllegalStateException("No current record!");
+        }
+        entry.close();
+        closeRecord();
+        ++recordsDropped;
+    }
+
+    /**
+     * Close the current record, its GZip entry has already been closed.
+     * @throws IOException if an i/o error occurs while closing the record
+     */
+    protected void closeRecord() throws IOException {
+        record.close();
+        record = null;
+        entry = null;
+    }
+
+    /**
+     * Copy the GZip members of all the remaining records accepted by the
+     * supplied filter to the supplied channel.
+     * @param filter record filter, or null to copy all records
+     * @param target destination channel
+     * @return number of bytes copied
+     * @throws IOException if an i/o error occurs while copying the records
+     */
+    public long copy(ArcRecordFilter filter, WritableByteChannel target) throws IOException {
+        if (target == null) {
+            throw new IllegalArgumentException("target is null!");
+        }
+        long copied = 0;
+        while (getNextRecord() != null) {
+            if (filter == null || filter.accept(record.header)) {
+                copied += transferRecord(target);
+            } else {
+                dropRecord();
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Returns the offset of the current record in the channel or -1.
+     * @return offset of the current record in the channel or -1
+     */
+    public long getStartOffset() {
+        return reader.getStartOffset();
+    }
+
+    /**
+     * Returns the number of records copied.
+     * @return number of records copied
+     */
+    public long getRecordsCopied() {
+        return recordsCopied;
+    }
+
+    /**
+     * Returns the number of bytes copied.
+     * @return number of bytes copied
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    /**
+     * Returns the number of records dropped.
+     * @return number of records dropped
+     */
+    public long getRecordsDropped() {
+        return recordsDropped;
+    }
+
+    /**
+     * Close the copier and the current record, if any.
+     */
+    public void close() {
+        if (record != null) {
+            try {
+                entry.close();
+                closeRecord();
+            } catch (IOException e) { /* ignore */ }
+        }
+        reader.close();
+    }
+
+}
@@ -170,6 +170,9 @@ public class ArcReaderCompressed extends ArcReader {
     @Override
     public ArcRecordBase getNextRecord() throws IOException {
         if (currentRecord != null) {
+            if (bHeaderOnly && currentEntry != null && reader.closeEntryBySkipLength(currentEntry)) {
+                currentRecord.bEntrySkipped = true;
+            }
             currentRecord.close();
         }
         if (reader == null) {
@@ -178,8 +181,7 @@ public class ArcReaderCompressed extends ArcReader {
         }
         currentRecord = null;
         currentReader = reader;
-        currentEntry = reader.getNextEntry();
-        if (currentEntry != null) {
+        while ((currentEntry = reader.getNextEntry()) != null) {
             ByteCountingPushBackInputStream pbin;
             if (bufferSize > 0) {
                 pbin = new ByteCountingPushBackInputStream(
@@ -191,7 +193,16 @@ public class ArcReaderCompressed extends ArcReader {
                 pbin = new ByteCountingPushBackInputStream(
                         currentEntry.getInputStream(), PUSHBACK_BUFFER_SIZE);
             }
-            currentRecord = ArcRecordBase.parseRecord(pbin, this);
+            currentRecord = ArcRecordBase.parseRecord(pbin, this, recordFilter);
+            if (currentRecord == null || !currentRecord.bFiltered) {
+                break;
+            }
+            // Skip filtered record, without inflating it if possible.
+            if (reader.closeEntryBySkipLength(currentEntry)) {
+                currentRecord.bEntrySkipped = true;
+            }
+            currentRecord.close();
+            currentRecord = null;
         }
         if (currentRecord != null) {
             startOffset = currentEntry.getStartOffset();
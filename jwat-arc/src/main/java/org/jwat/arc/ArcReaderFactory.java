@@ -20,6 +20,7 @@ package org.jwat.arc;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 
 import org.jwat.archive.common.ReaderFactoryAbstract;
@@ -35,6 +36,10 @@ import org.jwat.gzip.GzipReader;
  * <code>ArcReader</code> instances for compressed or uncompressed records.
  * Readers are available for both sequential and random reading of records.
  * Use of buffered methods and/or buffering speeds up the reader considerably.
+ * <p>
+ * Large files can be read in parallel by starting readers at the record
+ * boundaries returned by <code>findRecordBoundary</code> or
+ * <code>planSplits</code>.
  *
  * @author nicl
  */
@@ -43,6 +48,16 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
     /** Buffer size used by <code>PushbackInputStream</code>. */
     public static final int PUSHBACK_BUFFER_SIZE = 32;
 
+    /** Maximum number of header bytes read to confirm a record boundary. */
+    public static final int SYNC_HEADER_MAX_SIZE = 8 * 1024;
+
+    /** ARC record boundary synchronization used by the split planner. */
+    protected static final BoundarySync BOUNDARY_SYNC = new BoundarySync() {
+        public long findRecordBoundary(RandomAccessFile raf, long offset) throws IOException {
+            return ArcReaderFactory.findRecordBoundary(raf, offset);
+        }
+    };
+
     /**
      * Private constructor to enforce factory methods.
      */
@@ -78,6 +93,145 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
         return Scheme.startsWithScheme(streamBytes);
     }
 
+    /**
+     * Returns the offset of the first ARC record starting at or after the
+     * supplied offset, or the length of the file if there are none.
+     * In a compressed file the next GZip member header is located and
+     * confirmed by inflating an ARC record header line from it. In an
+     * uncompressed file the next line starting with a URL scheme is located
+     * and confirmed by the archive length of its header line leading to
+     * another record or the end of the file.
+     * @param raf random access file of ARC file
+     * @param offset offset to start looking from
+     * @return offset of the next record or the length of the file
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    public static long findRecordBoundary(RandomAccessFile raf, long offset) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "The 'offset' is less than zero: " + offset);
+        }
+        long length = raf.length();
+        if (isGzippedFile(raf)) {
+            long candidate = offset;
+            byte[] head;
+            while (candidate < length && (candidate = indexOfGzipHeader(raf, candidate)) != -1) {
+                head = GzipReader.readEntryHead(raf, candidate, SYNC_HEADER_MAX_SIZE);
+                if (head != null && getRecordLength(head, head.length) != -1) {
+                    return candidate;
+                }
+                ++candidate;
+            }
+        } else {
+            if (offset == 0 && isRecordBoundary(raf, 0)) {
+                return 0;
+            }
+            byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+            long position = Math.max(offset - 1, 0);
+            int read;
+            while ((read = read(raf, position, buffer)) > 0) {
+                for (int i=0; i<read; ++i) {
+                    if (buffer[i] == '\n' && isRecordBoundary(raf, position + i + 1)) {
+                        return position + i + 1;
+                    }
+                }
+                position += read;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Check whether an uncompressed ARC record starts at the supplied
+     * offset. The record header line must start with a URL scheme and its
+     * archive length must lead to another record or the end of the file.
+     * @param raf random access file of uncompressed ARC file
+     * @param offset line start offset
+     * @return boolean indicating whether a record starts at the offset
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static boolean isRecordBoundary(RandomAccessFile raf, long offset) throws IOException {
+        byte[] bytes = new byte[PUSHBACK_BUFFER_SIZE];
+        if (read(raf, offset, bytes) == 0 || !Scheme.startsWithScheme(bytes)) {
+            return false;
+        }
+        bytes = new byte[SYNC_HEADER_MAX_SIZE];
+        long recordLength = getRecordLength(bytes, read(raf, offset, bytes));
+        if (recordLength == -1) {
+            return false;
+        }
+        long next = offset + recordLength;
+        // Skip the newline trailing the record.
+        byte[] newlineBytes = new byte[2];
+        int read = read(raf, next, newlineBytes);
+        int i = 0;
+        while (i < read && (newlineBytes[i] == '\r' || newlineBytes[i] == '\n')) {
+            ++i;
+        }
+        next += i;
+        if (next == raf.length()) {
+            return true;
+        }
+        return getRecordLength(bytes, read(raf, next, bytes)) != -1;
+    }
+
+    /**
+     * Parse an ARC record header line and return the length of the record.
+     * The header line must start with a URL scheme, have at least 5 fields
+     * and end with the archive length.
+     * @param bytes bytes starting with a possible header line
+     * @param len number of bytes available
+     * @return length of the header line and archive data or -1, if the bytes
+     * do not start with a valid header line
+     * @throws IOException if an i/o error occurs while decoding the line
+     */
+    protected static long getRecordLength(byte[] bytes, int len) throws IOException {
+        if (!Scheme.startsWithScheme(bytes)) {
+            return -1;
+        }
+        int lf = 0;
+        while (lf < len && bytes[lf] != '\n') {
+            ++lf;
+        }
+        if (lf == len) {
+            return -1;
+        }
+        String[] fields = new String(bytes, 0, lf, "ISO-8859-1").trim().split(" ");
+        if (fields.length < 5) {
+            return -1;
+        }
+        long archiveLength;
+        try {
+            archiveLength = Long.parseLong(fields[fields.length - 1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (archiveLength < 0) {
+            return -1;
+        }
+        return lf + 1 + archiveLength;
+    }
+
+    /**
+     * Divide an ARC file into byte ranges at record boundaries. The returned
+     * array holds the start offset of each split followed by the length of
+     * the file, so split <code>i</code> consists of the records starting at
+     * or after <code>boundaries[i]</code> and before
+     * <code>boundaries[i + 1]</code>. No record is lost or read twice when
+     * each split is read from its start offset until a record starts at or
+     * after the end offset. Only the first split includes the version block.
+     * @param raf random access file of ARC file
+     * @param splits number of splits
+     * @return split boundaries
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    public static long[] planSplits(RandomAccessFile raf, int splits) throws IOException {
+        return planSplits(raf, splits, BOUNDARY_SYNC);
+    }
+
     /**
      * Creates a new <code>ArcReader</code> from an <code>InputStream</code>
      * wrapped by a <code>BufferedInputStream</code>.
@@ -123,7 +123,11 @@ public class ArcReaderUncompressed extends ArcReader {
             throw new IllegalStateException(
                     "This reader has been initialized with an incompatible constructor, 'in' is null");
         }
-        currentRecord = ArcRecordBase.parseRecord(in, this);
+        currentRecord = ArcRecordBase.parseRecord(in, this, recordFilter);
+        while (currentRecord != null && currentRecord.bFiltered) {
+            currentRecord.close();
+            currentRecord = ArcRecordBase.parseRecord(in, this, recordFilter);
+        }
         if (currentRecord != null) {
             startOffset = currentRecord.header.startOffset;
         }
@@ -76,13 +76,36 @@ public class ArcRecord extends ArcRecordBase {
             Diagnostics<Diagnosis> diagnostics,
             ArcHeader header, ByteCountingPushBackInputStream in)
                                                           throws IOException {
+        return parseArcRecord(reader, diagnostics, header, in, null);
+    }
+
+    /**
+     * Creates a new <code>ArcRecord</code> based on the supplied header and
+     * starts processing the payload, if present and the header is accepted
+     * by the optional filter.
+     * @param reader <code>ArcReader</code> used, with access to user defined
+     * options
+     * @param diagnostics diagnostics used to report errors and/or warnings
+     * @param header record header that has already been processed
+     * @param in <code>InputStream</code> used to read possible payload
+     * @param filter optional record filter or null
+     * @return an <code>ArcRecord</code>
+     * @throws IOException i/o exception while processing possible payload
+     */
+    public static ArcRecord parseArcRecord(ArcReader reader,
+            Diagnostics<Diagnosis> diagnostics,
+            ArcHeader header, ByteCountingPushBackInputStream in,
+            ArcRecordFilter filter) throws IOException {
         ArcRecord ar = new ArcRecord();
         ar.recordType = RT_ARC_RECORD;
         ar.reader = reader;
         ar.diagnostics = diagnostics;
         ar.header = header;
         ar.in = in;
-        ar.processPayload(in, reader);
+        ar.bFiltered = filter != null && !filter.accept(header);
+        if (!ar.bFiltered) {
+            ar.processPayload(in, reader);
+        }
         ar.consumed = in.getConsumed() - ar.header.startOffset;
         return ar;
     }
@@ -93,7 +116,7 @@ public class ArcRecord extends ArcRecordBase {
         payload = null;
         if (header.archiveLength != null && header.archiveLength > 0L) {
             String digestAlgorithm = null;
-            if (reader.bBlockDigest) {
+            if (reader.bBlockDigest && !reader.bHeaderOnly) {
                 digestAlgorithm = reader.blockDigestAlgorithm;
             }
             payload = Payload.processPayload(in, header.archiveLength.longValue(),
@@ -103,7 +126,7 @@ public class ArcRecord extends ArcRecordBase {
             if (HttpHeader.isSupported(header.urlScheme)) {
                 // Never! -> && !ArcConstants.CONTENT_TYPE_NO_TYPE.equals(header.contentTypeStr)
                 digestAlgorithm = null;
-                if (reader.bPayloadDigest) {
+                if (reader.bPayloadDigest && !reader.bHeaderOnly) {
                     digestAlgorithm = reader.payloadDigestAlgorithm;
                 }
                 // Try to read a valid HTTP response header from the payload.
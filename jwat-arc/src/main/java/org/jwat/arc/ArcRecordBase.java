@@ -108,6 +108,15 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
     /** Has payload been closed before. */
     protected boolean bPayloadClosed;
 
+    /** Has the rest of the record been skipped together with its GZip entry,
+     *  in which case the payload length and trailing newlines are not
+     *  validated. */
+    protected boolean bEntrySkipped;
+
+    /** Has the record been rejected by a record filter, in which case no
+     *  payload is processed and the payload is skipped when closed. */
+    protected boolean bFiltered;
+
     /** Has record been closed flag. */
     protected boolean bClosed;
 
@@ -139,6 +148,22 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
      * @throws IOException i/o exception while parsing ARC record data
      */
     public static ArcRecordBase parseRecord(ByteCountingPushBackInputStream in, ArcReader reader) throws IOException {
+        return parseRecord(in, reader, null);
+    }
+
+    /**
+     * Reads from the input stream and tries to parse and identify an
+     * <code>ArcRecord</code> or <code>ArcVersionBlock</code> record.
+     * If the header of an <code>ArcRecord</code> is rejected by the optional
+     * filter the record is returned without processing its payload.
+     * @param in input stream with ARC record data
+     * @param reader ARC reader used with access to overall configuration and status
+     * @param filter optional record filter or null
+     * @return <code>ArcRecord</code>, <code>ArcVersionBlock</code> or null
+     * @throws IOException i/o exception while parsing ARC record data
+     */
+    public static ArcRecordBase parseRecord(ByteCountingPushBackInputStream in, ArcReader reader,
+                                            ArcRecordFilter filter) throws IOException {
         ArcRecordBase record = null;
         long startOffset = in.getConsumed();
         // Initialize ArcHeader with required context.
@@ -154,7 +179,7 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
                 reader.versionHeader = record.versionHeader;
             }
             if (record == null) {
-                record = ArcRecord.parseArcRecord(reader, diagnostics, header, in);
+                record = ArcRecord.parseArcRecord(reader, diagnostics, header, in, filter);
                 if (record != null && reader.versionHeader != null) {
                     record.version = reader.versionHeader.version;
                 }
@@ -205,16 +230,23 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
             // Transfer errors/warnings identified in the header parser
             // to the reader since we are not returning a record.
             reader.consumed += in.getConsumed() - startOffset;
-            reader.diagnostics.addAll(diagnostics);
+            if (reader.keepsDiagnoses()) {
+                reader.diagnostics.addAll(diagnostics);
+            }
             if (diagnostics.hasErrors() || diagnostics.hasWarnings()) {
-                reader.errors += diagnostics.getErrors().size();
-                reader.warnings += diagnostics.getWarnings().size();
+                reader.addDiagnostics(diagnostics);
                 reader.bIsCompliant = false;
             }
             // Require one or more records to be present.
             if (reader.records == 0) {
-                reader.diagnostics.addError(new Diagnosis(DiagnosisType.ERROR_EXPECTED, "ARC file", "One or more records"));
+                Diagnosis diagnosis = new Diagnosis(DiagnosisType.ERROR_EXPECTED, "ARC file", "One or more records");
+                if (reader.keepsDiagnoses()) {
+                    reader.diagnostics.addError(diagnosis);
+                }
                 ++reader.errors;
+                if (reader.diagnosticsSink != null) {
+                    reader.diagnosticsSink.addError(diagnosis);
+                }
                 reader.bIsCompliant = false;
             }
         }
@@ -231,7 +263,7 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
         if (!bPayloadClosed) {
             if (payload != null) {
                 // Check for truncated payload.
-                if (payload.getUnavailable() > 0) {
+                if (payload.getUnavailable() > 0 && !bEntrySkipped) {
                     // Payload length mismatch - Payload truncated
                     addErrorDiagnosis(DiagnosisType.INVALID_DATA, "Payload length mismatch", "Payload truncated");
                 }
@@ -292,18 +324,19 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
                 }
             }
             // Check for trailing newlines.
-            trailingNewLines = nlp.parseLFs(in, diagnostics);
-            if (reader.bStrict && trailingNewLines != ArcConstants.ARC_RECORD_TRAILING_NEWLINES) {
-                addErrorDiagnosis(DiagnosisType.INVALID_EXPECTED,
-                        "Trailing newlines",
-                        Integer.toString(trailingNewLines),
-                        Integer.toString(ArcConstants.ARC_RECORD_TRAILING_NEWLINES));
+            if (!bEntrySkipped) {
+                trailingNewLines = nlp.parseLFs(in, diagnostics);
+                if (reader.bStrict && trailingNewLines != ArcConstants.ARC_RECORD_TRAILING_NEWLINES) {
+                    addErrorDiagnosis(DiagnosisType.INVALID_EXPECTED,
+                            "Trailing newlines",
+                            Integer.toString(trailingNewLines),
+                            Integer.toString(ArcConstants.ARC_RECORD_TRAILING_NEWLINES));
+                }
             }
             // isCompliant status update.
             if (diagnostics.hasErrors() || diagnostics.hasWarnings()) {
                 bIsCompliant = false;
-                reader.errors += diagnostics.getErrors().size();
-                reader.warnings += diagnostics.getWarnings().size();
+                reader.addDiagnostics(diagnostics);
             } else {
                 bIsCompliant = true;
             }
@@ -335,6 +368,8 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
             // Ensure input stream is at the end of the record payload.
             if (payload != null) {
                 payload.close();
+            } else if (bFiltered && !bEntrySkipped) {
+                skipPayload();
             }
             payloadClosed();
             reader = null;
@@ -343,6 +378,29 @@ public abstract class ArcRecordBase implements PayloadOnClosedHandler, Closeable
         }
     }
 
+    /**
+     * Skip the unprocessed payload of a filtered record.
+     * @throws IOException i/o exception while skipping the payload
+     */
+    protected void skipPayload() throws IOException {
+        long remaining = (header.archiveLength != null) ? header.archiveLength : 0;
+        long skipped;
+        while (remaining > 0) {
+            skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    break;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        if (remaining > 0) {
+            // Payload length mismatch - Payload truncated
+            addErrorDiagnosis(DiagnosisType.INVALID_DATA, "Payload length mismatch", "Payload truncated");
+        }
+    }
+
     /**
      * Returns a boolean indicating the standard compliance of this record.
      * @return a boolean indicating the standard compliance of this record
@@ -0,0 +1,39 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.IOException;
+
+/**
+ * Callback used to process the records of an ARC file split by split.
+ * Implementations used with an executor must be thread safe since records
+ * of different splits are handled concurrently.
+ *
+ * @author nicl
+ */
+public interface ArcRecordHandler {
+
+    /**
+     * Process a record. The record and its payload are only valid until the
+     * method returns.
+     * @param record ARC record
+     * @throws IOException if an i/o error occurs while processing the record
+     */
+    void handleRecord(ArcRecordBase record) throws IOException;
+
+}
@@ -128,7 +128,7 @@ public class ArcVersionBlock extends ArcRecordBase {
         validateContentType();
         if (header.archiveLength != null && header.archiveLength > 0L) {
             String digestAlgorithm = null;
-            if (reader.bBlockDigest) {
+            if (reader.bBlockDigest && !reader.bHeaderOnly) {
                 digestAlgorithm = reader.blockDigestAlgorithm;
             }
             payload = Payload.processPayload(in, header.archiveLength.longValue(),
@@ -136,7 +136,7 @@ public class ArcVersionBlock extends ArcRecordBase {
             payload.setOnClosedHandler(this);
             // ArcVersionHeader.
             digestAlgorithm = null;
-            if (reader.bPayloadDigest) {
+            if (reader.bPayloadDigest && !reader.bHeaderOnly) {
                 digestAlgorithm = reader.payloadDigestAlgorithm;
             }
             // Try to read a valid ARC version block from the payload.
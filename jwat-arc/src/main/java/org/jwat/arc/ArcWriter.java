@@ -26,7 +26,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.DateFormat;
 
 /**
  * Base class for ARC writer implementations.
@@ -53,9 +52,6 @@ public abstract class ArcWriter implements Closeable {
      * Settings.
      */
 
-    /** ARC <code>DateFormat</code> as described in the IA documentation. */
-    protected DateFormat arcDateFormat;
-
     /** ARC field parser used. */
     protected ArcFieldParsers fieldParsers;
 
@@ -92,7 +88,6 @@ public abstract class ArcWriter implements Closeable {
      * Must be called by all constructors.
      */
     protected void init() {
-        arcDateFormat = ArcDateParser.getDateFormat();
         fieldParsers = new ArcFieldParsers();
         stream_copy_buffer = new byte[8192];
         bExceptionOnContentLengthMismatch = true;
@@ -260,7 +255,7 @@ public abstract class ArcWriter implements Closeable {
          */
         String archiveDateStr;
         if (header.archiveDate != null) {
-            archiveDateStr = arcDateFormat.format(header.archiveDate);
+            archiveDateStr = ArcDateParser.formatDate(header.archiveDate);
         } else if (header.archiveDateStr != null && header.archiveDateStr.length() > 0) {
             archiveDateStr = header.archiveDateStr;
         } else {
@@ -22,8 +22,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.jwat.gzip.GzipCompressionStats;
 import org.jwat.gzip.GzipConstants;
 import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipLevelController;
 import org.jwat.gzip.GzipWriter;
 
 /**
@@ -77,6 +79,70 @@ public class ArcWriterCompressed extends ArcWriter {
         return true;
     }
 
+    /**
+     * Enable or disable skip-length extra subfields in the GZip header of
+     * each record, allowing readers to skip records without inflating them.
+     * Each record is buffered in memory in compressed form when enabled. A
+     * record whose compressed size exceeds the maximum buffered entry size
+     * of the GZip writer is written without a skip-length instead.
+     * @param bSkipLength boolean indicating whether to write skip-lengths
+     */
+    public void setSkipLength(boolean bSkipLength) {
+        writer.setSkipLength(bSkipLength);
+    }
+
+    /**
+     * Returns a boolean indicating whether skip-length extra subfields are
+     * written.
+     * @return a boolean indicating whether skip-lengths are written
+     */
+    public boolean isSkipLength() {
+        return writer.isSkipLength();
+    }
+
+    /**
+     * Enable or disable adaptive compression, which stores or deflates at
+     * the fastest level records whose payload is already compressed.
+     * @param bAdaptive boolean indicating whether to sample record data
+     */
+    public void setAdaptiveCompression(boolean bAdaptive) {
+        writer.setAdaptiveCompression(bAdaptive);
+    }
+
+    /**
+     * Returns a boolean indicating whether adaptive compression is enabled.
+     * @return a boolean indicating whether adaptive compression is enabled
+     */
+    public boolean isAdaptiveCompression() {
+        return writer.isAdaptiveCompression();
+    }
+
+    /**
+     * Set a controller to choose the compression level of each record from
+     * the observed deflate throughput or queue depth, or null to use the
+     * fixed compression level.
+     * @param levelController compression level controller or null
+     */
+    public void setLevelController(GzipLevelController levelController) {
+        writer.setLevelController(levelController);
+    }
+
+    /**
+     * Returns the controller choosing the compression level of each record.
+     * @return compression level controller or null
+     */
+    public GzipLevelController getLevelController() {
+        return writer.getLevelController();
+    }
+
+    /**
+     * Returns the compression statistics of the records written so far.
+     * @return compression statistics
+     */
+    public GzipCompressionStats getCompressionStats() {
+        return writer.getCompressionStats();
+    }
+
     @Override
     public void close() throws IOException {
         if (entry != null) {
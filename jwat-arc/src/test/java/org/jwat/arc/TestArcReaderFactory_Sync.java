@@ -0,0 +1,128 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RandomAccessFileInputStream;
+
+@RunWith(JUnit4.class)
+public class TestArcReaderFactory_Sync {
+
+    public File copyResource(String resource) throws IOException {
+        File file = File.createTempFile("jwat-testarcreaderfactory-sync-", resource);
+        file.deleteOnExit();
+        InputStream in = this.getClass().getClassLoader().getResourceAsStream(resource);
+        OutputStream out = new FileOutputStream(file);
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        out.close();
+        in.close();
+        return file;
+    }
+
+    public static List<Long> readOffsets(File file) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(file);
+        ArcReader reader = ArcReaderFactory.getReader(in, 8192);
+        ArcRecordBase record;
+        while ((record = reader.getNextRecord()) != null) {
+            offsets.add(record.getStartOffset());
+        }
+        reader.close();
+        in.close();
+        return offsets;
+    }
+
+    @Test
+    public void test_arcreaderfactory_sync() throws IOException {
+        String[] resources = {
+                "IAH-20080430204825-00000-blackbook.arc.gz",
+                "1-1-20110922131213-00000-svc-VirtualBox.arc",
+                "small_BNF.arc"
+        };
+        for (int f=0; f<resources.length; ++f) {
+            File file = copyResource(resources[f]);
+            List<Long> offsets = readOffsets(file);
+            Assert.assertTrue(offsets.size() > 5);
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            long length = raf.length();
+            /*
+             * Boundaries.
+             */
+            long offset;
+            long next;
+            for (int i=0; i<offsets.size(); i+=3) {
+                offset = offsets.get(i);
+                next = (i + 1 < offsets.size()) ? offsets.get(i + 1) : length;
+                Assert.assertEquals(offset, ArcReaderFactory.findRecordBoundary(raf, offset));
+                Assert.assertEquals(next, ArcReaderFactory.findRecordBoundary(raf, offset + 1));
+                Assert.assertEquals(next, ArcReaderFactory.findRecordBoundary(raf, (offset + next) / 2 + 1));
+            }
+            Assert.assertEquals(length, ArcReaderFactory.findRecordBoundary(raf, length));
+            /*
+             * Splits.
+             */
+            int[] splitCounts = {1, 2, 5, 16};
+            for (int s=0; s<splitCounts.length; ++s) {
+                long[] boundaries = ArcReaderFactory.planSplits(raf, splitCounts[s]);
+                Assert.assertEquals(splitCounts[s] + 1, boundaries.length);
+                Assert.assertEquals(0, boundaries[0]);
+                Assert.assertEquals(length, boundaries[splitCounts[s]]);
+                List<Long> splitOffsets = new ArrayList<Long>();
+                for (int i=0; i<splitCounts[s]; ++i) {
+                    Assert.assertTrue(boundaries[i] <= boundaries[i + 1]);
+                    if (boundaries[i] == boundaries[i + 1]) {
+                        continue;
+                    }
+                    raf.seek(boundaries[i]);
+                    ArcReader reader = ArcReaderFactory.getReader(new RandomAccessFileInputStream(raf), 8192);
+                    ArcRecordBase record;
+                    while ((record = reader.getNextRecord()) != null
+                            && boundaries[i] + record.getStartOffset() < boundaries[i + 1]) {
+                        splitOffsets.add(boundaries[i] + record.getStartOffset());
+                    }
+                    reader.close();
+                }
+                Assert.assertEquals(offsets, splitOffsets);
+            }
+            raf.close();
+        }
+        try {
+            ArcReaderFactory.findRecordBoundary(null, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
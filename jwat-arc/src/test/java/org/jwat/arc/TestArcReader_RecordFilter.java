@@ -0,0 +1,90 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestArcReader_RecordFilter {
+
+    public static final ArcRecordFilter HTML_FILTER = new ArcRecordFilter() {
+        @Override
+        public boolean accept(ArcHeader header) {
+            return header.contentTypeStr != null && header.contentTypeStr.startsWith("text/html");
+        }
+    };
+
+    public static List<Long> readOffsets(File file, ArcRecordFilter filter) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(file);
+        ArcReader reader = ArcReaderFactory.getReader(in, 8192);
+        reader.setRecordFilter(filter);
+        Assert.assertEquals(filter, reader.getRecordFilter());
+        ArcRecordBase record;
+        while ((record = reader.getNextRecord()) != null) {
+            if (record.recordType == ArcRecordBase.RT_ARC_RECORD
+                    && (filter == null || HTML_FILTER.accept(record.header))) {
+                offsets.add(record.getStartOffset());
+                Assert.assertNotNull(record.getPayload());
+            } else {
+                Assert.assertEquals(ArcRecordBase.RT_VERSION_BLOCK, record.recordType);
+            }
+        }
+        reader.close();
+        in.close();
+        return offsets;
+    }
+
+    @Test
+    public void test_arcreader_recordfilter() throws IOException {
+        String[] resources = {
+                "IAH-20080430204825-00000-blackbook.arc.gz",
+                "1-1-20110922131213-00000-svc-VirtualBox.arc"
+        };
+        for (int f=0; f<resources.length; ++f) {
+            File file = new TestArcReaderFactory_Sync().copyResource(resources[f]);
+            List<Long> expected = new ArrayList<Long>();
+            List<Long> all = readOffsets(file, null);
+            List<Long> accepted = readOffsets(file, HTML_FILTER);
+            InputStream in = new FileInputStream(file);
+            ArcReader reader = ArcReaderFactory.getReader(in, 8192);
+            ArcRecordBase record;
+            while ((record = reader.getNextRecord()) != null) {
+                if (record.recordType == ArcRecordBase.RT_ARC_RECORD && HTML_FILTER.accept(record.header)) {
+                    expected.add(record.getStartOffset());
+                }
+            }
+            reader.close();
+            in.close();
+            Assert.assertTrue(accepted.size() > 0);
+            Assert.assertTrue(accepted.size() < all.size());
+            Assert.assertEquals(expected, accepted);
+        }
+    }
+
+}
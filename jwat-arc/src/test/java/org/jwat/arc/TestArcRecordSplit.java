@@ -0,0 +1,152 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestArcRecordSplit {
+
+    public static String describe(ArcRecordBase record) {
+        return record.getStartOffset() + ":" + record.isCompliant()
+                + ":" + record.diagnostics.getErrors().size()
+                + ":" + record.diagnostics.getWarnings().size()
+                + ":" + record.version;
+    }
+
+    public static List<String> readRecords(File file) throws IOException {
+        List<String> records = new ArrayList<String>();
+        InputStream in = new FileInputStream(file);
+        ArcReader reader = ArcReaderFactory.getReader(in, 8192);
+        ArcRecordBase record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            records.add(describe(record));
+        }
+        reader.close();
+        in.close();
+        return records;
+    }
+
+    @Test
+    public void test_arcrecordsplit() throws Exception {
+        TestArcReaderFactory_Sync sync = new TestArcReaderFactory_Sync();
+        File file = sync.copyResource("1-1-20110922131213-00000-svc-VirtualBox.arc");
+        List<String> expected = readRecords(file);
+        Assert.assertTrue(expected.size() > 5);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        /*
+         * Records in splits after the first are validated as if read in
+         * sequence.
+         */
+        List<ArcRecordSplit> splits = ArcRecordSplit.split(raf, 5);
+        Assert.assertEquals(5, splits.size());
+        List<String> iterated = new ArrayList<String>();
+        for (ArcRecordSplit split : splits) {
+            for (ArcRecordBase record : split) {
+                record.close();
+                iterated.add(describe(record));
+            }
+            Assert.assertNull(split.getIteratorExceptionThrown());
+        }
+        Assert.assertEquals(expected, iterated);
+
+        ArcRecordSplit whole = new ArcRecordSplit(raf);
+        ArcRecordSplit prefix = whole.trySplit();
+        Assert.assertNotNull(prefix);
+        Assert.assertEquals(0, prefix.getStart());
+        Assert.assertEquals(prefix.getEnd(), whole.getStart());
+        iterated.clear();
+        for (ArcRecordBase record : prefix) {
+            record.close();
+            iterated.add(describe(record));
+        }
+        for (ArcRecordBase record : whole) {
+            record.close();
+            iterated.add(describe(record));
+        }
+        Assert.assertEquals(expected, iterated);
+
+        /*
+         * Concurrent processing.
+         */
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+            ArcRecordSplit.processRecords(ArcRecordSplit.split(raf, 5), executor, new ArcRecordHandler() {
+                public void handleRecord(ArcRecordBase record) throws IOException {
+                    record.close();
+                    handled.add(describe(record));
+                }
+            });
+            Assert.assertEquals(expected.size(), handled.size());
+            Assert.assertTrue(handled.containsAll(expected));
+
+            /*
+             * The other splits have stopped when a failure is thrown.
+             */
+            final AtomicInteger calls = new AtomicInteger();
+            try {
+                ArcRecordSplit.processRecords(ArcRecordSplit.split(raf, 5), executor, new ArcRecordHandler() {
+                    public void handleRecord(ArcRecordBase record) throws IOException {
+                        if (calls.incrementAndGet() == 1) {
+                            throw new IllegalStateException("handler");
+                        }
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                    }
+                });
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("handler", e.getMessage());
+            }
+            int callCount = calls.get();
+            Thread.sleep(50);
+            Assert.assertEquals(callCount, calls.get());
+        } finally {
+            executor.shutdown();
+        }
+        raf.close();
+        try {
+            new ArcRecordSplit(null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -18,6 +18,7 @@
 package org.jwat.archive.common;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 
 import org.jwat.common.ByteCountingPushBackInputStream;
@@ -42,6 +43,9 @@ public class ReaderFactoryAbstract {
      * */
     protected static final String WARC_MAGIC_HEADER = "WARC/";
 
+    /** Buffer size used when scanning a file for a record boundary. */
+    protected static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Private constructor to enforce factory methods.
      */
@@ -128,4 +132,154 @@ public class ReaderFactoryAbstract {
         return (Arrays.equals(warcBytes, streamBytes));
     }
 
+    /**
+     * Check the first bytes of a file for a GZip magic number.
+     * @param raf random access file
+     * @return boolean indicating presence of a GZip magic number
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static boolean isGzippedFile(RandomAccessFile raf) throws IOException {
+        byte[] magicBytes = new byte[2];
+        return read(raf, 0, magicBytes) == 2
+                && (((magicBytes[1] & 255) << 8) | (magicBytes[0] & 255)) == GZIP_MAGIC;
+    }
+
+    /**
+     * Read bytes from a file at the supplied offset.
+     * @param raf random access file
+     * @param offset offset in file
+     * @param b destination buffer
+     * @return number of bytes read, less than the buffer size at end of file
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static int read(RandomAccessFile raf, long offset, byte[] b) throws IOException {
+        int len = (int)Math.max(Math.min(b.length, raf.length() - offset), 0);
+        if (len > 0) {
+            raf.seek(offset);
+            raf.readFully(b, 0, len);
+        }
+        return len;
+    }
+
+    /**
+     * Check whether a region of a byte array starts with a byte pattern.
+     * @param b byte array
+     * @param off offset of region
+     * @param len length of region
+     * @param pattern byte pattern
+     * @return boolean indicating whether the region starts with the pattern
+     */
+    protected static boolean startsWith(byte[] b, int off, int len, byte[] pattern) {
+        if (len < pattern.length) {
+            return false;
+        }
+        for (int i=0; i<pattern.length; ++i) {
+            if (b[off + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the first occurrence of a byte pattern in a file at or after the
+     * supplied offset.
+     * @param raf random access file
+     * @param pattern byte pattern to look for
+     * @param offset offset in file to start from
+     * @return offset of the pattern or -1, if not found
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static long indexOf(RandomAccessFile raf, byte[] pattern, long offset) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE + pattern.length - 1];
+        long length = raf.length();
+        int read;
+        int limit;
+        int i;
+        int j;
+        while (offset + pattern.length <= length) {
+            read = read(raf, offset, buffer);
+            limit = read - pattern.length;
+            for (i=0; i<=limit; ++i) {
+                j = 0;
+                while (j < pattern.length && buffer[i + j] == pattern[j]) {
+                    ++j;
+                }
+                if (j == pattern.length) {
+                    return offset + i;
+                }
+            }
+            offset += limit + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first possible GZip member header at or after the supplied
+     * offset. A possible header has the magic number, the deflate compression
+     * method and no reserved flags set.
+     * @param raf random access file
+     * @param offset offset in file to start from
+     * @return offset of a possible GZip member header or -1, if none found
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static long indexOfGzipHeader(RandomAccessFile raf, long offset) throws IOException {
+        byte[] pattern = {(byte)(GZIP_MAGIC & 255), (byte)(GZIP_MAGIC >> 8), 8};
+        byte[] flg = new byte[1];
+        while ((offset = indexOf(raf, pattern, offset)) != -1) {
+            if (read(raf, offset + 3, flg) == 1 && (flg[0] & 0xe0) == 0) {
+                return offset;
+            }
+            ++offset;
+        }
+        return -1;
+    }
+
+    /**
+     * Divide a file into byte ranges at record boundaries. The returned array
+     * holds the start offset of each split followed by the length of the
+     * file, so split <code>i</code> consists of the records starting at or
+     * after <code>boundaries[i]</code> and before <code>boundaries[i + 1]</code>.
+     * Splits are empty when a record spans more than a nominal split.
+     * @param raf random access file
+     * @param splits number of splits
+     * @param sync boundary synchronization used to find record starts
+     * @return split boundaries
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static long[] planSplits(RandomAccessFile raf, int splits, BoundarySync sync) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        if (splits <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'splits' is less than or equal to zero: " + splits);
+        }
+        long length = raf.length();
+        long[] boundaries = new long[splits + 1];
+        boundaries[0] = 0;
+        for (int i=1; i<splits; ++i) {
+            boundaries[i] = Math.max(sync.findRecordBoundary(raf, length / splits * i), boundaries[i - 1]);
+        }
+        boundaries[splits] = length;
+        return boundaries;
+    }
+
+    /**
+     * Finds the record boundaries of a specific archive format.
+     */
+    protected interface BoundarySync {
+
+        /**
+         * Returns the offset of the first record starting at or after the
+         * supplied offset or the length of the file, if there are none.
+         * @param raf random access file
+         * @param offset offset in file
+         * @return offset of the next record or the length of the file
+         * @throws IOException if an i/o error occurs while reading the file
+         */
+        long findRecordBoundary(RandomAccessFile raf, long offset) throws IOException;
+
+    }
+
 }
@@ -0,0 +1,160 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the number of bytes allocated on the heap by the current thread
+ * while processing a number of records. Used to keep track of the
+ * allocation rate of the parsers per record.
+ *
+ * The measurement relies on the <code>com.sun.management.ThreadMXBean</code>
+ * extension which is looked up by reflection. On JVMs without it the meter
+ * is not supported and all measurements return -1.
+ *
+ * @author nicl
+ */
+public class AllocationMeter {
+
+    /** Thread management bean or null if not supported. */
+    protected static final Object threadMXBean;
+
+    /** Method returning the bytes allocated by a thread or null if not supported. */
+    protected static final Method getThreadAllocatedBytesMethod;
+
+    /**
+     * Look up the thread allocation extension, if available.
+     */
+    static {
+        Object bean = null;
+        Method method = null;
+        try {
+            Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            bean = ManagementFactory.getThreadMXBean();
+            if (beanClass.isInstance(bean)) {
+                Method supportedMethod = beanClass.getMethod("isThreadAllocatedMemorySupported");
+                Method enabledMethod = beanClass.getMethod("isThreadAllocatedMemoryEnabled");
+                if (Boolean.TRUE.equals(supportedMethod.invoke(bean))
+                        && Boolean.TRUE.equals(enabledMethod.invoke(bean))) {
+                    method = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+                }
+            }
+        } catch (Exception e) {
+            method = null;
+        } catch (LinkageError e) {
+            method = null;
+        }
+        if (method == null) {
+            bean = null;
+        }
+        threadMXBean = bean;
+        getThreadAllocatedBytesMethod = method;
+    }
+
+    /** Allocated bytes when the measurement was started. */
+    protected long startBytes = -1;
+
+    /** Allocated bytes when the measurement was stopped. */
+    protected long stopBytes = -1;
+
+    /** Number of records processed during the measurement. */
+    protected long records;
+
+    /**
+     * Returns a boolean indicating whether the JVM supports measuring the
+     * bytes allocated by a thread.
+     * @return a boolean indicating whether allocations can be measured
+     */
+    public static boolean isSupported() {
+        return getThreadAllocatedBytesMethod != null;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by the current thread.
+     * @return bytes allocated by the current thread or -1 if not supported
+     */
+    public static long getThreadAllocatedBytes() {
+        if (getThreadAllocatedBytesMethod == null) {
+            return -1;
+        }
+        try {
+            return (Long) getThreadAllocatedBytesMethod.invoke(threadMXBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Start a new measurement.
+     */
+    public void start() {
+        records = 0;
+        stopBytes = -1;
+        startBytes = getThreadAllocatedBytes();
+    }
+
+    /**
+     * Register a processed record.
+     */
+    public void record() {
+        ++records;
+    }
+
+    /**
+     * Stop the current measurement.
+     */
+    public void stop() {
+        stopBytes = getThreadAllocatedBytes();
+    }
+
+    /**
+     * Returns the number of records registered in the last measurement.
+     * @return number of records registered
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the number of bytes allocated during the last measurement.
+     * @return bytes allocated or -1 if not supported or not measured
+     */
+    public long getAllocatedBytes() {
+        if (startBytes == -1 || stopBytes == -1) {
+            return -1;
+        }
+        return stopBytes - startBytes;
+    }
+
+    /**
+     * Returns the average number of bytes allocated per record during the
+     * last measurement.
+     * @return bytes allocated per record or -1 if not supported, not measured
+     * or no records were registered
+     */
+    public long getAllocatedBytesPerRecord() {
+        long allocated = getAllocatedBytes();
+        if (allocated == -1 || records == 0) {
+            return -1;
+        }
+        return allocated / records;
+    }
+
+}
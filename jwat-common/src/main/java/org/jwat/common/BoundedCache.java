@@ -0,0 +1,193 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe bounded cache with hit, miss and eviction statistics.
+ * When the cache is full the least recently used entry is evicted, or the
+ * oldest entry if the cache has been constructed with insertion order
+ * eviction. Cached values are shared between all users of the cache and
+ * should therefore be treated as immutable.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ *
+ * @author nicl
+ */
+public class BoundedCache<K, V> {
+
+    /** Maximum number of entries in the cache. */
+    protected final int maxSize;
+
+    /** Evict the least recently used entry, or the oldest if false. */
+    protected final boolean bAccessOrder;
+
+    /** Entries ordered by eviction priority. */
+    protected final LinkedHashMap<K, V> map;
+
+    /** Number of lookups which returned a cached value. */
+    protected long hits;
+
+    /** Number of lookups which did not find a cached value. */
+    protected long misses;
+
+    /** Number of entries evicted to honour the maximum size. */
+    protected long evictions;
+
+    /**
+     * Construct a least recently used cache with the given maximum size.
+     * @param maxSize maximum number of entries in the cache
+     */
+    public BoundedCache(int maxSize) {
+        this(maxSize, true);
+    }
+
+    /**
+     * Construct a cache with the given maximum size and eviction order.
+     * @param maxSize maximum number of entries in the cache
+     * @param bAccessOrder evict the least recently used entry if true,
+     * evict the oldest entry if false
+     */
+    public BoundedCache(int maxSize, boolean bAccessOrder) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("'maxSize' is less than 1");
+        }
+        this.maxSize = maxSize;
+        this.bAccessOrder = bAccessOrder;
+        map = new LinkedHashMap<K, V>(16, 0.75f, bAccessOrder) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    ++evictions;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum number of entries in the cache.
+     * @return the maximum number of entries in the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns true if the least recently used entry is evicted first, false
+     * if the oldest entry is evicted first.
+     * @return the eviction order of the cache
+     */
+    public boolean isAccessOrder() {
+        return bAccessOrder;
+    }
+
+    /**
+     * Look up a cached value and update the statistics.
+     * @param key key to look up
+     * @return the cached value or null
+     */
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value != null) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+        return value;
+    }
+
+    /**
+     * Add a value to the cache, evicting an entry if the cache is full.
+     * @param key key of the value
+     * @param value value to cache
+     */
+    public synchronized void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Null key or value");
+        }
+        map.put(key, value);
+    }
+
+    /**
+     * Returns the number of cached entries.
+     * @return the number of cached entries
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * Remove all entries from the cache. The statistics are not reset.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Returns the number of lookups which returned a cached value.
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups which did not find a cached value.
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries evicted to honour the maximum size.
+     * @return the number of evicted entries
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the ratio of lookups which returned a cached value.
+     * @return the hit rate between 0.0 and 1.0 or 0.0 if nothing has been
+     * looked up yet
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        if (lookups == 0) {
+            return 0.0;
+        }
+        return (double) hits / (double) lookups;
+    }
+
+    /**
+     * Reset the hit, miss and eviction statistics.
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+}
@@ -0,0 +1,296 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>ByteCountingPushBackInputStream</code> reading from a
+ * <code>FileChannel</code> or a <code>ByteBuffer</code>, such as a
+ * <code>MappedByteBuffer</code>, through a large window.
+ * Unlike <code>PushbackInputStream</code> no method is synchronized and
+ * pushing back bytes which were just read only moves the window position.
+ * The window is exposed so consumers can process data in place instead of
+ * copying it out with <code>read</code>.
+ * A <code>ByteBuffer</code> backed by an accessible array is used directly
+ * as the window. Other buffers and channels are copied into the window.
+ * When reading a channel the consumed byte count starts at the initial
+ * position, so it always equals the channel position of the next byte.
+ * Closing this stream does not close the channel.
+ *
+ * @author nicl
+ */
+public class ChannelPushBackInputStream extends ByteCountingPushBackInputStream {
+
+    /** Default window size. */
+    public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024;
+
+    /** Channel to read from or null, if reading from a buffer. */
+    protected FileChannel channel;
+
+    /** Position in the channel of the next byte to read into the window. */
+    protected long channelPosition;
+
+    /** Buffer to read from or null, if reading from a channel. */
+    protected ByteBuffer buffer;
+
+    /** Is the window the backing array of the buffer. */
+    protected boolean bBufferWindow;
+
+    /** Window data. */
+    protected byte[] window;
+
+    /** Position of the next byte to read in the window. */
+    protected int windowPos;
+
+    /** End of the valid data in the window. */
+    protected int windowLimit;
+
+    /** Small buffer used by the read() method. */
+    protected byte[] singleByteArray = new byte[1];
+
+    /**
+     * Construct a stream reading a channel from the supplied position.
+     * @param channel <code>FileChannel</code> to read from
+     * @param position start position in the channel
+     * @param windowSize size of the window
+     */
+    public ChannelPushBackInputStream(FileChannel channel, long position, int windowSize) {
+        super(null, 1);
+        if (channel == null) {
+            throw new IllegalArgumentException("'channel' is null!");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("'position' is negative: " + position);
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "'windowSize' is less than or equal to zero: " + windowSize);
+        }
+        this.channel = channel;
+        this.channelPosition = position;
+        consumed = position;
+        window = new byte[windowSize];
+        pushback_size = windowSize;
+    }
+
+    /**
+     * Construct a stream reading the remaining data of a buffer.
+     * The position of the buffer is advanced as the data is read.
+     * @param buffer <code>ByteBuffer</code> to read from
+     * @param windowSize size of the window, if the buffer has no accessible array
+     */
+    public ChannelPushBackInputStream(ByteBuffer buffer, int windowSize) {
+        super(null, 1);
+        if (buffer == null) {
+            throw new IllegalArgumentException("'buffer' is null!");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "'windowSize' is less than or equal to zero: " + windowSize);
+        }
+        this.buffer = buffer;
+        if (buffer.hasArray()) {
+            bBufferWindow = true;
+            window = buffer.array();
+            windowPos = buffer.arrayOffset() + buffer.position();
+            windowLimit = buffer.arrayOffset() + buffer.limit();
+            buffer.position(buffer.limit());
+        } else {
+            window = new byte[windowSize];
+        }
+        pushback_size = window.length;
+    }
+
+    /**
+     * Returns the window array. Valid data is located between the window
+     * position and the window limit.
+     * @return window array
+     */
+    public byte[] getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the position of the next byte to read in the window.
+     * @return position of the next byte to read in the window
+     */
+    public int getWindowPosition() {
+        return windowPos;
+    }
+
+    /**
+     * Make sure the window contains data, refilling it if it is empty.
+     * @return number of bytes available in the window or -1 on EOF
+     * @throws IOException if an i/o error occurs while reading data
+     */
+    public int fill() throws IOException {
+        if (windowPos < windowLimit) {
+            return windowLimit - windowPos;
+        }
+        if (bBufferWindow || window == null) {
+            return -1;
+        }
+        windowPos = 0;
+        windowLimit = 0;
+        int read;
+        if (channel != null) {
+            read = channel.read(ByteBuffer.wrap(window), channelPosition);
+            if (read > 0) {
+                channelPosition += read;
+            }
+        } else {
+            read = Math.min(buffer.remaining(), window.length);
+            buffer.get(window, 0, read);
+        }
+        if (read <= 0) {
+            return -1;
+        }
+        windowLimit = read;
+        return read;
+    }
+
+    /**
+     * Mark bytes in the window as read, after processing them in place.
+     * @param n number of bytes to consume, at most the available bytes
+     */
+    public void consume(int n) {
+        if (n < 0 || n > windowLimit - windowPos) {
+            throw new IllegalArgumentException("Invalid number of bytes: " + n);
+        }
+        windowPos += n;
+        consumed += n;
+        counter += n;
+    }
+
+    /**
+     * Push back the last bytes read without copying them.
+     * @param n number of bytes to push back, at most the bytes read from the
+     * current window
+     */
+    public void rewind(int n) {
+        if (n < 0 || n > windowPos) {
+            throw new IllegalArgumentException("Invalid number of bytes: " + n);
+        }
+        windowPos -= n;
+        consumed -= n;
+        counter -= n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel = null;
+        buffer = null;
+        window = null;
+        windowPos = 0;
+        windowLimit = 0;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long available = windowLimit - windowPos;
+        if (!bBufferWindow) {
+            if (channel != null) {
+                available += Math.max(channel.size() - channelPosition, 0);
+            } else if (buffer != null) {
+                available += buffer.remaining();
+            }
+        }
+        return (int)Math.min(available, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (windowPos < windowLimit) {
+            ++consumed;
+            ++counter;
+            return window[windowPos++] & 255;
+        }
+        return read(singleByteArray, 0, 1) != -1 ? (singleByteArray[0] & 255) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int available = fill();
+        if (available == -1) {
+            return -1;
+        }
+        if (len > available) {
+            len = available;
+        }
+        System.arraycopy(window, windowPos, b, off, len);
+        consume(len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || window == null) {
+            return 0;
+        }
+        long skipped = Math.min(n, windowLimit - windowPos);
+        windowPos += skipped;
+        n -= skipped;
+        if (n > 0 && !bBufferWindow) {
+            long skip;
+            if (channel != null) {
+                skip = Math.min(n, Math.max(channel.size() - channelPosition, 0));
+                channelPosition += skip;
+            } else {
+                skip = Math.min(n, buffer.remaining());
+                buffer.position(buffer.position() + (int)skip);
+            }
+            skipped += skip;
+        }
+        consumed += skipped;
+        counter += skipped;
+        return skipped;
+    }
+
+    @Override
+    public void unread(int b) throws IOException {
+        singleByteArray[0] = (byte)b;
+        unread(singleByteArray, 0, 1);
+    }
+
+    @Override
+    public void unread(byte[] b, int off, int len) throws IOException {
+        if (len > windowPos) {
+            if (bBufferWindow || len > window.length - (windowLimit - windowPos)) {
+                throw new IOException("Push back buffer is full");
+            }
+            // Make room in front of the window data.
+            int available = windowLimit - windowPos;
+            System.arraycopy(window, windowPos, window, window.length - available, available);
+            windowPos = window.length - available;
+            windowLimit = window.length;
+        }
+        windowPos -= len;
+        if (b != window || off != windowPos) {
+            System.arraycopy(b, off, window, windowPos, len);
+        }
+        consumed -= len;
+        counter -= len;
+    }
+
+}
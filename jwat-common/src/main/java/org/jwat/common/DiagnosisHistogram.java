@@ -0,0 +1,296 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact diagnostics sink which aggregates diagnoses into counters instead
+ * of keeping every diagnosis. Errors and warnings are counted per diagnosis
+ * type, using the type ordinal as code, and per type and entity. Only the
+ * first diagnoses of each kind are kept as examples and messages are only
+ * formatted when requested. Suitable for bulk jobs which only need per-file
+ * statistics.
+ *
+ * @author nicl
+ */
+public class DiagnosisHistogram implements DiagnosticsSink {
+
+    /** Default number of error and warning examples kept. */
+    public static final int DEFAULT_MAX_EXAMPLES = 10;
+
+    /** Number of error and warning examples kept. */
+    protected final int maxExamples;
+
+    /** Error counters indexed by diagnosis type ordinal. */
+    protected final int[] errorCounts = new int[DiagnosisType.values().length];
+
+    /** Warning counters indexed by diagnosis type ordinal. */
+    protected final int[] warningCounts = new int[DiagnosisType.values().length];
+
+    /** Error counters per diagnosis type ordinal and entity. */
+    protected final Map<String, int[]>[] errorEntityCounts;
+
+    /** Warning counters per diagnosis type ordinal and entity. */
+    protected final Map<String, int[]>[] warningEntityCounts;
+
+    /** First error diagnoses reported. */
+    protected final List<Diagnosis> errorExamples = new ArrayList<Diagnosis>();
+
+    /** First warning diagnoses reported. */
+    protected final List<Diagnosis> warningExamples = new ArrayList<Diagnosis>();
+
+    /** Total number of errors reported. */
+    protected long errors;
+
+    /** Total number of warnings reported. */
+    protected long warnings;
+
+    /**
+     * Construct a histogram keeping the default number of examples.
+     */
+    public DiagnosisHistogram() {
+        this(DEFAULT_MAX_EXAMPLES);
+    }
+
+    /**
+     * Construct a histogram keeping the given number of examples.
+     * @param maxExamples number of error and warning examples to keep
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DiagnosisHistogram(int maxExamples) {
+        if (maxExamples < 0) {
+            throw new IllegalArgumentException("'maxExamples' is negative");
+        }
+        this.maxExamples = maxExamples;
+        errorEntityCounts = new Map[errorCounts.length];
+        warningEntityCounts = new Map[warningCounts.length];
+    }
+
+    @Override
+    public void addError(Diagnosis d) {
+        ++errors;
+        count(d, errorCounts, errorEntityCounts, errorExamples);
+    }
+
+    @Override
+    public void addWarning(Diagnosis d) {
+        ++warnings;
+        count(d, warningCounts, warningEntityCounts, warningExamples);
+    }
+
+    /**
+     * Update the counters and examples with a diagnosis.
+     * @param d diagnosis to count
+     * @param counts counters indexed by diagnosis type ordinal
+     * @param entityCounts counters per diagnosis type ordinal and entity
+     * @param examples examples list
+     */
+    protected void count(Diagnosis d, int[] counts, Map<String, int[]>[] entityCounts, List<Diagnosis> examples) {
+        int code = d.type.ordinal();
+        ++counts[code];
+        Map<String, int[]> map = entityCounts[code];
+        if (map == null) {
+            map = new HashMap<String, int[]>();
+            entityCounts[code] = map;
+        }
+        int[] count = map.get(d.entity);
+        if (count == null) {
+            count = new int[1];
+            map.put(d.entity, count);
+        }
+        ++count[0];
+        if (examples.size() < maxExamples) {
+            examples.add(d);
+        }
+    }
+
+    /**
+     * Reset all counters and examples, for instance before the next file.
+     */
+    public void reset() {
+        for (int i=0; i<errorCounts.length; ++i) {
+            errorCounts[i] = 0;
+            warningCounts[i] = 0;
+            errorEntityCounts[i] = null;
+            warningEntityCounts[i] = null;
+        }
+        errorExamples.clear();
+        warningExamples.clear();
+        errors = 0;
+        warnings = 0;
+    }
+
+    /**
+     * Returns the total number of errors reported.
+     * @return the total number of errors reported
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the total number of warnings reported.
+     * @return the total number of warnings reported
+     */
+    public long getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Returns the number of errors reported with the given type.
+     * @param type diagnosis type
+     * @return the number of errors reported with the given type
+     */
+    public int getErrorCount(DiagnosisType type) {
+        return errorCounts[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of warnings reported with the given type.
+     * @param type diagnosis type
+     * @return the number of warnings reported with the given type
+     */
+    public int getWarningCount(DiagnosisType type) {
+        return warningCounts[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of errors reported per entity for the given type.
+     * @param type diagnosis type
+     * @return sorted map of entities and their error count
+     */
+    public Map<String, Integer> getErrorEntityCounts(DiagnosisType type) {
+        return toSortedMap(errorEntityCounts[type.ordinal()]);
+    }
+
+    /**
+     * Returns the number of warnings reported per entity for the given type.
+     * @param type diagnosis type
+     * @return sorted map of entities and their warning count
+     */
+    public Map<String, Integer> getWarningEntityCounts(DiagnosisType type) {
+        return toSortedMap(warningEntityCounts[type.ordinal()]);
+    }
+
+    /**
+     * Convert an internal counter map into a sorted map of integers.
+     * @param map counter map or null
+     * @return sorted map of entities and their count
+     */
+    protected static Map<String, Integer> toSortedMap(Map<String, int[]> map) {
+        Map<String, Integer> sorted = new TreeMap<String, Integer>();
+        if (map != null) {
+            for (Map.Entry<String, int[]> entry : map.entrySet()) {
+                sorted.put(entry.getKey(), entry.getValue()[0]);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the first error diagnoses reported.
+     * @return unmodifiable list of the first error diagnoses
+     */
+    public List<Diagnosis> getErrorExamples() {
+        return Collections.unmodifiableList(errorExamples);
+    }
+
+    /**
+     * Returns the first warning diagnoses reported.
+     * @return unmodifiable list of the first warning diagnoses
+     */
+    public List<Diagnosis> getWarningExamples() {
+        return Collections.unmodifiableList(warningExamples);
+    }
+
+    /**
+     * Format a diagnosis as a single line message.
+     * @param d diagnosis to format
+     * @return message with the type, entity and information of the diagnosis
+     */
+    public static String formatMessage(Diagnosis d) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(d.type.name());
+        sb.append(": ");
+        sb.append(d.entity);
+        if (d.information != null && d.information.length > 0) {
+            sb.append(" [");
+            for (int i=0; i<d.information.length; ++i) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(d.information[i]);
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Errors: ");
+        sb.append(errors);
+        sb.append('\n');
+        toString(sb, errorCounts, errorEntityCounts, errorExamples);
+        sb.append("Warnings: ");
+        sb.append(warnings);
+        sb.append('\n');
+        toString(sb, warningCounts, warningEntityCounts, warningExamples);
+        return sb.toString();
+    }
+
+    /**
+     * Append the counters and examples of one kind of diagnoses.
+     * @param sb <code>StringBuilder</code> to append to
+     * @param counts counters indexed by diagnosis type ordinal
+     * @param entityCounts counters per diagnosis type ordinal and entity
+     * @param examples examples list
+     */
+    protected static void toString(StringBuilder sb, int[] counts, Map<String, int[]>[] entityCounts, List<Diagnosis> examples) {
+        DiagnosisType[] types = DiagnosisType.values();
+        for (int i=0; i<counts.length; ++i) {
+            if (counts[i] > 0) {
+                sb.append("  ");
+                sb.append(types[i].name());
+                sb.append(": ");
+                sb.append(counts[i]);
+                sb.append('\n');
+                for (Map.Entry<String, Integer> entry : toSortedMap(entityCounts[i]).entrySet()) {
+                    sb.append("    ");
+                    sb.append(entry.getKey());
+                    sb.append(": ");
+                    sb.append(entry.getValue());
+                    sb.append('\n');
+                }
+            }
+        }
+        for (int i=0; i<examples.size(); ++i) {
+            sb.append("  - ");
+            sb.append(formatMessage(examples.get(i)));
+            sb.append('\n');
+        }
+    }
+
+}
@@ -31,18 +31,22 @@ import java.util.List;
  */
 public class Diagnostics<T> {
 
-    /** List of error diagnoses. */
-    protected List<T> errors = new LinkedList<T>();
+    /** List of error diagnoses, allocated when the first error is added. */
+    protected List<T> errors;
 
-    /** List of warning diagnoses. */
-    protected List<T> warnings = new LinkedList<T>();
+    /** List of warning diagnoses, allocated when the first warning is added. */
+    protected List<T> warnings;
 
     /**
      * Resets the collection of errors and warnings. Use with care.
      */
     public void reset() {
-        errors.clear();
-        warnings.clear();
+        if (errors != null) {
+            errors.clear();
+        }
+        if (warnings != null) {
+            warnings.clear();
+        }
     }
 
     /**
@@ -50,7 +54,7 @@ public class Diagnostics<T> {
      * @return boolean indicating the presence of an error diagnosis
      */
     public boolean hasErrors() {
-        return !errors.isEmpty();
+        return errors != null && !errors.isEmpty();
     }
 
     /**
@@ -58,7 +62,23 @@ public class Diagnostics<T> {
      * @return boolean indicating the presence of a warning diagnosis
      */
     public boolean hasWarnings() {
-        return !warnings.isEmpty();
+        return warnings != null && !warnings.isEmpty();
+    }
+
+    /**
+     * Returns the number of error diagnoses.
+     * @return the number of error diagnoses
+     */
+    public int getErrorCount() {
+        return (errors != null) ? errors.size() : 0;
+    }
+
+    /**
+     * Returns the number of warning diagnoses.
+     * @return the number of warning diagnoses
+     */
+    public int getWarningCount() {
+        return (warnings != null) ? warnings.size() : 0;
     }
 
     /**
@@ -67,8 +87,18 @@ public class Diagnostics<T> {
      */
     public void addAll(Diagnostics<T> diagnostics) {
         if (diagnostics != null && diagnostics != this) {
-            errors.addAll(diagnostics.errors);
-            warnings.addAll(diagnostics.warnings);
+            if (diagnostics.hasErrors()) {
+                if (errors == null) {
+                    errors = new LinkedList<T>();
+                }
+                errors.addAll(diagnostics.errors);
+            }
+            if (diagnostics.hasWarnings()) {
+                if (warnings == null) {
+                    warnings = new LinkedList<T>();
+                }
+                warnings.addAll(diagnostics.warnings);
+            }
         }
     }
 
@@ -77,6 +107,9 @@ public class Diagnostics<T> {
      * @param d error diagnosis
      */
     public void addError(T d) {
+        if (errors == null) {
+            errors = new LinkedList<T>();
+        }
         errors.add(d);
     }
 
@@ -85,6 +118,9 @@ public class Diagnostics<T> {
      * @param d warning diagnosis
      */
     public void addWarning(T d) {
+        if (warnings == null) {
+            warnings = new LinkedList<T>();
+        }
         warnings.add(d);
     }
 
@@ -93,6 +129,9 @@ public class Diagnostics<T> {
      * @return unmodifiable list of error diagnoses
      */
     public List<T> getErrors() {
+        if (errors == null) {
+            return Collections.emptyList();
+        }
         return Collections.unmodifiableList(errors);
     }
 
@@ -101,6 +140,9 @@ public class Diagnostics<T> {
      * @return unmodifiable list of warning diagnoses
      */
     public List<T> getWarnings() {
+        if (warnings == null) {
+            return Collections.emptyList();
+        }
         return Collections.unmodifiableList(warnings);
     }
 
@@ -0,0 +1,157 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class wraps a <code>FileChannel</code> into an <code>InputStream</code>
+ * which keeps its own position and uses positional reads only.
+ * Several instances can therefore read from the same channel concurrently
+ * without interfering with each other or with the channel position.
+ * Skipping is done by moving the position and never reads any data.
+ *
+ * @author nicl
+ */
+public class FileChannelInputStream extends InputStream {
+
+    /** Encapsulated <code>FileChannel</code> used for stream data. */
+    protected FileChannel channel;
+
+    /** Current position in the channel. */
+    protected long position;
+
+    /** Position in the channel where this stream ends. */
+    protected long limit;
+
+    /** Current mark position in channel. */
+    protected long mark_position = -1;
+
+    /** Small buffer used by the read() method. */
+    protected byte[] singleByteArray = new byte[1];
+
+    /**
+     * Create a new <code>InputStream</code> reading from the supplied
+     * position to the end of the channel.
+     * @param channel <code>FileChannel</code> used for stream data
+     * @param position start position in the channel
+     * @throws IOException if an i/o error occurs while reading the channel size
+     */
+    public FileChannelInputStream(FileChannel channel, long position) throws IOException {
+        this(channel, position, channel != null ? channel.size() : 0);
+    }
+
+    /**
+     * Create a new <code>InputStream</code> reading the supplied range of the
+     * channel.
+     * @param channel <code>FileChannel</code> used for stream data
+     * @param position start position in the channel
+     * @param limit end position (exclusive) in the channel
+     */
+    public FileChannelInputStream(FileChannel channel, long position, long limit) {
+        if (channel == null) {
+            throw new IllegalArgumentException("'channel' is null!");
+        }
+        if (position < 0 || limit < position) {
+            throw new IllegalArgumentException("Invalid range: " + position + "-" + limit);
+        }
+        this.channel = channel;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the current position in the channel.
+     * @return current position in the channel
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Closing this stream does not close the channel.
+     * @throws IOException if an i/o error occurs while closing stream
+     */
+    @Override
+    public void close() throws IOException {
+        channel = null;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark_position = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (mark_position == -1) {
+            throw new IOException("Mark not set or is invalid");
+        }
+        position = mark_position;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(limit - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long skip = Math.min(n, limit - position);
+        position += skip;
+        return skip;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByteArray, 0, 1) != -1 ? (singleByteArray[0] & 255) : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= limit) {
+            return -1;
+        }
+        len = (int) Math.min(len, limit - position);
+        int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+}
@@ -129,12 +129,24 @@ public class HeaderLineReader {
     /** Support encoded words. */
     public boolean bEncodedWords;
 
-    /** Reusable <code>StringBuffer</code> for lines. */
-    protected final StringBuffer lineSb = new StringBuffer();
-    /** Reusable <code>StringBuffer</code> for name/value strings. */
-    protected final StringBuffer nvSb = new StringBuffer();
-    /** Stream used to record the raw characters read by the parser. */
-    protected ByteArrayOutputStreamWithUnread bytesOut = new ByteArrayOutputStreamWithUnread();
+    /** Reusable <code>StringBuilder</code> for lines. */
+    protected final StringBuilder lineSb = new StringBuilder();
+    /** Reusable <code>StringBuilder</code> for name/value strings. */
+    protected final StringBuilder nvSb = new StringBuilder();
+    /** Reusable stream used to record the raw characters read by the parser. */
+    protected final ByteArrayOutputStreamWithUnread bytesOut = new ByteArrayOutputStreamWithUnread();
+    /** Reusable character buffer used to materialise strings from bytes, allocated when first used. */
+    protected char[] chars;
+
+    /*
+     * Canonical names.
+     */
+
+    /** Empty dictionary shared by readers without canonical field names. */
+    protected static final HeaderNameDictionary NO_CANONICAL_NAMES = new HeaderNameDictionary(new String[0]);
+
+    /** Dictionary of canonical field names shared by the parsed lines. */
+    protected HeaderNameDictionary canonicalNames = NO_CANONICAL_NAMES;
 
     /*
      * Error reporting.
@@ -246,7 +258,7 @@ public class HeaderLineReader {
         }
         lineSb.setLength(0);
         nvSb.setLength(0);
-        bytesOut = new ByteArrayOutputStreamWithUnread();
+        bytesOut.reset();
         bfErrors = 0;
         int c;
         bCr = false;
@@ -333,7 +345,7 @@ public class HeaderLineReader {
                     break;
                 case ':':
                     headerLine.type = HeaderLine.HLT_HEADERLINE;
-                    headerLine.name = nvSb.toString();
+                    headerLine.name = getCanonicalName(nvSb);
                     lineSb.setLength(0);
                     nvSb.setLength(0);
                     if (bCr) {
@@ -621,7 +633,8 @@ public class HeaderLineReader {
                     */
                     nvSb.append("=?");
                     in.unread(ew.line, 2, ew.line.length - 2);
-                    bytesOut.write("=?".getBytes());
+                    bytesOut.write('=');
+                    bytesOut.write('?');
                     state = S_VALUE;
                     break;
                 default:
@@ -640,6 +653,364 @@ public class HeaderLineReader {
         return headerLine;
     }
 
+    /*
+     * Header block.
+     */
+
+    /** Reusable buffer holding the header block currently being parsed, allocated when first used. */
+    protected byte[] block;
+
+    /** Position of the next unparsed byte in the header block. */
+    protected int blockPos;
+
+    /** Number of valid bytes in the header block. */
+    protected int blockLimit;
+
+    /** Maximum number of bytes the header block may contain. */
+    protected int blockMax;
+
+    /** Maximum number of bytes read into the header block at a time. */
+    protected int blockChunk;
+
+    /** Stream the header block is read from and over-read bytes returned to. */
+    protected ByteCountingPushBackInputStream blockSrc;
+
+    /** Stream view of the header block used by the state machine, allocated when first used. */
+    protected BlockInputStream blockIn;
+
+    /**
+     * Begin reading a block of header lines from the supplied stream.
+     * Data is read in chunks no larger than the pushback size of the stream
+     * and a maximum of <code>maxSize</code> bytes are read before EOF is
+     * reported. Lines are then read using <code>readBlockLine</code> and
+     * <code>endBlock</code> must be called afterwards to return any bytes
+     * read beyond the last line to the stream.
+     * @param in <code>InputStream</code> with header lines
+     * @param maxSize maximum size of the header block
+     */
+    public void beginBlock(ByteCountingPushBackInputStream in, int maxSize) {
+        if (block == null || block.length < maxSize) {
+            block = new byte[maxSize];
+        }
+        blockPos = 0;
+        blockLimit = 0;
+        blockMax = maxSize;
+        blockChunk = Math.max(in.getPushbackSize(), 1);
+        blockSrc = in;
+    }
+
+    /**
+     * Reads a header/line from the current header block. The result is
+     * identical to what <code>readLine</code> would return given the same
+     * data. Simple lines are parsed directly from the block while lines with
+     * LWS, quoted text, encoded words, non US-ASCII or invalid characters are
+     * handed to the state machine.
+     * @return result wrapped in a <code>HeaderLine</code> object
+     * @throws IOException if an i/o error occurs in the underlying input stream
+     */
+    public HeaderLine readBlockLine() throws IOException {
+        HeaderLine headerLine = readBlockLineFast();
+        if (headerLine == null) {
+            if (blockIn == null) {
+                blockIn = new BlockInputStream();
+            }
+            headerLine = readLine(blockIn);
+        }
+        return headerLine;
+    }
+
+    /**
+     * Return any bytes read beyond the last parsed line to the underlying
+     * stream and release the stream.
+     * @throws IOException if an i/o error occurs in the underlying input stream
+     */
+    public void endBlock() throws IOException {
+        if (blockPos < blockLimit) {
+            blockSrc.unread(block, blockPos, blockLimit - blockPos);
+        }
+        blockPos = 0;
+        blockLimit = 0;
+        blockSrc = null;
+    }
+
+    /**
+     * Read the next chunk of the header block from the underlying stream.
+     * @return true if more data was read, false on EOF or maximum size reached
+     * @throws IOException if an i/o error occurs in the underlying input stream
+     */
+    protected boolean fillBlock() throws IOException {
+        int len = Math.min(blockChunk, blockMax - blockLimit);
+        if (len <= 0) {
+            return false;
+        }
+        int read = blockSrc.read(block, blockLimit, len);
+        if (read <= 0) {
+            return false;
+        }
+        blockLimit += read;
+        return true;
+    }
+
+    /**
+     * Parse the next line directly from the header block if it only contains
+     * printable US-ASCII characters and no constructs requiring the state
+     * machine.
+     * @return parsed header line or null, if the line needs the state machine
+     * @throws IOException if an i/o error occurs in the underlying input stream
+     */
+    protected HeaderLine readBlockLineFast() throws IOException {
+        int pos = blockPos;
+        int nl = pos;
+        while (true) {
+            while (nl < blockLimit && block[nl] != '\n') {
+                ++nl;
+            }
+            if (nl < blockLimit) {
+                break;
+            }
+            if (!fillBlock()) {
+                return null;
+            }
+        }
+        int end = nl;
+        boolean bCrSeen = (end > pos && block[end - 1] == '\r');
+        if (bCrSeen) {
+            --end;
+        }
+        int colon = -1;
+        int c;
+        int i = pos;
+        while (i < end && colon == -1) {
+            c = block[i] & 255;
+            if (c >= 128 || (charCharacteristicsTab[c] & CC_CONTROL) != 0) {
+                return null;
+            }
+            if (bNameValue) {
+                if (c == ':') {
+                    colon = i;
+                } else if ((charCharacteristicsTab[c] & CC_SEPARATOR_WS) != 0) {
+                    return null;
+                }
+            }
+            ++i;
+        }
+        if (colon != -1) {
+            while (i < end) {
+                c = block[i] & 255;
+                if (c >= 128 || (charCharacteristicsTab[c] & CC_CONTROL) != 0) {
+                    return null;
+                }
+                if (c == '\"' && bQuotedText) {
+                    return null;
+                }
+                if (c == '=' && bEncodedWords && i + 1 < end && block[i + 1] == '?') {
+                    return null;
+                }
+                ++i;
+            }
+            if (bLWS) {
+                if (nl + 1 == blockLimit && !fillBlock()) {
+                    return null;
+                }
+                c = block[nl + 1];
+                if (c == ' ' || c == '\t') {
+                    return null;
+                }
+            }
+        }
+        HeaderLine headerLine = new HeaderLine();
+        bfErrors = 0;
+        bCr = bCrSeen;
+        check_eol();
+        if (colon == -1) {
+            headerLine.type = HeaderLine.HLT_LINE;
+            headerLine.line = asciiString(block, pos, end);
+        } else {
+            headerLine.type = HeaderLine.HLT_HEADERLINE;
+            headerLine.name = getCanonicalName(block, pos, colon);
+            int sIdx = colon + 1;
+            while (sIdx < end && block[sIdx] == ' ') {
+                ++sIdx;
+            }
+            while (end > sIdx && block[end - 1] == ' ') {
+                --end;
+            }
+            headerLine.value = asciiString(block, sIdx, end);
+        }
+        headerLine.raw = new byte[nl + 1 - pos];
+        System.arraycopy(block, pos, headerLine.raw, 0, headerLine.raw.length);
+        headerLine.bfErrors = bfErrors;
+        bEof = false;
+        blockPos = nl + 1;
+        return headerLine;
+    }
+
+    /**
+     * Convert a range of US-ASCII bytes into a string using the reusable
+     * character buffer.
+     * @param bytes byte array with US-ASCII characters
+     * @param sIdx start index, inclusive
+     * @param eIdx end index, exclusive
+     * @return string representation of the bytes
+     */
+    protected String asciiString(byte[] bytes, int sIdx, int eIdx) {
+        int len = eIdx - sIdx;
+        if (len == 0) {
+            return "";
+        }
+        if (chars == null || chars.length < len) {
+            chars = new char[Math.max(len, 256)];
+        }
+        for (int i=0; i<len; ++i) {
+            chars[i] = (char) bytes[sIdx + i];
+        }
+        return new String(chars, 0, len);
+    }
+
+    /**
+     * Set the dictionary of canonical field names. Header lines with a name
+     * equal to a canonical name share the same <code>String</code> instance
+     * instead of allocating a new one for every line.
+     * @param dictionary dictionary of canonical field names
+     */
+    public void setCanonicalNames(HeaderNameDictionary dictionary) {
+        if (dictionary == null) {
+            throw new IllegalArgumentException("'dictionary' is null");
+        }
+        canonicalNames = dictionary;
+    }
+
+    /**
+     * Returns the dictionary of canonical field names.
+     * @return dictionary of canonical field names
+     */
+    public HeaderNameDictionary getCanonicalNames() {
+        return canonicalNames;
+    }
+
+    /**
+     * Add a canonical field name.
+     * @param name canonical field name
+     */
+    public void addCanonicalName(String name) {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("'name' is null or empty");
+        }
+        addCanonicalNames(new String[] {name});
+    }
+
+    /**
+     * Add an array of canonical field names, null entries are ignored.
+     * The current dictionary is replaced by a new one since dictionaries
+     * are immutable.
+     * @param names canonical field names
+     */
+    public void addCanonicalNames(String[] names) {
+        String[] oldNames = canonicalNames.getNames();
+        String[] newNames = new String[oldNames.length + names.length];
+        System.arraycopy(oldNames, 0, newNames, 0, oldNames.length);
+        System.arraycopy(names, 0, newNames, oldNames.length, names.length);
+        canonicalNames = new HeaderNameDictionary(newNames);
+    }
+
+    /**
+     * Return the canonical name matching a range of US-ASCII bytes or a new
+     * string if there is no match.
+     * @param bytes byte array with US-ASCII characters
+     * @param sIdx start index, inclusive
+     * @param eIdx end index, exclusive
+     * @return canonical or new string
+     */
+    protected String getCanonicalName(byte[] bytes, int sIdx, int eIdx) {
+        String name = canonicalNames.getExactName(bytes, sIdx, eIdx);
+        if (name == null) {
+            name = asciiString(bytes, sIdx, eIdx);
+        }
+        return name;
+    }
+
+    /**
+     * Return the canonical name matching the contents of a
+     * <code>StringBuilder</code> or a new string if there is no match.
+     * @param sb <code>StringBuilder</code> with a field name
+     * @return canonical or new string
+     */
+    protected String getCanonicalName(StringBuilder sb) {
+        String name = canonicalNames.getExactName(sb);
+        if (name == null) {
+            name = sb.toString();
+        }
+        return name;
+    }
+
+    /**
+     * <code>PushbackInputStream</code> view of the header block which reads
+     * more data into the block when needed.
+     */
+    protected class BlockInputStream extends PushbackInputStream {
+
+        /**
+         * Construct a view of the header block.
+         */
+        protected BlockInputStream() {
+            super(null, 1);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (blockPos == blockLimit && !fillBlock()) {
+                return -1;
+            }
+            return block[blockPos++] & 255;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (blockPos == blockLimit && !fillBlock()) {
+                return -1;
+            }
+            len = Math.min(len, blockLimit - blockPos);
+            System.arraycopy(block, blockPos, b, off, len);
+            blockPos += len;
+            return len;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return blockLimit - blockPos;
+        }
+
+        @Override
+        public void unread(int b) throws IOException {
+            if (blockPos == 0) {
+                throw new IOException("Push back beyond start of header block");
+            }
+            block[--blockPos] = (byte) b;
+        }
+
+        @Override
+        public void unread(byte[] b, int off, int len) throws IOException {
+            if (len > blockPos) {
+                throw new IOException("Push back beyond start of header block");
+            }
+            blockPos -= len;
+            System.arraycopy(b, off, block, blockPos, len);
+        }
+
+        @Override
+        public void unread(byte[] b) throws IOException {
+            unread(b, 0, b.length);
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
     /**
      * Decode a character according to the expected encoding.
      * @param c first character of the possibly encoded character sequence
@@ -718,6 +1089,25 @@ public class HeaderLineReader {
         return sb.substring(sIdx, eIdx);
     }
 
+    /**
+     * Trims the whitespace characters found in the beginning and end of a
+     * string. Differs from the String method in that it leaves control
+     * characters.
+     * @param sb <code>StringBuilder</code> to be trimmed
+     * @return trimmed string
+     */
+    public static String trim(StringBuilder sb) {
+        int sIdx = 0;
+        int eIdx = sb.length();
+        while (sIdx < eIdx && sb.charAt(sIdx) == ' ') {
+            ++sIdx;
+        }
+        while (eIdx > sIdx && sb.charAt(eIdx - 1) == ' ') {
+            --eIdx;
+        }
+        return sb.substring(sIdx, eIdx);
+    }
+
     /**
      * Report bit field errors as diagnoses.
      * @param bfErrors bit field with indicated errors
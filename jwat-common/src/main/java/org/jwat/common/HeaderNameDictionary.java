@@ -0,0 +1,250 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+/**
+ * Immutable case-insensitive dictionary of header field names.
+ * Each name is associated with the index it has in the array used to
+ * construct the dictionary. Names can be looked up directly from raw
+ * US-ASCII header bytes or from a character sequence without creating a
+ * lower case copy first, which makes the dictionary suitable as the key
+ * lookup of index-addressed header arrays.
+ *
+ * Dictionaries are immutable and can be shared between threads.
+ *
+ * @author nicl
+ */
+public class HeaderNameDictionary {
+
+    /** Index returned for names not in the dictionary. */
+    public static final int UNKNOWN = -1;
+
+    /** Canonical names addressed by their index. */
+    protected final String[] names;
+
+    /** Open addressing hash table of canonical names. */
+    protected final String[] slotNames;
+
+    /** Indexes of the canonical names in the hash table. */
+    protected final int[] slotIndexes;
+
+    /**
+     * Construct a dictionary of the names in the array. The index of each
+     * name is its index in the array. Null entries are skipped and names
+     * equal, ignoring case, to an earlier name are ignored.
+     * @param names array of field names
+     */
+    public HeaderNameDictionary(String[] names) {
+        if (names == null) {
+            throw new IllegalArgumentException("'names' is null");
+        }
+        this.names = names.clone();
+        int size = 16;
+        while (size < names.length * 2) {
+            size <<= 1;
+        }
+        slotNames = new String[size];
+        slotIndexes = new int[size];
+        int mask = size - 1;
+        String name;
+        int slot;
+        for (int i=0; i<names.length; ++i) {
+            name = names[i];
+            if (name != null && name.length() > 0 && getIndex(name) == UNKNOWN) {
+                slot = hash(name) & mask;
+                while (slotNames[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                slotNames[slot] = name;
+                slotIndexes[slot] = i;
+            } else {
+                this.names[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the names in the dictionary addressed by index.
+     * @return array of names addressed by index
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * Returns the canonical name associated with an index.
+     * @param idx name index
+     * @return canonical name or null if the index is not in use
+     */
+    public String getName(int idx) {
+        if (idx < 0 || idx >= names.length) {
+            return null;
+        }
+        return names[idx];
+    }
+
+    /**
+     * Returns the index of a name, ignoring case.
+     * @param name field name
+     * @return name index or <code>UNKNOWN</code>
+     */
+    public int getIndex(CharSequence name) {
+        int slot = getSlot(name);
+        return slot != -1 ? slotIndexes[slot] : UNKNOWN;
+    }
+
+    /**
+     * Returns the index of a name given as US-ASCII bytes, ignoring case.
+     * @param bytes byte array with US-ASCII characters
+     * @param sIdx start index, inclusive
+     * @param eIdx end index, exclusive
+     * @return name index or <code>UNKNOWN</code>
+     */
+    public int getIndex(byte[] bytes, int sIdx, int eIdx) {
+        int slot = getSlot(bytes, sIdx, eIdx);
+        return slot != -1 ? slotIndexes[slot] : UNKNOWN;
+    }
+
+    /**
+     * Returns the canonical name if it is equal to the supplied name
+     * including case.
+     * @param name field name
+     * @return canonical name or null
+     */
+    public String getExactName(CharSequence name) {
+        int slot = getSlot(name);
+        if (slot != -1) {
+            String canonical = slotNames[slot];
+            int len = canonical.length();
+            int i = 0;
+            while (i < len && canonical.charAt(i) == name.charAt(i)) {
+                ++i;
+            }
+            if (i == len) {
+                return canonical;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the canonical name if it is equal to the supplied US-ASCII
+     * bytes including case.
+     * @param bytes byte array with US-ASCII characters
+     * @param sIdx start index, inclusive
+     * @param eIdx end index, exclusive
+     * @return canonical name or null
+     */
+    public String getExactName(byte[] bytes, int sIdx, int eIdx) {
+        int slot = getSlot(bytes, sIdx, eIdx);
+        if (slot != -1) {
+            String canonical = slotNames[slot];
+            int len = canonical.length();
+            int i = 0;
+            while (i < len && canonical.charAt(i) == bytes[sIdx + i]) {
+                ++i;
+            }
+            if (i == len) {
+                return canonical;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the hash table slot of a name, ignoring case.
+     * @param name field name
+     * @return slot index or -1
+     */
+    protected int getSlot(CharSequence name) {
+        int mask = slotNames.length - 1;
+        int slot = hash(name) & mask;
+        int len = name.length();
+        String canonical;
+        int i;
+        while ((canonical = slotNames[slot]) != null) {
+            if (canonical.length() == len) {
+                i = 0;
+                while (i < len && fold(canonical.charAt(i)) == fold(name.charAt(i))) {
+                    ++i;
+                }
+                if (i == len) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the hash table slot of a name given as US-ASCII bytes, ignoring
+     * case.
+     * @param bytes byte array with US-ASCII characters
+     * @param sIdx start index, inclusive
+     * @param eIdx end index, exclusive
+     * @return slot index or -1
+     */
+    protected int getSlot(byte[] bytes, int sIdx, int eIdx) {
+        int h = 0;
+        for (int i=sIdx; i<eIdx; ++i) {
+            h = 31 * h + fold(bytes[i] & 255);
+        }
+        int mask = slotNames.length - 1;
+        int slot = (h ^ (h >>> 16)) & mask;
+        int len = eIdx - sIdx;
+        String canonical;
+        int i;
+        while ((canonical = slotNames[slot]) != null) {
+            if (canonical.length() == len) {
+                i = 0;
+                while (i < len && fold(canonical.charAt(i)) == fold(bytes[sIdx + i] & 255)) {
+                    ++i;
+                }
+                if (i == len) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Case-insensitive hash function used by the hash table.
+     * @param cs character sequence to hash
+     * @return hash value
+     */
+    protected static int hash(CharSequence cs) {
+        int h = 0;
+        for (int i=0; i<cs.length(); ++i) {
+            h = 31 * h + fold(cs.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Fold an US-ASCII upper case letter to lower case.
+     * @param c character
+     * @return lower case US-ASCII letter or the unchanged character
+     */
+    protected static int fold(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+
+}
@@ -47,8 +47,42 @@ public class HttpHeader extends PayloadWithHeaderAbstract {
     /** HTTP Version suffix. */
     protected static final String HTTP_VERSION_SUFFIX = "HTTP/";
 
-    /** Content-type header name. */
-    protected static final String CONTENT_TYPE = "Content-Type".toUpperCase();
+    /** Content-type header name index. */
+    protected static final int FN_IDX_CONTENT_TYPE = 1;
+
+    /** Common HTTP header names addressed by field name index. (Index 0 is unused) */
+    protected static final String[] FN_IDX_STRINGS = {
+        null,
+        "Content-Type",
+        "Content-Length",
+        "Content-Encoding",
+        "Content-Language",
+        "Transfer-Encoding",
+        "Date",
+        "Server",
+        "Last-Modified",
+        "ETag",
+        "Expires",
+        "Cache-Control",
+        "Pragma",
+        "Connection",
+        "Keep-Alive",
+        "Location",
+        "Set-Cookie",
+        "Vary",
+        "Accept-Ranges",
+        "Age",
+        "Host",
+        "User-Agent",
+        "Accept",
+        "Accept-Encoding",
+        "Accept-Language",
+        "Referer",
+        "Cookie"
+    };
+
+    /** Case-insensitive dictionary of common HTTP header names. */
+    public static final HeaderNameDictionary fieldNameDictionary = new HeaderNameDictionary(FN_IDX_STRINGS);
 
     /** Header type of this object. */
     public int headerType;
@@ -96,7 +130,10 @@ public class HttpHeader extends PayloadWithHeaderAbstract {
     /** List of parsed header fields. */
     protected List<HeaderLine> headerList = new LinkedList<HeaderLine>();
 
-    /** Map of parsed header fields. */
+    /** Parsed common header fields addressed by field name index. */
+    protected HeaderLine[] fieldHeaderLines = new HeaderLine[FN_IDX_STRINGS.length];
+
+    /** Map of parsed uncommon header fields keyed by lower case name. */
     protected Map<String, HeaderLine> headerMap = new HashMap<String, HeaderLine>();
 
     /** HTTP content Content-type. */
@@ -166,6 +203,7 @@ public class HttpHeader extends PayloadWithHeaderAbstract {
         hlr.bLWS = false;
         hlr.bQuotedText = false;
         hlr.bEncodedWords = false;
+        hlr.setCanonicalNames(fieldNameDictionary);
         boolean bValidHttpHeader = false;
         HeaderLine line = hlr.readLine(pbin);
         int bfErrors = 0;
@@ -184,6 +222,7 @@ public class HttpHeader extends PayloadWithHeaderAbstract {
         hlr.bQuotedText = true;
         hlr.bEncodedWords = true;
         HeaderLine tmpLine;
+        int fn_idx;
         boolean bLoop = bValidHttpHeader;
         while (bLoop) {
             line = hlr.readLine(pbin);
@@ -193,15 +232,25 @@ public class HttpHeader extends PayloadWithHeaderAbstract {
                 case HeaderLine.HLT_HEADERLINE:
                     //System.out.println(line.name);
                     //System.out.println(line.value);
-                    if (CONTENT_TYPE.equals(line.name.toUpperCase())) {
+                    fn_idx = fieldNameDictionary.getIndex(line.name);
+                    if (fn_idx == FN_IDX_CONTENT_TYPE) {
                         contentType = line.value;
                     }
                     // A HeaderLine object contains a list of additional lines.
-                    tmpLine = headerMap.get(line.name.toLowerCase());
-                    if (tmpLine == null) {
-                        headerMap.put(line.name.toLowerCase(), line);
+                    if (fn_idx != HeaderNameDictionary.UNKNOWN) {
+                        tmpLine = fieldHeaderLines[fn_idx];
+                        if (tmpLine == null) {
+                            fieldHeaderLines[fn_idx] = line;
+                        } else {
+                            tmpLine.lines.add(line);
+                        }
                     } else {
-                        tmpLine.lines.add(line);
+                        tmpLine = headerMap.get(line.name.toLowerCase());
+                        if (tmpLine == null) {
+                            headerMap.put(line.name.toLowerCase(), line);
+                        } else {
+                            tmpLine.lines.add(line);
+                        }
                     }
                     headerList.add(line);
                     break;
@@ -370,6 +419,10 @@ public class HttpHeader extends PayloadWithHeaderAbstract {
     @Override
     public HeaderLine getHeader(String field) {
         if (field != null && field.length() > 0) {
+            int fn_idx = fieldNameDictionary.getIndex(field);
+            if (fn_idx != HeaderNameDictionary.UNKNOWN) {
+                return fieldHeaderLines[fn_idx];
+            }
             return headerMap.get(field.toLowerCase());
         } else {
             return null;
@@ -0,0 +1,275 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>ByteCountingPushBackInputStream</code> reading a file through
+ * memory-mapped regions of a <code>FileChannel</code>.
+ * Data is copied once, straight from the mapping into the caller's array,
+ * instead of passing through intermediate buffers. Skipping and pushing
+ * back data only moves the position, so skipped data is never read.
+ * Files larger than 2GB are read through a chain of mappings. Regions start
+ * at multiples of half the region size, so at least half a region of data
+ * read last can always be pushed back without mapping a new region.
+ * Ranges of the file can be obtained as zero-copy buffers with
+ * <code>slice</code>.
+ * The consumed byte count starts at the initial position, so it always
+ * equals the file position of the next byte.
+ * Closing this stream does not close the channel.
+ *
+ * @author nicl
+ */
+public class MappedPushBackInputStream extends ByteCountingPushBackInputStream {
+
+    /** Default size of a mapped region. */
+    public static final int DEFAULT_REGION_SIZE = 256 * 1024 * 1024;
+
+    /** Channel of the mapped file. */
+    protected FileChannel channel;
+
+    /** Length of the file. */
+    protected long length;
+
+    /** Size of a mapped region. */
+    protected int regionSize;
+
+    /** Distance between region start positions. */
+    protected int regionStride;
+
+    /** Currently mapped region. */
+    protected MappedByteBuffer region;
+
+    /** File position of the start of the current region. */
+    protected long regionBase;
+
+    /**
+     * Construct a stream reading a file from the supplied position using
+     * the default region size.
+     * @param channel <code>FileChannel</code> to map
+     * @param position start position in the file
+     * @throws IOException if an i/o error occurs while mapping the file
+     */
+    public MappedPushBackInputStream(FileChannel channel, long position) throws IOException {
+        this(channel, position, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Construct a stream reading a file from the supplied position.
+     * @param channel <code>FileChannel</code> to map
+     * @param position start position in the file
+     * @param regionSize size of a mapped region
+     * @throws IOException if an i/o error occurs while mapping the file
+     */
+    public MappedPushBackInputStream(FileChannel channel, long position, int regionSize) throws IOException {
+        super(null, 1);
+        if (channel == null) {
+            throw new IllegalArgumentException("'channel' is null!");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("'position' is negative: " + position);
+        }
+        if (regionSize < 2) {
+            throw new IllegalArgumentException(
+                    "'regionSize' is less than 2: " + regionSize);
+        }
+        this.channel = channel;
+        this.regionSize = regionSize;
+        regionStride = regionSize / 2;
+        length = channel.size();
+        pushback_size = regionStride;
+        consumed = Math.min(position, length);
+        map(consumed);
+    }
+
+    /**
+     * Map the region containing the supplied file position and position
+     * the region at it.
+     * @param position file position
+     * @throws IOException if an i/o error occurs while mapping the file
+     */
+    protected void map(long position) throws IOException {
+        regionBase = position - position % regionStride;
+        long size = Math.min(regionSize, length - regionBase);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, regionBase, size);
+        region.position((int)(position - regionBase));
+    }
+
+    /**
+     * Move to the supplied file position, mapping a new region if the
+     * position is outside the current region.
+     * @param position file position
+     * @throws IOException if an i/o error occurs while mapping the file
+     */
+    protected void seek(long position) throws IOException {
+        long regionPos = position - regionBase;
+        if (regionPos >= 0 && regionPos < region.limit()) {
+            region.position((int)regionPos);
+        } else {
+            map(position);
+        }
+    }
+
+    /**
+     * Returns the length of the file being read.
+     * @return length of the file being read
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns a read-only buffer with a range of the file. The buffer is a
+     * view of the current region if the range lies within it, otherwise the
+     * range is mapped separately. A range running past the end of the file
+     * is cut off at the end of the file, so the buffer may be shorter than
+     * requested. The position of this stream is unchanged.
+     * @param position file position of the range
+     * @param len length of the range, at most 2GB
+     * @return read-only buffer with the range of the file
+     * @throws IOException if the stream is closed or an i/o error occurs
+     * while mapping the file
+     */
+    public ByteBuffer slice(long position, long len) throws IOException {
+        if (position < 0 || len < 0 || len > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid range: " + position + "+" + len);
+        }
+        ensureOpen();
+        position = Math.min(position, length);
+        len = Math.min(len, length - position);
+        long regionPos = position - regionBase;
+        ByteBuffer slice;
+        if (regionPos >= 0 && regionPos + len <= region.limit()) {
+            slice = region.duplicate();
+            slice.limit((int)(regionPos + len));
+            slice.position((int)regionPos);
+            slice = slice.slice();
+        } else {
+            slice = channel.map(FileChannel.MapMode.READ_ONLY, position, len);
+        }
+        return slice.asReadOnlyBuffer();
+    }
+
+    /**
+     * Check that the stream has not been closed.
+     * @throws IOException if the stream is closed
+     */
+    protected void ensureOpen() throws IOException {
+        if (region == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel = null;
+        region = null;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(length - consumed, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (!region.hasRemaining()) {
+            if (consumed >= length) {
+                return -1;
+            }
+            map(consumed);
+        }
+        ++consumed;
+        ++counter;
+        return region.get() & 255;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (!region.hasRemaining()) {
+            if (consumed >= length) {
+                return -1;
+            }
+            map(consumed);
+        }
+        if (len > region.remaining()) {
+            len = region.remaining();
+        }
+        region.get(b, off, len);
+        consumed += len;
+        counter += len;
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(n, length - consumed);
+        seek(consumed + skipped);
+        consumed += skipped;
+        counter += skipped;
+        return skipped;
+    }
+
+    @Override
+    public void unread(int b) throws IOException {
+        unread(new byte[] {(byte)b}, 0, 1);
+    }
+
+    /**
+     * Push back the last bytes read by moving the position back. The bytes
+     * must be the same as the bytes in the file.
+     * @param b bytes to push back
+     * @param off offset of bytes to push back
+     * @param len number of bytes to push back
+     * @throws IOException if the bytes are not the bytes read last
+     */
+    @Override
+    public void unread(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len > consumed) {
+            throw new IOException("Push back buffer is full");
+        }
+        long position = consumed - len;
+        seek(position);
+        if (region.remaining() >= len) {
+            int regionPos = region.position();
+            for (int i=0; i<len; ++i) {
+                if (region.get(regionPos + i) != b[off + i]) {
+                    seek(consumed);
+                    throw new IOException("Pushed back data differs from the file data");
+                }
+            }
+        }
+        consumed -= len;
+        counter -= len;
+    }
+
+}
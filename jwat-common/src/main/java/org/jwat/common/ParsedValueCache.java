@@ -0,0 +1,223 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Bounded caches of parsed header values keyed on the raw header value.
+ * Records in an archive repeat the same target URIs and content-types, so
+ * returning the already parsed instance saves both parsing time and garbage.
+ * A cache can be set on one reader or shared between several readers in
+ * different threads.
+ *
+ * URIs are cached separately for each URI profile since validation depends
+ * on the profile. Values which fail to parse are not cached.
+ * The returned <code>Uri</code> and <code>ContentType</code> objects are
+ * shared between records and, if the cache is shared, between threads.
+ * Callers must treat them as read-only. The parameter map of a cached
+ * content-type is read-only and <code>setParameter</code> throws an
+ * <code>UnsupportedOperationException</code>, but the public
+ * <code>contentType</code> and <code>mediaType</code> fields cannot be
+ * protected and must not be modified.
+ *
+ * @author nicl
+ */
+public class ParsedValueCache {
+
+    /** Default maximum number of cached URIs per URI profile. */
+    public static final int DEFAULT_URI_MAX_SIZE = 4096;
+
+    /** Default maximum number of cached content-types. */
+    public static final int DEFAULT_CONTENTTYPE_MAX_SIZE = 256;
+
+    /** Maximum number of cached URIs per URI profile. */
+    protected final int uriMaxSize;
+
+    /** Evict the least recently used entry, or the oldest if false. */
+    protected final boolean bAccessOrder;
+
+    /** URI caches per URI profile. */
+    protected final Map<UriProfile, BoundedCache<String, Uri>> uriCaches = new IdentityHashMap<UriProfile, BoundedCache<String, Uri>>();
+
+    /** Content-type cache. */
+    protected final BoundedCache<String, ContentType> contentTypeCache;
+
+    /**
+     * Construct a least recently used cache using the default sizes.
+     */
+    public ParsedValueCache() {
+        this(DEFAULT_URI_MAX_SIZE, DEFAULT_CONTENTTYPE_MAX_SIZE, true);
+    }
+
+    /**
+     * Construct a cache with the given sizes and eviction order.
+     * @param uriMaxSize maximum number of cached URIs per URI profile
+     * @param contentTypeMaxSize maximum number of cached content-types
+     * @param bAccessOrder evict the least recently used entry if true,
+     * evict the oldest entry if false
+     */
+    public ParsedValueCache(int uriMaxSize, int contentTypeMaxSize, boolean bAccessOrder) {
+        if (uriMaxSize < 1) {
+            throw new IllegalArgumentException("'uriMaxSize' is less than 1");
+        }
+        this.uriMaxSize = uriMaxSize;
+        this.bAccessOrder = bAccessOrder;
+        contentTypeCache = new BoundedCache<String, ContentType>(contentTypeMaxSize, bAccessOrder);
+    }
+
+    /**
+     * Returns the URI cache used for the given URI profile, creating it if
+     * required.
+     * @param uriProfile URI profile
+     * @return the URI cache used for the URI profile
+     */
+    public BoundedCache<String, Uri> getUriCache(UriProfile uriProfile) {
+        synchronized (uriCaches) {
+            BoundedCache<String, Uri> uriCache = uriCaches.get(uriProfile);
+            if (uriCache == null) {
+                uriCache = new BoundedCache<String, Uri>(uriMaxSize, bAccessOrder);
+                uriCaches.put(uriProfile, uriCache);
+            }
+            return uriCache;
+        }
+    }
+
+    /**
+     * Returns the content-type cache.
+     * @return the content-type cache
+     */
+    public BoundedCache<String, ContentType> getContentTypeCache() {
+        return contentTypeCache;
+    }
+
+    /**
+     * Returns the cached URI for the string or parses and caches it.
+     * @param str URI string
+     * @param uriProfile URI profile used to validate the string
+     * @return the parsed URI
+     * @throws URISyntaxException if the string violates the URI profile
+     * @see Uri#parseLazy(String, UriProfile)
+     */
+    public Uri getUri(String str, UriProfile uriProfile) throws URISyntaxException {
+        BoundedCache<String, Uri> uriCache = getUriCache(uriProfile);
+        Uri uri = uriCache.get(str);
+        if (uri == null) {
+            uri = Uri.parseLazy(str, uriProfile);
+            uriCache.put(str, uri);
+        }
+        return uri;
+    }
+
+    /**
+     * Returns the cached content-type for the string or parses and caches it.
+     * @param str content-type string
+     * @return the parsed content-type or null if the string is not a valid
+     * content-type
+     * @see ContentType#parseContentType(String)
+     */
+    public ContentType getContentType(String str) {
+        if (str == null || str.length() == 0) {
+            return null;
+        }
+        ContentType contentType = contentTypeCache.get(str);
+        if (contentType == null) {
+            contentType = ContentType.parseContentType(str);
+            if (contentType != null) {
+                contentType = new UnmodifiableContentType(contentType);
+                contentTypeCache.put(str, contentType);
+            }
+        }
+        return contentType;
+    }
+
+    /**
+     * Returns the number of URI lookups which returned a cached value.
+     * @return the number of URI cache hits for all URI profiles
+     */
+    public long getUriHits() {
+        long hits = 0;
+        synchronized (uriCaches) {
+            for (BoundedCache<String, Uri> uriCache : uriCaches.values()) {
+                hits += uriCache.getHits();
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the number of URI lookups which did not find a cached value.
+     * @return the number of URI cache misses for all URI profiles
+     */
+    public long getUriMisses() {
+        long misses = 0;
+        synchronized (uriCaches) {
+            for (BoundedCache<String, Uri> uriCache : uriCaches.values()) {
+                misses += uriCache.getMisses();
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Remove all cached values. The statistics are not reset.
+     */
+    public void clear() {
+        synchronized (uriCaches) {
+            for (BoundedCache<String, Uri> uriCache : uriCaches.values()) {
+                uriCache.clear();
+            }
+        }
+        contentTypeCache.clear();
+    }
+
+    /**
+     * Content-type shared through the cache which can not be modified using
+     * its methods or parameter map.
+     */
+    protected static class UnmodifiableContentType extends ContentType {
+
+        /**
+         * Construct an unmodifiable copy of a parsed content-type.
+         * @param ct parsed content-type
+         */
+        protected UnmodifiableContentType(ContentType ct) {
+            contentType = ct.contentType;
+            mediaType = ct.mediaType;
+            if (ct.parameters != null) {
+                parameters = Collections.unmodifiableMap(ct.parameters);
+            }
+        }
+
+        /**
+         * Cached content-types are shared and can not be modified.
+         * @param name parameter name
+         * @param value parameter value
+         * @throws UnsupportedOperationException always
+         */
+        @Override
+        public void setParameter(String name, String value) {
+            throw new UnsupportedOperationException("Cached content-type can not be modified");
+        }
+
+    }
+
+}
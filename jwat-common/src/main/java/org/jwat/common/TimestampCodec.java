@@ -0,0 +1,402 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+/**
+ * Validating parser and formatter of the UTC timestamps used by WARC and
+ * ARC files, working directly on characters and epoch milliseconds instead
+ * of going through <code>DateFormat</code> and <code>Calendar</code>.
+ *
+ * WARC dates have the format "yyyy-MM-ddTHH:mm:ssZ", optionally with a
+ * fraction of a second of 1 to 9 digits before the 'Z' as allowed by
+ * WARC 1.1. The 'T' and 'Z' characters are case-insensitive. ARC dates have
+ * the format "yyyyMMddHHmmss".
+ *
+ * Consecutive records usually share the same timestamp second, so both the
+ * parser and the formatters remember the last second they converted.
+ * The cache makes instances unsafe for concurrent use by several threads.
+ *
+ * @author nicl
+ */
+public class TimestampCodec {
+
+    /** Value returned by the parse methods for invalid timestamps. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /** Length of a WARC date without fraction. */
+    public static final int WARC_DATE_LENGTH = 20;
+
+    /** Length of an ARC date. */
+    public static final int ARC_DATE_LENGTH = 14;
+
+    /** Maximum number of fraction digits in a WARC date. */
+    public static final int MAX_FRACTION_DIGITS = 9;
+
+    /** Days before the first day of each month in a non leap year. */
+    protected static final int[] DAYS_BEFORE_MONTH = {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334
+    };
+
+    /** Number of days in each month in a non leap year. */
+    protected static final int[] DAYS_IN_MONTH = {
+        31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31
+    };
+
+    /** Seconds part of the last parsed timestamp. */
+    protected final char[] parsedPrefix = new char[WARC_DATE_LENGTH - 1];
+
+    /** Length of the seconds part of the last parsed timestamp, 0 if none. */
+    protected int parsedPrefixLength;
+
+    /** Epoch seconds of the last parsed timestamp. */
+    protected long parsedSeconds;
+
+    /** Epoch seconds of the last formatted WARC date. */
+    protected long warcFormattedSeconds = INVALID;
+
+    /** Last formatted WARC date, without fraction. */
+    protected String warcFormatted;
+
+    /** Epoch seconds of the last formatted ARC date. */
+    protected long arcFormattedSeconds = INVALID;
+
+    /** Last formatted ARC date. */
+    protected String arcFormatted;
+
+    /** Reusable character buffer used when formatting. */
+    protected final char[] chars = new char[WARC_DATE_LENGTH + 1 + MAX_FRACTION_DIGITS];
+
+    /**
+     * Parse a WARC date.
+     * @param cs WARC date characters
+     * @return epoch milliseconds or <code>INVALID</code>
+     */
+    public long parseWarcDate(CharSequence cs) {
+        if (cs == null) {
+            return INVALID;
+        }
+        int len = cs.length();
+        if (len < WARC_DATE_LENGTH || len == WARC_DATE_LENGTH + 1
+                || len > WARC_DATE_LENGTH + 1 + MAX_FRACTION_DIGITS) {
+            return INVALID;
+        }
+        char c = cs.charAt(len - 1);
+        if (c != 'Z' && c != 'z') {
+            return INVALID;
+        }
+        int millis = 0;
+        if (len > WARC_DATE_LENGTH) {
+            if (cs.charAt(WARC_DATE_LENGTH - 1) != '.') {
+                return INVALID;
+            }
+            int digits = 0;
+            int d;
+            for (int i=WARC_DATE_LENGTH; i<len - 1; ++i) {
+                d = cs.charAt(i) - '0';
+                if (d < 0 || d > 9) {
+                    return INVALID;
+                }
+                if (digits < 3) {
+                    millis = millis * 10 + d;
+                    ++digits;
+                }
+            }
+            while (digits < 3) {
+                millis *= 10;
+                ++digits;
+            }
+        }
+        long seconds;
+        if (isParsedPrefix(cs, WARC_DATE_LENGTH - 1)) {
+            seconds = parsedSeconds;
+        } else {
+            if (cs.charAt(4) != '-' || cs.charAt(7) != '-'
+                    || (cs.charAt(10) != 'T' && cs.charAt(10) != 't')
+                    || cs.charAt(13) != ':' || cs.charAt(16) != ':') {
+                return INVALID;
+            }
+            seconds = toEpochSeconds(digits(cs, 0, 4), digits(cs, 5, 2), digits(cs, 8, 2),
+                    digits(cs, 11, 2), digits(cs, 14, 2), digits(cs, 17, 2));
+            if (seconds == INVALID) {
+                return INVALID;
+            }
+            setParsedPrefix(cs, WARC_DATE_LENGTH - 1, seconds);
+        }
+        return seconds * 1000L + millis;
+    }
+
+    /**
+     * Parse an ARC date.
+     * @param cs ARC date characters
+     * @return epoch milliseconds or <code>INVALID</code>
+     */
+    public long parseArcDate(CharSequence cs) {
+        if (cs == null || cs.length() != ARC_DATE_LENGTH) {
+            return INVALID;
+        }
+        long seconds;
+        if (isParsedPrefix(cs, ARC_DATE_LENGTH)) {
+            seconds = parsedSeconds;
+        } else {
+            seconds = toEpochSeconds(digits(cs, 0, 4), digits(cs, 4, 2), digits(cs, 6, 2),
+                    digits(cs, 8, 2), digits(cs, 10, 2), digits(cs, 12, 2));
+            if (seconds == INVALID) {
+                return INVALID;
+            }
+            setParsedPrefix(cs, ARC_DATE_LENGTH, seconds);
+        }
+        return seconds * 1000L;
+    }
+
+    /**
+     * Format epoch milliseconds as a WARC date with second precision.
+     * @param millis epoch milliseconds
+     * @return WARC date string
+     */
+    public String formatWarcDate(long millis) {
+        long seconds = floorDiv(millis, 1000L);
+        if (seconds != warcFormattedSeconds || warcFormatted == null) {
+            formatFields(seconds, true);
+            chars[WARC_DATE_LENGTH - 1] = 'Z';
+            warcFormatted = new String(chars, 0, WARC_DATE_LENGTH);
+            warcFormattedSeconds = seconds;
+        }
+        return warcFormatted;
+    }
+
+    /**
+     * Format epoch milliseconds as a WARC date with a fraction of a second.
+     * Digits beyond millisecond precision are zero.
+     * @param millis epoch milliseconds
+     * @param fractionDigits number of fraction digits, 0 for none
+     * @return WARC date string
+     */
+    public String formatWarcDate(long millis, int fractionDigits) {
+        if (fractionDigits < 0 || fractionDigits > MAX_FRACTION_DIGITS) {
+            throw new IllegalArgumentException("Invalid number of fraction digits: " + fractionDigits);
+        }
+        if (fractionDigits == 0) {
+            return formatWarcDate(millis);
+        }
+        long seconds = floorDiv(millis, 1000L);
+        int fraction = (int) (millis - seconds * 1000L);
+        formatFields(seconds, true);
+        chars[WARC_DATE_LENGTH - 1] = '.';
+        int divisor = 100;
+        int idx = WARC_DATE_LENGTH;
+        for (int i=0; i<fractionDigits; ++i) {
+            if (divisor > 0) {
+                chars[idx++] = (char) ('0' + (fraction / divisor) % 10);
+                divisor /= 10;
+            } else {
+                chars[idx++] = '0';
+            }
+        }
+        chars[idx++] = 'Z';
+        return new String(chars, 0, idx);
+    }
+
+    /**
+     * Format epoch milliseconds as an ARC date.
+     * @param millis epoch milliseconds
+     * @return ARC date string
+     */
+    public String formatArcDate(long millis) {
+        long seconds = floorDiv(millis, 1000L);
+        if (seconds != arcFormattedSeconds || arcFormatted == null) {
+            formatFields(seconds, false);
+            arcFormatted = new String(chars, 0, ARC_DATE_LENGTH);
+            arcFormattedSeconds = seconds;
+        }
+        return arcFormatted;
+    }
+
+    /**
+     * Check whether the seconds part of a timestamp is equal to the last
+     * parsed one.
+     * @param cs timestamp characters
+     * @param len length of the seconds part
+     * @return true if the seconds part matches the last parsed timestamp
+     */
+    protected boolean isParsedPrefix(CharSequence cs, int len) {
+        if (parsedPrefixLength != len) {
+            return false;
+        }
+        for (int i=len - 1; i>=0; --i) {
+            if (parsedPrefix[i] != cs.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remember the seconds part of a parsed timestamp.
+     * @param cs timestamp characters
+     * @param len length of the seconds part
+     * @param seconds epoch seconds
+     */
+    protected void setParsedPrefix(CharSequence cs, int len, long seconds) {
+        for (int i=0; i<len; ++i) {
+            parsedPrefix[i] = cs.charAt(i);
+        }
+        parsedPrefixLength = len;
+        parsedSeconds = seconds;
+    }
+
+    /**
+     * Write the date and time fields of epoch seconds to the character
+     * buffer, either as a WARC date without the trailing 'Z' or as an ARC
+     * date.
+     * @param seconds epoch seconds
+     * @param bWarc true for WARC separators, false for ARC
+     */
+    protected void formatFields(long seconds, boolean bWarc) {
+        long days = floorDiv(seconds, 86400L);
+        int secondOfDay = (int) (seconds - days * 86400L);
+        // Civil date from days since epoch.
+        long z = days + 719468L;
+        long era = floorDiv(z, 146097L);
+        int doe = (int) (z - era * 146097L);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400L + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+        int idx = 0;
+        idx = putDigits((int) year, 4, idx);
+        if (bWarc) {
+            chars[idx++] = '-';
+        }
+        idx = putDigits(month, 2, idx);
+        if (bWarc) {
+            chars[idx++] = '-';
+        }
+        idx = putDigits(day, 2, idx);
+        if (bWarc) {
+            chars[idx++] = 'T';
+        }
+        idx = putDigits(secondOfDay / 3600, 2, idx);
+        if (bWarc) {
+            chars[idx++] = ':';
+        }
+        idx = putDigits((secondOfDay / 60) % 60, 2, idx);
+        if (bWarc) {
+            chars[idx++] = ':';
+        }
+        putDigits(secondOfDay % 60, 2, idx);
+    }
+
+    /**
+     * Write a zero padded decimal number to the character buffer.
+     * @param value value to write
+     * @param width number of digits
+     * @param idx index in the character buffer
+     * @return index following the digits
+     */
+    protected int putDigits(int value, int width, int idx) {
+        for (int i=idx + width - 1; i>=idx; --i) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return idx + width;
+    }
+
+    /**
+     * Parse a fixed number of decimal digits.
+     * @param cs characters
+     * @param idx index of the first digit
+     * @param width number of digits
+     * @return parsed value or -1 if a character is not a digit
+     */
+    protected static int digits(CharSequence cs, int idx, int width) {
+        int value = 0;
+        int d;
+        for (int i=idx; i<idx + width; ++i) {
+            d = cs.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Returns a boolean indicating whether a year is a leap year in the
+     * proleptic Gregorian calendar.
+     * @param year year
+     * @return true if the year is a leap year
+     */
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Validate UTC date and time fields and convert them to epoch seconds.
+     * Negative field values are invalid.
+     * @param year year
+     * @param month month, 1-12
+     * @param day day of month, 1-31 depending on the month
+     * @param hour hour, 0-23
+     * @param minute minute, 0-59
+     * @param second second, 0-59
+     * @return epoch seconds or <code>INVALID</code>
+     */
+    public static long toEpochSeconds(int year, int month, int day, int hour, int minute, int second) {
+        if (year < 0 || month < 1 || month > 12 || day < 1
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59) {
+            return INVALID;
+        }
+        boolean bLeap = isLeapYear(year);
+        int daysInMonth = DAYS_IN_MONTH[month - 1];
+        if (month == 2 && bLeap) {
+            ++daysInMonth;
+        }
+        if (day > daysInMonth) {
+            return INVALID;
+        }
+        long y = year - 1L;
+        long days = y * 365L + floorDiv(y, 4L) - floorDiv(y, 100L) + floorDiv(y, 400L)
+                - 719162L + DAYS_BEFORE_MONTH[month - 1] + day - 1;
+        if (month > 2 && bLeap) {
+            ++days;
+        }
+        return days * 86400L + hour * 3600L + minute * 60L + second;
+    }
+
+    /**
+     * Integer division rounding towards negative infinity.
+     * @param x dividend
+     * @param y positive divisor
+     * @return floor of x divided by y
+     */
+    protected static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y) < 0) {
+            --q;
+        }
+        return q;
+    }
+
+}
@@ -45,6 +45,12 @@ public class UTF8 {
     /** Bytes read in the decoding process. */
     public byte[] chars_read;
 
+    /** Shared empty array returned when no extra bytes were read. */
+    protected static final byte[] NO_CHARS_READ = new byte[0];
+
+    /** Reusable stream used to record extra bytes read. */
+    protected final ByteArrayOutputStream charsOut = new ByteArrayOutputStream(4);
+
     /** UTF-8 validity status on last read character. */
     public boolean bValidChar = false;
 
@@ -60,9 +66,9 @@ public class UTF8 {
      * @throws IOException if an i/o error occurs while reading
      */
     public int readUtf8(int c, InputStream in) throws IOException {
-        ByteArrayOutputStream charsOut = new ByteArrayOutputStream(4);
         byte utf8_read;
         byte utf8_octets;
+        charsOut.reset();
         utf8_c = 0;
         bValidChar = false;
         if ((c & 0x80) == 0x00) {
@@ -135,7 +141,7 @@ public class UTF8 {
             }
             c = utf8_c;
         }
-        chars_read = charsOut.toByteArray();
+        chars_read = charsOut.size() > 0 ? charsOut.toByteArray() : NO_CHARS_READ;
         return c;
     }
 
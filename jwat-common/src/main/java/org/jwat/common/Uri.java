@@ -18,6 +18,7 @@
 package org.jwat.common;
 
 import java.net.URISyntaxException;
+import java.util.UUID;
 
 /**
  * Custom URI parser/validation based on rfc3986. An URI is split into sub
@@ -86,6 +87,71 @@ public class Uri implements Comparable<Uri> {
     /** Profile used to parse URI. */
     protected UriProfile uriProfile = UriProfile.RFC3986;
 
+    /** Decode bit set when the userinfo component contains escaped octets. */
+    protected static final int D_USERINFO = 1;
+    /** Decode bit set when the host component contains escaped octets. */
+    protected static final int D_HOST = 2;
+    /** Decode bit set when the path component contains escaped octets. */
+    protected static final int D_PATH = 4;
+    /** Decode bit set when the query component contains escaped octets. */
+    protected static final int D_QUERY = 8;
+    /** Decode bit set when the fragment component contains escaped octets. */
+    protected static final int D_FRAGMENT = 16;
+
+    /** URN prefix of UUID based identifiers handled by the fast path. */
+    protected static final String URN_UUID_PREFIX = "urn:uuid:";
+
+    /** Length of a lower case <code>urn:uuid:</code> identifier. */
+    protected static final int URN_UUID_LENGTH = URN_UUID_PREFIX.length() + 36;
+
+    /** Source string of a lazily parsed URI, null if parsed eagerly. */
+    protected String uriStr;
+
+    /** Start index of the hier-part in the source string. */
+    protected int hierStartIdx;
+
+    /** Start index of the authority in the source string or -1. */
+    protected int authorityStartIdx = -1;
+
+    /** End index of the userinfo in the source string or -1. */
+    protected int userinfoEndIdx = -1;
+
+    /** Start index of the host in the source string. */
+    protected int hostStartIdx;
+
+    /** End index of the host in the source string. */
+    protected int hostEndIdx;
+
+    /** Start index of the port in the source string or -1. */
+    protected int portStartIdx = -1;
+
+    /** Start index of the path in the source string. */
+    protected int pathStartIdx;
+
+    /** End index of the path and hier-part in the source string. */
+    protected int pathEndIdx;
+
+    /** Start index of the query in the source string or -1. */
+    protected int queryStartIdx = -1;
+
+    /** End index of the query in the source string. */
+    protected int queryEndIdx;
+
+    /** Start index of the fragment in the source string or -1. */
+    protected int fragmentStartIdx = -1;
+
+    /** Decode bits of the lazily parsed components that need decoding. */
+    protected int decodeMask;
+
+    /** Is this URI a lower case <code>urn:uuid:</code> identifier. */
+    protected boolean bUrnUuid;
+
+    /** Most significant bits of the <code>urn:uuid:</code> identifier. */
+    protected long uuidMsb;
+
+    /** Least significant bits of the <code>urn:uuid:</code> identifier. */
+    protected long uuidLsb;
+
     /**
      * Constructor for unit-testing.
      */
@@ -122,6 +188,56 @@ public class Uri implements Comparable<Uri> {
         }
     }
 
+    /**
+     * Creates a lazily parsed URI using the requested profile.
+     * @param str The string to be parsed into a URI
+     * @param uriProfile the requested profile
+     * @return The new URI
+     * @throws IllegalArgumentException If the given string violates the profile
+     * @see #parseLazy(String, UriProfile)
+     */
+    public static Uri createLazy(String str, UriProfile uriProfile) throws IllegalArgumentException {
+        try {
+            return parseLazy(str, uriProfile);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid URI", e);
+        }
+    }
+
+    /**
+     * Parses the given string into a lazy URI using the requested profile.
+     * The string is validated in a single pass which only records the
+     * component offsets. Components are extracted and decoded on first
+     * access. Lower case <code>urn:uuid:</code> identifiers are parsed
+     * directly into two longs.
+     * A lazy URI is equal to the URI constructed eagerly from the same string.
+     * @param str The string to be parsed into a URI
+     * @param uriProfile the requested profile
+     * @return The new URI
+     * @throws URISyntaxException If the given string violates the profile
+     */
+    public static Uri parseLazy(String str, UriProfile uriProfile) throws URISyntaxException {
+        Uri uri = new Uri();
+        uri.uriProfile = uriProfile;
+        if (!uri.parse_urnUuid(str)) {
+            uri.parse_lazy(str);
+        }
+        return uri;
+    }
+
+    /**
+     * Creates a <code>urn:uuid:</code> URI from the given UUID.
+     * @param uuid UUID to wrap
+     * @return The new URI
+     */
+    public static Uri createUrnUuid(UUID uuid) {
+        Uri uri = new Uri();
+        if (!uri.parse_urnUuid(URN_UUID_PREFIX + uuid.toString())) {
+            throw new IllegalArgumentException("Invalid UUID");
+        }
+        return uri;
+    }
+
     /**
      * Constructs a URI by parsing the given string using the default RFC3986
      * profile.
@@ -319,6 +435,287 @@ public class Uri implements Comparable<Uri> {
         }
     }
 
+    /**
+     * Try to parse the string as a lower case <code>urn:uuid:</code>
+     * identifier storing the UUID as two longs.
+     * @param str URI string
+     * @return true if the string was parsed as a <code>urn:uuid:</code>
+     * identifier, false otherwise
+     */
+    protected boolean parse_urnUuid(String str) {
+        if (str.length() != URN_UUID_LENGTH || !str.startsWith(URN_UUID_PREFIX)) {
+            return false;
+        }
+        int[] charTypeMap = uriProfile.charTypeMap;
+        if ((charTypeMap['u'] & UriProfile.B_SCHEME_FIRST) == 0
+                || (charTypeMap['r'] & UriProfile.B_SCHEME_FOLLOW) == 0
+                || (charTypeMap['n'] & UriProfile.B_SCHEME_FOLLOW) == 0
+                || (charTypeMap[':'] & UriProfile.B_PATH) == 0
+                || (charTypeMap['-'] & UriProfile.B_PATH) == 0) {
+            return false;
+        }
+        long msb = 0;
+        long lsb = 0;
+        int pos = URN_UUID_PREFIX.length();
+        int digits = 0;
+        int tmpC;
+        char c;
+        while (pos < URN_UUID_LENGTH) {
+            c = str.charAt(pos);
+            switch (pos - URN_UUID_PREFIX.length()) {
+            case 8:
+            case 13:
+            case 18:
+            case 23:
+                if (c != '-') {
+                    return false;
+                }
+                break;
+            default:
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+                if ((charTypeMap[c] & UriProfile.B_PATH) == 0) {
+                    return false;
+                }
+                tmpC = UriProfile.asciiHexTab[c];
+                if (digits++ < 16) {
+                    msb = (msb << 4) | tmpC;
+                } else {
+                    lsb = (lsb << 4) | tmpC;
+                }
+                break;
+            }
+            ++pos;
+        }
+        uriStr = str;
+        scheme = "urn";
+        hierStartIdx = 4;
+        pathStartIdx = 4;
+        pathEndIdx = URN_UUID_LENGTH;
+        bAbsolute = true;
+        bOpaque = true;
+        bUrnUuid = true;
+        uuidMsb = msb;
+        uuidLsb = lsb;
+        return true;
+    }
+
+    /**
+     * Validate an URI string in a single pass recording the component
+     * offsets. Only the scheme is extracted, the remaining components are
+     * extracted and decoded on access.
+     * @param str URI string
+     * @throws URISyntaxException if the URI is invalid in some way
+     */
+    protected void parse_lazy(String str) throws URISyntaxException {
+        uriStr = str;
+        int uIdx = 0;
+        int idx = uriProfile.indexOf(UriProfile.B_GEN_DELIMS, str, 0);
+        if (idx != -1 && str.charAt(idx) == ':') {
+            scheme = str.substring(0, idx++);
+            if (scheme.length() > 0) {
+                uriProfile.validate_first_follow(scheme, UriProfile.B_SCHEME_FIRST, UriProfile.B_SCHEME_FOLLOW);
+            } else {
+                throw new URISyntaxException(scheme, "Empty URI scheme component");
+            }
+            uIdx = idx;
+            bAbsolute = true;
+        } else if (!uriProfile.bAllowRelativeUris) {
+            throw new URISyntaxException(str, "Invalid URI - relative URIs not allowed");
+        }
+        int limit = str.length();
+        // Query.
+        int qfIdx = limit;
+        int qIdx = str.indexOf('?', uIdx);
+        int fIdx;
+        if (qIdx != -1) {
+            qfIdx = qIdx++;
+            fIdx = str.indexOf('#', qIdx);
+            queryStartIdx = qIdx;
+            queryEndIdx = (fIdx != -1) ? fIdx : limit;
+        } else {
+            fIdx = str.indexOf('#', uIdx);
+        }
+        // Fragment.
+        if (fIdx != -1) {
+            if (fIdx < qfIdx) {
+                qfIdx = fIdx;
+            }
+            fragmentStartIdx = fIdx + 1;
+        }
+        // Hier-part / authority / path.
+        hierStartIdx = uIdx;
+        pathStartIdx = uIdx;
+        pathEndIdx = qfIdx;
+        if (qfIdx - uIdx >= 2 && str.startsWith("//", uIdx)) {
+            authorityStartIdx = uIdx + 2;
+            pathStartIdx = indexOf(str, '/', authorityStartIdx, qfIdx);
+            if (pathStartIdx == -1) {
+                pathStartIdx = qfIdx;
+            }
+        }
+        // Authority.
+        if (authorityStartIdx != -1) {
+            int aLimit = pathStartIdx;
+            int aIdx = indexOf(str, '@', authorityStartIdx, aLimit);
+            if (aIdx != -1) {
+                userinfoEndIdx = aIdx++;
+            } else {
+                aIdx = authorityStartIdx;
+            }
+            hostStartIdx = aIdx;
+            if (aIdx < aLimit && str.charAt(aIdx) == '[') {
+                // ipv6 or new address type.
+                int bIdx = indexOf(str, ']', aIdx, aLimit);
+                if (bIdx != -1) {
+                    ++bIdx;
+                    hostEndIdx = bIdx;
+                    if (bIdx < aLimit) {
+                        if (str.charAt(bIdx++) == ':') {
+                            portStartIdx = bIdx;
+                        } else {
+                            throw new URISyntaxException(str.substring(authorityStartIdx, aLimit), "Invalid URI authority/port component - expected a ':'");
+                        }
+                    }
+                } else {
+                    throw new URISyntaxException(str.substring(authorityStartIdx, aLimit), "Invalid URI authority/host component - missing ']'");
+                }
+            } else {
+                // ipv4 or hostname.
+                int pIdx = indexOf(str, ':', aIdx, aLimit);
+                if (pIdx != -1) {
+                    hostEndIdx = pIdx++;
+                    portStartIdx = pIdx;
+                } else {
+                    hostEndIdx = aLimit;
+                }
+                if (uriProfile.validate(UriProfile.B_REGNAME, "host", str, hostStartIdx, hostEndIdx)) {
+                    decodeMask |= D_HOST;
+                }
+            }
+            // Userinfo validation.
+            if (userinfoEndIdx != -1) {
+                if (uriProfile.validate(UriProfile.B_USERINFO, "userinfo", str, authorityStartIdx, userinfoEndIdx)) {
+                    decodeMask |= D_USERINFO;
+                }
+            }
+            // Port validation.
+            if (portStartIdx != -1 && portStartIdx < aLimit) {
+                portRaw = str.substring(portStartIdx, aLimit);
+                try {
+                    port = Integer.parseInt(portRaw);
+                    if (port < 1 || port > 65535) {
+                        throw new URISyntaxException(portRaw, "Invalid URI port component - port is not within range [1-65535]");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new URISyntaxException(portRaw, "Invalid URI port component");
+                }
+            }
+        }
+        // Path validation.
+        if (uriProfile.validate(UriProfile.B_PATH, "path", str, pathStartIdx, pathEndIdx)) {
+            decodeMask |= D_PATH;
+        }
+        // Query validation.
+        if (queryStartIdx != -1) {
+            if (uriProfile.validate(UriProfile.B_QUERY, "query", str, queryStartIdx, queryEndIdx)) {
+                decodeMask |= D_QUERY;
+            }
+        }
+        // Fragment validation.
+        if (fragmentStartIdx != -1) {
+            if (uriProfile.validate(UriProfile.B_FRAGMENT, "fragment", str, fragmentStartIdx, limit)) {
+                decodeMask |= D_FRAGMENT;
+            }
+        }
+        // Opaque.
+        if (bAbsolute) {
+            if (authorityStartIdx == -1 && (decodeMask & D_PATH) != 0) {
+                bOpaque = !getPath().startsWith("/");
+            } else {
+                int sspEndIdx = (queryStartIdx != -1) ? queryEndIdx : pathEndIdx;
+                bOpaque = hierStartIdx < sspEndIdx && str.charAt(hierStartIdx) != '/';
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first occurrence of a character within a
+     * range of a string.
+     * @param str string to search
+     * @param c character to search for
+     * @param pos start index
+     * @param limit end index (exclusive)
+     * @return index of the character or -1 if not found within the range
+     */
+    protected static int indexOf(String str, char c, int pos, int limit) {
+        int idx = str.indexOf(c, pos);
+        return (idx < limit) ? idx : -1;
+    }
+
+    /**
+     * Returns the decoded value of a lazily parsed component. Components
+     * without escaped octets are returned as is.
+     * @param bw_and bits identifying the component character categories
+     * @param componentName URI component name
+     * @param decodeBit decode bit of the component
+     * @param raw raw component string or null
+     * @return decoded component or null
+     */
+    protected String decode(int bw_and, String componentName, int decodeBit, String raw) {
+        if (raw == null || (decodeMask & decodeBit) == 0) {
+            return raw;
+        }
+        try {
+            return uriProfile.validate_decode(bw_and, componentName, raw);
+        } catch (URISyntaxException e) {
+            // Already validated when the URI was parsed.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Tells whether or not this URI is a lower case <code>urn:uuid:</code>
+     * identifier parsed by the fast path.
+     * @return true if this URI is a <code>urn:uuid:</code> identifier
+     */
+    public boolean isUrnUuid() {
+        return bUrnUuid;
+    }
+
+    /**
+     * Returns the UUID of a <code>urn:uuid:</code> identifier.
+     * @return the UUID of this URI or null if this URI is not a
+     * <code>urn:uuid:</code> identifier
+     */
+    public UUID getUuid() {
+        if (!bUrnUuid) {
+            return null;
+        }
+        return new UUID(uuidMsb, uuidLsb);
+    }
+
+    /**
+     * Returns the most significant 64 bits of a <code>urn:uuid:</code>
+     * identifier.
+     * @return the most significant bits or 0 if this URI is not a
+     * <code>urn:uuid:</code> identifier
+     */
+    public long getUuidMostSignificantBits() {
+        return uuidMsb;
+    }
+
+    /**
+     * Returns the least significant 64 bits of a <code>urn:uuid:</code>
+     * identifier.
+     * @return the least significant bits or 0 if this URI is not a
+     * <code>urn:uuid:</code> identifier
+     */
+    public long getUuidLeastSignificantBits() {
+        return uuidLsb;
+    }
+
     /**
      * Tells whether or not this URI is absolute.
      * A URI is absolute if, and only if, it has a scheme component.
@@ -361,6 +758,9 @@ public class Uri implements Comparable<Uri> {
      * @return The raw scheme-specific part of this URI (never null)
      */
     public String getRawSchemeSpecificPart() {
+        if (schemeSpecificPartRaw == null && uriStr != null) {
+            schemeSpecificPartRaw = uriStr.substring(hierStartIdx, (queryStartIdx != -1) ? queryEndIdx : pathEndIdx);
+        }
         return schemeSpecificPartRaw;
     }
 
@@ -372,6 +772,23 @@ public class Uri implements Comparable<Uri> {
      * @return The decoded scheme-specific part of this URI (never null)
      */
     public String getSchemeSpecificPart() {
+        if (schemeSpecificPart == null && uriStr != null) {
+            if ((decodeMask & (D_USERINFO | D_HOST | D_PATH | D_QUERY)) == 0) {
+                schemeSpecificPart = getRawSchemeSpecificPart();
+            } else {
+                StringBuilder sb = new StringBuilder();
+                if (authorityStartIdx != -1) {
+                    sb.append("//");
+                    sb.append(getAuthority());
+                }
+                sb.append(getPath());
+                if (queryStartIdx != -1) {
+                    sb.append('?');
+                    sb.append(getQuery());
+                }
+                schemeSpecificPart = sb.toString();
+            }
+        }
         return schemeSpecificPart;
     }
 
@@ -386,6 +803,9 @@ public class Uri implements Comparable<Uri> {
      * is undefined
      */
     public String getRawAuthority() {
+        if (authorityRaw == null && authorityStartIdx != -1) {
+            authorityRaw = uriStr.substring(authorityStartIdx, pathStartIdx);
+        }
         return authorityRaw;
     }
 
@@ -398,6 +818,23 @@ public class Uri implements Comparable<Uri> {
      * authority is undefined
      */
     public String getAuthority() {
+        if (authority == null && authorityStartIdx != -1) {
+            if ((decodeMask & (D_USERINFO | D_HOST)) == 0) {
+                authority = getRawAuthority();
+            } else {
+                StringBuilder sb = new StringBuilder();
+                if (userinfoEndIdx != -1) {
+                    sb.append(getUserInfo());
+                    sb.append('@');
+                }
+                sb.append(getHost());
+                if (portStartIdx != -1) {
+                    sb.append(':');
+                    sb.append(uriStr, portStartIdx, pathStartIdx);
+                }
+                authority = sb.toString();
+            }
+        }
         return authority;
     }
 
@@ -409,6 +846,9 @@ public class Uri implements Comparable<Uri> {
      * user information is undefined
      */
     public String getRawUserInfo() {
+        if (userinfoRaw == null && userinfoEndIdx != -1) {
+            userinfoRaw = uriStr.substring(authorityStartIdx, userinfoEndIdx);
+        }
         return userinfoRaw;
     }
 
@@ -421,6 +861,9 @@ public class Uri implements Comparable<Uri> {
      * the user information is undefined
      */
     public String getUserInfo() {
+        if (userinfo == null && userinfoEndIdx != -1) {
+            userinfo = decode(UriProfile.B_USERINFO, "userinfo", D_USERINFO, getRawUserInfo());
+        }
         return userinfo;
     }
 
@@ -445,6 +888,12 @@ public class Uri implements Comparable<Uri> {
      * @return The host component of this URI, or null if the host is undefined
      */
     public String getHost() {
+        if (host == null && authorityStartIdx != -1) {
+            if (hostRaw == null) {
+                hostRaw = uriStr.substring(hostStartIdx, hostEndIdx);
+            }
+            host = decode(UriProfile.B_REGNAME, "host", D_HOST, hostRaw);
+        }
         return host;
     }
 
@@ -465,6 +914,9 @@ public class Uri implements Comparable<Uri> {
      * @return The path component of this URI, or null if the path is undefined
      */
     public String getRawPath() {
+        if (pathRaw == null && uriStr != null) {
+            pathRaw = uriStr.substring(pathStartIdx, pathEndIdx);
+        }
         return pathRaw;
     }
 
@@ -477,6 +929,9 @@ public class Uri implements Comparable<Uri> {
      * undefined
      */
     public String getPath() {
+        if (path == null && uriStr != null) {
+            path = decode(UriProfile.B_PATH, "path", D_PATH, getRawPath());
+        }
         return path;
     }
 
@@ -488,6 +943,9 @@ public class Uri implements Comparable<Uri> {
      * undefined
      */
     public String getRawQuery() {
+        if (queryRaw == null && queryStartIdx != -1) {
+            queryRaw = uriStr.substring(queryStartIdx, queryEndIdx);
+        }
         return queryRaw;
     }
 
@@ -500,6 +958,9 @@ public class Uri implements Comparable<Uri> {
      * undefined
      */
     public String getQuery() {
+        if (query == null && queryStartIdx != -1) {
+            query = decode(UriProfile.B_QUERY, "query", D_QUERY, getRawQuery());
+        }
         return query;
     }
 
@@ -511,6 +972,9 @@ public class Uri implements Comparable<Uri> {
      * is undefined
      */
     public String getRawFragment() {
+        if (fragmentRaw == null && fragmentStartIdx != -1) {
+            fragmentRaw = uriStr.substring(fragmentStartIdx);
+        }
         return fragmentRaw;
     }
 
@@ -523,11 +987,17 @@ public class Uri implements Comparable<Uri> {
      * fragment is undefined
      */
     public String getFragment() {
+        if (fragment == null && fragmentStartIdx != -1) {
+            fragment = decode(UriProfile.B_FRAGMENT, "fragment", D_FRAGMENT, getRawFragment());
+        }
         return fragment;
     }
 
     @Override
     public String toString() {
+        if (uriStr != null) {
+            return uriStr;
+        }
         StringBuilder sb = new StringBuilder();
         if (scheme != null) {
             sb.append(scheme);
@@ -563,45 +1033,53 @@ public class Uri implements Comparable<Uri> {
             return false;
         }
         Uri uriObj = (Uri)obj;
+        if (bUrnUuid && uriObj.bUrnUuid) {
+            return uuidMsb == uriObj.uuidMsb && uuidLsb == uriObj.uuidLsb;
+        }
+        String scheme = getScheme();
         if (scheme != null) {
-            if (!scheme.equals(uriObj.scheme)) {
+            if (!scheme.equals(uriObj.getScheme())) {
                 return false;
             }
-        } else if (uriObj.scheme != null) {
+        } else if (uriObj.getScheme() != null) {
             return false;
         }
+        String userinfo = getUserInfo();
         if (userinfo != null) {
-            if (!userinfo.equals(uriObj.userinfo)) {
+            if (!userinfo.equals(uriObj.getUserInfo())) {
                 return false;
             }
-        } else if (uriObj.userinfo != null) {
+        } else if (uriObj.getUserInfo() != null) {
             return false;
         }
+        String host = getHost();
         if (host != null) {
-            if (!host.equals(uriObj.host)) {
+            if (!host.equals(uriObj.getHost())) {
                 return false;
             }
-        } else if (uriObj.host != null) {
+        } else if (uriObj.getHost() != null) {
             return false;
         }
         if (port != uriObj.port) {
             return false;
         }
-        if (!path.equals(uriObj.path)) {
+        if (!getPath().equals(uriObj.getPath())) {
             return false;
         }
+        String query = getQuery();
         if (query != null) {
-            if (!query.equals(uriObj.query)) {
+            if (!query.equals(uriObj.getQuery())) {
                 return false;
             }
-        } else if (uriObj.query != null) {
+        } else if (uriObj.getQuery() != null) {
             return false;
         }
+        String fragment = getFragment();
         if (fragment != null) {
-            if (!fragment.equals(uriObj.fragment)) {
+            if (!fragment.equals(uriObj.getFragment())) {
                 return false;
             }
-        } else if (uriObj.fragment != null) {
+        } else if (uriObj.getFragment() != null) {
             return false;
         }
         return true;
@@ -613,7 +1091,8 @@ public class Uri implements Comparable<Uri> {
         if (scheme != null) {
             hashCode ^= scheme.hashCode();
         }
-        hashCode ^= schemeSpecificPart.hashCode();
+        hashCode ^= getSchemeSpecificPart().hashCode();
+        String fragment = getFragment();
         if (fragment != null) {
             hashCode ^= fragment.hashCode();
         }
@@ -638,20 +1117,21 @@ public class Uri implements Comparable<Uri> {
         } else if (uri.scheme != null) {
             return -1;
         }
-        res = schemeSpecificPart.compareTo(uri.schemeSpecificPart);
+        res = getSchemeSpecificPart().compareTo(uri.getSchemeSpecificPart());
         if (res != 0) {
             return res;
         }
+        String fragment = getFragment();
         if (fragment != null) {
-            if (uri.fragment != null) {
-                res = fragment.compareTo(uri.fragment);
+            if (uri.getFragment() != null) {
+                res = fragment.compareTo(uri.getFragment());
                 if (res != 0) {
                     return res;
                 }
             } else {
                 return 1;
             }
-        } else if (uri.fragment != null) {
+        } else if (uri.getFragment() != null) {
             return -1;
         }
         return res;
@@ -178,9 +178,45 @@ public class UriProfile {
      */
     public String validate_decode(int bw_and, String componentName, String str) throws URISyntaxException {
         StringBuilder sb = new StringBuilder();
-        int pos = 0;
+        validate_decode(bw_and, componentName, str, 0, str.length(), sb);
+        return sb.toString();
+    }
+
+    /**
+     * Validates a range of an URI string according to the supplied character
+     * category bitfield without creating any intermediate strings.
+     * @param bw_and bits identifying one or more character categories
+     * @param componentName URI component name
+     * @param str URI string
+     * @param pos start index of the component in the string
+     * @param limit end index (exclusive) of the component in the string
+     * @return true if the component includes percent encoded characters that
+     * change the component when decoded, false otherwise
+     * @throws URISyntaxException if an error occurs validating component
+     */
+    public boolean validate(int bw_and, String componentName, String str, int pos, int limit) throws URISyntaxException {
+        return validate_decode(bw_and, componentName, str, pos, limit, null);
+    }
+
+    /**
+     * Validates a range of an URI string according to the supplied character
+     * category bitfield and optionally appends the decoded component to a
+     * <code>StringBuilder</code>.
+     * @param bw_and bits identifying one or more character categories
+     * @param componentName URI component name
+     * @param str URI string
+     * @param pos start index of the component in the string
+     * @param limit end index (exclusive) of the component in the string
+     * @param sb <code>StringBuilder</code> to append the decoded component to
+     * or null to only validate
+     * @return true if the component includes percent encoded characters that
+     * change the component when decoded, false otherwise
+     * @throws URISyntaxException if an error occurs parsing/validating component
+     */
+    protected boolean validate_decode(int bw_and, String componentName, String str, int pos, int limit, StringBuilder sb) throws URISyntaxException {
+        int sIdx = pos;
+        boolean bDecoded = false;
         int ppos;
-        int limit = str.length();
         char c;
         int decode = 0;
         int tmpC;
@@ -197,7 +233,7 @@ public class UriProfile {
                             if (c == 'u' || c == 'U') {
                                 if (!bAllow16bitPercentEncoding) {
                                     if (!bAllowinvalidPercentEncoding) {
-                                        throw new URISyntaxException(str, "Invalid URI " + componentName + " component - 16-bit percent encoding not allowed");
+                                        throw new URISyntaxException(str.substring(sIdx, limit), "Invalid URI " + componentName + " component - 16-bit percent encoding not allowed");
                                     } else {
                                         bValid = false;
                                     }
@@ -231,32 +267,35 @@ public class UriProfile {
                                 }
                             }
                             if (!bValid && !bAllowinvalidPercentEncoding) {
-                                throw new URISyntaxException(str, "Invalid URI " + componentName + " component - invalid percent encoding");
+                                throw new URISyntaxException(str.substring(sIdx, limit), "Invalid URI " + componentName + " component - invalid percent encoding");
+                            }
+                            bDecoded = true;
+                            if (sb != null) {
+                                sb.append((char) decodedC);
                             }
-                            sb.append((char) decodedC);
                         } else {
                             if (!bAllowinvalidPercentEncoding) {
-                                throw new URISyntaxException(str, "Invalid URI " + componentName + " component - incomplete percent encoding");
+                                throw new URISyntaxException(str.substring(sIdx, limit), "Invalid URI " + componentName + " component - incomplete percent encoding");
                             } else {
                                 bValid = false;
                             }
                         }
-                        if (!bValid) {
+                        if (!bValid && sb != null) {
                             while (ppos < pos) {
                                 sb.append(str.charAt(ppos++));
                             }
                         }
                     } else {
-                        throw new URISyntaxException(str, "Invalid URI " + componentName + " component - invalid character '" + c + "'");
+                        throw new URISyntaxException(str.substring(sIdx, limit), "Invalid URI " + componentName + " component - invalid character '" + c + "'");
                     }
-                } else {
+                } else if (sb != null) {
                     sb.append(c);
                 }
             } else {
-                throw new URISyntaxException(str, "Invalid URI " + componentName + " component - invalid character '" + c + "'");
+                throw new URISyntaxException(str.substring(sIdx, limit), "Invalid URI " + componentName + " component - invalid character '" + c + "'");
             }
         }
-        return sb.toString();
+        return bDecoded;
     }
 
     /** Hex char to integer conversion table. */
@@ -0,0 +1,112 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestAllocationMeter {
+
+    public static final String HEADER =
+            "WARC-Type: response\r\n"
+            + "WARC-Target-URI: http://www.example.org/index.html\r\n"
+            + "WARC-Date: 2012-02-08T13:38:51Z\r\n"
+            + "WARC-Payload-Digest: sha1:UZY6ND6CCHXETFVJD2MSS7ZENMWF7KQ2\r\n"
+            + "WARC-IP-Address: 192.0.2.1\r\n"
+            + "WARC-Record-ID: <urn:uuid:f569983a-ef8c-4e62-b347-295b227c3e51>\r\n"
+            + "Content-Type: application/http; msgtype=response\r\n"
+            + "Content-Length: 1234\r\n"
+            + "\r\n";
+
+    public static final String[] NAMES = {
+            "WARC-Type", "WARC-Target-URI", "WARC-Date", "WARC-Payload-Digest",
+            "WARC-IP-Address", "WARC-Record-ID", "Content-Type", "Content-Length"
+    };
+
+    public static final int RECORDS = 10000;
+
+    @Test
+    public void test_allocationmeter() throws IOException {
+        AllocationMeter meter = new AllocationMeter();
+        Assert.assertEquals(-1, meter.getAllocatedBytes());
+        Assert.assertEquals(-1, meter.getAllocatedBytesPerRecord());
+        meter.start();
+        meter.stop();
+        Assert.assertEquals(0, meter.getRecords());
+        Assert.assertEquals(-1, meter.getAllocatedBytesPerRecord());
+        if (!AllocationMeter.isSupported()) {
+            Assert.assertEquals(-1, AllocationMeter.getThreadAllocatedBytes());
+            Assert.assertEquals(-1, meter.getAllocatedBytes());
+            return;
+        }
+        Assert.assertTrue(AllocationMeter.getThreadAllocatedBytes() > 0);
+        meter.start();
+        byte[] bytes = new byte[1024 * 1024];
+        for (int i=0; i<4; ++i) {
+            meter.record();
+        }
+        meter.stop();
+        Assert.assertEquals(4, meter.getRecords());
+        Assert.assertTrue(meter.getAllocatedBytes() >= bytes.length);
+        Assert.assertTrue(meter.getAllocatedBytesPerRecord() >= bytes.length / 4);
+    }
+
+    /**
+     * Parse the same header block repeatedly and measure the steady state
+     * allocations per header.
+     */
+    @Test
+    public void test_allocationmeter_headerlinereader() throws IOException {
+        byte[] bytes = HEADER.getBytes("ISO8859-1");
+        HeaderLineReader hlr = HeaderLineReader.getHeaderLineReader();
+        hlr.encoding = HeaderLineReader.ENC_UTF8;
+        hlr.addCanonicalNames(NAMES);
+        ByteCountingPushBackInputStream in = new ByteCountingPushBackInputStream(new ByteArrayInputStream(new byte[0]), bytes.length);
+        in.unread(bytes);
+        HeaderLine line;
+        int lines = 0;
+        AllocationMeter meter = new AllocationMeter();
+        for (int pass=0; pass<2; ++pass) {
+            meter.start();
+            for (int i=0; i<RECORDS; ++i) {
+                hlr.beginBlock(in, 8192);
+                lines = 0;
+                while ((line = hlr.readBlockLine()).type == HeaderLine.HLT_HEADERLINE) {
+                    Assert.assertSame(NAMES[lines++], line.name);
+                }
+                hlr.endBlock();
+                in.unread(bytes);
+                meter.record();
+            }
+            meter.stop();
+        }
+        Assert.assertEquals(NAMES.length, lines);
+        Assert.assertEquals(RECORDS, meter.getRecords());
+        if (AllocationMeter.isSupported()) {
+            // Only the returned header lines, their values and raw bytes.
+            Assert.assertTrue(meter.getAllocatedBytesPerRecord() < NAMES.length * 512);
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.net.URISyntaxException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestBoundedCache {
+
+    @Test
+    public void test_boundedcache_lru() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(2);
+        Assert.assertEquals(2, cache.getMaxSize());
+        Assert.assertTrue(cache.isAccessOrder());
+        Assert.assertEquals(0.0, cache.getHitRate(), 0.0);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("c", 3);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictions());
+        // "b" was the least recently used entry.
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(0.75, cache.getHitRate(), 0.0);
+        cache.resetStatistics();
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+        Assert.assertEquals(0, cache.getEvictions());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        try {
+            cache.put(null, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            cache.put("a", null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new BoundedCache<String, Integer>(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void test_boundedcache_fifo() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(2, false);
+        Assert.assertFalse(cache.isAccessOrder());
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("c", 3);
+        // "a" was the oldest entry.
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(2), cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test
+    public void test_parsedvaluecache() throws URISyntaxException {
+        ParsedValueCache cache = new ParsedValueCache(16, 16, true);
+        String str = "http://www.example.com/p%41th?q#f";
+        Uri uri = cache.getUri(str, UriProfile.RFC3986);
+        Assert.assertEquals(new Uri(str), uri);
+        Assert.assertSame(uri, cache.getUri(str, UriProfile.RFC3986));
+        Uri uri2 = cache.getUri(str, UriProfile.RFC3986_ABS_16BIT_LAX);
+        Assert.assertNotSame(uri, uri2);
+        Assert.assertEquals(uri, uri2);
+        Assert.assertEquals(1, cache.getUriHits());
+        Assert.assertEquals(2, cache.getUriMisses());
+        Assert.assertEquals(1, cache.getUriCache(UriProfile.RFC3986).size());
+        Assert.assertEquals(1, cache.getUriCache(UriProfile.RFC3986_ABS_16BIT_LAX).size());
+
+        str = "http://www.example.com/%u4E8B";
+        try {
+            cache.getUri(str, UriProfile.RFC3986);
+            Assert.fail("Exception expected!");
+        } catch (URISyntaxException e) {
+        }
+        Assert.assertEquals(1, cache.getUriCache(UriProfile.RFC3986).size());
+        Assert.assertNotNull(cache.getUri(str, UriProfile.RFC3986_ABS_16BIT_LAX));
+
+        str = "application/http; msgtype=response";
+        ContentType contentType = cache.getContentType(str);
+        Assert.assertEquals("application", contentType.contentType);
+        Assert.assertEquals("http", contentType.mediaType);
+        Assert.assertEquals("response", contentType.getParameter("msgtype"));
+        Assert.assertSame(contentType, cache.getContentType(str));
+        Assert.assertNull(cache.getContentType(null));
+        Assert.assertNull(cache.getContentType(""));
+        Assert.assertNull(cache.getContentType("invalid"));
+        Assert.assertEquals(1, cache.getContentTypeCache().size());
+        Assert.assertEquals(1, cache.getContentTypeCache().getHits());
+        Assert.assertEquals(2, cache.getContentTypeCache().getMisses());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getUriCache(UriProfile.RFC3986).size());
+        Assert.assertEquals(0, cache.getContentTypeCache().size());
+    }
+
+}
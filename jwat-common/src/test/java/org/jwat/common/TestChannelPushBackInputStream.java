@@ -0,0 +1,186 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestChannelPushBackInputStream {
+
+    @Test
+    public void test_channelpushbackinputstream() throws IOException {
+        Random random = new Random(3);
+        byte[] srcArr = new byte[100000];
+        random.nextBytes(srcArr);
+        File file = File.createTempFile("jwat-", ".dat");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(srcArr);
+        FileChannel channel = raf.getChannel();
+
+        try {
+            new ChannelPushBackInputStream((FileChannel)null, 0, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new ChannelPushBackInputStream(channel, -1, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new ChannelPushBackInputStream(channel, 0, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new ChannelPushBackInputStream((ByteBuffer)null, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(srcArr.length + 10);
+        direct.put(new byte[10]);
+        direct.put(srcArr);
+        direct.flip();
+        direct.position(10);
+        byte[] wrapped = new byte[srcArr.length + 20];
+        System.arraycopy(srcArr, 0, wrapped, 10, srcArr.length);
+
+        int[] windowSizes = {1, 7, 4096, 1024 * 1024};
+        ChannelPushBackInputStream in;
+        for (int w=0; w<windowSizes.length; ++w) {
+            for (int s=0; s<4; ++s) {
+                long offset = 0;
+                switch (s) {
+                case 0:
+                    in = new ChannelPushBackInputStream(channel, 0, windowSizes[w]);
+                    break;
+                case 1:
+                    offset = 1000;
+                    in = new ChannelPushBackInputStream(channel, offset, windowSizes[w]);
+                    break;
+                case 2:
+                    direct.position(10);
+                    in = new ChannelPushBackInputStream(direct, windowSizes[w]);
+                    break;
+                default:
+                    in = new ChannelPushBackInputStream(ByteBuffer.wrap(wrapped, 10, srcArr.length).slice(), windowSizes[w]);
+                    break;
+                }
+                Assert.assertEquals(offset, in.getConsumed());
+                Assert.assertEquals(srcArr.length - offset, in.available());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.write(srcArr, 0, (int)offset);
+                byte[] tmpArr = new byte[64];
+                int read;
+                int state = 0;
+                while (true) {
+                    Assert.assertEquals(out.size(), in.getConsumed());
+                    if (state == 0) {
+                        read = in.read();
+                        if (read == -1) {
+                            break;
+                        }
+                        out.write(read);
+                    } else if (state == 1) {
+                        read = in.read(tmpArr, 0, random.nextInt(64) + 1);
+                        if (read == -1) {
+                            break;
+                        }
+                        out.write(tmpArr, 0, read);
+                        // Push back part of the bytes and read them again.
+                        int len = random.nextInt(read + 1);
+                        in.unread(tmpArr, read - len, len);
+                        Assert.assertEquals(len, in.read(tmpArr, 0, len));
+                    } else if (state == 2) {
+                        read = in.fill();
+                        if (read == -1) {
+                            break;
+                        }
+                        int len = Math.min(read, random.nextInt(100));
+                        out.write(in.getWindow(), in.getWindowPosition(), len);
+                        in.consume(len);
+                        int back = random.nextInt(len + 1);
+                        in.rewind(back);
+                        in.consume(back);
+                    } else {
+                        int len = random.nextInt(100);
+                        long skipped = in.skip(len);
+                        out.write(srcArr, out.size(), (int)skipped);
+                    }
+                    state = (state + 1) % 4;
+                }
+                Assert.assertArrayEquals(srcArr, out.toByteArray());
+                Assert.assertEquals(0, in.available());
+                Assert.assertEquals(-1, in.fill());
+                Assert.assertEquals(0, in.skip(10));
+                in.close();
+            }
+        }
+
+        /*
+         * Push back of other data than the data read.
+         */
+        in = new ChannelPushBackInputStream(channel, 0, 16);
+        Assert.assertEquals(10, in.read(new byte[10]));
+        in.unread(new byte[] {1, 2, 3});
+        Assert.assertEquals(7, in.getConsumed());
+        Assert.assertEquals(1, in.read());
+        Assert.assertEquals(2, in.read());
+        Assert.assertEquals(3, in.read());
+        Assert.assertEquals(srcArr[10] & 255, in.read());
+        in.close();
+        // Push back in front of the window data.
+        in = new ChannelPushBackInputStream(channel, srcArr.length - 4, 16);
+        Assert.assertEquals(srcArr[srcArr.length - 4] & 255, in.read());
+        in.unread(new byte[] {4, 5});
+        Assert.assertEquals(4, in.read());
+        Assert.assertEquals(5, in.read());
+        Assert.assertEquals(srcArr[srcArr.length - 3] & 255, in.read());
+        try {
+            in.unread(new byte[32]);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        try {
+            in.rewind(100);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            in.consume(100);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        in.close();
+        raf.close();
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestDiagnosisHistogram {
+
+    @Test
+    public void test_diagnostics_lazy() {
+        Diagnostics<Diagnosis> diagnostics = new Diagnostics<Diagnosis>();
+        Assert.assertFalse(diagnostics.hasErrors());
+        Assert.assertFalse(diagnostics.hasWarnings());
+        Assert.assertEquals(0, diagnostics.getErrorCount());
+        Assert.assertEquals(0, diagnostics.getWarningCount());
+        Assert.assertEquals(0, diagnostics.getErrors().size());
+        Assert.assertEquals(0, diagnostics.getWarnings().size());
+        diagnostics.reset();
+        Diagnostics<Diagnosis> other = new Diagnostics<Diagnosis>();
+        diagnostics.addAll(other);
+        Assert.assertNull(diagnostics.errors);
+        Assert.assertNull(diagnostics.warnings);
+        other.addError(new Diagnosis(DiagnosisType.EMPTY, "e1"));
+        other.addWarning(new Diagnosis(DiagnosisType.EMPTY, "w1"));
+        other.addWarning(new Diagnosis(DiagnosisType.EMPTY, "w2"));
+        diagnostics.addAll(other);
+        Assert.assertEquals(1, diagnostics.getErrorCount());
+        Assert.assertEquals(2, diagnostics.getWarningCount());
+        diagnostics.reset();
+        Assert.assertEquals(0, diagnostics.getErrorCount());
+        Assert.assertEquals(0, diagnostics.getWarningCount());
+    }
+
+    @Test
+    public void test_diagnosishistogram() {
+        DiagnosisHistogram histogram = new DiagnosisHistogram(2);
+        DiagnosticsSink sink = histogram;
+        Diagnosis e1 = new Diagnosis(DiagnosisType.INVALID_EXPECTED, "'WARC-Date' value", "2008", "yyyy-MM-dd'T'HH:mm:ss'Z'");
+        Diagnosis e2 = new Diagnosis(DiagnosisType.INVALID_EXPECTED, "'WARC-Date' value", "x", "yyyy-MM-dd'T'HH:mm:ss'Z'");
+        Diagnosis e3 = new Diagnosis(DiagnosisType.INVALID_EXPECTED, "Trailing newlines", "1", "2");
+        Diagnosis e4 = new Diagnosis(DiagnosisType.REQUIRED_MISSING, "'WARC-Type' value");
+        Diagnosis w1 = new Diagnosis(DiagnosisType.EMPTY, "'WARC-Target-URI' field");
+        sink.addError(e1);
+        sink.addError(e2);
+        sink.addError(e3);
+        sink.addError(e4);
+        sink.addWarning(w1);
+        Assert.assertEquals(4, histogram.getErrors());
+        Assert.assertEquals(1, histogram.getWarnings());
+        Assert.assertEquals(3, histogram.getErrorCount(DiagnosisType.INVALID_EXPECTED));
+        Assert.assertEquals(1, histogram.getErrorCount(DiagnosisType.REQUIRED_MISSING));
+        Assert.assertEquals(0, histogram.getErrorCount(DiagnosisType.EMPTY));
+        Assert.assertEquals(1, histogram.getWarningCount(DiagnosisType.EMPTY));
+        Map<String, Integer> entityCounts = histogram.getErrorEntityCounts(DiagnosisType.INVALID_EXPECTED);
+        Assert.assertEquals(2, entityCounts.size());
+        Assert.assertEquals(Integer.valueOf(2), entityCounts.get("'WARC-Date' value"));
+        Assert.assertEquals(Integer.valueOf(1), entityCounts.get("Trailing newlines"));
+        Assert.assertEquals(0, histogram.getWarningEntityCounts(DiagnosisType.INVALID).size());
+        Assert.assertEquals(Integer.valueOf(1), histogram.getWarningEntityCounts(DiagnosisType.EMPTY).get("'WARC-Target-URI' field"));
+        Assert.assertEquals(2, histogram.getErrorExamples().size());
+        Assert.assertSame(e1, histogram.getErrorExamples().get(0));
+        Assert.assertSame(e2, histogram.getErrorExamples().get(1));
+        Assert.assertEquals(1, histogram.getWarningExamples().size());
+
+        Assert.assertEquals("INVALID_EXPECTED: Trailing newlines [1, 2]", DiagnosisHistogram.formatMessage(e3));
+        Assert.assertEquals("REQUIRED_MISSING: 'WARC-Type' value", DiagnosisHistogram.formatMessage(e4));
+        String str = histogram.toString();
+        Assert.assertTrue(str.startsWith("Errors: 4\n  INVALID_EXPECTED: 3\n    'WARC-Date' value: 2\n    Trailing newlines: 1\n"));
+        Assert.assertTrue(str.contains("Warnings: 1\n  EMPTY: 1\n"));
+        Assert.assertTrue(str.contains("  - " + DiagnosisHistogram.formatMessage(w1) + "\n"));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getErrors());
+        Assert.assertEquals(0, histogram.getWarnings());
+        Assert.assertEquals(0, histogram.getErrorCount(DiagnosisType.INVALID_EXPECTED));
+        Assert.assertEquals(0, histogram.getErrorEntityCounts(DiagnosisType.INVALID_EXPECTED).size());
+        Assert.assertEquals(0, histogram.getErrorExamples().size());
+        Assert.assertEquals("Errors: 0\nWarnings: 0\n", histogram.toString());
+
+        histogram = new DiagnosisHistogram(0);
+        histogram.addError(e1);
+        Assert.assertEquals(1, histogram.getErrors());
+        Assert.assertEquals(0, histogram.getErrorExamples().size());
+        try {
+            new DiagnosisHistogram(-1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestFileChannelInputStream {
+
+    private SecureRandom random = new SecureRandom();
+
+    @Test
+    public void test_filechannelinputstream() throws IOException {
+        byte[] srcArr = new byte[16384];
+        random.nextBytes(srcArr);
+        File file = File.createTempFile("jwat-", ".dat");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(srcArr);
+        FileChannel channel = raf.getChannel();
+
+        try {
+            new FileChannelInputStream(null, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new FileChannelInputStream(channel, 10, 5);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+
+        /*
+         * Sequential reads.
+         */
+        FileChannelInputStream in = new FileChannelInputStream(channel, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int state = 0;
+        int c;
+        int read;
+        byte[] tmpArr = new byte[15];
+        Assert.assertEquals(srcArr.length, in.available());
+        while (true) {
+            if (state == 0) {
+                c = in.read();
+                if (c == -1) {
+                    break;
+                }
+                out.write(c);
+            } else {
+                read = in.read(tmpArr, 0, random.nextInt(15) + 1);
+                if (read == -1) {
+                    break;
+                }
+                out.write(tmpArr, 0, read);
+            }
+            state = (state + 1) % 2;
+            Assert.assertEquals(srcArr.length - in.getPosition(), in.available());
+        }
+        Assert.assertArrayEquals(srcArr, out.toByteArray());
+        Assert.assertEquals(0, in.read(tmpArr, 0, 0));
+        Assert.assertEquals(0, in.skip(10));
+        in.close();
+
+        /*
+         * Ranges, skips and mark/reset.
+         */
+        in = new FileChannelInputStream(channel, 100, 200);
+        Assert.assertTrue(in.markSupported());
+        try {
+            in.reset();
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        Assert.assertEquals(srcArr[100] & 255, in.read());
+        Assert.assertEquals(0, in.skip(-1));
+        Assert.assertEquals(49, in.skip(49));
+        in.mark(1);
+        Assert.assertEquals(srcArr[150] & 255, in.read());
+        in.reset();
+        Assert.assertEquals(150, in.getPosition());
+        Assert.assertEquals(50, in.skip(1000));
+        Assert.assertEquals(-1, in.read());
+        Assert.assertEquals(0, in.available());
+
+        // Independent streams do not affect each other.
+        FileChannelInputStream in1 = new FileChannelInputStream(channel, 0);
+        FileChannelInputStream in2 = new FileChannelInputStream(channel, 1000);
+        Assert.assertEquals(srcArr[1000] & 255, in2.read());
+        Assert.assertEquals(srcArr[0] & 255, in1.read());
+        Assert.assertEquals(srcArr[1001] & 255, in2.read());
+
+        raf.close();
+    }
+
+}
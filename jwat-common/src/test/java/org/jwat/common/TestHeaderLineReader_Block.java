@@ -0,0 +1,117 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestHeaderLineReader_Block {
+
+    public static final String TRAILER = "payload";
+
+    @Test
+    public void test_headerlinereader_block() throws IOException {
+        String[] headers = {
+                "",
+                "\r\n",
+                "\n",
+                "Name: value\r\n\r\n",
+                "Name: value\r\nName2:value2  \r\nName3:\r\n\r\n",
+                "Name: value\nName2: value2\n\n",
+                "Name: value\r\n\tcontinued\r\n  more\r\n\r\n",
+                "Content-Type: text/plain; charset=\"utf-8\"\r\n\r\n",
+                "Subject: =?US-ASCII?Q?Keith_Moore?=\r\n\r\n",
+                "Subject: a=b; c=d\r\n\r\n",
+                "Name: café\r\n\r\n",
+                "Na me: value\r\n\r\n",
+                "Name: val\rue\r\n\r\n",
+                "Name: val\u0001ue\r\n\r\n",
+                "garbage line\r\n\r\n",
+                "garbage\r\r\n\r\n",
+                ": no name\r\n\r\n",
+                "Name: value\r\n",
+                "Name: value",
+                "Name: \"unterminated\r\n\r\n",
+                "Name: value\r\n\u0001\r\nName2: value2\r\n\r\n",
+                "Name: value\r\n\r"
+        };
+        for (int i=0; i<headers.length; ++i) {
+            for (int pushbackSize=1; pushbackSize<=64; pushbackSize*=2) {
+                compare(headers[i], 8192, pushbackSize);
+                compare(headers[i], 16, pushbackSize);
+            }
+        }
+    }
+
+    /**
+     * Parse the same header using <code>readLine</code> on a length limited
+     * stream and the header block methods and compare the results.
+     */
+    public static void compare(String header, int maxSize, int pushbackSize) throws IOException {
+        byte[] bytes = (header + TRAILER).getBytes("ISO8859-1");
+        String msg = header + " (" + maxSize + "/" + pushbackSize + ")";
+
+        HeaderLineReader expectedReader = HeaderLineReader.getHeaderLineReader();
+        ByteCountingPushBackInputStream expectedIn = new ByteCountingPushBackInputStream(new ByteArrayInputStream(bytes), pushbackSize);
+        PushbackInputStream pbin = new PushbackInputStream(new MaxLengthRecordingInputStream(expectedIn, maxSize), maxSize);
+
+        HeaderLineReader blockReader = HeaderLineReader.getHeaderLineReader();
+        ByteCountingPushBackInputStream blockIn = new ByteCountingPushBackInputStream(new ByteArrayInputStream(bytes), pushbackSize);
+        blockReader.beginBlock(blockIn, maxSize);
+
+        HeaderLine expected;
+        HeaderLine line;
+        boolean bLoop = true;
+        while (bLoop) {
+            expected = expectedReader.readLine(pbin);
+            line = blockReader.readBlockLine();
+            Assert.assertEquals(msg, expectedReader.bEof, blockReader.bEof);
+            Assert.assertEquals(msg, expected.type, line.type);
+            Assert.assertEquals(msg, expected.name, line.name);
+            Assert.assertEquals(msg, expected.value, line.value);
+            Assert.assertEquals(msg, expected.line, line.line);
+            Assert.assertEquals(msg, expected.bfErrors, line.bfErrors);
+            Assert.assertArrayEquals(msg, expected.raw, line.raw);
+            if (expectedReader.bEof || (expected.type == HeaderLine.HLT_LINE && expected.line.length() == 0)) {
+                bLoop = false;
+            }
+        }
+        blockReader.endBlock();
+        Assert.assertEquals(msg, expectedIn.getConsumed(), blockIn.getConsumed());
+        Assert.assertArrayEquals(msg, readRest(expectedIn), readRest(blockIn));
+    }
+
+    public static byte[] readRest(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            out.write(c);
+        }
+        return out.toByteArray();
+    }
+
+}
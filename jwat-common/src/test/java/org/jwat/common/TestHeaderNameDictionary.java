@@ -0,0 +1,107 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestHeaderNameDictionary {
+
+    public static final String[] NAMES = {
+        null,
+        "Content-Type",
+        "Content-Length",
+        "WARC-Type",
+        "content-type",
+        "",
+        "Date"
+    };
+
+    @Test
+    public void test_headernamedictionary() throws UnsupportedEncodingException {
+        try {
+            new HeaderNameDictionary(null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+
+        HeaderNameDictionary dictionary = new HeaderNameDictionary(NAMES);
+        String[] names = dictionary.getNames();
+        Assert.assertEquals(NAMES.length, names.length);
+        Assert.assertNull(names[0]);
+        Assert.assertEquals("Content-Type", names[1]);
+        Assert.assertNull(names[4]);
+        Assert.assertNull(names[5]);
+
+        Assert.assertNull(dictionary.getName(-1));
+        Assert.assertNull(dictionary.getName(0));
+        Assert.assertSame(NAMES[3], dictionary.getName(3));
+        Assert.assertNull(dictionary.getName(NAMES.length));
+
+        Object[][] cases = {
+                {"Content-Type", 1, "Content-Type"},
+                {"content-type", 1, null},
+                {"CONTENT-TYPE", 1, null},
+                {"Content-Length", 2, "Content-Length"},
+                {"warc-TYPE", 3, null},
+                {"WARC-Type", 3, "WARC-Type"},
+                {"Date", 6, "Date"},
+                {"DATE", 6, null},
+                {"Dates", HeaderNameDictionary.UNKNOWN, null},
+                {"Dat", HeaderNameDictionary.UNKNOWN, null},
+                {"X-Unknown", HeaderNameDictionary.UNKNOWN, null},
+                {"", HeaderNameDictionary.UNKNOWN, null}
+        };
+        String name;
+        byte[] bytes;
+        for (int i=0; i<cases.length; ++i) {
+            name = (String) cases[i][0];
+            Assert.assertEquals(name, cases[i][1], dictionary.getIndex(name));
+            Assert.assertEquals(name, cases[i][1], dictionary.getIndex(new StringBuilder(name)));
+            Assert.assertEquals(name, cases[i][2], dictionary.getExactName(name));
+            bytes = ("::" + name + "::").getBytes("US-ASCII");
+            Assert.assertEquals(name, cases[i][1], dictionary.getIndex(bytes, 2, bytes.length - 2));
+            Assert.assertEquals(name, cases[i][2], dictionary.getExactName(bytes, 2, bytes.length - 2));
+            if (cases[i][2] != null) {
+                Assert.assertSame(dictionary.getName((Integer) cases[i][1]), dictionary.getExactName(bytes, 2, bytes.length - 2));
+            }
+        }
+
+        dictionary = new HeaderNameDictionary(new String[0]);
+        Assert.assertEquals(0, dictionary.getNames().length);
+        Assert.assertEquals(HeaderNameDictionary.UNKNOWN, dictionary.getIndex("Content-Type"));
+        Assert.assertNull(dictionary.getExactName("Content-Type"));
+    }
+
+    @Test
+    public void test_headernamedictionary_httpheader() {
+        HeaderNameDictionary dictionary = HttpHeader.fieldNameDictionary;
+        for (int i=1; i<HttpHeader.FN_IDX_STRINGS.length; ++i) {
+            Assert.assertEquals(i, dictionary.getIndex(HttpHeader.FN_IDX_STRINGS[i]));
+            Assert.assertEquals(i, dictionary.getIndex(HttpHeader.FN_IDX_STRINGS[i].toLowerCase()));
+            Assert.assertEquals(i, dictionary.getIndex(HttpHeader.FN_IDX_STRINGS[i].toUpperCase()));
+        }
+        Assert.assertEquals(HttpHeader.FN_IDX_CONTENT_TYPE, dictionary.getIndex("content-TYPE"));
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestTimestampCodec {
+
+    public static SimpleDateFormat getDateFormat(String pattern) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern);
+        dateFormat.setLenient(false);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat;
+    }
+
+    @Test
+    public void test_timestampcodec_compare() throws ParseException {
+        SimpleDateFormat warcFormat = getDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        SimpleDateFormat arcFormat = getDateFormat("yyyyMMddHHmmss");
+        TimestampCodec codec = new TimestampCodec();
+        Random random = new Random(42);
+        long millis;
+        long seconds;
+        String warcDateStr;
+        String arcDateStr;
+        for (int i=0; i<10000; ++i) {
+            // 1970 to 2100.
+            millis = (long) (random.nextDouble() * 4102444800000L);
+            seconds = millis / 1000L * 1000L;
+            warcDateStr = warcFormat.format(new Date(millis));
+            arcDateStr = arcFormat.format(new Date(millis));
+            Assert.assertEquals(warcDateStr, codec.formatWarcDate(millis));
+            Assert.assertEquals(arcDateStr, codec.formatArcDate(millis));
+            Assert.assertEquals(warcFormat.parse(warcDateStr).getTime(), codec.parseWarcDate(warcDateStr));
+            Assert.assertEquals(arcFormat.parse(arcDateStr).getTime(), codec.parseArcDate(arcDateStr));
+            Assert.assertEquals(seconds, codec.parseWarcDate(warcDateStr));
+            Assert.assertEquals(seconds, codec.parseArcDate(arcDateStr));
+            Assert.assertEquals(millis, codec.parseWarcDate(codec.formatWarcDate(millis, 3)));
+        }
+        // Leap days and year boundaries.
+        String[] dates = {
+                "1970-01-01T00:00:00Z",
+                "1999-12-31T23:59:59Z",
+                "2000-02-29T12:00:00Z",
+                "2004-02-29T00:00:00Z",
+                "2100-03-01T00:00:00Z",
+                "2400-02-29T23:59:59Z",
+                "9999-12-31T23:59:59Z"
+        };
+        for (int i=0; i<dates.length; ++i) {
+            millis = warcFormat.parse(dates[i]).getTime();
+            Assert.assertEquals(dates[i], millis, codec.parseWarcDate(dates[i]));
+            Assert.assertEquals(dates[i], codec.formatWarcDate(millis));
+        }
+    }
+
+    @Test
+    public void test_timestampcodec_warc() {
+        TimestampCodec codec = new TimestampCodec();
+        long millis = 1328708331000L;
+        Assert.assertEquals("2012-02-08T13:38:51Z", codec.formatWarcDate(millis));
+        Assert.assertEquals("2012-02-08T13:38:51Z", codec.formatWarcDate(millis + 999));
+        Assert.assertEquals("2012-02-08T13:38:51Z", codec.formatWarcDate(millis, 0));
+        Assert.assertEquals("2012-02-08T13:38:51.1Z", codec.formatWarcDate(millis + 123, 1));
+        Assert.assertEquals("2012-02-08T13:38:51.123Z", codec.formatWarcDate(millis + 123, 3));
+        Assert.assertEquals("2012-02-08T13:38:51.012000Z", codec.formatWarcDate(millis + 12, 6));
+        Assert.assertEquals("2012-02-08T13:38:51.999000000Z", codec.formatWarcDate(millis + 999, 9));
+        try {
+            codec.formatWarcDate(millis, -1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            codec.formatWarcDate(millis, 10);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        // Same second returns the cached string.
+        Assert.assertSame(codec.formatWarcDate(millis), codec.formatWarcDate(millis + 500));
+
+        Object[][] cases = {
+                {"2012-02-08T13:38:51Z", millis},
+                {"2012-02-08t13:38:51z", millis},
+                {"2012-02-08T13:38:51.5Z", millis + 500},
+                {"2012-02-08T13:38:51.05Z", millis + 50},
+                {"2012-02-08T13:38:51.123Z", millis + 123},
+                {"2012-02-08T13:38:51.123456789Z", millis + 123},
+                {"2012-02-08T13:38:52Z", millis + 1000},
+                {null, TimestampCodec.INVALID},
+                {"", TimestampCodec.INVALID},
+                {"fail", TimestampCodec.INVALID},
+                {"yyyy-MM-ddTHH:mm:ssZ", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:51", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:51.Z", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:51.1234567890Z", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:51.12aZ", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:51,123Z", TimestampCodec.INVALID},
+                {"2012-02-08 13:38:51Z", TimestampCodec.INVALID},
+                {"2012/02/08T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-02-08T13-38-51Z", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:51X", TimestampCodec.INVALID},
+                {"2012-00-08T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-13-08T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-02-00T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-02-30T13:38:51Z", TimestampCodec.INVALID},
+                {"2011-02-29T13:38:51Z", TimestampCodec.INVALID},
+                {"1900-02-29T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-04-31T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-02-08T24:00:00Z", TimestampCodec.INVALID},
+                {"2012-02-08T13:60:51Z", TimestampCodec.INVALID},
+                {"2012-02-08T13:38:60Z", TimestampCodec.INVALID},
+                {"-012-02-08T13:38:51Z", TimestampCodec.INVALID},
+                {"2012-+2-08T13:38:51Z", TimestampCodec.INVALID}
+        };
+        String dateStr;
+        for (int i=0; i<cases.length; ++i) {
+            dateStr = (String) cases[i][0];
+            // Parse twice to exercise the last second cache.
+            Assert.assertEquals(dateStr, cases[i][1], codec.parseWarcDate(dateStr));
+            Assert.assertEquals(dateStr, cases[i][1], codec.parseWarcDate(dateStr));
+            if (dateStr != null) {
+                Assert.assertEquals(dateStr, cases[i][1], codec.parseWarcDate(new StringBuilder(dateStr)));
+            }
+        }
+    }
+
+    @Test
+    public void test_timestampcodec_arc() {
+        TimestampCodec codec = new TimestampCodec();
+        long millis = 1324755000000L;
+        Assert.assertEquals("20111224193000", codec.formatArcDate(millis));
+        Assert.assertEquals("20111224193000", codec.formatArcDate(millis + 999));
+        Assert.assertSame(codec.formatArcDate(millis), codec.formatArcDate(millis + 1));
+        Assert.assertEquals("19700101000000", codec.formatArcDate(0));
+        Assert.assertEquals("19691231235959", codec.formatArcDate(-1));
+
+        Object[][] cases = {
+                {"20111224193000", millis},
+                {"20111224193001", millis + 1000},
+                {"19700101000000", 0L},
+                {null, TimestampCodec.INVALID},
+                {"", TimestampCodec.INVALID},
+                {"fail", TimestampCodec.INVALID},
+                {"yyyyMMddHHmmss", TimestampCodec.INVALID},
+                {"2011122419300", TimestampCodec.INVALID},
+                {"201112241930000", TimestampCodec.INVALID},
+                {"20111324193000", TimestampCodec.INVALID},
+                {"20110229193000", TimestampCodec.INVALID},
+                {"20111224243000", TimestampCodec.INVALID},
+                {"2011-224193000", TimestampCodec.INVALID}
+        };
+        String dateStr;
+        for (int i=0; i<cases.length; ++i) {
+            dateStr = (String) cases[i][0];
+            Assert.assertEquals(dateStr, cases[i][1], codec.parseArcDate(dateStr));
+            Assert.assertEquals(dateStr, cases[i][1], codec.parseArcDate(dateStr));
+        }
+    }
+
+    @Test
+    public void test_timestampcodec_epochseconds() {
+        Assert.assertEquals(0, TimestampCodec.toEpochSeconds(1970, 1, 1, 0, 0, 0));
+        Assert.assertEquals(-1, TimestampCodec.toEpochSeconds(1969, 12, 31, 23, 59, 59));
+        Assert.assertEquals(951782400L, TimestampCodec.toEpochSeconds(2000, 2, 29, 0, 0, 0));
+        Assert.assertEquals(TimestampCodec.INVALID, TimestampCodec.toEpochSeconds(-1, 1, 1, 0, 0, 0));
+        Assert.assertTrue(TimestampCodec.isLeapYear(2000));
+        Assert.assertTrue(TimestampCodec.isLeapYear(2012));
+        Assert.assertFalse(TimestampCodec.isLeapYear(1900));
+        Assert.assertFalse(TimestampCodec.isLeapYear(2011));
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.jwat.common.ChannelPushBackInputStream;
+
+/**
+ * A GZip reader which inflates data directly from a large input window over
+ * a <code>FileChannel</code> or a <code>ByteBuffer</code>, such as a
+ * <code>MappedByteBuffer</code> region.
+ * Compressed data is passed to the inflater in place instead of being copied
+ * through a synchronized push back stream into a separate input buffer, and
+ * the data following an entry is pushed back by moving the window position.
+ * A buffer backed by an accessible array is inflated without any copying.
+ * Since the Java 6 <code>Inflater</code> only accepts arrays, channels and
+ * direct buffers are copied into the window once.
+ * Entry offsets are channel positions when reading a channel and relative
+ * to the initial buffer position when reading a buffer.
+ * The channel is not closed by this reader.
+ * <p>
+ * Since entry offsets and lengths are known once an entry has been closed,
+ * entries can be copied byte for byte to another channel without inflating
+ * and deflating the data again, see <code>transferEntry</code>. Combined
+ * with skip-length seeking only the part of an entry actually read is
+ * inflated.
+ *
+ * @author nicl
+ */
+public class GzipChannelReader extends GzipReader {
+
+    /** Windowed input stream, also available as <code>pbin</code>. */
+    protected ChannelPushBackInputStream cpbin;
+
+    /** Channel being read, if not reading a buffer. */
+    protected FileChannel channel;
+
+    /** Buffer being read, if not reading a channel. */
+    protected ByteBuffer buffer;
+
+    /** Initial position of the buffer being read. */
+    protected int bufferPosition;
+
+    /**
+     * Construct a GZip reader reading a channel from the supplied position
+     * using the default window size.
+     * @param channel <code>FileChannel</code> of GZip file
+     * @param position start position in the channel
+     */
+    public GzipChannelReader(FileChannel channel, long position) {
+        this(channel, position, ChannelPushBackInputStream.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a GZip reader reading a channel from the supplied position.
+     * @param channel <code>FileChannel</code> of GZip file
+     * @param position start position in the channel
+     * @param windowSize input window size
+     */
+    public GzipChannelReader(FileChannel channel, long position, int windowSize) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel is null!");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "windowSize is less or equals to zero: " + windowSize);
+        }
+        this.channel = channel;
+        cpbin = new ChannelPushBackInputStream(channel, position, windowSize);
+        pbin = cpbin;
+    }
+
+    /**
+     * Construct a GZip reader reading the remaining data of a buffer using
+     * the default window size.
+     * @param buffer <code>ByteBuffer</code> with GZip entries
+     */
+    public GzipChannelReader(ByteBuffer buffer) {
+        this(buffer, ChannelPushBackInputStream.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a GZip reader reading the remaining data of a buffer.
+     * @param buffer <code>ByteBuffer</code> with GZip entries
+     * @param windowSize input window size, if the buffer has no accessible array
+     */
+    public GzipChannelReader(ByteBuffer buffer, int windowSize) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer is null!");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "windowSize is less or equals to zero: " + windowSize);
+        }
+        this.buffer = buffer.duplicate();
+        bufferPosition = buffer.position();
+        cpbin = new ChannelPushBackInputStream(buffer, windowSize);
+        pbin = cpbin;
+    }
+
+    @Override
+    protected int fillInput() throws IOException {
+        int available = cpbin.fill();
+        if (available != -1) {
+            inf.setInput(cpbin.getWindow(), cpbin.getWindowPosition(), available);
+            cpbin.consume(available);
+        }
+        return available;
+    }
+
+    @Override
+    protected void unreadInput(int len) throws IOException {
+        if (len > lastInput) {
+            throw new IOException("Remaining larger than lastInput!");
+        }
+        cpbin.rewind(len);
+    }
+
+    /**
+     * Copy the raw compressed bytes of an entry, including header and
+     * trailer, to the supplied channel. The entry is closed first, if it has
+     * not been read to the end, since its length is only known then.
+     * Channels are copied using <code>FileChannel.transferTo</code>.
+     * @param entry GZip entry read by this reader
+     * @param target destination channel
+     * @return number of bytes copied
+     * @throws IOException if an i/o error occurs while copying the entry
+     */
+    public long transferEntry(GzipEntry entry, WritableByteChannel target) throws IOException {
+        if (entry == null) {
+            throw new IllegalArgumentException("entry is null!");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("target is null!");
+        }
+        entry.close();
+        if (channel != null) {
+            return transfer(channel, entry.startOffset, entry.consumed, target);
+        } else {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(bufferPosition + (int)(entry.startOffset + entry.consumed));
+            slice.position(bufferPosition + (int)entry.startOffset);
+            while (slice.hasRemaining()) {
+                target.write(slice);
+            }
+            return entry.consumed;
+        }
+    }
+
+    /**
+     * Copy a range of a file channel to another channel. The position of the
+     * source channel is not changed. If <code>transferTo</code> stops making
+     * progress, the rest of the range is copied through a buffer.
+     * @param channel source channel
+     * @param position start position in the source channel
+     * @param count number of bytes to copy
+     * @param target destination channel
+     * @return number of bytes copied
+     * @throws IOException if an i/o error occurs or the range is truncated
+     */
+    public static long transfer(FileChannel channel, long position, long count,
+                                WritableByteChannel target) throws IOException {
+        long remaining = count;
+        long transferred;
+        while (remaining > 0) {
+            transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+        if (remaining > 0) {
+            ByteBuffer tmpBuf = ByteBuffer.allocate((int)Math.min(remaining, SKIP_READ_BUFFER_SIZE));
+            int read;
+            while (remaining > 0) {
+                tmpBuf.clear();
+                if (remaining < tmpBuf.capacity()) {
+                    tmpBuf.limit((int)remaining);
+                }
+                read = channel.read(tmpBuf, position);
+                if (read == -1) {
+                    throw new IOException("Unexpected EOF, " + remaining + " bytes not copied!");
+                }
+                tmpBuf.flip();
+                while (tmpBuf.hasRemaining()) {
+                    target.write(tmpBuf);
+                }
+                position += read;
+                remaining -= read;
+            }
+        }
+        return count;
+    }
+
+}
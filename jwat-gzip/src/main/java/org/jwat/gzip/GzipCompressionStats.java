@@ -0,0 +1,224 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression statistics of a <code>GzipWriter</code>.
+ * Records the number of entries and uncompressed bytes written at each
+ * compression level, the total uncompressed and compressed sizes and the
+ * time spent deflating, so the bytes saved can be weighed against the CPU
+ * spent. Not thread-safe, updated by the writer only.
+ *
+ * @author nicl
+ */
+public class GzipCompressionStats {
+
+    /** Number of entries written. */
+    protected long entries;
+
+    /** Number of entries written at each compression level 0-9. */
+    protected final long[] levelEntries = new long[10];
+
+    /** Number of uncompressed bytes written at each compression level 0-9. */
+    protected final long[] levelBytes = new long[10];
+
+    /** Total number of uncompressed bytes. */
+    protected long uncompressedBytes;
+
+    /** Total number of compressed bytes. */
+    protected long compressedBytes;
+
+    /** Time spent deflating in nanoseconds. */
+    protected long deflateNanos;
+
+    /** Number of entries written at a lower level than configured, after sampling. */
+    protected long adaptiveEntries;
+
+    /** Number of uncompressed bytes written at a lower level than configured, after sampling. */
+    protected long adaptiveBytes;
+
+    /**
+     * Map a deflater compression level to a level between 0 and 9.
+     * @param level deflater compression level
+     * @return compression level between 0 and 9
+     */
+    public static int effectiveLevel(int level) {
+        return level == Deflater.DEFAULT_COMPRESSION ? 6 : level;
+    }
+
+    /**
+     * Record a written entry.
+     * @param level compression level of the entry
+     * @param uncompressedSize number of uncompressed bytes
+     * @param compressedSize number of compressed bytes
+     * @param bAdaptive boolean indicating whether the level was lowered after sampling
+     */
+    public void addEntry(int level, long uncompressedSize, long compressedSize, boolean bAdaptive) {
+        level = effectiveLevel(level);
+        ++entries;
+        ++levelEntries[level];
+        levelBytes[level] += uncompressedSize;
+        uncompressedBytes += uncompressedSize;
+        compressedBytes += compressedSize;
+        if (bAdaptive) {
+            ++adaptiveEntries;
+            adaptiveBytes += uncompressedSize;
+        }
+    }
+
+    /**
+     * Record time spent deflating.
+     * @param nanos time in nanoseconds
+     */
+    public void addDeflateNanos(long nanos) {
+        deflateNanos += nanos;
+    }
+
+    /**
+     * Add the statistics of another writer to these statistics.
+     * @param other statistics to add
+     */
+    public void add(GzipCompressionStats other) {
+        entries += other.entries;
+        for (int i=0; i<levelEntries.length; ++i) {
+            levelEntries[i] += other.levelEntries[i];
+            levelBytes[i] += other.levelBytes[i];
+        }
+        uncompressedBytes += other.uncompressedBytes;
+        compressedBytes += other.compressedBytes;
+        deflateNanos += other.deflateNanos;
+        adaptiveEntries += other.adaptiveEntries;
+        adaptiveBytes += other.adaptiveBytes;
+    }
+
+    /**
+     * Returns the number of entries written.
+     * @return number of entries written
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the number of entries written at a compression level.
+     * @param level compression level
+     * @return number of entries written at the level
+     */
+    public long getLevelEntries(int level) {
+        return levelEntries[effectiveLevel(level)];
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written at a compression level.
+     * @param level compression level
+     * @return number of uncompressed bytes written at the level
+     */
+    public long getLevelBytes(int level) {
+        return levelBytes[effectiveLevel(level)];
+    }
+
+    /**
+     * Returns the total number of uncompressed bytes.
+     * @return total number of uncompressed bytes
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * Returns the total number of compressed bytes.
+     * @return total number of compressed bytes
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Returns the number of bytes saved by compressing.
+     * @return uncompressed bytes minus compressed bytes
+     */
+    public long getBytesSaved() {
+        return uncompressedBytes - compressedBytes;
+    }
+
+    /**
+     * Returns the time spent deflating in nanoseconds.
+     * @return time spent deflating
+     */
+    public long getDeflateNanos() {
+        return deflateNanos;
+    }
+
+    /**
+     * Returns the number of entries written at a lower level than configured
+     * because the sampled data was incompressible.
+     * @return number of adaptively compressed entries
+     */
+    public long getAdaptiveEntries() {
+        return adaptiveEntries;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written at a lower level than
+     * configured because the sampled data was incompressible.
+     * @return number of adaptively compressed bytes
+     */
+    public long getAdaptiveBytes() {
+        return adaptiveBytes;
+    }
+
+    /**
+     * Reset all the statistics.
+     */
+    public void reset() {
+        entries = 0;
+        for (int i=0; i<levelEntries.length; ++i) {
+            levelEntries[i] = 0;
+            levelBytes[i] = 0;
+        }
+        uncompressedBytes = 0;
+        compressedBytes = 0;
+        deflateNanos = 0;
+        adaptiveEntries = 0;
+        adaptiveBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("entries: ").append(entries);
+        sb.append(", uncompressed: ").append(uncompressedBytes);
+        sb.append(", compressed: ").append(compressedBytes);
+        sb.append(", saved: ").append(getBytesSaved());
+        sb.append(", deflate ms: ").append(deflateNanos / 1000000);
+        sb.append(", adaptive entries: ").append(adaptiveEntries);
+        sb.append(", adaptive bytes: ").append(adaptiveBytes);
+        sb.append(", levels: [");
+        for (int i=0; i<levelEntries.length; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(levelEntries[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+}
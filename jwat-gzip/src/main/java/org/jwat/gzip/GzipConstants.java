@@ -79,6 +79,40 @@ public class GzipConstants {
     /** Reserved flag bits mask. */
     public static final int FLG_FRESERVED = 224;
 
+    /*
+     * Extra subfields.
+     */
+
+    /** Skip-length extra subfield ID1. */
+    public static final byte SKIP_LENGTH_SI1 = 's';
+    /** Skip-length extra subfield ID2. */
+    public static final byte SKIP_LENGTH_SI2 = 'l';
+    /** Skip-length extra subfield data length, an unsigned 64-bit little-endian entry length. */
+    public static final int SKIP_LENGTH_LEN = 8;
+
+    /** BGZF block size extra subfield ID1. */
+    public static final byte BGZF_SI1 = 'B';
+    /** BGZF block size extra subfield ID2. */
+    public static final byte BGZF_SI2 = 'C';
+    /** BGZF block size extra subfield data length, an unsigned 16-bit little-endian block size minus one. */
+    public static final int BGZF_SLEN = 2;
+
+    /*
+     * BGZF blocks.
+     */
+
+    /** Size of a BGZF block header with only the block size extra subfield. */
+    public static final int BGZF_HEADER_SIZE = 18;
+    /** Maximum size of a BGZF block, including header and trailer. */
+    public static final int BGZF_MAX_BLOCK_SIZE = 65536;
+    /** Maximum amount of uncompressed data in a BGZF block, as used by htslib. */
+    public static final int BGZF_MAX_DATA_SIZE = 0xff00;
+    /** Empty BGZF block used as end-of-file marker. */
+    public static final byte[] BGZF_EOF = new byte[] {
+        (byte)0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0,
+        0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
     /** FAT filesystem OS name. */
     public static final String OS_STRING_FAT_FS = "FAT filesystem (MS-DOS, OS/2, NT/Win32)";
     /** Amiga OS name. */
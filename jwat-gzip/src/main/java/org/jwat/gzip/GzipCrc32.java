@@ -0,0 +1,113 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+/**
+ * CRC32 helper methods not available in <code>java.util.zip.CRC32</code>.
+ * The combine method is a port of <code>crc32_combine()</code> from zlib and
+ * allows CRC32 values of consecutive blocks, computed independently, to be
+ * joined into the CRC32 of the whole.
+ *
+ * @author nicl
+ */
+public class GzipCrc32 {
+
+    /** Reversed CRC32 polynomial. */
+    public static final long CRC32_POLYNOMIAL = 0xedb88320L;
+
+    /**
+     * Static utility class, constructor is not used.
+     */
+    protected GzipCrc32() {
+    }
+
+    /**
+     * Combine the CRC32 of two consecutive blocks of data.
+     * @param crc1 CRC32 of the first block
+     * @param crc2 CRC32 of the second block
+     * @param len2 length of the second block
+     * @return CRC32 of the first block followed by the second block
+     */
+    public static long combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // Operator for one zero bit.
+        odd[0] = CRC32_POLYNOMIAL;
+        long row = 1;
+        for (int n=1; n<32; ++n) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Operator for two zero bits.
+        gf2MatrixSquare(even, odd);
+        // Operator for four zero bits.
+        gf2MatrixSquare(odd, even);
+        // Apply len2 zero bytes to crc1, the first square puts the operator
+        // for one zero byte, eight zero bits, in even.
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+        return (crc1 ^ crc2) & 0xffffffffL;
+    }
+
+    /**
+     * Multiply a GF(2) matrix by a vector.
+     * @param mat matrix
+     * @param vec vector
+     * @return product
+     */
+    protected static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        int idx = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[idx];
+            }
+            vec >>>= 1;
+            ++idx;
+        }
+        return sum;
+    }
+
+    /**
+     * Square a GF(2) matrix.
+     * @param square destination matrix
+     * @param mat matrix to square
+     */
+    protected static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n=0; n<32; ++n) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+}
@@ -27,7 +27,6 @@ import java.io.OutputStream;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.zip.DataFormatException;
 
 /**
  * GZip entry container. Exposes methods for accessing the entry payload's
@@ -49,6 +48,12 @@ public class GzipEntry implements Closeable {
     /** Bytes consumed while validating this entry. */
     public long consumed;
 
+    /** Entry length from the skip-length extra subfield or -1, if not present. */
+    public long skipLength = -1;
+
+    /** Block size from the BGZF extra subfield or -1, if not present. */
+    public int bgzfBlockSize = -1;
+
     /** Leading magic. */
     public int magic;
     /** Compression mode. */
@@ -116,6 +121,9 @@ public class GzipEntry implements Closeable {
     /** End of uncompressed file status. */
     protected boolean bEof = false;
 
+    /** Is the uncompressed data already inflated and buffered in memory. */
+    protected boolean bBuffered = false;
+
     /** Validation errors and warnings. */
     public final Diagnostics<Diagnosis> diagnostics = new Diagnostics<Diagnosis>();
 
@@ -175,7 +183,7 @@ public class GzipEntry implements Closeable {
      * @return input stream to read uncompressed data or null
      */
     public InputStream getInputStream() {
-        if (reader == null) {
+        if (reader == null && !bBuffered) {
             throw new IllegalStateException("Not in reading state!");
         }
         return in;
@@ -211,18 +219,12 @@ public class GzipEntry implements Closeable {
         }
         byte[] tmpBuf = new byte[WRITE_FROM_BUFFER_SIZE];
         int read;
-        try {
-            while ((read = writer.readCompressed(in, tmpBuf, 0, tmpBuf.length)) != -1) {
-                writer.out.write(tmpBuf, 0, read);
-            }
-        }
-        catch (DataFormatException e) {
-            throw new IOException(e);
+        // The entry output stream takes care of blocked and parallel
+        // compression and of the sync flush policy of the writer.
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
         }
-        writer.writeTrailer(this);
-        // Subsequent getOutputStream calls will return null because the GZip
-        // entry is considered closed after the trailer has been written.
-        out = null;
+        close();
     }
 
     @Override
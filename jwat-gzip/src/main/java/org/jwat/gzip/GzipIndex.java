@@ -0,0 +1,565 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Member index for (multi-part) GZip files.
+ * For each GZip entry the index records the start offset, the compressed
+ * length (the number of bytes occupied by the entry including header and
+ * trailer), the uncompressed length and the CRC32 of the uncompressed data.
+ * The index is built in one sequential pass over the GZip file and can be
+ * persisted as a compact binary sidecar file next to the archive.
+ * A <code>GzipReader</code> constructed with a <code>RandomAccessFile</code>
+ * and an index can then open any entry directly.
+ * The index of a BGZF file can be built from the block headers and trailers
+ * alone, without inflating any data, and maps uncompressed offsets to
+ * blocks.
+ *
+ * @author nicl
+ */
+public class GzipIndex {
+
+    /** File extension appended to the GZip file name for the sidecar file. */
+    public static final String SIDECAR_EXTENSION = ".gzidx";
+
+    /** Magic number identifying a persisted index ("JGZI"). */
+    public static final int INDEX_MAGIC = 0x4a475a49;
+
+    /** Persisted index format version. */
+    public static final int INDEX_VERSION = 1;
+
+    /** Number of bytes used by the persisted magic, version and size. */
+    public static final int INDEX_HEADER_SIZE = 4 + 4 + 4;
+
+    /** Number of bytes used by each persisted entry. */
+    public static final int INDEX_ENTRY_SIZE = 8 + 8 + 8 + 4;
+
+    /** Initial capacity of the entry arrays. */
+    protected static final int INITIAL_CAPACITY = 256;
+
+    /** Number of entries in the index. */
+    protected int size;
+
+    /** Entry start offsets. */
+    protected long[] startOffsets;
+
+    /** Entry compressed lengths, including header and trailer. */
+    protected long[] compressedLengths;
+
+    /** Entry uncompressed lengths. */
+    protected long[] uncompressedLengths;
+
+    /** Entry CRC32 values of the uncompressed data. */
+    protected int[] crc32s;
+
+    /** Entry offsets in the concatenated uncompressed data. */
+    protected long[] uncompressedOffsets;
+
+    /**
+     * Construct an empty index.
+     */
+    public GzipIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Construct an empty index with room for the specified number of
+     * entries before the arrays need to grow.
+     * @param capacity initial number of entries
+     */
+    protected GzipIndex(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        startOffsets = new long[capacity];
+        compressedLengths = new long[capacity];
+        uncompressedLengths = new long[capacity];
+        crc32s = new int[capacity];
+        uncompressedOffsets = new long[capacity];
+    }
+
+    /**
+     * Build an index by reading all the entries in the supplied GZip
+     * input stream. The stream is not closed.
+     * @param in GZip input stream positioned at the first entry
+     * @return index of all the entries read
+     * @throws IOException if an i/o error occurs while reading entries
+     */
+    public static GzipIndex build(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("'in' is null!");
+        }
+        GzipReader reader = new GzipReader(in);
+        GzipIndex index = build(reader);
+        // Do not close the reader as it would close the supplied stream.
+        if (reader.inf != null) {
+            reader.inf.end();
+            reader.inf = null;
+        }
+        return index;
+    }
+
+    /**
+     * Build an index by reading all the remaining entries from the supplied
+     * GZip reader.
+     * @param reader GZip reader
+     * @return index of all the entries read
+     * @throws IOException if an i/o error occurs while reading entries
+     */
+    public static GzipIndex build(GzipReader reader) throws IOException {
+        if (reader == null) {
+            throw new IllegalArgumentException("'reader' is null!");
+        }
+        GzipIndex index = new GzipIndex();
+        GzipEntry entry;
+        while ((entry = reader.getNextEntry()) != null) {
+            entry.close();
+            index.add(entry);
+        }
+        return index;
+    }
+
+    /**
+     * Build an index of a BGZF file by reading the block size from the header
+     * and the CRC32 and uncompressed size from the trailer of each block,
+     * without inflating any data.
+     * @param raf random access file of BGZF file
+     * @return index of all the blocks in the file
+     * @throws IOException if an i/o error occurs or a block is not a valid BGZF block
+     */
+    public static GzipIndex buildBgzf(RandomAccessFile raf) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        GzipIndex index = new GzipIndex();
+        byte[] headerBytes = new byte[12];
+        byte[] extraBytes = new byte[65535];
+        byte[] trailerBytes = new byte[8];
+        long length = raf.length();
+        long offset = 0;
+        int xlen;
+        int idx;
+        int len;
+        int blockSize;
+        while (offset < length) {
+            raf.seek(offset);
+            raf.readFully(headerBytes);
+            if ((headerBytes[0] & 255) != (GzipConstants.GZIP_MAGIC & 255)
+                    || (headerBytes[1] & 255) != ((GzipConstants.GZIP_MAGIC >> 8) & 255)
+                    || headerBytes[2] != GzipConstants.CM_DEFLATE
+                    || (headerBytes[3] & GzipConstants.FLG_FEXTRA) == 0) {
+                throw new IOException("Invalid BGZF block header at offset: " + offset);
+            }
+            xlen = ((headerBytes[11] & 255) << 8) | (headerBytes[10] & 255);
+            raf.readFully(extraBytes, 0, xlen);
+            blockSize = -1;
+            idx = 0;
+            while (idx + 4 <= xlen) {
+                len = ((extraBytes[idx + 3] & 255) << 8) | (extraBytes[idx + 2] & 255);
+                if (extraBytes[idx] == GzipConstants.BGZF_SI1
+                        && extraBytes[idx + 1] == GzipConstants.BGZF_SI2
+                        && len == GzipConstants.BGZF_SLEN
+                        && idx + 4 + len <= xlen) {
+                    blockSize = (((extraBytes[idx + 5] & 255) << 8) | (extraBytes[idx + 4] & 255)) + 1;
+                }
+                idx += 4 + len;
+            }
+            if (blockSize < 12 + xlen + 8) {
+                throw new IOException("Missing or invalid BGZF block size at offset: " + offset);
+            }
+            raf.seek(offset + blockSize - 8);
+            raf.readFully(trailerBytes);
+            index.add(offset, blockSize,
+                    (((trailerBytes[7] & 255L) << 24) | ((trailerBytes[6] & 255) << 16) | ((trailerBytes[5] & 255) << 8) | (trailerBytes[4] & 255)),
+                    ((trailerBytes[3] & 255) << 24) | ((trailerBytes[2] & 255) << 16) | ((trailerBytes[1] & 255) << 8) | (trailerBytes[0] & 255));
+            offset += blockSize;
+        }
+        return index;
+    }
+
+    /**
+     * Build an index of a GZip file and store it in the sidecar file
+     * next to it.
+     * @param file GZip file
+     * @return index of all the entries in the file
+     * @throws IOException if an i/o error occurs while indexing the file
+     */
+    public static GzipIndex buildSidecar(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null!");
+        }
+        GzipIndex index;
+        InputStream in = new FileInputStream(file);
+        try {
+            index = build(in);
+        } finally {
+            in.close();
+        }
+        index.save(getSidecarFile(file));
+        return index;
+    }
+
+    /**
+     * Returns the sidecar index file associated with a GZip file.
+     * @param file GZip file
+     * @return sidecar index file
+     */
+    public static File getSidecarFile(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null!");
+        }
+        return new File(file.getPath() + SIDECAR_EXTENSION);
+    }
+
+    /**
+     * Add a closed GZip entry to the index. Entries must be added in file
+     * order.
+     * @param entry closed GZip entry
+     */
+    public void add(GzipEntry entry) {
+        if (entry == null) {
+            throw new IllegalArgumentException("'entry' is null!");
+        }
+        add(entry.startOffset, entry.consumed, entry.uncompressed_size, entry.comp_crc32);
+    }
+
+    /**
+     * Add an entry to the index. Entries must be added in file order.
+     * @param startOffset entry start offset
+     * @param compressedLength entry length, including header and trailer
+     * @param uncompressedLength entry uncompressed length
+     * @param crc32 CRC32 of the uncompressed data
+     */
+    public void add(long startOffset, long compressedLength, long uncompressedLength, int crc32) {
+        if (startOffset < 0) {
+            throw new IllegalArgumentException("Negative start offset: " + startOffset);
+        }
+        if (compressedLength < 0) {
+            throw new IllegalArgumentException("Negative compressed length: " + compressedLength);
+        }
+        if (uncompressedLength < 0) {
+            throw new IllegalArgumentException("Negative uncompressed length: " + uncompressedLength);
+        }
+        if (size > 0 && startOffset < startOffsets[size - 1] + compressedLengths[size - 1]) {
+            throw new IllegalArgumentException("Entries must be added in file order: " + startOffset);
+        }
+        if (size == startOffsets.length) {
+            int capacity = size << 1;
+            startOffsets = grow(startOffsets, capacity);
+            compressedLengths = grow(compressedLengths, capacity);
+            uncompressedLengths = grow(uncompressedLengths, capacity);
+            int[] tmpInts = new int[capacity];
+            System.arraycopy(crc32s, 0, tmpInts, 0, size);
+            crc32s = tmpInts;
+            uncompressedOffsets = grow(uncompressedOffsets, capacity);
+        }
+        if (size > 0) {
+            uncompressedOffsets[size] = uncompressedOffsets[size - 1] + uncompressedLengths[size - 1];
+        }
+        startOffsets[size] = startOffset;
+        compressedLengths[size] = compressedLength;
+        uncompressedLengths[size] = uncompressedLength;
+        crc32s[size] = crc32;
+        ++size;
+    }
+
+    /**
+     * Returns a copy of the supplied array with a new capacity.
+     * @param array array to copy
+     * @param capacity new capacity
+     * @return resized array copy
+     */
+    protected long[] grow(long[] array, int capacity) {
+        long[] tmpLongs = new long[capacity];
+        System.arraycopy(array, 0, tmpLongs, 0, size);
+        return tmpLongs;
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     * @return number of entries in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the start offset of an entry.
+     * @param idx entry index
+     * @return start offset of the entry
+     */
+    public long getStartOffset(int idx) {
+        checkIndex(idx);
+        return startOffsets[idx];
+    }
+
+    /**
+     * Returns the compressed length of an entry, including header and trailer.
+     * @param idx entry index
+     * @return compressed length of the entry
+     */
+    public long getCompressedLength(int idx) {
+        checkIndex(idx);
+        return compressedLengths[idx];
+    }
+
+    /**
+     * Returns the uncompressed length of an entry.
+     * @param idx entry index
+     * @return uncompressed length of the entry
+     */
+    public long getUncompressedLength(int idx) {
+        checkIndex(idx);
+        return uncompressedLengths[idx];
+    }
+
+    /**
+     * Returns the CRC32 of the uncompressed data of an entry.
+     * @param idx entry index
+     * @return CRC32 of the uncompressed data of the entry
+     */
+    public int getCrc32(int idx) {
+        checkIndex(idx);
+        return crc32s[idx];
+    }
+
+    /**
+     * Returns the offset of an entry in the concatenated uncompressed data of
+     * all the entries.
+     * @param idx entry index
+     * @return uncompressed offset of the entry
+     */
+    public long getUncompressedOffset(int idx) {
+        checkIndex(idx);
+        return uncompressedOffsets[idx];
+    }
+
+    /**
+     * Returns the total length of the uncompressed data of all the entries.
+     * @return total uncompressed length
+     */
+    public long getUncompressedTotal() {
+        return size > 0 ? uncompressedOffsets[size - 1] + uncompressedLengths[size - 1] : 0;
+    }
+
+    /**
+     * Find the entry which contains the supplied offset in the concatenated
+     * uncompressed data of all the entries. Empty entries are skipped.
+     * @param uncompressedOffset uncompressed offset
+     * @return entry index or -1, if the offset is negative or beyond the data
+     */
+    public int floorUncompressedIndexOf(long uncompressedOffset) {
+        if (uncompressedOffset < 0 || uncompressedOffset >= getUncompressedTotal()) {
+            return -1;
+        }
+        int low = 0;
+        int high = size - 1;
+        int mid;
+        while (low < high) {
+            mid = (low + high + 1) >>> 1;
+            if (uncompressedOffsets[mid] <= uncompressedOffset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // The last entry starting at the offset is not empty.
+        return low;
+    }
+
+    /**
+     * Validate an entry index.
+     * @param idx entry index
+     */
+    protected void checkIndex(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Find the entry which starts at the supplied offset.
+     * @param offset entry start offset
+     * @return entry index or -1, if no entry starts at the offset
+     */
+    public int indexOf(long offset) {
+        int idx = floorIndexOf(offset);
+        if (idx != -1 && startOffsets[idx] != offset) {
+            idx = -1;
+        }
+        return idx;
+    }
+
+    /**
+     * Find the entry which contains the supplied offset, i.e. the last entry
+     * starting at or before the offset.
+     * @param offset offset in the GZip file
+     * @return entry index or -1, if the offset is before the first entry
+     */
+    public int floorIndexOf(long offset) {
+        int low = 0;
+        int high = size - 1;
+        int mid;
+        while (low <= high) {
+            mid = (low + high) >>> 1;
+            if (startOffsets[mid] < offset) {
+                low = mid + 1;
+            } else if (startOffsets[mid] > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Write this index to an output stream in the binary sidecar format.
+     * The stream is flushed but not closed.
+     * @param out output stream
+     * @throws IOException if an i/o error occurs while writing the index
+     */
+    public void write(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("'out' is null!");
+        }
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        dout.writeInt(INDEX_MAGIC);
+        dout.writeInt(INDEX_VERSION);
+        dout.writeInt(size);
+        for (int i=0; i<size; ++i) {
+            dout.writeLong(startOffsets[i]);
+            dout.writeLong(compressedLengths[i]);
+            dout.writeLong(uncompressedLengths[i]);
+            dout.writeInt(crc32s[i]);
+        }
+        dout.flush();
+    }
+
+    /**
+     * Read an index from an input stream in the binary sidecar format.
+     * The stream is not closed.
+     * @param in input stream
+     * @return index read from the stream
+     * @throws IOException if an i/o error occurs while reading the index or
+     * the data is not a valid index
+     */
+    public static GzipIndex read(InputStream in) throws IOException {
+        return read(in, -1);
+    }
+
+    /**
+     * Read an index of known length from an input stream in the binary
+     * sidecar format. The entry count is validated against the length before
+     * any entry arrays are allocated. If the length is unknown the arrays
+     * grow with the entries actually read, so a corrupt count can not cause
+     * a huge allocation. The stream is not closed.
+     * @param in input stream
+     * @param length length of the persisted index or -1, if unknown
+     * @return index read from the stream
+     * @throws IOException if an i/o error occurs while reading the index or
+     * the data is not a valid index
+     */
+    public static GzipIndex read(InputStream in, long length) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("'in' is null!");
+        }
+        DataInputStream din = new DataInputStream(in);
+        int magic = din.readInt();
+        if (magic != INDEX_MAGIC) {
+            throw new IOException("Invalid GZip index magic: " + Integer.toHexString(magic));
+        }
+        int version = din.readInt();
+        if (version != INDEX_VERSION) {
+            throw new IOException("Unsupported GZip index version: " + version);
+        }
+        int count = din.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid GZip index size: " + count);
+        }
+        int capacity;
+        if (length >= 0) {
+            if (count > (length - INDEX_HEADER_SIZE) / INDEX_ENTRY_SIZE) {
+                throw new IOException("GZip index size exceeds the index length: " + count);
+            }
+            capacity = count;
+        } else {
+            capacity = Math.min(count, INITIAL_CAPACITY);
+        }
+        GzipIndex index = new GzipIndex(capacity);
+        try {
+            for (int i=0; i<count; ++i) {
+                index.add(din.readLong(), din.readLong(), din.readLong(), din.readInt());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid GZip index entry: " + e.getMessage());
+        } catch (EOFException e) {
+            throw new IOException("Truncated GZip index!");
+        }
+        return index;
+    }
+
+    /**
+     * Store this index in a file.
+     * @param file index file
+     * @throws IOException if an i/o error occurs while writing the index
+     */
+    public void save(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null!");
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Load an index from a file.
+     * @param file index file
+     * @return index read from the file
+     * @throws IOException if an i/o error occurs while reading the index
+     */
+    public static GzipIndex load(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null!");
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(in, file.length());
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,1278 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jwat.common.RandomAccessFileInputStream;
+
+/**
+ * Checkpoint index for seeking within the uncompressed data of a single
+ * GZip entry, in the manner of zlib's zran example.
+ * The entry is inflated once and at a deflate block boundary every
+ * <code>spacing</code> uncompressed bytes a checkpoint is recorded with the
+ * bit offset of the block in the compressed data and the preceding 32KB of
+ * uncompressed data. The windows are stored deflated in memory and in the
+ * persisted index.
+ * An input stream can then be opened at any uncompressed offset by
+ * inflating from the nearest preceding checkpoint, which bounds the work
+ * per seek by the checkpoint spacing instead of the entry size.
+ * Since the JDK <code>Inflater</code> can not report block boundaries, the
+ * index is built by a small Java inflater. Reading from a checkpoint uses
+ * an <code>Inflater</code> with the window as preset dictionary.
+ *
+ * @author nicl
+ */
+public class GzipInflateIndex {
+
+    /** Magic number identifying a persisted checkpoint index ("JGZC"). */
+    public static final int INDEX_MAGIC = 0x4a475a43;
+
+    /** Persisted checkpoint index format version. */
+    public static final int INDEX_VERSION = 1;
+
+    /** Default number of uncompressed bytes between checkpoints. */
+    public static final long DEFAULT_SPACING = 1024 * 1024;
+
+    /** Size of the deflate sliding window. */
+    public static final int WINDOW_SIZE = 32768;
+
+    /** Initial capacity of the checkpoint arrays. */
+    protected static final int INITIAL_CAPACITY = 16;
+
+    /** Entry start offset. */
+    protected long startOffset;
+
+    /** Offset of the compressed data following the entry header. */
+    protected long dataOffset;
+
+    /** Entry uncompressed length. */
+    protected long uncompressedLength;
+
+    /** Entry CRC32 of the uncompressed data. */
+    protected int crc32;
+
+    /** Minimum number of uncompressed bytes between checkpoints. */
+    protected long spacing;
+
+    /** Number of checkpoints. */
+    protected int size;
+
+    /** Checkpoint uncompressed offsets. */
+    protected long[] uncompressedOffsets;
+
+    /** Checkpoint bit offsets relative to the compressed data offset. */
+    protected long[] bitOffsets;
+
+    /** Checkpoint window lengths. */
+    protected int[] windowLengths;
+
+    /** Checkpoint windows, deflated. */
+    protected byte[][] windows;
+
+    /**
+     * Construct an empty checkpoint index.
+     * @param capacity initial number of checkpoints
+     */
+    protected GzipInflateIndex(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        uncompressedOffsets = new long[capacity];
+        bitOffsets = new long[capacity];
+        windowLengths = new int[capacity];
+        windows = new byte[capacity][];
+    }
+
+    /**
+     * Build a checkpoint index of the entry starting at the supplied offset
+     * with checkpoints every <code>DEFAULT_SPACING</code> uncompressed bytes.
+     * @param raf random access file of GZip file
+     * @param startOffset entry start offset
+     * @return checkpoint index of the entry
+     * @throws IOException if an i/o error occurs or the entry is not valid
+     */
+    public static GzipInflateIndex build(RandomAccessFile raf, long startOffset) throws IOException {
+        return build(raf, startOffset, DEFAULT_SPACING);
+    }
+
+    /**
+     * Build a checkpoint index of the entry starting at the supplied offset.
+     * The entry is inflated completely and its CRC32 and size are validated.
+     * @param raf random access file of GZip file
+     * @param startOffset entry start offset
+     * @param spacing minimum number of uncompressed bytes between checkpoints
+     * @return checkpoint index of the entry
+     * @throws IOException if an i/o error occurs or the entry is not valid
+     */
+    public static GzipInflateIndex build(RandomAccessFile raf, long startOffset, long spacing) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        if (startOffset < 0) {
+            throw new IllegalArgumentException("Negative start offset: " + startOffset);
+        }
+        if (spacing < 1) {
+            throw new IllegalArgumentException("Invalid spacing: " + spacing);
+        }
+        raf.seek(startOffset);
+        InputStream in = new BufferedInputStream(new RandomAccessFileInputStream(raf), 8192);
+        GzipInflateIndex index = new GzipInflateIndex(INITIAL_CAPACITY);
+        index.startOffset = startOffset;
+        index.dataOffset = startOffset + skipHeader(in);
+        index.spacing = spacing;
+        Decoder decoder = new Decoder(in, index);
+        decoder.decode();
+        index.uncompressedLength = decoder.total;
+        index.crc32 = decoder.crc32;
+        return index;
+    }
+
+    /**
+     * Read past a GZip entry header.
+     * @param in input stream positioned at the start of the entry
+     * @return length of the header
+     * @throws IOException if an i/o error occurs or the header is not valid
+     */
+    protected static int skipHeader(InputStream in) throws IOException {
+        byte[] headerBytes = new byte[10];
+        readFully(in, headerBytes, 0, headerBytes.length);
+        if ((headerBytes[0] & 255) != (GzipConstants.GZIP_MAGIC & 255)
+                || (headerBytes[1] & 255) != ((GzipConstants.GZIP_MAGIC >> 8) & 255)
+                || headerBytes[2] != GzipConstants.CM_DEFLATE) {
+            throw new IOException("Invalid GZip entry header!");
+        }
+        int flg = headerBytes[3] & 255;
+        int length = headerBytes.length;
+        if ((flg & GzipConstants.FLG_FEXTRA) != 0) {
+            readFully(in, headerBytes, 0, 2);
+            int xlen = ((headerBytes[1] & 255) << 8) | (headerBytes[0] & 255);
+            readFully(in, new byte[xlen], 0, xlen);
+            length += 2 + xlen;
+        }
+        if ((flg & GzipConstants.FLG_FNAME) != 0) {
+            length += skipString(in);
+        }
+        if ((flg & GzipConstants.FLG_FCOMMENT) != 0) {
+            length += skipString(in);
+        }
+        if ((flg & GzipConstants.FLG_FHCRC) != 0) {
+            readFully(in, headerBytes, 0, 2);
+            length += 2;
+        }
+        return length;
+    }
+
+    /**
+     * Read past a zero terminated header string.
+     * @param in input stream
+     * @return length of the string including the terminator
+     * @throws IOException if an i/o error occurs while reading the string
+     */
+    protected static int skipString(InputStream in) throws IOException {
+        int length = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected EOF in GZip entry header!");
+            }
+            ++length;
+        } while (b != 0);
+        return length;
+    }
+
+    /**
+     * Read the requested number of bytes or fail.
+     * @param in input stream
+     * @param b destination array
+     * @param off destination offset
+     * @param len number of bytes to read
+     * @throws IOException if an i/o error occurs or EOF is reached
+     */
+    protected static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int read;
+        while (len > 0) {
+            read = in.read(b, off, len);
+            if (read == -1) {
+                throw new EOFException("Unexpected EOF in GZip entry!");
+            }
+            off += read;
+            len -= read;
+        }
+    }
+
+    /**
+     * Add a checkpoint. Checkpoints must be added in order.
+     * @param uncompressedOffset uncompressed offset of the checkpoint
+     * @param bitOffset bit offset of the deflate block relative to the compressed data
+     * @param windowLength uncompressed length of the window
+     * @param window deflated window
+     */
+    protected void add(long uncompressedOffset, long bitOffset, int windowLength, byte[] window) {
+        if (size == uncompressedOffsets.length) {
+            int capacity = size << 1;
+            long[] tmpLongs = new long[capacity];
+            System.arraycopy(uncompressedOffsets, 0, tmpLongs, 0, size);
+            uncompressedOffsets = tmpLongs;
+            tmpLongs = new long[capacity];
+            System.arraycopy(bitOffsets, 0, tmpLongs, 0, size);
+            bitOffsets = tmpLongs;
+            int[] tmpInts = new int[capacity];
+            System.arraycopy(windowLengths, 0, tmpInts, 0, size);
+            windowLengths = tmpInts;
+            byte[][] tmpWindows = new byte[capacity][];
+            System.arraycopy(windows, 0, tmpWindows, 0, size);
+            windows = tmpWindows;
+        }
+        uncompressedOffsets[size] = uncompressedOffset;
+        bitOffsets[size] = bitOffset;
+        windowLengths[size] = windowLength;
+        windows[size] = window;
+        ++size;
+    }
+
+    /**
+     * Returns the entry start offset.
+     * @return entry start offset
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Returns the offset of the compressed data following the entry header.
+     * @return compressed data offset
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * Returns the entry uncompressed length.
+     * @return entry uncompressed length
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * Returns the entry CRC32 of the uncompressed data.
+     * @return entry CRC32
+     */
+    public int getCrc32() {
+        return crc32;
+    }
+
+    /**
+     * Returns the minimum number of uncompressed bytes between checkpoints.
+     * @return checkpoint spacing
+     */
+    public long getSpacing() {
+        return spacing;
+    }
+
+    /**
+     * Returns the number of checkpoints.
+     * @return number of checkpoints
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the uncompressed offset of a checkpoint.
+     * @param idx checkpoint index
+     * @return uncompressed offset of the checkpoint
+     */
+    public long getUncompressedOffset(int idx) {
+        checkIndex(idx);
+        return uncompressedOffsets[idx];
+    }
+
+    /**
+     * Returns the bit offset of a checkpoint relative to the compressed data.
+     * @param idx checkpoint index
+     * @return bit offset of the checkpoint
+     */
+    public long getBitOffset(int idx) {
+        checkIndex(idx);
+        return bitOffsets[idx];
+    }
+
+    /**
+     * Find the last checkpoint at or before the supplied uncompressed offset.
+     * @param uncompressedOffset uncompressed offset
+     * @return checkpoint index
+     */
+    public int floorIndexOf(long uncompressedOffset) {
+        int low = 0;
+        int high = size - 1;
+        int mid;
+        while (low < high) {
+            mid = (low + high + 1) >>> 1;
+            if (uncompressedOffsets[mid] <= uncompressedOffset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Validate a checkpoint index.
+     * @param idx checkpoint index
+     */
+    protected void checkIndex(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Checkpoint index out of bounds: " + idx);
+        }
+    }
+
+    /**
+     * Returns an input stream of the uncompressed data of the entry starting
+     * at the supplied uncompressed offset. The data is inflated from the
+     * nearest preceding checkpoint. The stream repositions the random access
+     * file before every read, so the file may be shared as long as it is not
+     * used concurrently. The stream does not validate the CRC32 of the entry.
+     * @param raf random access file of GZip file
+     * @param uncompressedOffset uncompressed offset in the entry
+     * @return input stream positioned at the supplied offset
+     * @throws IOException if an i/o error occurs while positioning the stream
+     */
+    public InputStream getInputStream(RandomAccessFile raf, long uncompressedOffset) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        if (uncompressedOffset < 0 || uncompressedOffset > uncompressedLength) {
+            throw new IllegalArgumentException("Uncompressed offset out of range: " + uncompressedOffset);
+        }
+        int idx = floorIndexOf(uncompressedOffset);
+        byte[] window = new byte[windowLengths[idx]];
+        if (window.length > 0) {
+            Inflater inf = new Inflater(true);
+            try {
+                inf.setInput(windows[idx]);
+                if (inf.inflate(window) != window.length) {
+                    throw new IOException("Invalid checkpoint window: " + idx);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid checkpoint window: " + idx, e);
+            } finally {
+                inf.end();
+            }
+        }
+        CheckpointInputStream in = new CheckpointInputStream(raf,
+                dataOffset + (bitOffsets[idx] >>> 3), (int)(bitOffsets[idx] & 7),
+                window, uncompressedLength - uncompressedOffsets[idx]);
+        long remaining = uncompressedOffset - uncompressedOffsets[idx];
+        long skipped;
+        while (remaining > 0) {
+            skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                in.close();
+                throw new EOFException("Entry shorter than indexed: " + startOffset);
+            }
+            remaining -= skipped;
+        }
+        return in;
+    }
+
+    /**
+     * Write this checkpoint index to an output stream.
+     * The stream is flushed but not closed.
+     * @param out output stream
+     * @throws IOException if an i/o error occurs while writing the index
+     */
+    public void write(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("'out' is null!");
+        }
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        dout.writeInt(INDEX_MAGIC);
+        dout.writeInt(INDEX_VERSION);
+        dout.writeLong(startOffset);
+        dout.writeLong(dataOffset);
+        dout.writeLong(uncompressedLength);
+        dout.writeInt(crc32);
+        dout.writeLong(spacing);
+        dout.writeInt(size);
+        for (int i=0; i<size; ++i) {
+            dout.writeLong(uncompressedOffsets[i]);
+            dout.writeLong(bitOffsets[i]);
+            dout.writeInt(windowLengths[i]);
+            dout.writeInt(windows[i].length);
+            dout.write(windows[i]);
+        }
+        dout.flush();
+    }
+
+    /**
+     * Read a checkpoint index from an input stream.
+     * The stream is not closed.
+     * @param in input stream
+     * @return checkpoint index read from the stream
+     * @throws IOException if an i/o error occurs while reading the index or
+     * the data is not a valid index
+     */
+    public static GzipInflateIndex read(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("'in' is null!");
+        }
+        DataInputStream din = new DataInputStream(in);
+        try {
+            int magic = din.readInt();
+            if (magic != INDEX_MAGIC) {
+                throw new IOException("Invalid GZip checkpoint index magic: " + Integer.toHexString(magic));
+            }
+            int version = din.readInt();
+            if (version != INDEX_VERSION) {
+                throw new IOException("Unsupported GZip checkpoint index version: " + version);
+            }
+            long startOffset = din.readLong();
+            long dataOffset = din.readLong();
+            long uncompressedLength = din.readLong();
+            int crc32 = din.readInt();
+            long spacing = din.readLong();
+            int count = din.readInt();
+            if (count < 1) {
+                throw new IOException("Invalid GZip checkpoint index size: " + count);
+            }
+            GzipInflateIndex index = new GzipInflateIndex(count);
+            index.startOffset = startOffset;
+            index.dataOffset = dataOffset;
+            index.uncompressedLength = uncompressedLength;
+            index.crc32 = crc32;
+            index.spacing = spacing;
+            long uncompressedOffset;
+            long bitOffset;
+            int windowLength;
+            int compressedLength;
+            byte[] window;
+            for (int i=0; i<count; ++i) {
+                uncompressedOffset = din.readLong();
+                bitOffset = din.readLong();
+                windowLength = din.readInt();
+                compressedLength = din.readInt();
+                if (windowLength < 0 || windowLength > WINDOW_SIZE
+                        || compressedLength < 0 || compressedLength > 2 * WINDOW_SIZE
+                        || (i > 0 && uncompressedOffset < index.uncompressedOffsets[i - 1])) {
+                    throw new IOException("Invalid GZip checkpoint: " + i);
+                }
+                window = new byte[compressedLength];
+                din.readFully(window);
+                index.add(uncompressedOffset, bitOffset, windowLength, window);
+            }
+            return index;
+        } catch (EOFException e) {
+            throw new IOException("Truncated GZip checkpoint index!");
+        }
+    }
+
+    /**
+     * Store this checkpoint index in a file.
+     * @param file index file
+     * @throws IOException if an i/o error occurs while writing the index
+     */
+    public void save(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null!");
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Load a checkpoint index from a file.
+     * @param file index file
+     * @return checkpoint index read from the file
+     * @throws IOException if an i/o error occurs while reading the index
+     */
+    public static GzipInflateIndex load(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null!");
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Canonical Huffman code with a lookup table for short codes.
+     *
+     * @author nicl
+     */
+    protected static class Huffman {
+
+        /** Maximum code length. */
+        static final int MAX_BITS = 15;
+
+        /** Number of bits resolved by the lookup table. */
+        static final int FAST_BITS = 9;
+
+        /** Number of codes of each length. */
+        final short[] count = new short[MAX_BITS + 1];
+
+        /** Symbols ordered by code. */
+        final short[] symbol;
+
+        /** Lookup table of (length << 16) | symbol by reversed code, 0 if longer. */
+        final int[] fast = new int[1 << FAST_BITS];
+
+        /** Offsets of the first symbol of each length, used while building. */
+        final short[] offs = new short[MAX_BITS + 1];
+
+        /**
+         * Construct a code for at most the supplied number of symbols.
+         * @param symbols maximum number of symbols
+         */
+        Huffman(int symbols) {
+            symbol = new short[symbols];
+        }
+
+        /**
+         * Build the code from the code lengths of the symbols.
+         * Incomplete codes are allowed, over-subscribed codes are not.
+         * @param lengths code lengths
+         * @param off offset of the first code length
+         * @param n number of symbols
+         * @throws IOException if the code lengths are invalid
+         */
+        void build(int[] lengths, int off, int n) throws IOException {
+            Arrays.fill(count, (short)0);
+            for (int i=0; i<n; ++i) {
+                ++count[lengths[off + i]];
+            }
+            int left = 1;
+            for (int len=1; len<=MAX_BITS; ++len) {
+                left <<= 1;
+                left -= count[len];
+                if (left < 0) {
+                    throw new IOException("Over-subscribed Huffman code!");
+                }
+            }
+            offs[1] = 0;
+            for (int len=1; len<MAX_BITS; ++len) {
+                offs[len + 1] = (short)(offs[len] + count[len]);
+            }
+            for (int i=0; i<n; ++i) {
+                if (lengths[off + i] != 0) {
+                    symbol[offs[lengths[off + i]]++] = (short)i;
+                }
+            }
+            Arrays.fill(fast, 0);
+            int code = 0;
+            int idx = 0;
+            int rev;
+            for (int len=1; len<=FAST_BITS; ++len) {
+                for (int i=0; i<count[len]; ++i) {
+                    rev = Integer.reverse(code) >>> (32 - len);
+                    for (int j=rev; j<fast.length; j+=1<<len) {
+                        fast[j] = (len << 16) | symbol[idx];
+                    }
+                    ++code;
+                    ++idx;
+                }
+                code <<= 1;
+            }
+        }
+
+    }
+
+    /**
+     * Minimal deflate decoder recording checkpoints at block boundaries.
+     *
+     * @author nicl
+     */
+    protected static class Decoder {
+
+        /** Base lengths of length symbols 257..285. */
+        static final short[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+
+        /** Extra bits of length symbols 257..285. */
+        static final short[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+
+        /** Base distances of distance symbols 0..29. */
+        static final short[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+            8193, 12289, 16385, 24577};
+
+        /** Extra bits of distance symbols 0..29. */
+        static final short[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+
+        /** Order of the code length code lengths. */
+        static final short[] ORDER = {
+            16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+        /** Block header decoding state. */
+        static final int S_HEADER = 0;
+
+        /** Stored block decoding state. */
+        static final int S_STORED = 1;
+
+        /** Compressed block decoding state. */
+        static final int S_CODES = 2;
+
+        /** Last block decoded state. */
+        static final int S_DONE = 3;
+
+        /** Compressed input. */
+        final InputStream in;
+
+        /** Index to record checkpoints in. */
+        final GzipInflateIndex index;
+
+        /** Bit buffer. */
+        int bitBuf;
+
+        /** Number of bits in the bit buffer. */
+        int bitCnt;
+
+        /** Number of bits consumed from the compressed data. */
+        long bitPos;
+
+        /** Uncompressed data, the last 32KB are the sliding window. */
+        final byte[] buf = new byte[WINDOW_SIZE * 4];
+
+        /** Position in the uncompressed data buffer. */
+        int pos;
+
+        /** Position up to which the CRC32 has been computed. */
+        int crcPos;
+
+        /** Total number of uncompressed bytes. */
+        long total;
+
+        /** CRC32 of the uncompressed data. */
+        final CRC32 crc = new CRC32();
+
+        /** CRC32 of the uncompressed data, set when done. */
+        int crc32;
+
+        /** Literal/length code. */
+        final Huffman lencode = new Huffman(288);
+
+        /** Distance code. */
+        final Huffman distcode = new Huffman(30);
+
+        /** Code length code. */
+        final Huffman lencodeLengths = new Huffman(19);
+
+        /** Code lengths being read. */
+        final int[] lengths = new int[288 + 30];
+
+        /** Deflater used to compress checkpoint windows. */
+        final Deflater def;
+
+        /** Decoding state. */
+        int state = S_HEADER;
+
+        /** Is the current block the last block. */
+        boolean bLast;
+
+        /** Number of bytes left of the current stored block. */
+        int storedLen;
+
+        /** Number of bytes left to copy of the current match. */
+        int matchLen;
+
+        /** Distance of the current match. */
+        int matchDist;
+
+        /** Uncompressed offset of the last checkpoint. */
+        long lastCheckpoint;
+
+        /**
+         * Construct a decoder reading compressed data from a stream.
+         * @param in compressed input positioned after the entry header
+         * @param index index to record checkpoints in
+         */
+        Decoder(InputStream in, GzipInflateIndex index) {
+            this.in = in;
+            this.index = index;
+            def = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+
+        /**
+         * Decode all the blocks and validate the entry trailer.
+         * @throws IOException if an i/o error occurs or the data is not valid
+         */
+        void decode() throws IOException {
+            try {
+                while (state != S_DONE) {
+                    if (pos == buf.length) {
+                        slide();
+                    }
+                    inflate();
+                }
+                crc.update(buf, crcPos, pos - crcPos);
+                crc32 = (int)crc.getValue();
+                bits(bitCnt & 7);
+                int trailerCrc32 = bits(16) | (bits(16) << 16);
+                int trailerIsize = bits(16) | (bits(16) << 16);
+                if (trailerCrc32 != crc32) {
+                    throw new IOException("GZip entry CRC32 mismatch!");
+                }
+                if (trailerIsize != (int)total) {
+                    throw new IOException("GZip entry ISize mismatch!");
+                }
+            } finally {
+                def.end();
+            }
+        }
+
+        /**
+         * Decode until the uncompressed data buffer is full or the last block
+         * has been decoded. A checkpoint is recorded at each block boundary
+         * reached after the spacing.
+         * @throws IOException if an i/o error occurs or the data is not valid
+         */
+        void inflate() throws IOException {
+            while (pos < buf.length && state != S_DONE) {
+                switch (state) {
+                case S_HEADER:
+                    if (index.size == 0 || total - lastCheckpoint >= index.spacing) {
+                        checkpoint();
+                        lastCheckpoint = total;
+                    }
+                    bLast = bits(1) == 1;
+                    switch (bits(2)) {
+                    case 0:
+                        bits(bitCnt & 7);
+                        storedLen = bits(16);
+                        if (storedLen != (~bits(16) & 0xffff)) {
+                            throw new IOException("Invalid stored block length!");
+                        }
+                        state = S_STORED;
+                        break;
+                    case 1:
+                        fixed();
+                        state = S_CODES;
+                        break;
+                    case 2:
+                        dynamic();
+                        state = S_CODES;
+                        break;
+                    default:
+                        throw new IOException("Invalid deflate block type!");
+                    }
+                    break;
+                case S_STORED:
+                    stored();
+                    break;
+                default:
+                    codes();
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Move on to the next block header or finish after the last block.
+         */
+        void endBlock() {
+            state = bLast ? S_DONE : S_HEADER;
+        }
+
+        /**
+         * Record a checkpoint at the current block boundary.
+         */
+        void checkpoint() {
+            int windowLength = (int)Math.min(total, WINDOW_SIZE);
+            def.reset();
+            def.setInput(buf, pos - windowLength, windowLength);
+            def.finish();
+            byte[] tmpBuf = new byte[2 * WINDOW_SIZE];
+            int len = 0;
+            while (!def.finished()) {
+                len += def.deflate(tmpBuf, len, tmpBuf.length - len);
+            }
+            byte[] window = new byte[len];
+            System.arraycopy(tmpBuf, 0, window, 0, len);
+            index.add(total, bitPos, windowLength, window);
+        }
+
+        /**
+         * Fill the bit buffer with at least the requested number of bits.
+         * @param n number of bits required
+         * @return false, if EOF was reached before the bits were available
+         * @throws IOException if an i/o error occurs
+         */
+        boolean need(int n) throws IOException {
+            int b;
+            while (bitCnt < n) {
+                b = in.read();
+                if (b == -1) {
+                    return false;
+                }
+                bitBuf |= b << bitCnt;
+                bitCnt += 8;
+            }
+            return true;
+        }
+
+        /**
+         * Consume bits from the bit buffer.
+         * @param n number of bits, at most 16
+         * @return bits read
+         * @throws IOException if an i/o error occurs or EOF is reached
+         */
+        int bits(int n) throws IOException {
+            if (!need(n)) {
+                throw new EOFException("Unexpected EOF in deflate data!");
+            }
+            int v = bitBuf & ((1 << n) - 1);
+            bitBuf >>>= n;
+            bitCnt -= n;
+            bitPos += n;
+            return v;
+        }
+
+        /**
+         * Decode a symbol.
+         * @param h Huffman code
+         * @return decoded symbol
+         * @throws IOException if an i/o error occurs or the code is invalid
+         */
+        int symbol(Huffman h) throws IOException {
+            need(Huffman.FAST_BITS);
+            int e = h.fast[bitBuf & ((1 << Huffman.FAST_BITS) - 1)];
+            int len = e >>> 16;
+            if (e != 0 && len <= bitCnt) {
+                bitBuf >>>= len;
+                bitCnt -= len;
+                bitPos += len;
+                return e & 0xffff;
+            }
+            int code = 0;
+            int first = 0;
+            int idx = 0;
+            int count;
+            for (len=1; len<=Huffman.MAX_BITS; ++len) {
+                code |= bits(1);
+                count = h.count[len];
+                if (code - count < first) {
+                    return h.symbol[idx + (code - first)];
+                }
+                idx += count;
+                first += count;
+                first <<= 1;
+                code <<= 1;
+            }
+            throw new IOException("Invalid Huffman code!");
+        }
+
+        /**
+         * Make room for more uncompressed data, keeping the window.
+         */
+        void slide() {
+            crc.update(buf, crcPos, pos - crcPos);
+            System.arraycopy(buf, pos - WINDOW_SIZE, buf, 0, WINDOW_SIZE);
+            pos = WINDOW_SIZE;
+            crcPos = WINDOW_SIZE;
+        }
+
+        /**
+         * Copy stored block data until the block ends or the buffer is full.
+         * @throws IOException if an i/o error occurs or EOF is reached
+         */
+        void stored() throws IOException {
+            int n;
+            while (storedLen > 0 && pos < buf.length) {
+                if (bitCnt > 0) {
+                    buf[pos++] = (byte)bits(8);
+                    --storedLen;
+                    ++total;
+                } else {
+                    n = in.read(buf, pos, Math.min(storedLen, buf.length - pos));
+                    if (n == -1) {
+                        throw new EOFException("Unexpected EOF in deflate data!");
+                    }
+                    pos += n;
+                    storedLen -= n;
+                    total += n;
+                    bitPos += n << 3;
+                }
+            }
+            if (storedLen == 0) {
+                endBlock();
+            }
+        }
+
+        /**
+         * Prepare the fixed codes.
+         * @throws IOException if the codes can not be built
+         */
+        void fixed() throws IOException {
+            int i = 0;
+            for (; i<144; ++i) {
+                lengths[i] = 8;
+            }
+            for (; i<256; ++i) {
+                lengths[i] = 9;
+            }
+            for (; i<280; ++i) {
+                lengths[i] = 7;
+            }
+            for (; i<288; ++i) {
+                lengths[i] = 8;
+            }
+            lencode.build(lengths, 0, 288);
+            for (i=0; i<30; ++i) {
+                lengths[i] = 5;
+            }
+            distcode.build(lengths, 0, 30);
+        }
+
+        /**
+         * Read the dynamic codes of a block.
+         * @throws IOException if an i/o error occurs or the codes are invalid
+         */
+        void dynamic() throws IOException {
+            int nlen = bits(5) + 257;
+            int ndist = bits(5) + 1;
+            int ncode = bits(4) + 4;
+            if (nlen > 286 || ndist > 30) {
+                throw new IOException("Invalid dynamic block code counts!");
+            }
+            Arrays.fill(lengths, 0, 19, 0);
+            for (int i=0; i<ncode; ++i) {
+                lengths[ORDER[i]] = bits(3);
+            }
+            lencodeLengths.build(lengths, 0, 19);
+            int idx = 0;
+            int sym;
+            int len;
+            int repeat;
+            while (idx < nlen + ndist) {
+                sym = symbol(lencodeLengths);
+                if (sym < 16) {
+                    lengths[idx++] = sym;
+                } else {
+                    len = 0;
+                    if (sym == 16) {
+                        if (idx == 0) {
+                            throw new IOException("Repeat with no first code length!");
+                        }
+                        len = lengths[idx - 1];
+                        repeat = 3 + bits(2);
+                    } else if (sym == 17) {
+                        repeat = 3 + bits(3);
+                    } else {
+                        repeat = 11 + bits(7);
+                    }
+                    if (idx + repeat > nlen + ndist) {
+                        throw new IOException("Too many code lengths!");
+                    }
+                    while (repeat-- > 0) {
+                        lengths[idx++] = len;
+                    }
+                }
+            }
+            if (lengths[256] == 0) {
+                throw new IOException("Missing end-of-block code!");
+            }
+            lencode.build(lengths, 0, nlen);
+            distcode.build(lengths, nlen, ndist);
+        }
+
+        /**
+         * Decode the literals and matches of a block until the block ends or
+         * the buffer is full.
+         * @throws IOException if an i/o error occurs or the data is not valid
+         */
+        void codes() throws IOException {
+            int sym;
+            int len;
+            int dist;
+            while (pos < buf.length) {
+                if (matchLen > 0) {
+                    len = Math.min(matchLen, buf.length - pos);
+                    matchLen -= len;
+                    while (len-- > 0) {
+                        buf[pos] = buf[pos - matchDist];
+                        ++pos;
+                    }
+                    continue;
+                }
+                sym = symbol(lencode);
+                if (sym < 256) {
+                    buf[pos++] = (byte)sym;
+                    ++total;
+                } else if (sym == 256) {
+                    endBlock();
+                    return;
+                } else {
+                    sym -= 257;
+                    if (sym >= 29) {
+                        throw new IOException("Invalid length symbol!");
+                    }
+                    len = LENGTH_BASE[sym] + bits(LENGTH_EXTRA[sym]);
+                    sym = symbol(distcode);
+                    if (sym >= 30) {
+                        throw new IOException("Invalid distance symbol!");
+                    }
+                    dist = DIST_BASE[sym] + bits(DIST_EXTRA[sym]);
+                    if (dist > total) {
+                        throw new IOException("Distance too far back!");
+                    }
+                    total += len;
+                    matchLen = len;
+                    matchDist = dist;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * <code>InputStream</code> inflating from a checkpoint with an
+     * <code>Inflater</code>. The window is set as preset dictionary.
+     * Since the JDK has no <code>inflatePrime</code>, a checkpoint which does
+     * not start on a byte boundary is reached by feeding empty blocks in
+     * front of it, see {@link #prime(int, int)}. The compressed bytes that
+     * follow are fed unchanged, so stored blocks stay aligned to the original
+     * byte boundaries. The stream repositions the random access file before
+     * every read.
+     *
+     * @author nicl
+     */
+    protected static class CheckpointInputStream extends InputStream {
+
+        /** Random access file of GZip file. */
+        final RandomAccessFile raf;
+
+        /** Next position to read compressed data from in the file. */
+        long filePos;
+
+        /** Inflater, null when closed. */
+        Inflater inf;
+
+        /** Compressed data read from the file. */
+        final byte[] inputBytes = new byte[8192];
+
+        /** Number of uncompressed bytes left in the entry. */
+        long remaining;
+
+        /** Small buffer used by the read() method. */
+        final byte[] singleByteArray = new byte[1];
+
+        /**
+         * Construct an input stream inflating from a checkpoint.
+         * @param raf random access file of GZip file
+         * @param filePos file offset of the byte containing the first block bit
+         * @param shift bit offset of the block in the first byte
+         * @param window uncompressed data preceding the checkpoint
+         * @param remaining number of uncompressed bytes after the checkpoint
+         * @throws IOException if an i/o error occurs reading the first byte
+         */
+        CheckpointInputStream(RandomAccessFile raf, long filePos, int shift,
+                byte[] window, long remaining) throws IOException {
+            this.raf = raf;
+            this.filePos = filePos;
+            this.remaining = remaining;
+            inf = new Inflater(true);
+            if (window.length > 0) {
+                inf.setDictionary(window);
+            }
+            if (shift > 0) {
+                raf.seek(filePos);
+                int b = raf.read();
+                if (b == -1) {
+                    close();
+                    throw new EOFException("Unexpected EOF in deflate data!");
+                }
+                ++this.filePos;
+                inf.setInput(prime(shift, b));
+            }
+        }
+
+        /**
+         * Returns the input which takes an <code>Inflater</code> to a block
+         * starting at a bit offset within its first byte. Empty non-final
+         * blocks are placed in front of the block so they end exactly at the
+         * bit offset. An empty fixed block is 10 bits long and the empty
+         * dynamic block used here is 95 bits long, which together can end at
+         * any bit offset.
+         * @param shift bit offset of the block in the first byte, 1 to 7
+         * @param b first byte of the block
+         * @return empty blocks followed by the first byte of the block
+         */
+        static byte[] prime(int shift, int b) {
+            byte[] primeBytes = new byte[16];
+            int bitPos = 0;
+            int fixedBlocks;
+            if ((shift & 1) != 0) {
+                // Dynamic block, BFINAL 0, BTYPE 2, 257 literal/length codes,
+                // 1 distance code and 19 code length codes.
+                bitPos = putBits(primeBytes, bitPos, 4, 3);
+                bitPos = putBits(primeBytes, bitPos, 0, 5);
+                bitPos = putBits(primeBytes, bitPos, 0, 5);
+                bitPos = putBits(primeBytes, bitPos, 15, 4);
+                // Code length code: 18 is "0", 0 is "10" and 1 is "11".
+                int sym;
+                for (int i=0; i<Decoder.ORDER.length; ++i) {
+                    sym = Decoder.ORDER[i];
+                    bitPos = putBits(primeBytes, bitPos, sym == 18 ? 1 : (sym <= 1 ? 2 : 0), 3);
+                }
+                // 256 zero lengths, end-of-block length 1 and distance length 0.
+                bitPos = putBits(primeBytes, bitPos, 0, 1);
+                bitPos = putBits(primeBytes, bitPos, 138 - 11, 7);
+                bitPos = putBits(primeBytes, bitPos, 0, 1);
+                bitPos = putBits(primeBytes, bitPos, 118 - 11, 7);
+                bitPos = putBits(primeBytes, bitPos, 3, 2);
+                bitPos = putBits(primeBytes, bitPos, 1, 2);
+                // End-of-block, the only literal/length code, "0".
+                bitPos = putBits(primeBytes, bitPos, 0, 1);
+                fixedBlocks = ((shift - 7) & 7) >> 1;
+            } else {
+                fixedBlocks = shift >> 1;
+            }
+            while (fixedBlocks-- > 0) {
+                // Fixed block, BFINAL 0, BTYPE 1, followed by end-of-block.
+                bitPos = putBits(primeBytes, bitPos, 2, 3);
+                bitPos = putBits(primeBytes, bitPos, 0, 7);
+            }
+            primeBytes[bitPos >> 3] |= (byte)(b & (0xff << shift));
+            return Arrays.copyOf(primeBytes, (bitPos >> 3) + 1);
+        }
+
+        /**
+         * Write bits into a byte array, least significant bit first.
+         * @param b byte array
+         * @param bitPos bit position to write at
+         * @param value bits to write
+         * @param n number of bits
+         * @return bit position after the written bits
+         */
+        static int putBits(byte[] b, int bitPos, int value, int n) {
+            for (int i=0; i<n; ++i) {
+                if (((value >>> i) & 1) != 0) {
+                    b[bitPos >> 3] |= (byte)(1 << (bitPos & 7));
+                }
+                ++bitPos;
+            }
+            return bitPos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(singleByteArray, 0, 1);
+            if (read != -1) {
+                return singleByteArray[0] & 255;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (inf == null) {
+                throw new IOException("Stream closed!");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            int read;
+            try {
+                while ((read = inf.inflate(b, off, (int)Math.min(len, remaining))) == 0) {
+                    if (inf.finished()) {
+                        throw new EOFException("Deflate data shorter than indexed!");
+                    } else if (inf.needsInput()) {
+                        raf.seek(filePos);
+                        int n = raf.read(inputBytes);
+                        if (n <= 0) {
+                            throw new EOFException("Unexpected EOF in deflate data!");
+                        }
+                        filePos += n;
+                        inf.setInput(inputBytes, 0, n);
+                    } else {
+                        throw new IOException("Inflater malfunction!");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid deflate data!", e);
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipBuf = new byte[(int)Math.min(n, 8192)];
+            long skipped = 0;
+            int read;
+            while (skipped < n) {
+                read = read(skipBuf, 0, (int)Math.min(n - skipped, skipBuf.length));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inf != null) {
+                inf.end();
+                inf = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,290 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+/**
+ * Chooses the compression level of each GZip entry within configured bounds
+ * from observed backpressure, so writers keep up at peak load and compress
+ * harder when there is CPU to spare.
+ * Two signals are supported, separately or together. With a target
+ * throughput the deflate throughput of the entries written is tracked as an
+ * exponentially weighted average, and the level is lowered while it falls
+ * below the target and raised while it exceeds the target by a margin.
+ * With queue watermarks the level is lowered while the reported queue depth
+ * is at or above the high watermark and raised while it is at or below the
+ * low watermark. Levels change one step at a time and only after a minimum
+ * number of entries at the current level, to avoid oscillation.
+ * The controller starts at the maximum level and is thread-safe, so it can
+ * be shared by several writers.
+ *
+ * @author nicl
+ */
+public class GzipLevelController {
+
+    /** Minimum number of entries written at a level before lowering it. */
+    public static final int DEFAULT_LOWER_AFTER_ENTRIES = 4;
+
+    /** Minimum number of entries written at a level before raising it. */
+    public static final int DEFAULT_RAISE_AFTER_ENTRIES = 16;
+
+    /** Factor by which the throughput must exceed the target before raising the level. */
+    public static final double RAISE_MARGIN = 1.5;
+
+    /** Weight of a new throughput measurement in the average. */
+    public static final double THROUGHPUT_ALPHA = 0.25;
+
+    /** Minimum uncompressed size of an entry for its throughput to be measured. */
+    public static final long MIN_MEASURED_SIZE = 1024;
+
+    /** Lowest compression level. */
+    protected final int minLevel;
+
+    /** Highest compression level. */
+    protected final int maxLevel;
+
+    /** Current compression level. */
+    protected int level;
+
+    /** Target deflate throughput in bytes per second, 0 if not used. */
+    protected long targetThroughput;
+
+    /** Queue depth at or below which the level is raised, -1 if not used. */
+    protected int lowWatermark = -1;
+
+    /** Queue depth at or above which the level is lowered, -1 if not used. */
+    protected int highWatermark = -1;
+
+    /** Minimum number of entries written at a level before lowering it. */
+    protected int lowerAfterEntries = DEFAULT_LOWER_AFTER_ENTRIES;
+
+    /** Minimum number of entries written at a level before raising it. */
+    protected int raiseAfterEntries = DEFAULT_RAISE_AFTER_ENTRIES;
+
+    /** Average deflate throughput at the current level, 0 if not measured yet. */
+    protected double throughput;
+
+    /** Number of entries written since the last level change. */
+    protected int entriesSinceChange;
+
+    /** Number of entries written at each compression level 0-9. */
+    protected final long[] levelEntries = new long[10];
+
+    /** Number of level changes. */
+    protected long levelChanges;
+
+    /**
+     * Construct a controller choosing levels between the supplied bounds.
+     * @param minLevel lowest compression level, 0-9
+     * @param maxLevel highest compression level, 0-9
+     */
+    public GzipLevelController(int minLevel, int maxLevel) {
+        if (minLevel < 0 || minLevel > 9) {
+            throw new IllegalArgumentException("Invalid minimum level: " + minLevel);
+        }
+        if (maxLevel < minLevel || maxLevel > 9) {
+            throw new IllegalArgumentException("Invalid maximum level: " + maxLevel);
+        }
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        level = maxLevel;
+    }
+
+    /**
+     * Returns the lowest compression level.
+     * @return lowest compression level
+     */
+    public int getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * Returns the highest compression level.
+     * @return highest compression level
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Returns the compression level to use for the next entry.
+     * @return compression level
+     */
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * Set the target deflate throughput, or disable the throughput signal.
+     * @param bytesPerSecond target throughput in uncompressed bytes per second or 0
+     */
+    public synchronized void setTargetThroughput(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Negative target throughput: " + bytesPerSecond);
+        }
+        targetThroughput = bytesPerSecond;
+    }
+
+    /**
+     * Returns the target deflate throughput.
+     * @return target throughput in uncompressed bytes per second or 0
+     */
+    public synchronized long getTargetThroughput() {
+        return targetThroughput;
+    }
+
+    /**
+     * Set the queue depth watermarks, or disable the queue depth signal by
+     * passing -1 for both.
+     * @param lowWatermark queue depth at or below which the level is raised
+     * @param highWatermark queue depth at or above which the level is lowered
+     */
+    public synchronized void setQueueWatermarks(int lowWatermark, int highWatermark) {
+        if (lowWatermark == -1 && highWatermark == -1) {
+            this.lowWatermark = -1;
+            this.highWatermark = -1;
+            return;
+        }
+        if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("Invalid watermarks: " + lowWatermark + ", " + highWatermark);
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * Set the minimum number of entries written at a level before it is
+     * lowered or raised.
+     * @param lowerAfterEntries entries before lowering the level
+     * @param raiseAfterEntries entries before raising the level
+     */
+    public synchronized void setHysteresis(int lowerAfterEntries, int raiseAfterEntries) {
+        if (lowerAfterEntries < 0 || raiseAfterEntries < 0) {
+            throw new IllegalArgumentException("Negative number of entries!");
+        }
+        this.lowerAfterEntries = lowerAfterEntries;
+        this.raiseAfterEntries = raiseAfterEntries;
+    }
+
+    /**
+     * Report the number of entries or records waiting to be written.
+     * @param depth queue depth
+     */
+    public synchronized void reportQueueDepth(int depth) {
+        if (highWatermark == -1) {
+            return;
+        }
+        if (depth >= highWatermark) {
+            lower();
+        } else if (depth <= lowWatermark) {
+            raise();
+        }
+    }
+
+    /**
+     * Report a written entry.
+     * @param entryLevel compression level chosen for the entry
+     * @param uncompressedSize number of uncompressed bytes
+     * @param deflateNanos time spent deflating the entry or 0, if not measured
+     */
+    public synchronized void entryWritten(int entryLevel, long uncompressedSize, long deflateNanos) {
+        ++levelEntries[GzipCompressionStats.effectiveLevel(entryLevel)];
+        if (entryLevel != level) {
+            // Written at a previous level.
+            return;
+        }
+        ++entriesSinceChange;
+        if (targetThroughput > 0 && deflateNanos > 0 && uncompressedSize >= MIN_MEASURED_SIZE) {
+            double measured = uncompressedSize * 1000000000.0 / deflateNanos;
+            if (throughput == 0.0) {
+                throughput = measured;
+            } else {
+                throughput += THROUGHPUT_ALPHA * (measured - throughput);
+            }
+            if (throughput < targetThroughput) {
+                lower();
+            } else if (throughput > targetThroughput * RAISE_MARGIN) {
+                raise();
+            }
+        }
+    }
+
+    /**
+     * Lower the level one step if enough entries have been written at the
+     * current level.
+     */
+    protected void lower() {
+        if (level > minLevel && entriesSinceChange >= lowerAfterEntries) {
+            --level;
+            changed();
+        }
+    }
+
+    /**
+     * Raise the level one step if enough entries have been written at the
+     * current level.
+     */
+    protected void raise() {
+        if (level < maxLevel && entriesSinceChange >= raiseAfterEntries) {
+            ++level;
+            changed();
+        }
+    }
+
+    /**
+     * Reset the measurements after a level change.
+     */
+    protected void changed() {
+        entriesSinceChange = 0;
+        throughput = 0.0;
+        ++levelChanges;
+    }
+
+    /**
+     * Returns the average deflate throughput at the current level.
+     * @return throughput in uncompressed bytes per second or 0, if not measured yet
+     */
+    public synchronized double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the number of entries written at a compression level.
+     * @param entryLevel compression level
+     * @return number of entries written at the level
+     */
+    public synchronized long getLevelEntries(int entryLevel) {
+        return levelEntries[GzipCompressionStats.effectiveLevel(entryLevel)];
+    }
+
+    /**
+     * Returns the number of entries written at each compression level 0-9.
+     * @return copy of the level distribution
+     */
+    public synchronized long[] getLevelDistribution() {
+        return levelEntries.clone();
+    }
+
+    /**
+     * Returns the number of level changes.
+     * @return number of level changes
+     */
+    public synchronized long getLevelChanges() {
+        return levelChanges;
+    }
+
+}
@@ -0,0 +1,607 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.common.Diagnostics;
+import org.jwat.common.FileChannelInputStream;
+
+/**
+ * A reader for multi-part GZip files which inflates entries concurrently.
+ * The file is divided into chunks of consecutive entries, with chunk
+ * boundaries taken from a <code>GzipIndex</code> or located by scanning for
+ * GZip header candidates ahead of the consumer. Each chunk is inflated into
+ * memory by a task on the supplied executor and entries are returned in file
+ * order. At most <code>maxInFlight</code> chunks are inflated ahead of the
+ * consumer and entries larger than <code>maxBufferedEntrySize</code> are not
+ * buffered but streamed on the calling thread instead. A task stops
+ * inflating an entry as soon as it exceeds the buffer limit. Unless the
+ * entry has a skip-length extra subfield, the entries following it in the
+ * same chunk are then also streamed. The data buffered by one task is also
+ * limited to <code>maxBufferedEntrySize</code> bytes, the task leaving the
+ * rest of its chunk to be streamed once the limit is reached, so at most
+ * <code>maxInFlight</code> times that amount is held in memory.
+ * Header candidates which turn out to be inside compressed data are
+ * discarded, so the returned entries are the same as those returned by
+ * <code>GzipReader</code>.
+ * The executor is not shut down and the <code>RandomAccessFile</code> is not
+ * closed by this reader.
+ *
+ * @author nicl
+ */
+public class GzipParallelReader implements Closeable {
+
+    /** Default maximum number of chunks inflated ahead of the consumer. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    /** Default compressed size of a chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /** Default maximum uncompressed size of an entry buffered in memory. */
+    public static final int DEFAULT_MAX_BUFFERED_ENTRY_SIZE = 16 * 1024 * 1024;
+
+    /** Buffer size used when scanning for header candidates. */
+    public static final int SCAN_BUFFER_SIZE = 8192;
+
+    /** Buffer size used when reading compressed data. */
+    public static final int READ_BUFFER_SIZE = 8192;
+
+    /** Minimum GZip entry size, header, empty deflate block and trailer. */
+    public static final int MIN_ENTRY_SIZE = 10 + 2 + 8;
+
+    /** File channel of the GZip file. */
+    protected FileChannel channel;
+
+    /** Length of the GZip file. */
+    protected long length;
+
+    /** Optional member index used instead of scanning. */
+    protected GzipIndex index;
+
+    /** Executor used to inflate entries. */
+    protected ExecutorService executor;
+
+    /** Maximum number of chunks inflated ahead of the consumer. */
+    protected int maxInFlight;
+
+    /** Compressed size of a chunk. */
+    protected int chunkSize;
+
+    /** Maximum uncompressed size of an entry buffered in memory. */
+    protected int maxBufferedEntrySize;
+
+    /** Chunks currently being inflated, in file order. */
+    protected LinkedList<PendingChunk> pending = new LinkedList<PendingChunk>();
+
+    /** Inflated entries from the oldest retrieved chunk, in file order. */
+    protected LinkedList<InflatedEntry> inflated = new LinkedList<InflatedEntry>();
+
+    /** Next index entry to submit, if a member index is used. */
+    protected int indexPosition;
+
+    /** Scan buffer used to locate header candidates. */
+    protected byte[] scanBytes;
+
+    /** File offset of the first byte in the scan buffer. */
+    protected long scanBase;
+
+    /** Number of valid bytes in the scan buffer. */
+    protected int scanLimit;
+
+    /** File offset from where to continue scanning. */
+    protected long scanPosition;
+
+    /** Start offset of the next chunk, -1 if there are no more chunks. */
+    protected long nextChunkOffset = -2;
+
+    /** File offset of the next entry. */
+    protected long nextOffset;
+
+    /** GZip reader used to stream the current entry, if not buffered. */
+    protected GzipReader streamReader;
+
+    /** Compliance status for records parsed up to now. */
+    protected boolean bIsCompliant = true;
+
+    /** Validation errors and warnings. */
+    public final Diagnostics<Diagnosis> diagnostics = new Diagnostics<Diagnosis>();
+
+    /** Entries read. */
+    protected int entries = 0;
+
+    /** Entry offset, updated each time an entry is returned. */
+    protected long startOffset = -1;
+
+    /** Current GZip entry object. */
+    protected GzipEntry gzipEntry;
+
+    /** Partial GZip entry which could not be completely read. */
+    public GzipEntry partialEntry;
+
+    /**
+     * Construct a parallel GZip reader which locates entries by scanning
+     * and uses the default in-flight, chunk and buffer sizes.
+     * @param raf random access file of GZip file
+     * @param executor executor used to inflate entries
+     * @throws IOException if an i/o error occurs while reading the file size
+     */
+    public GzipParallelReader(RandomAccessFile raf, ExecutorService executor) throws IOException {
+        this(raf, null, executor, DEFAULT_MAX_IN_FLIGHT, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_BUFFERED_ENTRY_SIZE);
+    }
+
+    /**
+     * Construct a parallel GZip reader.
+     * @param raf random access file of GZip file
+     * @param index member index of the GZip file or null to scan for entries
+     * @param executor executor used to inflate entries
+     * @param maxInFlight maximum number of chunks inflated ahead of the consumer
+     * @param chunkSize compressed size of a chunk
+     * @param maxBufferedEntrySize maximum uncompressed size of a buffered entry
+     * @throws IOException if an i/o error occurs while reading the file size
+     */
+    public GzipParallelReader(RandomAccessFile raf, GzipIndex index, ExecutorService executor,
+            int maxInFlight, int chunkSize, int maxBufferedEntrySize) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("raf is null!");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null!");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException(
+                    "maxInFlight is less or equals to zero: " + maxInFlight);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize is less or equals to zero: " + chunkSize);
+        }
+        if (maxBufferedEntrySize <= 0) {
+            throw new IllegalArgumentException(
+                    "maxBufferedEntrySize is less or equals to zero: " + maxBufferedEntrySize);
+        }
+        this.channel = raf.getChannel();
+        this.length = channel.size();
+        this.index = index;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.chunkSize = chunkSize;
+        this.maxBufferedEntrySize = maxBufferedEntrySize;
+        if (index == null) {
+            scanBytes = new byte[SCAN_BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * Release resources associated with this reader and discard entries
+     * inflated ahead of the consumer.
+     * @throws IOException if an i/o error occurs while closing reader
+     */
+    public void close() throws IOException {
+        if (gzipEntry != null) {
+            if (streamReader != null) {
+                // Discard the rest of the streamed entry instead of inflating it.
+                if (!gzipEntry.bEof) {
+                    streamReader.abandonEntry();
+                }
+                diagnostics.addAll(streamReader.diagnostics);
+                bIsCompliant &= streamReader.isCompliant();
+                streamReader.close();
+                streamReader = null;
+            } else {
+                gzipEntry.close();
+            }
+            gzipEntry = null;
+        }
+        while (!pending.isEmpty()) {
+            // Interrupting a task would close the shared channel.
+            pending.removeFirst().future.cancel(false);
+        }
+        inflated.clear();
+        channel = null;
+    }
+
+    /**
+     * Returns a boolean indicating whether all entries parsed so far are compliant.
+     * @return a boolean indicating whether all entries parsed so far are compliant
+     */
+    public boolean isCompliant() {
+        if (streamReader != null) {
+            return bIsCompliant && streamReader.isCompliant();
+        }
+        return bIsCompliant;
+    }
+
+    /**
+     * Returns the offset of the current entry or -1 if none have been read.
+     * @return the offset of the current entry or -1
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Returns the offset of the entry following the current entry. If the
+     * current entry is being streamed the offset is only updated when it
+     * has been closed.
+     * @return offset of the next entry
+     */
+    public long getOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Get the next GZip entry in file order.
+     * @return GZip entry or null
+     * @throws IOException if an i/o error occurs while reading entry
+     */
+    public GzipEntry getNextEntry() throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Reader is closed!");
+        }
+        if (gzipEntry != null) {
+            closeEntry();
+        }
+        if (nextOffset >= length) {
+            if (entries == 0) {
+                diagnostics.addError(new Diagnosis(DiagnosisType.ERROR_EXPECTED, "GZip file", "One or more records"));
+                bIsCompliant = false;
+            }
+            return null;
+        }
+        InflatedEntry inflatedEntry = nextInflatedEntry();
+        if (inflatedEntry != null && inflatedEntry.data != null) {
+            gzipEntry = inflatedEntry.entry;
+            gzipEntry.in = new ByteArrayInputStream(inflatedEntry.data);
+            gzipEntry.bBuffered = true;
+            gzipEntry.bEof = false;
+            nextOffset = gzipEntry.startOffset + gzipEntry.consumed;
+        } else {
+            // Oversized, invalid or unexpected data is streamed on this thread.
+            if (length - nextOffset < 10) {
+                diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", "Unexpected trailing data!"));
+                bIsCompliant = false;
+                nextOffset = length;
+                return null;
+            }
+            streamReader = openReader(channel, nextOffset);
+            gzipEntry = streamReader.getNextEntry();
+            if (gzipEntry == null) {
+                diagnostics.addAll(streamReader.diagnostics);
+                partialEntry = streamReader.partialEntry;
+                bIsCompliant = false;
+                streamReader.close();
+                streamReader = null;
+                nextOffset = length;
+                return null;
+            }
+        }
+        startOffset = gzipEntry.startOffset;
+        bIsCompliant &= gzipEntry.bIsCompliant;
+        ++entries;
+        return gzipEntry;
+    }
+
+    /**
+     * Close the current entry and, if it was streamed, update the offset of
+     * the next entry.
+     * @throws IOException if an i/o error occurs while closing the entry
+     */
+    protected void closeEntry() throws IOException {
+        GzipEntry entry = gzipEntry;
+        gzipEntry = null;
+        entry.close();
+        bIsCompliant &= entry.isCompliant();
+        if (streamReader != null) {
+            GzipReader reader = streamReader;
+            streamReader = null;
+            diagnostics.addAll(reader.diagnostics);
+            bIsCompliant &= reader.isCompliant();
+            reader.close();
+            if (entry.consumed > 0) {
+                nextOffset = entry.startOffset + entry.consumed;
+            } else {
+                nextOffset = length;
+            }
+        }
+    }
+
+    /**
+     * Find the inflated entry starting at the next entry offset. Entries and
+     * chunks before the offset, which can only come from false header
+     * candidates, are discarded.
+     * @return inflated entry or null, if the entry must be streamed
+     * @throws IOException if an i/o error occurs while scanning
+     */
+    protected InflatedEntry nextInflatedEntry() throws IOException {
+        PendingChunk chunk;
+        while (true) {
+            while (!inflated.isEmpty() && inflated.getFirst().entry.startOffset < nextOffset) {
+                inflated.removeFirst();
+            }
+            if (!inflated.isEmpty()) {
+                if (inflated.getFirst().entry.startOffset == nextOffset) {
+                    return inflated.removeFirst();
+                }
+                return null;
+            }
+            submitChunks();
+            chunk = pending.peek();
+            if (chunk == null || chunk.offset > nextOffset) {
+                return null;
+            }
+            pending.removeFirst();
+            inflated.addAll(getInflatedEntries(chunk));
+            submitChunks();
+        }
+    }
+
+    /**
+     * Wait for a chunk to be inflated.
+     * @param chunk pending chunk
+     * @return inflated entries
+     * @throws IOException if the calling thread is interrupted or the task failed
+     */
+    protected List<InflatedEntry> getInflatedEntries(PendingChunk chunk) throws IOException {
+        try {
+            return chunk.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for entries!");
+        } catch (ExecutionException e) {
+            throw new IOException("Inflating the chunk at offset " + chunk.offset + " failed!", e.getCause());
+        }
+    }
+
+    /**
+     * Submit inflate tasks until the in-flight limit is reached or there are
+     * no more chunks.
+     * @throws IOException if an i/o error occurs while scanning
+     */
+    protected void submitChunks() throws IOException {
+        long offset;
+        long limit;
+        while (pending.size() < maxInFlight) {
+            if (index != null) {
+                if (indexPosition >= index.size()) {
+                    return;
+                }
+                offset = index.getStartOffset(indexPosition);
+                limit = offset;
+                while (indexPosition < index.size() && limit - offset < chunkSize) {
+                    limit = index.getStartOffset(indexPosition) + index.getCompressedLength(indexPosition);
+                    ++indexPosition;
+                }
+            } else {
+                if (nextChunkOffset == -2) {
+                    nextChunkOffset = nextCandidate();
+                }
+                if (nextChunkOffset == -1) {
+                    return;
+                }
+                offset = nextChunkOffset;
+                scanPosition = Math.max(scanPosition, offset + chunkSize);
+                nextChunkOffset = nextCandidate();
+                limit = (nextChunkOffset != -1) ? nextChunkOffset : length;
+            }
+            PendingChunk chunk = new PendingChunk();
+            chunk.offset = offset;
+            chunk.future = executor.submit(new InflateTask(channel, offset, limit, maxBufferedEntrySize));
+            pending.add(chunk);
+        }
+    }
+
+    /**
+     * Find the next GZip header candidate in the file, i.e. the magic bytes
+     * followed by the deflate compression method and no reserved flags.
+     * @return offset of the next header candidate or -1
+     * @throws IOException if an i/o error occurs while scanning
+     */
+    protected long nextCandidate() throws IOException {
+        int idx;
+        int end;
+        while (scanPosition + MIN_ENTRY_SIZE <= length) {
+            if (scanPosition < scanBase || scanPosition + 4 > scanBase + scanLimit) {
+                scanBase = scanPosition;
+                scanLimit = 0;
+                ByteBuffer bb = ByteBuffer.wrap(scanBytes);
+                int read = 0;
+                while (read != -1 && bb.hasRemaining()) {
+                    read = channel.read(bb, scanBase + bb.position());
+                }
+                scanLimit = bb.position();
+                if (scanLimit < 4) {
+                    return -1;
+                }
+            }
+            idx = (int)(scanPosition - scanBase);
+            end = scanLimit - 3;
+            while (idx < end) {
+                if (scanBytes[idx] == (byte)0x1f
+                        && scanBytes[idx + 1] == (byte)0x8b
+                        && scanBytes[idx + 2] == (byte)GzipConstants.CM_DEFLATE
+                        && (scanBytes[idx + 3] & GzipConstants.FLG_FRESERVED) == 0) {
+                    scanPosition = scanBase + idx + 1;
+                    return scanBase + idx;
+                }
+                ++idx;
+            }
+            scanPosition = scanBase + idx;
+        }
+        return -1;
+    }
+
+    /**
+     * Open a sequential GZip reader positioned at the supplied offset, such
+     * that entry offsets are relative to the start of the file.
+     * @param channel file channel of GZip file
+     * @param offset offset of the entry
+     * @return GZip reader positioned at the offset
+     * @throws IOException if an i/o error occurs while positioning the reader
+     */
+    protected static GzipReader openReader(FileChannel channel, long offset) throws IOException {
+        GzipReader reader = new GzipReader(new FileChannelInputStream(channel, 0), READ_BUFFER_SIZE);
+        long remaining = offset;
+        while (remaining > 0) {
+            remaining -= reader.pbin.skip(remaining);
+        }
+        return reader;
+    }
+
+    /**
+     * Chunk submitted for inflation.
+     */
+    protected static class PendingChunk {
+
+        /** Offset of the first entry in the chunk. */
+        long offset;
+
+        /** Result of the inflate task. */
+        Future<List<InflatedEntry>> future;
+
+    }
+
+    /**
+     * Inflated entry and its uncompressed data.
+     */
+    protected static class InflatedEntry {
+
+        /** Closed GZip entry. */
+        GzipEntry entry;
+
+        /** Uncompressed data or null, if the entry was too large to buffer. */
+        byte[] data;
+
+    }
+
+    /**
+     * Task which inflates the entries starting before the chunk limit.
+     * No more than <code>maxBufferedEntrySize</code> bytes are buffered in
+     * total, the remaining entries are left to be streamed.
+     */
+    protected static class InflateTask implements Callable<List<InflatedEntry>> {
+
+        /** File channel of GZip file. */
+        final FileChannel channel;
+
+        /** Offset of the first entry. */
+        final long offset;
+
+        /** Offset from where the next chunk starts. */
+        final long limit;
+
+        /** Maximum uncompressed size of a buffered entry. */
+        final int maxBufferedEntrySize;
+
+        /**
+         * Construct a task which inflates the entries in a chunk.
+         * @param channel file channel of GZip file
+         * @param offset offset of the first entry
+         * @param limit offset from where the next chunk starts
+         * @param maxBufferedEntrySize maximum uncompressed size of a buffered entry
+         */
+        InflateTask(FileChannel channel, long offset, long limit, int maxBufferedEntrySize) {
+            this.channel = channel;
+            this.offset = offset;
+            this.limit = limit;
+            this.maxBufferedEntrySize = maxBufferedEntrySize;
+        }
+
+        public List<InflatedEntry> call() throws IOException {
+            List<InflatedEntry> list = new LinkedList<InflatedEntry>();
+            GzipReader reader = openReader(channel, offset);
+            byte[] tmpBuf = new byte[READ_BUFFER_SIZE];
+            ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+            GzipEntry entry;
+            InputStream in;
+            InflatedEntry inflatedEntry;
+            long buffered = 0;
+            boolean bOversized;
+            boolean bFull = false;
+            int read;
+            // Oversized entries with a skip-length are skipped without inflating the rest.
+            reader.setSkipLengthSeek(true);
+            try {
+                while (reader.getOffset() < limit) {
+                    entry = reader.getNextEntry();
+                    if (entry == null || reader.diagnostics.hasErrors()) {
+                        break;
+                    }
+                    out.reset();
+                    in = entry.getInputStream();
+                    bOversized = false;
+                    while (!bOversized && !bFull && (read = in.read(tmpBuf)) != -1) {
+                        if (out.size() + read > maxBufferedEntrySize) {
+                            bOversized = true;
+                        } else if (buffered + out.size() + read > maxBufferedEntrySize) {
+                            bFull = true;
+                        } else {
+                            out.write(tmpBuf, 0, read);
+                        }
+                    }
+                    if (bFull) {
+                        // This entry and the rest of the chunk are streamed by the consumer.
+                        break;
+                    }
+                    if (bOversized && entry.skipLength <= 0) {
+                        // The end of the entry is unknown without inflating it,
+                        // so it and the rest of the chunk are streamed by the consumer.
+                        break;
+                    }
+                    entry.close();
+                    if (reader.diagnostics.hasErrors()) {
+                        break;
+                    }
+                    inflatedEntry = new InflatedEntry();
+                    inflatedEntry.entry = entry;
+                    if (!bOversized) {
+                        inflatedEntry.data = out.toByteArray();
+                        buffered += inflatedEntry.data.length;
+                    }
+                    list.add(inflatedEntry);
+                }
+            } catch (IOException e) {
+                // The failing entry is streamed again and reported by the consumer.
+            } finally {
+                if (reader.gzipEntry != null && !reader.gzipEntry.bEof) {
+                    reader.abandonEntry();
+                }
+                reader.close();
+            }
+            return list;
+        }
+
+    }
+
+}
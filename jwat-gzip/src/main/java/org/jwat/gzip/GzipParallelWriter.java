@@ -0,0 +1,603 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+
+/**
+ * A GZip writer which accepts complete entries from any number of threads
+ * and compresses them concurrently. Each submitted entry is deflated into its
+ * own GZip member by a task on the supplied executor and members are appended
+ * to the output stream in submission order. One thread at a time writes the
+ * members which are next in sequence, while the other threads keep handing
+ * over compressed members. The returned <code>Future</code> completes when
+ * the member has been written, at which point <code>startOffset</code> and
+ * <code>consumed</code> of the entry hold the offset and length of the
+ * member in the output stream.
+ * At most <code>maxInFlight</code> entries are compressed or waiting to be
+ * written at any time; submitting threads block until there is room, which
+ * bounds the memory used.
+ * The executor is not shut down by this writer.
+ *
+ * @author nicl
+ */
+public class GzipParallelWriter implements Closeable {
+
+    /** Default maximum number of entries compressed or waiting to be written. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /** Output stream of GZip file. */
+    protected OutputStream out;
+
+    /** Executor used to compress entries. */
+    protected ExecutorService executor;
+
+    /** Maximum number of entries compressed or waiting to be written. */
+    protected int maxInFlight;
+
+    /** Permits for entries in flight. */
+    protected Semaphore inFlight;
+
+    /** Compression level used by deflaters. */
+    protected int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** Write skip-length extra subfields. */
+    protected boolean bSkipLength = false;
+
+    /** Choose the compression level of each entry by sampling its data. */
+    protected boolean bAdaptive = false;
+
+    /** Controller choosing the compression level of each entry or null. */
+    protected GzipLevelController levelController;
+
+    /** Idle compressors, reused to avoid allocating deflaters per entry. */
+    protected LinkedList<Compressor> compressors = new LinkedList<Compressor>();
+
+    /** Sequence number assigned to the next submitted entry. */
+    protected long nextSubmit;
+
+    /** Sequence number of the next member to write. */
+    protected long nextWrite;
+
+    /** Compressed members waiting for their turn to be written. */
+    protected Map<Long, Member> completed = new HashMap<Long, Member>();
+
+    /** Is a thread currently writing members to the output stream. */
+    protected boolean bWriting = false;
+
+    /** Compression statistics of the entries compressed so far. */
+    protected final GzipCompressionStats stats = new GzipCompressionStats();
+
+    /** Offset in the output stream where the next member is written. */
+    protected long offset;
+
+    /** Exception which occurred while writing to the output stream. */
+    protected IOException writeException;
+
+    /** Compliance status for entries written up to now. */
+    protected boolean bIsCompliant = true;
+
+    /** Writer closed status. */
+    protected boolean bClosed = false;
+
+    /**
+     * Construct a parallel GZip writer with the default in-flight size.
+     * @param out output stream of GZip file
+     * @param executor executor used to compress entries
+     */
+    public GzipParallelWriter(OutputStream out, ExecutorService executor) {
+        this(out, executor, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Construct a parallel GZip writer.
+     * @param out output stream of GZip file
+     * @param executor executor used to compress entries
+     * @param maxInFlight maximum number of entries compressed or waiting to be written
+     */
+    public GzipParallelWriter(OutputStream out, ExecutorService executor, int maxInFlight) {
+        if (out == null) {
+            throw new IllegalArgumentException("out is null!");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null!");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException(
+                    "maxInFlight is less or equals to zero: " + maxInFlight);
+        }
+        this.out = out;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Set the offset in the output stream of the next member, used when
+     * appending to existing data.
+     * @param offset offset of the next member
+     */
+    public synchronized void setOffset(long offset) {
+        if (nextSubmit != 0) {
+            throw new IllegalStateException("Entries already submitted!");
+        }
+        this.offset = offset;
+    }
+
+    /**
+     * Set compression level used by deflaters.
+     * Only applies to entries submitted after this call.
+     * @param compressionLevel compression level
+     */
+    public synchronized void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel == Deflater.DEFAULT_COMPRESSION
+                || compressionLevel == Deflater.NO_COMPRESSION
+                || (compressionLevel >= Deflater.BEST_SPEED && compressionLevel <= Deflater.BEST_COMPRESSION)) {
+            this.compressionLevel = compressionLevel;
+        } else {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+    }
+
+    /**
+     * Get the compression level used by deflaters.
+     * @return compression level used by deflaters
+     */
+    public synchronized int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Enable or disable skip-length extra subfields in the GZip header of
+     * each entry. Only applies to entries submitted after this call.
+     * @param bSkipLength boolean indicating whether to write skip-lengths
+     */
+    public synchronized void setSkipLength(boolean bSkipLength) {
+        this.bSkipLength = bSkipLength;
+    }
+
+    /**
+     * Returns a boolean indicating whether skip-length extra subfields are
+     * written.
+     * @return a boolean indicating whether skip-lengths are written
+     */
+    public synchronized boolean isSkipLength() {
+        return bSkipLength;
+    }
+
+    /**
+     * Enable or disable adaptive compression, as described in
+     * <code>GzipWriter</code>. Only applies to entries submitted after this
+     * call.
+     * @param bAdaptive boolean indicating whether to sample entry data
+     */
+    public synchronized void setAdaptiveCompression(boolean bAdaptive) {
+        this.bAdaptive = bAdaptive;
+    }
+
+    /**
+     * Returns a boolean indicating whether adaptive compression is enabled.
+     * @return a boolean indicating whether adaptive compression is enabled
+     */
+    public synchronized boolean isAdaptiveCompression() {
+        return bAdaptive;
+    }
+
+    /**
+     * Set a controller to choose the compression level of each entry, or
+     * null to use the fixed compression level. The number of entries in
+     * flight is reported to the controller as queue depth on every submit.
+     * Only applies to entries submitted after this call.
+     * @param levelController compression level controller or null
+     */
+    public synchronized void setLevelController(GzipLevelController levelController) {
+        this.levelController = levelController;
+    }
+
+    /**
+     * Returns the controller choosing the compression level of each entry.
+     * @return compression level controller or null
+     */
+    public synchronized GzipLevelController getLevelController() {
+        return levelController;
+    }
+
+    /**
+     * Returns a boolean indicating whether all entries written so far are compliant.
+     * @return a boolean indicating whether all entries written so far are compliant
+     */
+    public synchronized boolean isCompliant() {
+        return bIsCompliant;
+    }
+
+    /**
+     * Returns a copy of the compression statistics of the entries compressed
+     * so far.
+     * @return compression statistics
+     */
+    public synchronized GzipCompressionStats getCompressionStats() {
+        GzipCompressionStats copy = new GzipCompressionStats();
+        copy.add(stats);
+        return copy;
+    }
+
+    /**
+     * Returns the offset in the output stream where the next member is written.
+     * @return offset in the output stream where the next member is written
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Submit a GZip entry for compression. The uncompressed data is the
+     * concatenation of the supplied byte arrays, which must not be modified
+     * until the returned <code>Future</code> completes.
+     * Blocks while <code>maxInFlight</code> entries are in flight.
+     * @param entry GZip entry object
+     * @param data uncompressed data of the entry
+     * @return <code>Future</code> which returns the entry once written
+     * @throws IOException if interrupted while waiting or the writer has failed
+     */
+    public Future<GzipEntry> submit(GzipEntry entry, byte[]... data) throws IOException {
+        if (entry == null) {
+            throw new IllegalArgumentException("entry is null!");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("data is null!");
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting to submit entry!");
+        }
+        Member member = new Member(entry, data);
+        synchronized (this) {
+            if (bClosed) {
+                inFlight.release();
+                throw new IllegalStateException("Writer is closed!");
+            }
+            if (writeException != null) {
+                inFlight.release();
+                throw writeException;
+            }
+            member.sequence = nextSubmit++;
+            member.compressionLevel = compressionLevel;
+            member.bSkipLength = bSkipLength;
+            member.bAdaptive = bAdaptive;
+            member.levelController = levelController;
+        }
+        if (member.levelController != null) {
+            member.levelController.reportQueueDepth(maxInFlight - inFlight.availablePermits());
+        }
+        try {
+            executor.submit(new CompressTask(member));
+        } catch (RejectedExecutionException e) {
+            member.exception = e;
+            sequence(member);
+        }
+        return member.result;
+    }
+
+    /**
+     * Wait until all submitted entries have been written and flush the
+     * output stream.
+     * @throws IOException if an i/o error occurs while writing or flushing
+     */
+    public void flush() throws IOException {
+        awaitIdle();
+        synchronized (this) {
+            if (writeException != null) {
+                throw writeException;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Wait until all submitted entries have been written, then flush and
+     * close the output stream and release the deflaters.
+     * @throws IOException if an i/o error occurs while writing or closing
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (bClosed) {
+                return;
+            }
+            bClosed = true;
+        }
+        awaitIdle();
+        synchronized (this) {
+            while (!compressors.isEmpty()) {
+                compressors.removeFirst().close();
+            }
+            try {
+                out.flush();
+                out.close();
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Wait until no entries are in flight.
+     * @throws IOException if interrupted while waiting
+     */
+    protected void awaitIdle() throws IOException {
+        try {
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for entries to be written!");
+        }
+        inFlight.release(maxInFlight);
+    }
+
+    /**
+     * Get an idle compressor or create a new one.
+     * @return compressor configured for the member
+     */
+    protected Compressor acquireCompressor() {
+        Compressor compressor = null;
+        synchronized (this) {
+            if (!compressors.isEmpty()) {
+                compressor = compressors.removeFirst();
+            }
+        }
+        if (compressor == null) {
+            compressor = new Compressor();
+        }
+        return compressor;
+    }
+
+    /**
+     * Return a compressor to the idle list and add its statistics to the
+     * statistics of this writer. Always called before the member is
+     * sequenced, so all compressors are idle once no entries are in flight.
+     * @param compressor compressor no longer in use
+     */
+    protected synchronized void releaseCompressor(Compressor compressor) {
+        GzipCompressionStats compressorStats = compressor.writer.getCompressionStats();
+        stats.add(compressorStats);
+        compressorStats.reset();
+        compressors.addFirst(compressor);
+    }
+
+    /**
+     * Hand a compressed or failed member to the sequencer and write all
+     * members which are next in sequence.
+     * The members next in sequence are collected while holding the lock and
+     * written without it. Only the thread which set the writing flag writes
+     * to the output stream, so members are always written in submission
+     * order, and members completed meanwhile by other threads are picked up
+     * by it before the flag is cleared.
+     * @param member compressed or failed member
+     */
+    protected void sequence(Member member) {
+        LinkedList<Member> ready = new LinkedList<Member>();
+        long writeOffset;
+        boolean bCompliant;
+        synchronized (this) {
+            completed.put(member.sequence, member);
+            if (bWriting) {
+                return;
+            }
+            bWriting = true;
+        }
+        while (true) {
+            synchronized (this) {
+                while ((member = completed.remove(nextWrite)) != null) {
+                    ++nextWrite;
+                    ready.add(member);
+                }
+                if (ready.isEmpty()) {
+                    bWriting = false;
+                    return;
+                }
+                writeOffset = offset;
+            }
+            bCompliant = true;
+            for (Member m : ready) {
+                if (m.exception == null && writeException != null) {
+                    m.exception = writeException;
+                }
+                if (m.exception == null) {
+                    try {
+                        out.write(m.bytes, 0, m.length);
+                        m.entry.startOffset = writeOffset;
+                        m.entry.consumed = m.length;
+                        writeOffset += m.length;
+                        bCompliant &= m.entry.isCompliant();
+                    } catch (IOException e) {
+                        m.exception = e;
+                        synchronized (this) {
+                            writeException = e;
+                        }
+                    }
+                }
+                m.bytes = null;
+            }
+            synchronized (this) {
+                offset = writeOffset;
+                bIsCompliant &= bCompliant;
+            }
+            while (!ready.isEmpty()) {
+                member = ready.removeFirst();
+                member.result.run();
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Entry submitted for compression and its compressed member.
+     */
+    protected static class Member implements Callable<GzipEntry> {
+
+        /** GZip entry object. */
+        protected GzipEntry entry;
+
+        /** Uncompressed data of the entry. */
+        protected byte[][] data;
+
+        /** Submission sequence number. */
+        protected long sequence;
+
+        /** Compression level used for this member. */
+        protected int compressionLevel;
+
+        /** Write a skip-length extra subfield for this member. */
+        protected boolean bSkipLength;
+
+        /** Sample the data of this member to choose the compression level. */
+        protected boolean bAdaptive;
+
+        /** Controller choosing the compression level of this member or null. */
+        protected GzipLevelController levelController;
+
+        /** Compressed member. */
+        protected byte[] bytes;
+
+        /** Length of the compressed member. */
+        protected int length;
+
+        /** Exception which occurred while compressing or writing the member. */
+        protected Exception exception;
+
+        /** Completed once the member has been written or has failed. */
+        protected FutureTask<GzipEntry> result;
+
+        /**
+         * Construct a member for the supplied entry and data.
+         * @param entry GZip entry object
+         * @param data uncompressed data of the entry
+         */
+        protected Member(GzipEntry entry, byte[][] data) {
+            this.entry = entry;
+            this.data = data;
+            result = new FutureTask<GzipEntry>(this);
+        }
+
+        /**
+         * Invoked by the result future once the member has been sequenced.
+         */
+        public GzipEntry call() throws Exception {
+            if (exception != null) {
+                throw exception;
+            }
+            return entry;
+        }
+
+    }
+
+    /**
+     * GZip writer compressing into a reusable memory buffer.
+     */
+    protected static class Compressor {
+
+        /** Memory buffer holding the compressed member. */
+        protected GzipWriter.EntryBuffer buffer = new GzipWriter.EntryBuffer();
+
+        /** GZip writer compressing into the memory buffer. */
+        protected GzipWriter writer = new GzipWriter(buffer);
+
+        /**
+         * Compress the member into the memory buffer.
+         * @param member member to compress
+         * @throws IOException if an i/o error occurs while compressing
+         */
+        protected void compress(Member member) throws IOException {
+            buffer.reset();
+            writer.setCompressionLevel(member.compressionLevel);
+            writer.setSkipLength(member.bSkipLength);
+            writer.setAdaptiveCompression(member.bAdaptive);
+            writer.setLevelController(member.levelController);
+            writer.writeEntryHeader(member.entry);
+            OutputStream entryOut = member.entry.getOutputStream();
+            for (int i=0; i<member.data.length; ++i) {
+                if (member.data[i] != null) {
+                    entryOut.write(member.data[i]);
+                }
+            }
+            member.entry.close();
+            member.data = null;
+            member.length = buffer.size();
+            member.bytes = new byte[member.length];
+            System.arraycopy(buffer.getBuffer(), 0, member.bytes, 0, member.length);
+        }
+
+        /**
+         * Release the deflater.
+         */
+        protected void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+            }
+        }
+
+    }
+
+    /**
+     * Task which compresses one member and hands it to the sequencer.
+     */
+    protected class CompressTask implements Runnable {
+
+        /** Member to compress. */
+        protected Member member;
+
+        /**
+         * Construct a task compressing the supplied member.
+         * @param member member to compress
+         */
+        protected CompressTask(Member member) {
+            this.member = member;
+        }
+
+        public void run() {
+            Compressor compressor = acquireCompressor();
+            try {
+                compressor.compress(member);
+            } catch (Throwable t) {
+                member.exception = (t instanceof Exception) ? (Exception)t : new RuntimeException(t);
+                // Do not reuse a compressor in an unknown state.
+                compressor.close();
+                compressor = null;
+            }
+            if (compressor != null) {
+                releaseCompressor(compressor);
+            }
+            sequence(member);
+        }
+
+    }
+
+}
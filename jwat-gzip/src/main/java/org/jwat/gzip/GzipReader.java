@@ -22,6 +22,7 @@ import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
 import org.jwat.common.Diagnostics;
 import org.jwat.common.ISO8859_1;
+import org.jwat.common.RandomAccessFileInputStream;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
@@ -29,6 +30,7 @@ import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.Date;
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
@@ -38,6 +40,8 @@ import java.util.zip.Inflater;
  * A reader for (multi-part) GZip files. Validates header and CRC's.
  * Entries are read sequentially from the input stream. Random access is
  * supported indirectly if the used input stream supports this.
+ * Direct random access to entries is supported when the reader is
+ * constructed from a <code>RandomAccessFile</code> and a <code>GzipIndex</code>.
  * Compressed data is available through an uncompressing input stream wrapper.
  *
  * @author nicl
@@ -88,6 +92,18 @@ public class GzipReader implements Closeable {
     /** Partial GZip entry which could not be completely read. */
     public GzipEntry partialEntry;
 
+    /** Random access file, if the reader is in indexed mode. */
+    protected RandomAccessFile raf;
+
+    /** Seekable input stream of the random access file, if the reader is in indexed mode. */
+    protected RandomAccessPushBackInputStream rapbin;
+
+    /** Member index, if the reader is in indexed mode. */
+    protected GzipIndex index;
+
+    /** Seek past unread entry data using the skip-length extra subfield. */
+    protected boolean bSkipLengthSeek = false;
+
     /** Buffer used to read header.  */
     protected byte[] headerBytes = new byte[10];
     /** Buffer used to read the XLEN value. */
@@ -126,6 +142,13 @@ public class GzipReader implements Closeable {
         return (magicNumber == GzipConstants.GZIP_MAGIC);
     }
 
+    /**
+     * Construct a GZip reader without input, used by subclasses which set up
+     * their own input stream.
+     */
+    protected GzipReader() {
+    }
+
     /**
      * Construct a GZip reader with a default input buffer size of
      * DEFAULT_INPUT_BUFFER_SIZE.
@@ -157,6 +180,30 @@ public class GzipReader implements Closeable {
         inputBytes = new byte[DEFAULT_INPUT_BUFFER_SIZE];
     }
 
+    /**
+     * Construct a GZip reader with direct access to the entries listed in
+     * the supplied index. Entries can be read sequentially from the current
+     * position or opened directly using the index.
+     * The <code>RandomAccessFile</code> is not closed by this reader.
+     * @param raf random access file of GZip file
+     * @param index member index of the GZip file
+     * @throws IOException if an i/o error occurs while positioning the file
+     */
+    public GzipReader(RandomAccessFile raf, GzipIndex index) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("raf is null!");
+        }
+        if (index == null) {
+            throw new IllegalArgumentException("index is null!");
+        }
+        this.raf = raf;
+        this.index = index;
+        inputBytes = new byte[DEFAULT_INPUT_BUFFER_SIZE];
+        rapbin = new RandomAccessPushBackInputStream(raf, DEFAULT_INPUT_BUFFER_SIZE);
+        pbin = rapbin;
+        seek(0);
+    }
+
     /**
      * Release resources associated with this reader.
      * Also closes the <code>InputStream</code> supplied to the constructor.
@@ -216,6 +263,227 @@ public class GzipReader implements Closeable {
         return consumed;
     }
 
+    /**
+     * Enable or disable seeking past the unread data of an entry when it is
+     * closed, if the entry header has a skip-length extra subfield.
+     * Seeking avoids inflating the rest of the entry, but the CRC32 and ISize
+     * of a skipped entry are not validated.
+     * @param bSkipLengthSeek boolean indicating whether to seek using skip-lengths
+     */
+    public void setSkipLengthSeek(boolean bSkipLengthSeek) {
+        this.bSkipLengthSeek = bSkipLengthSeek;
+    }
+
+    /**
+     * Returns a boolean indicating whether entries are skipped using their
+     * skip-length extra subfield.
+     * @return a boolean indicating whether entries are skipped using skip-lengths
+     */
+    public boolean isSkipLengthSeek() {
+        return bSkipLengthSeek;
+    }
+
+    /**
+     * Close an entry read by this reader by seeking past its unread data,
+     * if the entry header has a skip-length extra subfield, regardless of
+     * the skip-length seek setting. Entries without a skip-length are left
+     * open.
+     * @param entry GZip entry read by this reader
+     * @return a boolean indicating whether the entry was skipped
+     * @throws IOException if an i/o error occurs while skipping the entry
+     */
+    public boolean closeEntryBySkipLength(GzipEntry entry) throws IOException {
+        if (entry == null) {
+            throw new IllegalArgumentException("entry is null!");
+        }
+        if (entry.skipLength <= 0) {
+            return false;
+        }
+        boolean bSkipLengthSeekOld = bSkipLengthSeek;
+        bSkipLengthSeek = true;
+        try {
+            entry.close();
+        } finally {
+            bSkipLengthSeek = bSkipLengthSeekOld;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the member index used by this reader or null, if the reader is
+     * not in indexed mode.
+     * @return member index or null
+     */
+    public GzipIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Inflate the first bytes of the GZip entry starting at the supplied
+     * offset. Used to confirm that an offset found by scanning for a GZip
+     * magic number really is the start of an entry and not just compressed
+     * data which happens to look like a GZip header.
+     * Only the data needed to inflate the requested bytes is read and the
+     * file pointer is left at an undefined position.
+     * @param raf random access file of GZip file
+     * @param offset possible entry start offset
+     * @param len maximum number of bytes to inflate
+     * @return the first inflated bytes of the entry, or null if the offset is
+     * not the start of an entry with a valid header and compressed data
+     * @throws IOException if an i/o error occurs while reading the file, an
+     * invalid entry is not reported as an exception
+     */
+    public static byte[] readEntryHead(RandomAccessFile raf, long offset, int len) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("raf is null!");
+        }
+        if (len <= 0) {
+            throw new IllegalArgumentException(
+                    "len is less or equals to zero: " + len);
+        }
+        raf.seek(offset);
+        GzipReader reader = new GzipReader(new RandomAccessFileInputStream(raf), 1024);
+        byte[] head = null;
+        try {
+            GzipEntry entry = reader.getNextEntry();
+            if (entry != null && !entry.diagnostics.hasErrors()) {
+                byte[] bytes = new byte[len];
+                InputStream in = entry.getInputStream();
+                int pos = 0;
+                int read = 0;
+                while (pos < len && read != -1) {
+                    read = in.read(bytes, pos, len - pos);
+                    if (read > 0) {
+                        pos += read;
+                    }
+                }
+                if (!entry.diagnostics.hasErrors()) {
+                    head = new byte[pos];
+                    System.arraycopy(bytes, 0, head, 0, pos);
+                }
+            }
+        } catch (IOException e) {
+            // Invalid compressed data is not an entry, i/o errors are passed on.
+            if (!(e.getCause() instanceof DataFormatException)) {
+                throw e;
+            }
+            head = null;
+        } finally {
+            // Not closed, since that would inflate the rest of the entry.
+            reader.inf.end();
+            reader.inf = null;
+        }
+        return head;
+    }
+
+    /**
+     * Open the entry with the supplied index number directly without reading
+     * any of the preceding entries. Any current entry is abandoned without
+     * being read to the end. Subsequent calls to <code>getNextEntry</code>
+     * continue from the entry following the one returned.
+     * @param idx entry index number
+     * @return GZip entry or null
+     * @throws IOException if an i/o error occurs while reading entry
+     */
+    public GzipEntry getEntry(int idx) throws IOException {
+        if (index == null) {
+            throw new IllegalStateException("Reader is not in indexed mode!");
+        }
+        seek(index.getStartOffset(idx));
+        return getNextEntry();
+    }
+
+    /**
+     * Open the entry starting at the supplied offset directly without reading
+     * any of the preceding entries. The offset must match an entry in the
+     * index.
+     * @param offset entry start offset
+     * @return GZip entry or null
+     * @throws IOException if an i/o error occurs while reading entry
+     */
+    public GzipEntry getEntryAt(long offset) throws IOException {
+        if (index == null) {
+            throw new IllegalStateException("Reader is not in indexed mode!");
+        }
+        int idx = index.indexOf(offset);
+        if (idx == -1) {
+            throw new IllegalArgumentException("No entry at offset: " + offset);
+        }
+        return getEntry(idx);
+    }
+
+    /**
+     * Returns an input stream of the concatenated uncompressed data of all
+     * the entries starting at the supplied uncompressed offset. Only the
+     * entry containing the offset is inflated from its start, which makes
+     * seeking in BGZF files cheap since no block exceeds 64KB.
+     * The stream reads through the following entries and uses the reader,
+     * so any current entry is abandoned.
+     * @param uncompressedOffset offset in the concatenated uncompressed data
+     * @return input stream positioned at the supplied offset
+     * @throws IOException if an i/o error occurs while positioning the stream
+     */
+    public InputStream getUncompressedInputStream(long uncompressedOffset) throws IOException {
+        if (index == null) {
+            throw new IllegalStateException("Reader is not in indexed mode!");
+        }
+        if (uncompressedOffset < 0 || uncompressedOffset > index.getUncompressedTotal()) {
+            throw new IllegalArgumentException("Uncompressed offset out of range: " + uncompressedOffset);
+        }
+        int idx = index.floorUncompressedIndexOf(uncompressedOffset);
+        if (idx == -1) {
+            // Positioned at the end of the data.
+            return new GzipUncompressedInputStream(this, null);
+        }
+        GzipEntry entry = getEntry(idx);
+        if (entry == null) {
+            throw new EOFException("Missing entry at offset: " + index.getStartOffset(idx));
+        }
+        InputStream in = entry.getInputStream();
+        long remaining = uncompressedOffset - index.getUncompressedOffset(idx);
+        long skipped;
+        while (remaining > 0) {
+            skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Entry shorter than indexed: " + entry.getStartOffset());
+            }
+            remaining -= skipped;
+        }
+        return new GzipUncompressedInputStream(this, entry);
+    }
+
+    /**
+     * Reposition the random access file and reset the input stream so that
+     * offsets remain relative to the start of the file.
+     * @param offset new position in the file
+     * @throws IOException if an i/o error occurs while positioning the file
+     */
+    protected void seek(long offset) throws IOException {
+        if (gzipEntry != null) {
+            abandonEntry();
+        }
+        if (offset > raf.length()) {
+            throw new EOFException("Offset beyond end of file: " + offset);
+        }
+        rapbin.seek(offset);
+    }
+
+    /**
+     * Detach the current entry without reading the rest of its data.
+     * The entry input stream reports EOF afterwards.
+     */
+    protected void abandonEntry() {
+        if (gzipEntry.in instanceof GzipEntryInputStream) {
+            GzipEntryInputStream entryIn = (GzipEntryInputStream)gzipEntry.in;
+            entryIn.bEof = true;
+            entryIn.reader = null;
+        }
+        gzipEntry.in = null;
+        gzipEntry.reader = null;
+        gzipEntry.bEof = true;
+        gzipEntry = null;
+    }
+
     /**
      * Get the next GZip entry header and prepare the compressed data for
      * input stream retrieval.
@@ -342,6 +610,18 @@ public class GzipReader implements Closeable {
                                         System.arraycopy(gzipEntry.extraBytes, idx, extraData.data, 0, len);
                                         idx += len;
                                         gzipEntry.extraData.add(extraData);
+                                        if (extraData.si1 == GzipConstants.SKIP_LENGTH_SI1
+                                                && extraData.si2 == GzipConstants.SKIP_LENGTH_SI2
+                                                && len == GzipConstants.SKIP_LENGTH_LEN) {
+                                            gzipEntry.skipLength = 0;
+                                            for (int i=GzipConstants.SKIP_LENGTH_LEN - 1; i>=0; --i) {
+                                                gzipEntry.skipLength = (gzipEntry.skipLength << 8) | (extraData.data[i] & 255);
+                                            }
+                                        } else if (extraData.si1 == GzipConstants.BGZF_SI1
+                                                && extraData.si2 == GzipConstants.BGZF_SI2
+                                                && len == GzipConstants.BGZF_SLEN) {
+                                            gzipEntry.bgzfBlockSize = (((extraData.data[1] & 255) << 8) | (extraData.data[0] & 255)) + 1;
+                                        }
                                     } else {
                                         b = false;
                                     }
@@ -536,6 +816,47 @@ public class GzipReader implements Closeable {
         bIsCompliant &= gzipEntry.bIsCompliant;
     }
 
+    /**
+     * Position the input stream at the end of an entry using its skip-length
+     * instead of inflating the rest of the entry data.
+     * @param entry GZip entry
+     * @return boolean indicating whether the entry was skipped
+     * @throws IOException if an i/o error occurs while skipping data
+     */
+    protected boolean skipEntry(GzipEntry entry) throws IOException {
+        long target = entry.startOffset + entry.skipLength;
+        long position = pbin.getConsumed();
+        long remaining = target - position;
+        if (remaining < 0) {
+            // Part of the next entry may already be in the input buffer.
+            if (-remaining > inf.getRemaining()) {
+                return false;
+            }
+            unreadInput((int)-remaining);
+        } else {
+            long skipped;
+            while (remaining > 0) {
+                skipped = pbin.skip(remaining);
+                if (skipped <= 0) {
+                    if (pbin.read() == -1) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+        entry.consumed = pbin.getConsumed() - entry.startOffset;
+        consumed += entry.consumed;
+        entry.reader = null;
+        if (remaining > 0) {
+            entry.diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", "Unexpected EOF!"));
+            entry.bIsCompliant = false;
+            bIsCompliant = false;
+        }
+        return true;
+    }
+
     /**
      * Read and uncompress data into a buffer.
      * @param b destination buffer for uncompressed data
@@ -556,13 +877,12 @@ public class GzipReader implements Closeable {
                 bIsCompliant = false;
                 throw new DataFormatException("Dictionary needed!");
             } else if (inf.needsInput()) {
-                lastInput = pbin.read(inputBytes, 0, inputBytes.length);
+                lastInput = fillInput();
                 if (lastInput == -1) {
                     gzipEntry.diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", "Unexpected EOF!"));
                     bIsCompliant = false;
                     throw new DataFormatException("Data missing!");
                 }
-                inf.setInput(inputBytes, 0, lastInput);
             } else {
                 gzipEntry.diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", "Unexpected EOF!"));
                 bIsCompliant = false;
@@ -572,6 +892,180 @@ public class GzipReader implements Closeable {
         return inflated;
     }
 
+    /**
+     * Read compressed data from the input stream and pass it to the inflater.
+     * @return number of bytes passed to the inflater or -1
+     * @throws IOException if an i/o error occurs while reading data
+     */
+    protected int fillInput() throws IOException {
+        int read = pbin.read(inputBytes, 0, inputBytes.length);
+        if (read != -1) {
+            inf.setInput(inputBytes, 0, read);
+        }
+        return read;
+    }
+
+    /**
+     * Push the last part of the data passed to the inflater back into the
+     * input stream, used when an entry ends before the inflater has used all
+     * its input.
+     * @param len number of bytes to push back
+     * @throws IOException if an i/o error occurs while pushing back data
+     */
+    protected void unreadInput(int len) throws IOException {
+        if (len > lastInput) {
+            throw new IOException("Remaining larger than lastInput!");
+        }
+        pbin.unread(inputBytes, lastInput - len, len);
+    }
+
+    /**
+     * Push back input stream of a random access file used in indexed mode.
+     * Seeking reuses the stream and its buffers and keeps the consumed count
+     * relative to the start of the file.
+     */
+    protected static class RandomAccessPushBackInputStream extends ByteCountingPushBackInputStream {
+
+        /** Random access file read from. */
+        protected RandomAccessFile raf;
+
+        /** Buffered stream of the random access file. */
+        protected RandomAccessBufferedInputStream bin;
+
+        /**
+         * Construct a push back input stream reading from the current
+         * position of the supplied random access file.
+         * @param raf random access file
+         * @param size read and push back buffer size
+         */
+        protected RandomAccessPushBackInputStream(RandomAccessFile raf, int size) {
+            this(raf, new RandomAccessBufferedInputStream(raf, size), size);
+        }
+
+        /**
+         * Construct a push back input stream on the supplied buffered stream.
+         * @param raf random access file
+         * @param bin buffered stream of the random access file
+         * @param size push back buffer size
+         */
+        private RandomAccessPushBackInputStream(RandomAccessFile raf, RandomAccessBufferedInputStream bin, int size) {
+            super(bin, size);
+            this.raf = raf;
+            this.bin = bin;
+        }
+
+        /**
+         * Discard any buffered and pushed back data, position the file at
+         * the supplied offset and make the consumed count equal the offset.
+         * @param offset new position in the file
+         * @throws IOException if an i/o error occurs while positioning the file
+         */
+        public void seek(long offset) throws IOException {
+            pos = buf.length;
+            bin.discard();
+            raf.seek(offset);
+            consumed = offset;
+            counter = offset;
+        }
+
+    }
+
+    /**
+     * <code>BufferedInputStream</code> over a random access file whose
+     * buffered data can be discarded when the file is repositioned.
+     */
+    protected static class RandomAccessBufferedInputStream extends BufferedInputStream {
+
+        /**
+         * Construct a buffered input stream of the supplied random access file.
+         * @param raf random access file
+         * @param size buffer size
+         */
+        protected RandomAccessBufferedInputStream(RandomAccessFile raf, int size) {
+            super(new RandomAccessFileInputStream(raf), size);
+        }
+
+        /**
+         * Discard the buffered data, keeping the buffer.
+         */
+        protected synchronized void discard() {
+            pos = 0;
+            count = 0;
+            markpos = -1;
+        }
+
+    }
+
+    /**
+     * <code>InputStream</code> reading the uncompressed data of an entry and
+     * continuing with the data of the following entries.
+     *
+     * @author nicl
+     */
+    protected static class GzipUncompressedInputStream extends InputStream {
+
+        /** GZip reader used to get the following entries. */
+        GzipReader reader;
+
+        /** Current entry or null, if there are no more entries. */
+        GzipEntry entry;
+
+        /** Input stream of the current entry. */
+        InputStream in;
+
+        /** Small buffer used by the read() method. */
+        byte[] singleByteArray = new byte[1];
+
+        /**
+         * Construct input stream continuing from a partially read entry.
+         * @param reader GZip reader
+         * @param entry current entry or null
+         */
+        public GzipUncompressedInputStream(GzipReader reader, GzipEntry entry) {
+            this.reader = reader;
+            this.entry = entry;
+            if (entry != null) {
+                in = entry.getInputStream();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(singleByteArray, 0, 1);
+            if (read != -1) {
+                return singleByteArray[0] & 255;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int read;
+            while (entry != null) {
+                read = in.read(b, off, len);
+                if (read != -1) {
+                    return read;
+                }
+                entry = reader.getNextEntry();
+                in = (entry != null) ? entry.getInputStream() : null;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (entry != null) {
+                entry.close();
+                entry = null;
+                in = null;
+            }
+        }
+
+    }
+
     /**
      * <code>InputStream</code> to expose GZip'ed data in a controlled fashion.
      *
@@ -604,6 +1098,9 @@ public class GzipReader implements Closeable {
 
         @Override
         public void close() throws IOException {
+            if (!bEof && reader.bSkipLengthSeek && gzipEntry.skipLength > 0) {
+                bEof = reader.skipEntry(gzipEntry);
+            }
             while (!bEof) {
                 skip(reader.skip_read_buffer.length);
             }
@@ -645,12 +1142,7 @@ public class GzipReader implements Closeable {
                 reader.crc.update(b, off, read);
             }
             else {
-                int remaining = reader.inf.getRemaining();
-                if (remaining > reader.lastInput) {
-                    throw new IOException("Remaining larger than lastInput!");
-                }
-                reader.pbin.unread(reader.inputBytes, reader.lastInput - remaining,
-                                   remaining);
+                reader.unreadInput(reader.inf.getRemaining());
                 bEof = true;
                 reader.readTrailer(gzipEntry);
             }
@@ -20,14 +20,24 @@ package org.jwat.gzip;
 import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
 import org.jwat.common.ISO8859_1;
+import org.jwat.common.RandomAccessFileOutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
@@ -38,6 +48,38 @@ import java.util.zip.Deflater;
  * The class writes a GZip header. The compressed data and trailer is also
  * written by this class but is instigated by calling the write method on the
  * GZip entry itself.
+ * Optionally each entry header can carry a skip-length extra subfield with
+ * the total length of the entry, allowing readers to skip entries without
+ * inflating them. Since the length is only known when the entry has been
+ * compressed, the header is patched by seeking back when writing to a
+ * <code>RandomAccessFile</code>. Otherwise entries are buffered in memory,
+ * up to the configurable maximum buffered entry size. An entry growing
+ * beyond it is written without the skip-length subfield.
+ * Large entries can be deflated in parallel by splitting the input into
+ * blocks which are compressed concurrently, each primed with the last 32KB of
+ * the previous block as dictionary and terminated by a sync flush, so the
+ * blocks join into a single deflate stream. This requires the sync flush
+ * support of the Java 7 <code>Deflater</code>; on older runtimes entries are
+ * deflated sequentially.
+ * In blocked mode entries are written as a series of BGZF blocks, GZip
+ * members of at most 64KB each carrying their size in a "BC" extra subfield,
+ * which allows uncompressed offsets to be located without inflating from
+ * the start of the entry.
+ * In adaptive mode the first bytes of each entry are sampled and, if their
+ * byte entropy shows the data is already compressed, the rest of the entry
+ * is deflated at the fastest level or stored, which saves most of the CPU
+ * spent on JPEG, video or ZIP payloads. Compression statistics are kept for
+ * every entry written.
+ * Instead of a fixed compression level a <code>GzipLevelController</code>
+ * can choose the level of each entry from the observed deflate throughput
+ * or queue depth.
+ * For consumers tailing the file while it is written, the deflater of the
+ * current entry can be sync flushed after a number of uncompressed bytes,
+ * after an interval of time or on an explicit <code>flush()</code>. Sync
+ * flushing byte aligns the compressed data without ending the entry, so
+ * everything written so far can be inflated at the cost of a few bytes per
+ * flush. Like parallel deflating it requires the Java 7
+ * <code>Deflater</code>; in blocked mode a short block is written instead.
  *
  * @author nicl
  */
@@ -46,8 +88,50 @@ public class GzipWriter implements Closeable {
     /** Default input buffer size. */
     public static final int DEFAULT_INPUT_BUFFER_SIZE = 8192;
 
+    /** Default uncompressed block size used when deflating in parallel. */
+    public static final int DEFAULT_PARALLEL_BLOCK_SIZE = 128 * 1024;
+
+    /** Default maximum number of blocks deflated ahead of the output. */
+    public static final int DEFAULT_PARALLEL_MAX_IN_FLIGHT = 16;
+
+    /** Maximum size of an entry buffered in memory to write its skip-length. */
+    public static final int MAX_BUFFERED_ENTRY_SIZE = Integer.MAX_VALUE - 8;
+
+    /** Default maximum size of an entry buffered in memory to write its skip-length. */
+    public static final int DEFAULT_MAX_BUFFERED_ENTRY_SIZE = 16 * 1024 * 1024;
+
+    /** Size of the deflate dictionary window. */
+    public static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /** Default number of uncompressed bytes sampled in adaptive mode. */
+    public static final int DEFAULT_ADAPTIVE_SAMPLE_SIZE = 16 * 1024;
+
+    /** Sampled byte entropy, in bits per byte, from which data is stored. */
+    public static final double ADAPTIVE_STORED_ENTROPY = 7.9;
+
+    /** Sampled byte entropy, in bits per byte, from which data is deflated at the fastest level. */
+    public static final double ADAPTIVE_FAST_ENTROPY = 7.5;
+
+    /** <code>Deflater.SYNC_FLUSH</code> value. */
+    protected static final int SYNC_FLUSH = 2;
+
+    /** <code>Deflater.deflate(byte[], int, int, int)</code> or null, if not supported by the runtime. */
+    protected static final Method deflateFlushMethod;
+
+    static {
+        Method method;
+        try {
+            method = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        deflateFlushMethod = method;
+    }
+
     /** Output stream for GZip (multi-part) file. */
     protected OutputStream out;
+    /** Random access file of the GZip file or null, if not seekable. */
+    protected RandomAccessFile raf;
     /** Deflater used to compress GZip entries. */
     protected Deflater def = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
     /** Checksum object used to calculate CRC16 and CRC32 values. */
@@ -67,6 +151,81 @@ public class GzipWriter implements Closeable {
     /** Current GZip entry object. */
     protected GzipEntry gzipEntry;
 
+    /** Write a skip-length extra subfield in each entry header. */
+    protected boolean bSkipLength = false;
+
+    /** Output stream of the GZip file while an entry is buffered. */
+    protected OutputStream fileOut;
+
+    /** Buffer used for the current entry, or only its header if seekable, when writing skip-lengths. */
+    protected EntryBuffer entryBuffer;
+
+    /** File offset of the current entry if its header is patched in place, otherwise -1. */
+    protected long entryFilePos = -1;
+
+    /** Maximum size of an entry buffered in memory to write its skip-length. */
+    protected int maxBufferedEntrySize = DEFAULT_MAX_BUFFERED_ENTRY_SIZE;
+
+    /** Offset of the skip-length subfield data in the buffered entry. */
+    protected int skipLengthOffset;
+
+    /** Length of the header in the buffered entry. */
+    protected int headerLength;
+
+    /** Executor used to deflate blocks in parallel or null, if disabled. */
+    protected ExecutorService parallelExecutor;
+
+    /** Uncompressed block size used when deflating in parallel. */
+    protected int parallelBlockSize;
+
+    /** Maximum number of blocks deflated ahead of the output. */
+    protected int parallelMaxInFlight;
+
+    /** Write entries as BGZF blocks. */
+    protected boolean bBlocked = false;
+
+    /** Maximum amount of uncompressed data in a BGZF block. */
+    protected int blockDataSize = GzipConstants.BGZF_MAX_DATA_SIZE;
+
+    /** Buffer used to assemble a BGZF block. */
+    protected byte[] blockBytes;
+
+    /** Size of the last BGZF block written. */
+    protected int lastBlockSize;
+
+    /** Choose the compression level of each entry by sampling its data. */
+    protected boolean bAdaptive = false;
+
+    /** Number of uncompressed bytes sampled before choosing the level. */
+    protected int adaptiveSampleSize = DEFAULT_ADAPTIVE_SAMPLE_SIZE;
+
+    /** Byte histogram of the sampled data of the current entry. */
+    protected int[] sampleHistogram;
+
+    /** Number of bytes sampled from the current entry, -1 when not sampling. */
+    protected int sampled = -1;
+
+    /** Compression level used for the current entry. */
+    protected int entryCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** Compression level chosen for the current entry before any sampling. */
+    protected int entryBaseLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** Deflate time recorded before the current entry. */
+    protected long entryDeflateNanos;
+
+    /** Controller choosing the compression level of each entry or null. */
+    protected GzipLevelController levelController;
+
+    /** Compression statistics of the entries written. */
+    protected final GzipCompressionStats stats = new GzipCompressionStats();
+
+    /** Uncompressed bytes after which the current entry is sync flushed, 0 if disabled. */
+    protected long syncFlushBytes;
+
+    /** Milliseconds after which the current entry is sync flushed on the next write, 0 if disabled. */
+    protected long syncFlushMillis;
+
     /** Buffer used to read header.  */
     byte[] headerBytes = new byte[10];
     /** Buffer used to read the XLEN value. */
@@ -108,6 +267,72 @@ public class GzipWriter implements Closeable {
         inputBytes = new byte[buffer_size];
     }
 
+    /**
+     * Create a GZip writer on a random access file with a default input
+     * buffer size of 8192. Entries are written at the current file pointer.
+     * Skip-lengths are written by seeking back to the entry header instead
+     * of buffering the entry in memory.
+     * @param raf random access file of GZip file
+     * @return GZip writer on the random access file
+     */
+    public static GzipWriter getWriter(RandomAccessFile raf) {
+        return getWriter(raf, DEFAULT_INPUT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a GZip writer on a random access file with the specified
+     * input buffer size. Entries are written at the current file pointer.
+     * Skip-lengths are written by seeking back to the entry header instead
+     * of buffering the entry in memory.
+     * @param raf random access file of GZip file
+     * @param buffer_size input buffer size to use
+     * @return GZip writer on the random access file
+     */
+    public static GzipWriter getWriter(RandomAccessFile raf, int buffer_size) {
+        if (raf == null) {
+            throw new IllegalArgumentException("raf is null!");
+        }
+        if (buffer_size <= 0) {
+            throw new IllegalArgumentException("buffer_size is less or equals to zero!");
+        }
+        return new GzipWriter(raf, buffer_size);
+    }
+
+    /**
+     * Construct a GZip writer on a random access file. Private, and reached
+     * through <code>getWriter</code>, so a <code>null</code> argument to the
+     * public stream constructors is not ambiguous.
+     * @param raf random access file of GZip file
+     * @param buffer_size input buffer size to use
+     */
+    private GzipWriter(RandomAccessFile raf, int buffer_size) {
+        this.raf = raf;
+        this.out = new BufferedOutputStream(new RandomAccessFileOutputStream(raf), buffer_size);
+        inputBytes = new byte[buffer_size];
+    }
+
+    /**
+     * Sync flush the current entry, if any, and flush the output stream, so
+     * everything written so far can be read by a consumer of the file.
+     * The entry is not ended. Without sync flush support in the runtime data
+     * buffered in the deflater is not flushed. Nothing reaches the file
+     * while an entry is buffered for skip-length, which is only the case
+     * when not writing to a random access file.
+     * @throws IOException if an i/o error occurs while flushing
+     */
+    public void flush() throws IOException {
+        if (gzipEntry != null && gzipEntry.out != null) {
+            if (gzipEntry.out instanceof GzipEntryOutputStream) {
+                ((GzipEntryOutputStream)gzipEntry.out).syncFlush();
+            } else if (gzipEntry.out instanceof GzipBlockedEntryOutputStream) {
+                ((GzipBlockedEntryOutputStream)gzipEntry.out).syncFlush();
+            }
+        }
+        if (out != null) {
+            out.flush();
+        }
+    }
+
     /**
      * Release resources associated with this writer.
      * @throws IOException if an i/o error occurs while closing writer
@@ -118,6 +343,9 @@ public class GzipWriter implements Closeable {
             gzipEntry = null;
         }
         if (out != null) {
+            if (bBlocked) {
+                out.write(GzipConstants.BGZF_EOF);
+            }
             out.flush();
             out = null;
         }
@@ -160,6 +388,246 @@ public class GzipWriter implements Closeable {
         return compressionLevel;
     }
 
+    /**
+     * Enable or disable skip-length extra subfields. Only changed prior to
+     * writing an entry header.
+     * @param bSkipLength boolean indicating whether to write skip-lengths
+     */
+    public void setSkipLength(boolean bSkipLength) {
+        this.bSkipLength = bSkipLength;
+    }
+
+    /**
+     * Returns a boolean indicating whether skip-length extra subfields are
+     * written.
+     * @return a boolean indicating whether skip-lengths are written
+     */
+    public boolean isSkipLength() {
+        return bSkipLength;
+    }
+
+    /**
+     * Set the maximum size of an entry buffered in memory to write its
+     * skip-length, when not writing to a random access file. An entry
+     * growing beyond this size is written without a skip-length subfield.
+     * @param maxBufferedEntrySize maximum size of a buffered entry
+     */
+    public void setMaxBufferedEntrySize(int maxBufferedEntrySize) {
+        if (maxBufferedEntrySize <= 0 || maxBufferedEntrySize > MAX_BUFFERED_ENTRY_SIZE) {
+            throw new IllegalArgumentException(
+                    "maxBufferedEntrySize is out of range: " + maxBufferedEntrySize);
+        }
+        this.maxBufferedEntrySize = maxBufferedEntrySize;
+    }
+
+    /**
+     * Returns the maximum size of an entry buffered in memory to write its
+     * skip-length.
+     * @return maximum size of a buffered entry
+     */
+    public int getMaxBufferedEntrySize() {
+        return maxBufferedEntrySize;
+    }
+
+    /**
+     * Enable or disable writing entries as BGZF blocks. Only changed prior to
+     * writing an entry header. In blocked mode an end-of-file marker block
+     * is written when the writer is closed, and the FNAME, FCOMMENT, FHCRC
+     * and extra data of entries are not written since each block has a
+     * BGZF header. Skip-lengths and parallel deflating are not used.
+     * @param bBlocked boolean indicating whether to write BGZF blocks
+     */
+    public void setBlocked(boolean bBlocked) {
+        this.bBlocked = bBlocked;
+    }
+
+    /**
+     * Returns a boolean indicating whether entries are written as BGZF blocks.
+     * @return a boolean indicating whether entries are written as BGZF blocks
+     */
+    public boolean isBlocked() {
+        return bBlocked;
+    }
+
+    /**
+     * Set the maximum amount of uncompressed data in a BGZF block.
+     * @param blockDataSize maximum amount of uncompressed data in a block
+     */
+    public void setBlockDataSize(int blockDataSize) {
+        if (blockDataSize <= 0 || blockDataSize > GzipConstants.BGZF_MAX_DATA_SIZE) {
+            throw new IllegalArgumentException("Invalid block data size: " + blockDataSize);
+        }
+        this.blockDataSize = blockDataSize;
+    }
+
+    /**
+     * Returns the maximum amount of uncompressed data in a BGZF block.
+     * @return maximum amount of uncompressed data in a BGZF block
+     */
+    public int getBlockDataSize() {
+        return blockDataSize;
+    }
+
+    /**
+     * Enable or disable adaptive compression. Only changed prior to writing
+     * an entry header. Entries deflated in parallel are not sampled.
+     * @param bAdaptive boolean indicating whether to sample entry data
+     */
+    public void setAdaptiveCompression(boolean bAdaptive) {
+        this.bAdaptive = bAdaptive;
+    }
+
+    /**
+     * Returns a boolean indicating whether adaptive compression is enabled.
+     * @return a boolean indicating whether adaptive compression is enabled
+     */
+    public boolean isAdaptiveCompression() {
+        return bAdaptive;
+    }
+
+    /**
+     * Set the number of uncompressed bytes sampled in adaptive mode before
+     * choosing the compression level of an entry.
+     * @param adaptiveSampleSize number of bytes to sample
+     */
+    public void setAdaptiveSampleSize(int adaptiveSampleSize) {
+        if (adaptiveSampleSize <= 0) {
+            throw new IllegalArgumentException(
+                    "adaptiveSampleSize is less or equals to zero: " + adaptiveSampleSize);
+        }
+        this.adaptiveSampleSize = adaptiveSampleSize;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes sampled in adaptive mode.
+     * @return number of bytes sampled
+     */
+    public int getAdaptiveSampleSize() {
+        return adaptiveSampleSize;
+    }
+
+    /**
+     * Set a controller to choose the compression level of each entry, or
+     * null to use the fixed compression level. The controller is informed
+     * of every entry written.
+     * @param levelController compression level controller or null
+     */
+    public void setLevelController(GzipLevelController levelController) {
+        this.levelController = levelController;
+    }
+
+    /**
+     * Returns the controller choosing the compression level of each entry.
+     * @return compression level controller or null
+     */
+    public GzipLevelController getLevelController() {
+        return levelController;
+    }
+
+    /**
+     * Returns the compression statistics of the entries written so far.
+     * @return compression statistics
+     */
+    public GzipCompressionStats getCompressionStats() {
+        return stats;
+    }
+
+    /**
+     * Set the sync flush policy of entries. The current entry is sync flushed
+     * once the given number of uncompressed bytes have been written since
+     * the last flush, or on the first write after the given interval has
+     * elapsed since the last flush. Entries deflated in parallel are not
+     * sync flushed.
+     * @param syncFlushBytes uncompressed bytes between flushes or 0 to disable
+     * @param syncFlushMillis milliseconds between flushes or 0 to disable
+     */
+    public void setSyncFlush(long syncFlushBytes, long syncFlushMillis) {
+        if (syncFlushBytes < 0) {
+            throw new IllegalArgumentException(
+                    "syncFlushBytes is less than zero: " + syncFlushBytes);
+        }
+        if (syncFlushMillis < 0) {
+            throw new IllegalArgumentException(
+                    "syncFlushMillis is less than zero: " + syncFlushMillis);
+        }
+        this.syncFlushBytes = syncFlushBytes;
+        this.syncFlushMillis = syncFlushMillis;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes between sync flushes.
+     * @return uncompressed bytes between flushes or 0, if disabled
+     */
+    public long getSyncFlushBytes() {
+        return syncFlushBytes;
+    }
+
+    /**
+     * Returns the number of milliseconds between sync flushes.
+     * @return milliseconds between flushes or 0, if disabled
+     */
+    public long getSyncFlushMillis() {
+        return syncFlushMillis;
+    }
+
+    /**
+     * Returns a boolean indicating whether the runtime supports sync flushing
+     * the deflater of an entry.
+     * @return a boolean indicating whether sync flushing is supported
+     */
+    public static boolean isSyncFlushSupported() {
+        return deflateFlushMethod != null;
+    }
+
+    /**
+     * Returns a boolean indicating whether the runtime supports parallel
+     * deflating of entries.
+     * @return a boolean indicating whether parallel deflating is supported
+     */
+    public static boolean isParallelDeflateSupported() {
+        return deflateFlushMethod != null;
+    }
+
+    /**
+     * Enable parallel deflating of entries using the default block and
+     * in-flight sizes, or disable it if the executor is null.
+     * Only changed prior to writing an entry header.
+     * @param executor executor used to deflate blocks or null
+     */
+    public void setParallelDeflate(ExecutorService executor) {
+        setParallelDeflate(executor, DEFAULT_PARALLEL_BLOCK_SIZE, DEFAULT_PARALLEL_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Enable parallel deflating of entries, or disable it if the executor is
+     * null. Only changed prior to writing an entry header.
+     * The executor is not shut down by this writer.
+     * @param executor executor used to deflate blocks or null
+     * @param blockSize uncompressed block size
+     * @param maxInFlight maximum number of blocks deflated ahead of the output
+     */
+    public void setParallelDeflate(ExecutorService executor, int blockSize, int maxInFlight) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(
+                    "blockSize is less or equals to zero: " + blockSize);
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException(
+                    "maxInFlight is less or equals to zero: " + maxInFlight);
+        }
+        parallelExecutor = executor;
+        parallelBlockSize = blockSize;
+        parallelMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Returns a boolean indicating whether entries are deflated in parallel.
+     * @return a boolean indicating whether entries are deflated in parallel
+     */
+    public boolean isParallelDeflate() {
+        return parallelExecutor != null && deflateFlushMethod != null;
+    }
+
     /**
      * Write a GZip entry header and prepare for compressing input data.
      * @param entry GZip entry object
@@ -175,7 +643,24 @@ public class GzipWriter implements Closeable {
         }
         crc.reset();
         def.reset();
-        def.setLevel(compressionLevel);
+        if (levelController != null) {
+            entryBaseLevel = levelController.getLevel();
+        } else {
+            entryBaseLevel = compressionLevel;
+        }
+        def.setLevel(entryBaseLevel);
+        entryCompressionLevel = entryBaseLevel;
+        entryDeflateNanos = stats.getDeflateNanos();
+        if (bAdaptive && entryBaseLevel != Deflater.NO_COMPRESSION) {
+            if (sampleHistogram == null) {
+                sampleHistogram = new int[256];
+            } else {
+                Arrays.fill(sampleHistogram, 0);
+            }
+            sampled = 0;
+        } else {
+            sampled = -1;
+        }
         gzipEntry = entry;
         /*
          * Header.
@@ -187,9 +672,9 @@ public class GzipWriter implements Closeable {
             entry.date = new Date(entry.mtime * 1000);
         }
         entry.xfl = 0;
-        if (compressionLevel == 1) {
+        if (entryBaseLevel == 1) {
             entry.xfl |= GzipConstants.DEFLATE_XFL_FASTEST_COMPRESSION;
-        } else if (compressionLevel == 9) {
+        } else if (entryBaseLevel == 9) {
             entry.xfl |= GzipConstants.DEFLATE_XFL_MAXIMUM_COMPRESSION;
         }
         entry.flg = 0;
@@ -202,6 +687,22 @@ public class GzipWriter implements Closeable {
                 )
             );
         }
+        if (bBlocked) {
+            /*
+             * Blocks are written by the entry output stream.
+             */
+            entry.flg = GzipConstants.FLG_FEXTRA;
+            entry.writer = this;
+            entry.bEof = false;
+            entry.out = new GzipBlockedEntryOutputStream(this, gzipEntry);
+            if (entry.diagnostics.hasErrors() || entry.diagnostics.hasWarnings()) {
+                entry.bIsCompliant = false;
+            } else {
+                entry.bIsCompliant = true;
+            }
+            bIsCompliant &= entry.bIsCompliant;
+            return;
+        }
         /*
          * FTEXT.
          */
@@ -259,6 +760,9 @@ public class GzipWriter implements Closeable {
                         );
             }
         }
+        if (bSkipLength) {
+            skipLengthOffset = 10 + 2 + prepareSkipLength(entry);
+        }
         if (entry.extraBytes != null) {
             entry.flg |= GzipConstants.FLG_FEXTRA;
             entry.xlen = entry.extraBytes.length;
@@ -320,6 +824,14 @@ public class GzipWriter implements Closeable {
         headerBytes[7] = (byte)((entry.mtime >> 24) & 255);
         headerBytes[8] = (byte)entry.xfl;
         headerBytes[9] = (byte)entry.os;
+        if (bSkipLength) {
+            if (entryBuffer == null) {
+                entryBuffer = new EntryBuffer(this);
+            }
+            entryBuffer.reset();
+            fileOut = out;
+            out = entryBuffer;
+        }
         out.write(headerBytes);
         crc.update(headerBytes);
         if ((entry.flg & GzipConstants.FLG_FEXTRA) == GzipConstants.FLG_FEXTRA) {
@@ -347,6 +859,19 @@ public class GzipWriter implements Closeable {
             crc16Bytes[1] = (byte)((entry.crc16 >> 8) & 255);
             out.write(crc16Bytes);
         }
+        if (bSkipLength) {
+            headerLength = entryBuffer.size();
+            if (raf != null) {
+                // Write the header now and patch it when the length is known.
+                out = fileOut;
+                fileOut = null;
+                out.flush();
+                entryFilePos = raf.getFilePointer();
+                out.write(entryBuffer.getBuffer(), 0, headerLength);
+            } else {
+                entryBuffer.limit = Math.max(maxBufferedEntrySize, headerLength);
+            }
+        }
         /*
          * Prepare Entry InputStream.
          */
@@ -354,7 +879,11 @@ public class GzipWriter implements Closeable {
         entry.isize = 0;
         entry.writer = this;
         entry.bEof = false;
-        entry.out = new GzipEntryOutputStream(this, gzipEntry);
+        if (isParallelDeflate()) {
+            entry.out = new GzipParallelEntryOutputStream(this, gzipEntry);
+        } else {
+            entry.out = new GzipEntryOutputStream(this, gzipEntry);
+        }
         // Compliance
         if (entry.diagnostics.hasErrors() || entry.diagnostics.hasWarnings()) {
             entry.bIsCompliant = false;
@@ -370,6 +899,18 @@ public class GzipWriter implements Closeable {
      * @throws IOException if an i/o error occurs while writing trailer
      */
     protected void writeTrailer(GzipEntry entry) throws IOException {
+        writeTrailer(entry, def.getBytesRead(), def.getBytesWritten(), crc.getValue());
+    }
+
+    /**
+     * Writes the GZip entry trailer using the supplied sizes and CRC32 value.
+     * @param entry GZip entry object
+     * @param uncompressedSize number of uncompressed bytes
+     * @param compressedSize number of compressed bytes
+     * @param crc32 CRC32 of the uncompressed data
+     * @throws IOException if an i/o error occurs while writing trailer
+     */
+    protected void writeTrailer(GzipEntry entry, long uncompressedSize, long compressedSize, long crc32) throws IOException {
         // Compliance
         if (entry.diagnostics.hasErrors() || entry.diagnostics.hasWarnings()) {
             entry.bIsCompliant = false;
@@ -378,12 +919,13 @@ public class GzipWriter implements Closeable {
         }
         bIsCompliant &= gzipEntry.bIsCompliant;
         // Trailer
-        entry.uncompressed_size = def.getBytesRead();
-        entry.compressed_size = def.getBytesWritten();
-        entry.comp_crc32 = (int)(crc.getValue() & 0xffffffff);
+        entry.uncompressed_size = uncompressedSize;
+        entry.compressed_size = compressedSize;
+        entry.comp_crc32 = (int)(crc32 & 0xffffffff);
         entry.crc32 = entry.comp_crc32;
-        entry.comp_isize = (int)(def.getBytesRead() & 0xffffffff);
+        entry.comp_isize = (int)(uncompressedSize & 0xffffffff);
         entry.isize = entry.comp_isize;
+        entryWritten(uncompressedSize, compressedSize);
         trailerBytes[0] = (byte)(entry.crc32 & 255);
         trailerBytes[1] = (byte)((entry.crc32 >> 8) & 255);
         trailerBytes[2] = (byte)((entry.crc32 >> 16) & 255);
@@ -393,95 +935,528 @@ public class GzipWriter implements Closeable {
         trailerBytes[6] = (byte)((entry.isize >> 16) & 255);
         trailerBytes[7] = (byte)((entry.isize >> 24) & 255);
         out.write(trailerBytes);
+        if (fileOut != null) {
+            writeBufferedEntry(entry);
+        } else if (entryFilePos != -1) {
+            writeSkipLengthHeader(entry);
+        }
         out.flush();
     }
 
     /**
-     * Read data from input stream and fill buffer with compressed data.
-     * @param in input stream with uncompressed data
-     * @param b compressed data buffer
-     * @param off offset in compressed data buffer
-     * @param len length of compressed data to read
-     * @return number of compressed bytes read
-     * @throws DataFormatException if an error occurs in deflater
-     * @throws IOException if an i/o error occurs while compressing
+     * Compress and write a single BGZF block. If the compressed block does
+     * not fit within the maximum block size, less data is compressed.
+     * @param entry GZip entry object the block belongs to
+     * @param b uncompressed data
+     * @param off offset of the uncompressed data
+     * @param len length of the uncompressed data
+     * @return number of uncompressed bytes written in the block
+     * @throws IOException if an i/o error occurs while writing the block
      */
-    protected int readCompressed(InputStream in, byte[] b, int off, int len) throws DataFormatException, IOException {
-        int deflated = 0;
-        while ((deflated = def.deflate(b, off, len)) == 0) {
+    protected int writeBlock(GzipEntry entry, byte[] b, int off, int len) throws IOException {
+        if (blockBytes == null) {
+            blockBytes = new byte[GzipConstants.BGZF_MAX_BLOCK_SIZE];
+        }
+        int limit = GzipConstants.BGZF_MAX_BLOCK_SIZE - 8;
+        int pos;
+        if (sampled != -1) {
+            sample(b, off, len);
+        }
+        while (true) {
+            def.reset();
+            def.setLevel(entryCompressionLevel);
+            def.setInput(b, off, len);
+            def.finish();
+            pos = GzipConstants.BGZF_HEADER_SIZE;
+            while (!def.finished() && pos < limit) {
+                pos += deflate(blockBytes, pos, limit - pos);
+            }
             if (def.finished()) {
-                return -1;
-            } else if (def.needsInput()) {
-                int read = in.read(inputBytes, 0, inputBytes.length);
-                if (read != -1) {
-                    def.setInput(inputBytes, 0, read);
-                    crc.update(inputBytes, 0, read);
-                } else {
-                    def.finish();
-                }
-            } else {
-                throw new DataFormatException("Deflater malfunction!");
+                break;
             }
+            // Incompressible data, retry with less data.
+            len >>= 1;
         }
-        return deflated;
+        int blockSize = pos + 8;
+        blockBytes[0] = (byte)(GzipConstants.GZIP_MAGIC & 255);
+        blockBytes[1] = (byte)((GzipConstants.GZIP_MAGIC >> 8) & 255);
+        blockBytes[2] = (byte)GzipConstants.CM_DEFLATE;
+        blockBytes[3] = (byte)GzipConstants.FLG_FEXTRA;
+        blockBytes[4] = (byte)(entry.mtime & 255);
+        blockBytes[5] = (byte)((entry.mtime >> 8) & 255);
+        blockBytes[6] = (byte)((entry.mtime >> 16) & 255);
+        blockBytes[7] = (byte)((entry.mtime >> 24) & 255);
+        blockBytes[8] = (byte)entry.xfl;
+        blockBytes[9] = (byte)entry.os;
+        blockBytes[10] = 4 + GzipConstants.BGZF_SLEN;
+        blockBytes[11] = 0;
+        blockBytes[12] = GzipConstants.BGZF_SI1;
+        blockBytes[13] = GzipConstants.BGZF_SI2;
+        blockBytes[14] = GzipConstants.BGZF_SLEN;
+        blockBytes[15] = 0;
+        blockBytes[16] = (byte)((blockSize - 1) & 255);
+        blockBytes[17] = (byte)(((blockSize - 1) >> 8) & 255);
+        crc.reset();
+        crc.update(b, off, len);
+        int crc32 = (int)(crc.getValue() & 0xffffffff);
+        blockBytes[pos++] = (byte)(crc32 & 255);
+        blockBytes[pos++] = (byte)((crc32 >> 8) & 255);
+        blockBytes[pos++] = (byte)((crc32 >> 16) & 255);
+        blockBytes[pos++] = (byte)((crc32 >> 24) & 255);
+        blockBytes[pos++] = (byte)(len & 255);
+        blockBytes[pos++] = (byte)((len >> 8) & 255);
+        blockBytes[pos++] = (byte)((len >> 16) & 255);
+        blockBytes[pos++] = (byte)((len >> 24) & 255);
+        out.write(blockBytes, 0, blockSize);
+        lastBlockSize = blockSize;
+        return len;
     }
 
     /**
-     * Read data from <code>ByteBuffer</code> and fill buffer with compressed
-     * data.
-     * @param bb <code>ByteBuffer</code> with uncompressed data
-     * @param b compressed data buffer
-     * @param off offset in compressed data buffer
-     * @param len length of compressed data to read
-     * @param bFinish boolean indicating that there is no more data to compress
-     * @return number of compressed bytes read
-     * @throws DataFormatException if an error occurs in deflater
-     * @throws IOException if an error occurs while compressing
+     * Make sure the entry has a skip-length extra subfield, appending one to
+     * the extra data if necessary.
+     * @param entry GZip entry object
+     * @return offset of the skip-length data in the extra data
      */
-    protected int readCompressed(ByteBuffer bb, byte[] b, int off, int len, boolean bFinish) throws DataFormatException, IOException {
-        int deflated = 0;
-        while ((deflated = def.deflate(b, off, len)) == 0) {
-            if (def.finished()) {
-                return -1;
-            } else if (def.needsInput()) {
-                int write = bb.remaining();
-                if (write > 0) {
-                    if (write > inputBytes.length) {
-                        write = inputBytes.length;
-                    }
-                    bb.get(inputBytes, 0, write);
-                    def.setInput(inputBytes, 0, write);
-                    crc.update(inputBytes, 0, write);
-                } else {
-                    if (bFinish) {
-                        def.finish();
-                    } else {
-                        // Deflater needs more input.
-                        return 0;
-                    }
+    protected int prepareSkipLength(GzipEntry entry) {
+        byte[] extraBytes = entry.extraBytes;
+        int idx = 0;
+        int len;
+        if (extraBytes != null) {
+            while (idx <= extraBytes.length - 4) {
+                len = ((extraBytes[idx + 3] & 255) << 8) | (extraBytes[idx + 2] & 255);
+                if (extraBytes[idx] == GzipConstants.SKIP_LENGTH_SI1
+                        && extraBytes[idx + 1] == GzipConstants.SKIP_LENGTH_SI2
+                        && len == GzipConstants.SKIP_LENGTH_LEN
+                        && idx + 4 + len <= extraBytes.length) {
+                    return idx + 4;
                 }
-            } else {
-                throw new DataFormatException("Deflater malfunction!");
+                idx += 4 + len;
             }
+        } else {
+            extraBytes = new byte[0];
         }
-        return deflated;
+        entry.extraBytes = new byte[extraBytes.length + 4 + GzipConstants.SKIP_LENGTH_LEN];
+        System.arraycopy(extraBytes, 0, entry.extraBytes, 0, extraBytes.length);
+        idx = extraBytes.length;
+        entry.extraBytes[idx++] = GzipConstants.SKIP_LENGTH_SI1;
+        entry.extraBytes[idx++] = GzipConstants.SKIP_LENGTH_SI2;
+        entry.extraBytes[idx++] = (byte)(GzipConstants.SKIP_LENGTH_LEN & 255);
+        entry.extraBytes[idx++] = (byte)((GzipConstants.SKIP_LENGTH_LEN >> 8) & 255);
+        entry.extraData.add(new GzipExtraData(GzipConstants.SKIP_LENGTH_SI1,
+                GzipConstants.SKIP_LENGTH_SI2, new byte[GzipConstants.SKIP_LENGTH_LEN]));
+        return idx;
     }
 
     /**
-     * <code>OutputStream</code> to GZip compress data in a controlled fashion.
-     *
-     * @author nicl
+     * Insert the entry length into the skip-length subfield of the buffered
+     * entry and write the entry to the GZip file.
+     * @param entry GZip entry object
+     * @throws IOException if an i/o error occurs while writing entry
      */
-    protected static class GzipEntryOutputStream extends OutputStream {
-
-        /** GZip reader used to inflate. */
-        GzipWriter writer;
-
-        /** Associated GZip entry. */
-        GzipEntry gzipEntry;
+    protected void writeBufferedEntry(GzipEntry entry) throws IOException {
+        byte[] buf = entryBuffer.getBuffer();
+        int length = entryBuffer.size();
+        insertSkipLength(entry, buf, length);
+        out = fileOut;
+        fileOut = null;
+        out.write(buf, 0, length);
+    }
 
-        /** End of compressed file status. */
-        boolean bEof = false;
+    /**
+     * Write the buffered part of an entry which has grown beyond the maximum
+     * buffered entry size, with its header rewritten without the skip-length
+     * subfield, and continue writing the entry directly to the GZip file.
+     * @throws IOException if an i/o error occurs while writing entry
+     */
+    protected void writeEntryWithoutSkipLength() throws IOException {
+        GzipEntry entry = gzipEntry;
+        byte[] buf = entryBuffer.getBuffer();
+        int length = entryBuffer.size();
+        int subfieldStart = skipLengthOffset - 4;
+        int subfieldEnd = skipLengthOffset + GzipConstants.SKIP_LENGTH_LEN;
+        int subfieldLen = subfieldEnd - subfieldStart;
+        byte[] extraBytes = new byte[entry.extraBytes.length - subfieldLen];
+        System.arraycopy(entry.extraBytes, 0, extraBytes, 0, subfieldStart - 12);
+        System.arraycopy(entry.extraBytes, subfieldEnd - 12, extraBytes, subfieldStart - 12, extraBytes.length - (subfieldStart - 12));
+        GzipExtraData extraData;
+        for (int i=entry.extraData.size() - 1; i>=0; --i) {
+            extraData = entry.extraData.get(i);
+            if (extraData.si1 == GzipConstants.SKIP_LENGTH_SI1
+                    && extraData.si2 == GzipConstants.SKIP_LENGTH_SI2) {
+                entry.extraData.remove(i);
+            }
+        }
+        byte[] header;
+        int idx;
+        if (extraBytes.length > 0) {
+            entry.extraBytes = extraBytes;
+            entry.xlen = extraBytes.length;
+            header = new byte[headerLength - subfieldLen];
+            System.arraycopy(buf, 0, header, 0, subfieldStart);
+            header[10] = (byte)(entry.xlen & 255);
+            header[11] = (byte)((entry.xlen >> 8) & 255);
+            idx = subfieldStart;
+        } else {
+            // The subfield was the only extra data, drop FEXTRA altogether.
+            entry.extraBytes = null;
+            entry.xlen = 0;
+            entry.flg &= ~GzipConstants.FLG_FEXTRA;
+            header = new byte[headerLength - 2 - subfieldLen];
+            System.arraycopy(buf, 0, header, 0, 10);
+            header[3] = (byte)entry.flg;
+            idx = 10;
+        }
+        System.arraycopy(buf, subfieldEnd, header, idx, headerLength - subfieldEnd);
+        if ((entry.flg & GzipConstants.FLG_FHCRC) == GzipConstants.FLG_FHCRC) {
+            // The shared CRC32 object is accumulating the entry data.
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header, 0, header.length - 2);
+            entry.comp_crc16 = ((int)headerCrc.getValue()) & 0x0000ffff;
+            entry.crc16 = entry.comp_crc16;
+            header[header.length - 2] = (byte)(entry.crc16 & 255);
+            header[header.length - 1] = (byte)((entry.crc16 >> 8) & 255);
+        }
+        out = fileOut;
+        fileOut = null;
+        out.write(header);
+        out.write(buf, headerLength, length - headerLength);
+        entryBuffer.reset();
+    }
+
+    /**
+     * Insert the entry length into the skip-length subfield of the entry
+     * header already written to the random access file, by seeking back to
+     * the header and rewriting it.
+     * @param entry GZip entry object
+     * @throws IOException if an i/o error occurs while writing entry header
+     */
+    protected void writeSkipLengthHeader(GzipEntry entry) throws IOException {
+        out.flush();
+        long endPos = raf.getFilePointer();
+        byte[] buf = entryBuffer.getBuffer();
+        insertSkipLength(entry, buf, endPos - entryFilePos);
+        raf.seek(entryFilePos);
+        raf.write(buf, 0, headerLength);
+        raf.seek(endPos);
+        entryFilePos = -1;
+    }
+
+    /**
+     * Insert the entry length into the skip-length subfield of the buffered
+     * entry header and update the header CRC16 if present.
+     * @param entry GZip entry object
+     * @param buf buffer starting with the entry header
+     * @param length total length of the entry
+     */
+    protected void insertSkipLength(GzipEntry entry, byte[] buf, long length) {
+        int idx = skipLengthOffset;
+        for (int i=0; i<GzipConstants.SKIP_LENGTH_LEN; ++i) {
+            buf[idx++] = (byte)((length >> (i * 8)) & 255);
+        }
+        System.arraycopy(buf, skipLengthOffset, entry.extraBytes, skipLengthOffset - 12, GzipConstants.SKIP_LENGTH_LEN);
+        GzipExtraData extraData;
+        for (int i=0; i<entry.extraData.size(); ++i) {
+            extraData = entry.extraData.get(i);
+            if (extraData.si1 == GzipConstants.SKIP_LENGTH_SI1
+                    && extraData.si2 == GzipConstants.SKIP_LENGTH_SI2
+                    && extraData.data != null
+                    && extraData.data.length == GzipConstants.SKIP_LENGTH_LEN) {
+                System.arraycopy(buf, skipLengthOffset, extraData.data, 0, GzipConstants.SKIP_LENGTH_LEN);
+            }
+        }
+        if ((entry.flg & GzipConstants.FLG_FHCRC) == GzipConstants.FLG_FHCRC) {
+            crc.reset();
+            crc.update(buf, 0, headerLength - 2);
+            entry.comp_crc16 = ((int)crc.getValue()) & 0x0000ffff;
+            entry.crc16 = entry.comp_crc16;
+            buf[headerLength - 2] = (byte)(entry.crc16 & 255);
+            buf[headerLength - 1] = (byte)((entry.crc16 >> 8) & 255);
+        }
+        entry.skipLength = length;
+    }
+
+    /**
+     * Record a written entry in the statistics and inform the level
+     * controller, if any. Entries whose level was lowered by sampling are
+     * not used to measure the throughput of the chosen level.
+     * @param uncompressedSize number of uncompressed bytes
+     * @param compressedSize number of compressed bytes
+     */
+    protected void entryWritten(long uncompressedSize, long compressedSize) {
+        boolean bLowered = entryCompressionLevel != entryBaseLevel;
+        stats.addEntry(entryCompressionLevel, uncompressedSize, compressedSize, bLowered);
+        if (levelController != null) {
+            levelController.entryWritten(entryBaseLevel, uncompressedSize,
+                    bLowered ? 0 : stats.getDeflateNanos() - entryDeflateNanos);
+        }
+    }
+
+    /**
+     * Deflate into the supplied buffer and record the time spent.
+     * A pending level change is applied by a deflate call which may produce
+     * no output while input remains, in which case deflate is called again.
+     * @param b compressed data buffer
+     * @param off offset in compressed data buffer
+     * @param len length of compressed data buffer
+     * @return number of compressed bytes
+     */
+    protected int deflate(byte[] b, int off, int len) {
+        long start = System.nanoTime();
+        int deflated = def.deflate(b, off, len);
+        if (deflated == 0 && !def.needsInput() && !def.finished()) {
+            deflated = def.deflate(b, off, len);
+        }
+        stats.addDeflateNanos(System.nanoTime() - start);
+        return deflated;
+    }
+
+    /**
+     * Sync flush the deflater into the supplied buffer and record the time
+     * spent. If the buffer is filled, call again to get the rest.
+     * @param b compressed data buffer
+     * @param off offset in compressed data buffer
+     * @param len length of compressed data buffer
+     * @return number of compressed bytes
+     * @throws IOException if the deflater fails
+     */
+    protected int syncFlush(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int deflated = DeflateBlock.syncFlush(def, b, off, len);
+        stats.addDeflateNanos(System.nanoTime() - start);
+        return deflated;
+    }
+
+    /**
+     * Add uncompressed data of the current entry to the sample. Once enough
+     * data has been sampled the compression level of the rest of the entry
+     * is chosen from the byte entropy of the sample. A level change in the
+     * deflater takes effect from the next input data.
+     * @param b uncompressed data
+     * @param off offset of the uncompressed data
+     * @param len length of the uncompressed data
+     */
+    protected void sample(byte[] b, int off, int len) {
+        int n = Math.min(len, adaptiveSampleSize - sampled);
+        int end = off + n;
+        while (off < end) {
+            ++sampleHistogram[b[off++] & 255];
+        }
+        sampled += n;
+        if (sampled >= adaptiveSampleSize) {
+            int level = chooseCompressionLevel(entropy(sampleHistogram, sampled));
+            sampled = -1;
+            if (level != entryCompressionLevel) {
+                entryCompressionLevel = level;
+                def.setLevel(level);
+            }
+        }
+    }
+
+    /**
+     * Choose the compression level from the byte entropy of sampled data.
+     * The level is never raised above the configured compression level.
+     * @param entropy byte entropy in bits per byte
+     * @return compression level
+     */
+    protected int chooseCompressionLevel(double entropy) {
+        int level = entryBaseLevel;
+        if (entropy >= ADAPTIVE_STORED_ENTROPY) {
+            level = Deflater.NO_COMPRESSION;
+        } else if (entropy >= ADAPTIVE_FAST_ENTROPY) {
+            level = Deflater.BEST_SPEED;
+        }
+        if (GzipCompressionStats.effectiveLevel(level) < GzipCompressionStats.effectiveLevel(entryBaseLevel)) {
+            return level;
+        }
+        return entryBaseLevel;
+    }
+
+    /**
+     * Compute the Shannon entropy of a byte histogram.
+     * @param histogram byte histogram
+     * @param count number of bytes in the histogram
+     * @return entropy in bits per byte
+     */
+    public static double entropy(int[] histogram, int count) {
+        if (count <= 0) {
+            return 0.0;
+        }
+        double entropy = 0.0;
+        double p;
+        for (int i=0; i<histogram.length; ++i) {
+            if (histogram[i] > 0) {
+                p = (double)histogram[i] / count;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Read data from <code>ByteBuffer</code> and fill buffer with compressed
+     * data.
+     * @param bb <code>ByteBuffer</code> with uncompressed data
+     * @param b compressed data buffer
+     * @param off offset in compressed data buffer
+     * @param len length of compressed data to read
+     * @param bFinish boolean indicating that there is no more data to compress
+     * @return number of compressed bytes read
+     * @throws DataFormatException if an error occurs in deflater
+     * @throws IOException if an error occurs while compressing
+     */
+    protected int readCompressed(ByteBuffer bb, byte[] b, int off, int len, boolean bFinish) throws DataFormatException, IOException {
+        int deflated = 0;
+        while ((deflated = deflate(b, off, len)) == 0) {
+            if (def.finished()) {
+                return -1;
+            } else if (def.needsInput()) {
+                int write = bb.remaining();
+                if (write > 0) {
+                    if (write > inputBytes.length) {
+                        write = inputBytes.length;
+                    }
+                    bb.get(inputBytes, 0, write);
+                    if (sampled != -1) {
+                        sample(inputBytes, 0, write);
+                    }
+                    def.setInput(inputBytes, 0, write);
+                    crc.update(inputBytes, 0, write);
+                } else {
+                    if (bFinish) {
+                        def.finish();
+                    } else {
+                        // Deflater needs more input.
+                        return 0;
+                    }
+                }
+            } else {
+                throw new DataFormatException("Deflater malfunction!");
+            }
+        }
+        return deflated;
+    }
+
+    /**
+     * Growable in-memory <code>OutputStream</code> which exposes its buffer so
+     * the skip-length can be inserted without copying the entry. The size is
+     * limited to <code>MAX_BUFFERED_ENTRY_SIZE</code> bytes. A buffer owned
+     * by a writer hands the entry to it, to be written without skip-length,
+     * once the maximum buffered entry size of the writer would be exceeded.
+     */
+    protected static class EntryBuffer extends OutputStream {
+
+        /** Writer of the buffered entries or null. */
+        protected GzipWriter writer;
+
+        /** Buffer holding the data written. */
+        protected byte[] buf;
+
+        /** Number of bytes written to the buffer. */
+        protected int count;
+
+        /** Size from which the entry is handed to the writer, if any. */
+        protected int limit = MAX_BUFFERED_ENTRY_SIZE;
+
+        /**
+         * Construct an entry buffer with the default initial size.
+         */
+        public EntryBuffer() {
+            this(null);
+        }
+
+        /**
+         * Construct an entry buffer with the default initial size, limited
+         * to the maximum buffered entry size of the supplied writer.
+         * @param writer writer of the buffered entries or null
+         */
+        public EntryBuffer(GzipWriter writer) {
+            this.writer = writer;
+            buf = new byte[DEFAULT_INPUT_BUFFER_SIZE];
+        }
+
+        /**
+         * Make sure the buffer can hold the supplied number of additional
+         * bytes, growing it if necessary.
+         * @param len number of bytes to be written
+         * @throws IOException if the entry would exceed the maximum buffered size
+         */
+        protected void ensureRoom(int len) throws IOException {
+            if (len > MAX_BUFFERED_ENTRY_SIZE - count) {
+                throw new IOException("Entry exceeds the maximum buffered size of "
+                        + MAX_BUFFERED_ENTRY_SIZE + " bytes, write skip-lengths to a RandomAccessFile instead");
+            }
+            int required = count + len;
+            if (required > buf.length) {
+                long capacity = Math.max((long)buf.length << 1, required);
+                buf = Arrays.copyOf(buf, (int)Math.min(capacity, MAX_BUFFERED_ENTRY_SIZE));
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (writer != null && count >= limit) {
+                writer.writeEntryWithoutSkipLength();
+                writer.out.write(b);
+                return;
+            }
+            ensureRoom(1);
+            buf[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (writer != null && len > limit - count) {
+                writer.writeEntryWithoutSkipLength();
+                writer.out.write(b, off, len);
+                return;
+            }
+            ensureRoom(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * Discard the data written, keeping the buffer.
+         */
+        public void reset() {
+            count = 0;
+            limit = MAX_BUFFERED_ENTRY_SIZE;
+        }
+
+        /**
+         * Returns the number of bytes written to the buffer.
+         * @return number of bytes written to the buffer
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Returns the internal buffer, valid up to <code>size()</code>.
+         * @return internal buffer
+         */
+        public byte[] getBuffer() {
+            return buf;
+        }
+
+    }
+
+    /**
+     * <code>OutputStream</code> to GZip compress data in a controlled fashion.
+     *
+     * @author nicl
+     */
+    protected static class GzipEntryOutputStream extends OutputStream {
+
+        /** GZip reader used to inflate. */
+        GzipWriter writer;
+
+        /** Associated GZip entry. */
+        GzipEntry gzipEntry;
+
+        /** End of compressed file status. */
+        boolean bEof = false;
 
         /** Small buffer used by the read() method. */
         byte[] singleByteArray = new byte[1];
@@ -492,6 +1467,12 @@ public class GzipWriter implements Closeable {
         /** Buffer used for compressed data. */
         byte[] compressedBytes = new byte[DEFAULT_INPUT_BUFFER_SIZE];
 
+        /** Uncompressed bytes written since the last sync flush. */
+        long unflushedBytes;
+
+        /** Time of the last sync flush. */
+        long lastFlushMillis;
+
         /**
          * Construct output stream bound to a specific writer and entry.
          * @param writer GZip writer
@@ -501,6 +1482,52 @@ public class GzipWriter implements Closeable {
                                     GzipEntry gzipEntry) {
             this.writer = writer;
             this.gzipEntry = gzipEntry;
+            if (writer.syncFlushMillis > 0) {
+                lastFlushMillis = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Compress all the data written so far, sync flush the deflater and
+         * flush the compressed data to the output stream.
+         * @throws IOException if an i/o error occurs while flushing
+         */
+        protected void syncFlush() throws IOException {
+            if (bEof || deflateFlushMethod == null) {
+                return;
+            }
+            try {
+                int deflated;
+                bb.flip();
+                while ((deflated = writer.readCompressed(bb, compressedBytes, 0, compressedBytes.length, false)) > 0) {
+                    writer.out.write(compressedBytes, 0, deflated);
+                }
+                bb.compact();
+                do {
+                    deflated = writer.syncFlush(compressedBytes, 0, compressedBytes.length);
+                    if (deflated > 0) {
+                        writer.out.write(compressedBytes, 0, deflated);
+                    }
+                } while (deflated == compressedBytes.length);
+                writer.out.flush();
+            } catch (DataFormatException e) {
+                throw new IOException("Deflater malfunction!", e);
+            }
+            unflushedBytes = 0;
+            if (writer.syncFlushMillis > 0) {
+                lastFlushMillis = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Sync flush if the flush policy of the writer requires it.
+         * @throws IOException if an i/o error occurs while flushing
+         */
+        protected void checkSyncFlush() throws IOException {
+            if ((writer.syncFlushBytes > 0 && unflushedBytes >= writer.syncFlushBytes)
+                    || (writer.syncFlushMillis > 0 && System.currentTimeMillis() - lastFlushMillis >= writer.syncFlushMillis)) {
+                syncFlush();
+            }
         }
 
         @Override
@@ -547,6 +1574,7 @@ public class GzipWriter implements Closeable {
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
             int pLen;
+            int total = len;
             try {
                 while (len > 0) {
                     if (bb.remaining() > 0) {
@@ -566,6 +1594,488 @@ public class GzipWriter implements Closeable {
             } catch (DataFormatException e) {
                 throw new IOException("Deflater malfunction!", e);
             }
+            if (writer.syncFlushBytes > 0 || writer.syncFlushMillis > 0) {
+                unflushedBytes += total;
+                checkSyncFlush();
+            }
+        }
+
+    }
+
+    /**
+     * <code>OutputStream</code> which splits the uncompressed data into
+     * blocks and deflates them concurrently. Each block is primed with the
+     * last 32KB of the previous block as dictionary and all but the last block
+     * end with a sync flush, so the compressed blocks are byte aligned and
+     * join into a single deflate stream. The CRC32 values of the blocks are
+     * combined into the CRC32 of the entry.
+     *
+     * @author nicl
+     */
+    protected static class GzipParallelEntryOutputStream extends OutputStream {
+
+        /** GZip writer. */
+        GzipWriter writer;
+
+        /** Associated GZip entry. */
+        GzipEntry gzipEntry;
+
+        /** Compression level used by the deflaters. */
+        int compressionLevel;
+
+        /** End of compressed file status. */
+        boolean bEof = false;
+
+        /** Small buffer used by the write() method. */
+        byte[] singleByteArray = new byte[1];
+
+        /** Block currently being filled. */
+        byte[] block;
+
+        /** Number of bytes in the current block. */
+        int blockLength;
+
+        /** Previous block, used as dictionary for the current block. */
+        byte[] prevBlock;
+
+        /** Number of bytes in the previous block. */
+        int prevBlockLength;
+
+        /** Blocks being deflated, in output order. */
+        LinkedList<Future<DeflateBlock>> pending = new LinkedList<Future<DeflateBlock>>();
+
+        /** Idle deflaters shared by the block tasks. */
+        LinkedList<Deflater> deflaters = new LinkedList<Deflater>();
+
+        /** Have the idle deflaters been released. */
+        boolean bDeflatersEnded = false;
+
+        /** Combined CRC32 of the blocks written so far. */
+        long crc32 = 0;
+
+        /** Number of uncompressed bytes written so far. */
+        long uncompressedSize = 0;
+
+        /** Number of compressed bytes written so far. */
+        long compressedSize = 0;
+
+        /**
+         * Construct output stream bound to a specific writer and entry.
+         * @param writer GZip writer
+         * @param gzipEntry GZip entry
+         */
+        public GzipParallelEntryOutputStream(GzipWriter writer,
+                                    GzipEntry gzipEntry) {
+            this.writer = writer;
+            this.gzipEntry = gzipEntry;
+            compressionLevel = writer.entryBaseLevel;
+            block = new byte[writer.parallelBlockSize];
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!bEof) {
+                bEof = true;
+                try {
+                    submitBlock(true);
+                    while (!pending.isEmpty()) {
+                        writeBlock(pending.removeFirst());
+                    }
+                    writer.writeTrailer(gzipEntry, uncompressedSize, compressedSize, crc32);
+                } finally {
+                    while (!pending.isEmpty()) {
+                        pending.removeFirst().cancel(false);
+                    }
+                    synchronized (deflaters) {
+                        bDeflatersEnded = true;
+                        while (!deflaters.isEmpty()) {
+                            deflaters.removeFirst().end();
+                        }
+                    }
+                    writer = null;
+                    gzipEntry = null;
+                    singleByteArray = null;
+                    block = null;
+                    prevBlock = null;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Flush is performed in the <code>GzipWriter</code> close method.
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByteArray[0] = (byte)b;
+            write(singleByteArray, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int pLen;
+            while (len > 0) {
+                if (blockLength < block.length) {
+                    pLen = Math.min(block.length - blockLength, len);
+                    System.arraycopy(b, off, block, blockLength, pLen);
+                    blockLength += pLen;
+                    off += pLen;
+                    len -= pLen;
+                } else {
+                    submitBlock(false);
+                }
+            }
+        }
+
+        /**
+         * Submit the current block for deflating and write blocks from the
+         * head of the queue until there is room for more blocks.
+         * @param bLast boolean indicating whether this is the last block
+         * @throws IOException if an i/o error occurs while writing blocks
+         */
+        protected void submitBlock(boolean bLast) throws IOException {
+            DeflateBlock task = new DeflateBlock();
+            task.stream = this;
+            task.input = block;
+            task.inputLength = blockLength;
+            if (prevBlock != null) {
+                task.dictionary = prevBlock;
+                task.dictionaryLength = Math.min(prevBlockLength, DICTIONARY_SIZE);
+                task.dictionaryOffset = prevBlockLength - task.dictionaryLength;
+            }
+            task.bLast = bLast;
+            pending.add(writer.parallelExecutor.submit(task));
+            prevBlock = block;
+            prevBlockLength = blockLength;
+            if (!bLast) {
+                block = new byte[block.length];
+            }
+            blockLength = 0;
+            while (pending.size() > writer.parallelMaxInFlight) {
+                writeBlock(pending.removeFirst());
+            }
+        }
+
+        /**
+         * Wait for a block to be deflated and write it.
+         * @param future pending block
+         * @throws IOException if an i/o error occurs while deflating or writing
+         */
+        protected void writeBlock(Future<DeflateBlock> future) throws IOException {
+            DeflateBlock task;
+            try {
+                task = future.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while deflating block!");
+            } catch (ExecutionException e) {
+                throw new IOException("Deflater malfunction!", e.getCause());
+            }
+            writer.out.write(task.output, 0, task.outputLength);
+            crc32 = GzipCrc32.combine(crc32, task.crc32, task.inputLength);
+            uncompressedSize += task.inputLength;
+            compressedSize += task.outputLength;
+        }
+
+        /**
+         * Get an idle deflater or create a new one.
+         * @return deflater reset to the compression level of this entry
+         */
+        protected Deflater acquireDeflater() {
+            Deflater deflater = null;
+            synchronized (deflaters) {
+                if (!deflaters.isEmpty()) {
+                    deflater = deflaters.removeFirst();
+                }
+            }
+            if (deflater == null) {
+                deflater = new Deflater(compressionLevel, true);
+            } else {
+                deflater.reset();
+            }
+            return deflater;
+        }
+
+        /**
+         * Return a deflater to the idle list.
+         * @param deflater deflater no longer in use
+         */
+        protected void releaseDeflater(Deflater deflater) {
+            synchronized (deflaters) {
+                if (!bDeflatersEnded) {
+                    deflaters.addFirst(deflater);
+                    return;
+                }
+            }
+            // Task finished after the entry was closed.
+            deflater.end();
+        }
+
+    }
+
+    /**
+     * Task deflating one block of a parallel deflated entry.
+     */
+    protected static class DeflateBlock implements Callable<DeflateBlock> {
+
+        /** Stream the block belongs to. */
+        GzipParallelEntryOutputStream stream;
+
+        /** Uncompressed block data. */
+        byte[] input;
+
+        /** Length of the uncompressed block data. */
+        int inputLength;
+
+        /** Dictionary data or null, if this is the first block. */
+        byte[] dictionary;
+
+        /** Offset of the dictionary data. */
+        int dictionaryOffset;
+
+        /** Length of the dictionary data. */
+        int dictionaryLength;
+
+        /** Is this the last block of the entry. */
+        boolean bLast;
+
+        /** Compressed block data. */
+        byte[] output;
+
+        /** Length of the compressed block data. */
+        int outputLength;
+
+        /** CRC32 of the uncompressed block data. */
+        long crc32;
+
+        public DeflateBlock call() throws Exception {
+            CRC32 crc = new CRC32();
+            crc.update(input, 0, inputLength);
+            crc32 = crc.getValue();
+            Deflater deflater = stream.acquireDeflater();
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary, dictionaryOffset, dictionaryLength);
+                }
+                deflater.setInput(input, 0, inputLength);
+                output = new byte[inputLength + (inputLength >> 3) + 64];
+                if (bLast) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        ensureOutput();
+                        outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+                    }
+                } else {
+                    int deflated;
+                    do {
+                        ensureOutput();
+                        deflated = syncFlush(deflater, output, outputLength, output.length - outputLength);
+                        outputLength += deflated;
+                    } while (outputLength == output.length);
+                }
+            } finally {
+                stream.releaseDeflater(deflater);
+            }
+            input = null;
+            dictionary = null;
+            return this;
+        }
+
+        /**
+         * Grow the output buffer if it is full.
+         */
+        protected void ensureOutput() {
+            if (outputLength == output.length) {
+                byte[] tmpOutput = new byte[output.length * 2];
+                System.arraycopy(output, 0, tmpOutput, 0, outputLength);
+                output = tmpOutput;
+            }
+        }
+
+        /**
+         * Deflate using the sync flush mode of the Java 7 <code>Deflater</code>.
+         * @param deflater deflater
+         * @param b compressed data buffer
+         * @param off offset in compressed data buffer
+         * @param len space available in compressed data buffer
+         * @return number of compressed bytes
+         * @throws IOException if the deflater fails
+         */
+        protected static int syncFlush(Deflater deflater, byte[] b, int off, int len) throws IOException {
+            try {
+                return (Integer)deflateFlushMethod.invoke(deflater, b, off, len, SYNC_FLUSH);
+            } catch (IllegalAccessException e) {
+                throw new IOException("Deflater malfunction!", e);
+            } catch (InvocationTargetException e) {
+                throw new IOException("Deflater malfunction!", e.getCause());
+            }
+        }
+
+    }
+
+    /**
+     * <code>OutputStream</code> which writes the data of an entry as a series
+     * of BGZF blocks.
+     *
+     * @author nicl
+     */
+    protected static class GzipBlockedEntryOutputStream extends OutputStream {
+
+        /** GZip writer. */
+        GzipWriter writer;
+
+        /** Associated GZip entry. */
+        GzipEntry gzipEntry;
+
+        /** End of compressed file status. */
+        boolean bEof = false;
+
+        /** Small buffer used by the write() method. */
+        byte[] singleByteArray = new byte[1];
+
+        /** Uncompressed data of the next block. */
+        byte[] block;
+
+        /** Number of bytes in the next block. */
+        int blockLength;
+
+        /** Number of blocks written. */
+        long blocks;
+
+        /** Combined CRC32 of the blocks written so far. */
+        long crc32 = 0;
+
+        /** Number of uncompressed bytes written so far. */
+        long uncompressedSize = 0;
+
+        /** Number of bytes written so far, including block headers and trailers. */
+        long compressedSize = 0;
+
+        /** Uncompressed bytes written since the last sync flush. */
+        long unflushedBytes;
+
+        /** Time of the last sync flush. */
+        long lastFlushMillis;
+
+        /**
+         * Construct output stream bound to a specific writer and entry.
+         * @param writer GZip writer
+         * @param gzipEntry GZip entry
+         */
+        public GzipBlockedEntryOutputStream(GzipWriter writer,
+                                    GzipEntry gzipEntry) {
+            this.writer = writer;
+            this.gzipEntry = gzipEntry;
+            block = new byte[writer.blockDataSize];
+            if (writer.syncFlushMillis > 0) {
+                lastFlushMillis = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Write the buffered data as a short block and flush the output
+         * stream.
+         * @throws IOException if an i/o error occurs while flushing
+         */
+        protected void syncFlush() throws IOException {
+            if (bEof) {
+                return;
+            }
+            while (blockLength > 0) {
+                writeBlock();
+            }
+            writer.out.flush();
+            unflushedBytes = 0;
+            if (writer.syncFlushMillis > 0) {
+                lastFlushMillis = System.currentTimeMillis();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!bEof) {
+                bEof = true;
+                try {
+                    while (blockLength > 0 || blocks == 0) {
+                        writeBlock();
+                    }
+                    gzipEntry.uncompressed_size = uncompressedSize;
+                    gzipEntry.compressed_size = compressedSize;
+                    gzipEntry.comp_crc32 = (int)(crc32 & 0xffffffff);
+                    gzipEntry.crc32 = gzipEntry.comp_crc32;
+                    gzipEntry.comp_isize = (int)(uncompressedSize & 0xffffffff);
+                    gzipEntry.isize = gzipEntry.comp_isize;
+                    writer.entryWritten(uncompressedSize, compressedSize);
+                    writer.out.flush();
+                } finally {
+                    writer = null;
+                    gzipEntry = null;
+                    singleByteArray = null;
+                    block = null;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Flush is performed in the <code>GzipWriter</code> close method.
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByteArray[0] = (byte)b;
+            write(singleByteArray, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int pLen;
+            int total = len;
+            while (len > 0) {
+                if (blockLength < block.length) {
+                    pLen = Math.min(block.length - blockLength, len);
+                    System.arraycopy(b, off, block, blockLength, pLen);
+                    blockLength += pLen;
+                    off += pLen;
+                    len -= pLen;
+                } else {
+                    writeBlock();
+                }
+            }
+            if (writer.syncFlushBytes > 0 || writer.syncFlushMillis > 0) {
+                unflushedBytes += total;
+                if ((writer.syncFlushBytes > 0 && unflushedBytes >= writer.syncFlushBytes)
+                        || (writer.syncFlushMillis > 0 && System.currentTimeMillis() - lastFlushMillis >= writer.syncFlushMillis)) {
+                    syncFlush();
+                }
+            }
+        }
+
+        /**
+         * Write the buffered data as a block, keeping any data which did not
+         * fit in the block for the next block.
+         * @throws IOException if an i/o error occurs while writing the block
+         */
+        protected void writeBlock() throws IOException {
+            int written = writer.writeBlock(gzipEntry, block, 0, blockLength);
+            crc32 = GzipCrc32.combine(crc32, writer.crc.getValue(), written);
+            uncompressedSize += written;
+            compressedSize += writer.lastBlockSize;
+            ++blocks;
+            blockLength -= written;
+            if (blockLength > 0) {
+                System.arraycopy(block, written, block, 0, blockLength);
+            }
         }
 
     }
@@ -0,0 +1,163 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipAdaptiveCompression {
+
+    @Test
+    public void test_gzip_entropy() {
+        int[] histogram = new int[256];
+        Assert.assertEquals(0.0, GzipWriter.entropy(histogram, 0), 0.0);
+        histogram['a'] = 100;
+        Assert.assertEquals(0.0, GzipWriter.entropy(histogram, 100), 0.0);
+        histogram['b'] = 100;
+        Assert.assertEquals(1.0, GzipWriter.entropy(histogram, 200), 0.000001);
+        for (int i=0; i<256; ++i) {
+            histogram[i] = 10;
+        }
+        Assert.assertEquals(8.0, GzipWriter.entropy(histogram, 2560), 0.000001);
+    }
+
+    @Test
+    public void test_gzip_adaptive_compression() throws IOException {
+        Random random = new Random(42);
+        byte[] text = new byte[200000];
+        for (int i=0; i<text.length; ++i) {
+            text[i] = (byte)('a' + random.nextInt(16));
+        }
+        byte[] compressed = new byte[200000];
+        random.nextBytes(compressed);
+        // Random data over 200 byte values, between the two thresholds.
+        byte[] skewed = new byte[200000];
+        for (int i=0; i<skewed.length; ++i) {
+            skewed[i] = (byte)random.nextInt(200);
+        }
+        List<byte[]> contents = new ArrayList<byte[]>();
+        contents.add(text);
+        contents.add(compressed);
+        contents.add(skewed);
+        contents.add(new byte[10]);
+
+        boolean[] blocked = {false, true};
+        for (int b=0; b<blocked.length; ++b) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GzipWriter writer = new GzipWriter(out);
+            writer.setBlocked(blocked[b]);
+            Assert.assertFalse(writer.isAdaptiveCompression());
+            writer.setAdaptiveCompression(true);
+            Assert.assertTrue(writer.isAdaptiveCompression());
+            Assert.assertEquals(GzipWriter.DEFAULT_ADAPTIVE_SAMPLE_SIZE, writer.getAdaptiveSampleSize());
+            try {
+                writer.setAdaptiveSampleSize(0);
+                Assert.fail("Exception expected!");
+            } catch (IllegalArgumentException e) {
+            }
+            writer.setAdaptiveSampleSize(8192);
+            GzipEntry entry;
+            List<GzipEntry> entries = new ArrayList<GzipEntry>();
+            for (int i=0; i<contents.size(); ++i) {
+                entry = new GzipEntry();
+                writer.writeEntryHeader(entry);
+                if (i % 2 == 0) {
+                    entry.writeFrom(new ByteArrayInputStream(contents.get(i)));
+                } else {
+                    OutputStream entryOut = entry.getOutputStream();
+                    entryOut.write(contents.get(i));
+                    entry.close();
+                }
+                entries.add(entry);
+            }
+            writer.close();
+            GzipCompressionStats stats = writer.getCompressionStats();
+            Assert.assertEquals(4, stats.getEntries());
+            Assert.assertEquals(2, stats.getAdaptiveEntries());
+            Assert.assertEquals(compressed.length + skewed.length, stats.getAdaptiveBytes());
+            Assert.assertEquals(1, stats.getLevelEntries(Deflater.NO_COMPRESSION));
+            Assert.assertEquals(compressed.length, stats.getLevelBytes(Deflater.NO_COMPRESSION));
+            Assert.assertEquals(1, stats.getLevelEntries(Deflater.BEST_SPEED));
+            Assert.assertEquals(2, stats.getLevelEntries(Deflater.DEFAULT_COMPRESSION));
+            Assert.assertEquals(text.length + compressed.length + skewed.length + 10, stats.getUncompressedBytes());
+            Assert.assertTrue(stats.getBytesSaved() > 0);
+            Assert.assertTrue(stats.getDeflateNanos() > 0);
+            Assert.assertNotNull(stats.toString());
+            // Stored data only grows by the block overhead.
+            Assert.assertTrue(entries.get(1).compressed_size < compressed.length + compressed.length / 100);
+            Assert.assertTrue(entries.get(0).compressed_size < text.length * 6 / 10);
+
+            /*
+             * Output is still valid GZip.
+             */
+            GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int i=0; i<contents.size(); ++i) {
+                expected.write(contents.get(i));
+            }
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            byte[] tmpBuf = new byte[8192];
+            int read;
+            while ((read = gzin.read(tmpBuf)) != -1) {
+                all.write(tmpBuf, 0, read);
+            }
+            gzin.close();
+            Assert.assertArrayEquals(expected.toByteArray(), all.toByteArray());
+
+            GzipReader reader = new GzipReader(new ByteArrayInputStream(out.toByteArray()));
+            while ((entry = reader.getNextEntry()) != null) {
+                TestGzipIndex.readEntry(entry);
+                Assert.assertTrue(entry.isCompliant());
+            }
+            Assert.assertTrue(reader.isCompliant());
+            reader.close();
+
+            stats.reset();
+            Assert.assertEquals(0, stats.getEntries());
+            Assert.assertEquals(0, stats.getUncompressedBytes());
+        }
+
+        /*
+         * Never raise the configured level.
+         */
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        writer.setAdaptiveCompression(true);
+        writer.setCompressionLevel(Deflater.BEST_SPEED);
+        GzipEntry entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        entry.writeFrom(new ByteArrayInputStream(skewed));
+        writer.close();
+        Assert.assertEquals(0, writer.getCompressionStats().getAdaptiveEntries());
+        Assert.assertEquals(1, writer.getCompressionStats().getLevelEntries(Deflater.BEST_SPEED));
+    }
+
+}
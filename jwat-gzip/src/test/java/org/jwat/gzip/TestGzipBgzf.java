@@ -0,0 +1,210 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipBgzf {
+
+    @Test
+    public void test_gzip_bgzf() throws IOException {
+        Random random = new Random(42);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        Assert.assertFalse(writer.isBlocked());
+        writer.setBlocked(true);
+        Assert.assertTrue(writer.isBlocked());
+        Assert.assertEquals(GzipConstants.BGZF_MAX_DATA_SIZE, writer.getBlockDataSize());
+        try {
+            writer.setBlockDataSize(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            writer.setBlockDataSize(GzipConstants.BGZF_MAX_DATA_SIZE + 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        int[] lengths = {0, 1, 1000, 0xff00, 0xff01, 300000};
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<lengths.length * 2; ++i) {
+            data = new byte[lengths[i % lengths.length]];
+            if (i < lengths.length) {
+                // Compressible data.
+                for (int j=0; j<data.length; ++j) {
+                    data[j] = (byte)('a' + random.nextInt(4));
+                }
+            } else {
+                // Incompressible data.
+                random.nextBytes(data);
+            }
+            expected.write(data);
+            entry = new GzipEntry();
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+            Assert.assertTrue(entry.isCompliant());
+            Assert.assertEquals(data.length, entry.uncompressed_size);
+        }
+        writer.close();
+        byte[] gzBytes = out.toByteArray();
+        byte[] expectedBytes = expected.toByteArray();
+
+        /*
+         * Standard GZip decoders read the blocks as members.
+         */
+        GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(gzBytes));
+        Assert.assertArrayEquals(expectedBytes, readAll(gzin));
+        gzin.close();
+
+        /*
+         * Every block carries its size and the last block is the EOF marker.
+         */
+        GzipReader reader = new GzipReader(new ByteArrayInputStream(gzBytes));
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        GzipEntry last = null;
+        int blocks = 0;
+        while ((entry = reader.getNextEntry()) != null) {
+            all.write(TestGzipIndex.readEntry(entry));
+            Assert.assertTrue(entry.isCompliant());
+            Assert.assertEquals(entry.consumed, entry.bgzfBlockSize);
+            Assert.assertTrue(entry.bgzfBlockSize <= GzipConstants.BGZF_MAX_BLOCK_SIZE);
+            Assert.assertTrue(entry.uncompressed_size <= GzipConstants.BGZF_MAX_DATA_SIZE);
+            last = entry;
+            ++blocks;
+        }
+        reader.close();
+        Assert.assertArrayEquals(expectedBytes, all.toByteArray());
+        Assert.assertEquals(GzipConstants.BGZF_EOF.length, last.consumed);
+        byte[] eof = new byte[GzipConstants.BGZF_EOF.length];
+        System.arraycopy(gzBytes, gzBytes.length - eof.length, eof, 0, eof.length);
+        Assert.assertArrayEquals(GzipConstants.BGZF_EOF, eof);
+
+        /*
+         * Index from block headers and trailers.
+         */
+        File file = File.createTempFile("jwat-testgzipbgzf-", ".gz");
+        file.deleteOnExit();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(gzBytes);
+        fout.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        GzipIndex index = GzipIndex.buildBgzf(raf);
+        GzipIndex fullIndex = GzipIndex.build(new ByteArrayInputStream(gzBytes));
+        Assert.assertEquals(blocks, index.size());
+        Assert.assertEquals(fullIndex.size(), index.size());
+        for (int i=0; i<index.size(); ++i) {
+            Assert.assertEquals(fullIndex.getStartOffset(i), index.getStartOffset(i));
+            Assert.assertEquals(fullIndex.getCompressedLength(i), index.getCompressedLength(i));
+            Assert.assertEquals(fullIndex.getUncompressedLength(i), index.getUncompressedLength(i));
+            Assert.assertEquals(fullIndex.getCrc32(i), index.getCrc32(i));
+            Assert.assertEquals(fullIndex.getUncompressedOffset(i), index.getUncompressedOffset(i));
+        }
+        Assert.assertEquals(expectedBytes.length, index.getUncompressedTotal());
+        Assert.assertEquals(-1, index.floorUncompressedIndexOf(-1));
+        Assert.assertEquals(-1, index.floorUncompressedIndexOf(expectedBytes.length));
+
+        /*
+         * Random access by uncompressed offset.
+         */
+        reader = new GzipReader(raf, index);
+        long[] offsets = new long[20];
+        for (int i=0; i<offsets.length; ++i) {
+            offsets[i] = random.nextInt(expectedBytes.length);
+        }
+        offsets[0] = 0;
+        offsets[1] = expectedBytes.length - 1;
+        offsets[2] = expectedBytes.length;
+        offsets[3] = index.getUncompressedOffset(3);
+        int len;
+        for (int i=0; i<offsets.length; ++i) {
+            InputStream in = reader.getUncompressedInputStream(offsets[i]);
+            len = (int)Math.min(100000, expectedBytes.length - offsets[i]);
+            byte[] range = new byte[len];
+            int pos = 0;
+            int read;
+            while (pos < len && (read = in.read(range, pos, len - pos)) != -1) {
+                pos += read;
+            }
+            Assert.assertEquals(len, pos);
+            for (int j=0; j<len; ++j) {
+                Assert.assertEquals(expectedBytes[(int)offsets[i] + j], range[j]);
+            }
+            in.close();
+        }
+        InputStream in = reader.getUncompressedInputStream(expectedBytes.length - 10);
+        Assert.assertEquals(10, readAll(in).length);
+        Assert.assertEquals(-1, in.read());
+        in.close();
+        try {
+            reader.getUncompressedInputStream(expectedBytes.length + 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        reader.close();
+        raf.close();
+
+        /*
+         * Not a BGZF file.
+         */
+        out = new ByteArrayOutputStream();
+        writer = new GzipWriter(out);
+        entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        entry.writeFrom(new ByteArrayInputStream(expectedBytes, 0, 1000));
+        entry.close();
+        writer.close();
+        fout = new FileOutputStream(file);
+        fout.write(out.toByteArray());
+        fout.close();
+        raf = new RandomAccessFile(file, "r");
+        try {
+            GzipIndex.buildBgzf(raf);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        raf.close();
+    }
+
+    public static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.gzip.TestGzipParallelReader.ReadResult;
+
+@RunWith(JUnit4.class)
+public class TestGzipChannelReader {
+
+    public static ReadResult readChannel(GzipReader reader) throws IOException {
+        ReadResult result = new ReadResult();
+        GzipEntry entry;
+        try {
+            while ((entry = reader.getNextEntry()) != null) {
+                result.offsets.add(entry.getStartOffset());
+                result.contents.add(TestGzipIndex.readEntry(entry));
+                result.compliant.add(entry.isCompliant());
+            }
+        } catch (IOException e) {
+            result.bException = true;
+        }
+        result.bIsCompliant = reader.isCompliant();
+        result.errors = reader.diagnostics.getErrors().size();
+        return result;
+    }
+
+    @Test
+    public void test_gzipchannelreader() throws IOException {
+        String[] resources = {
+                TestGzipIndex.FNAME,
+                "three-files.gz",
+                "sample.txt.gz",
+                "invalid-entries.gz",
+                "invalid-compression.gz",
+                "invalid-truncated.gz",
+                "invalid-magic.gz"
+        };
+        int[] windowSizes = {512, 8192, GzipReader.DEFAULT_INPUT_BUFFER_SIZE * 128};
+        File file;
+        ReadResult expected;
+        RandomAccessFile raf;
+        FileChannel channel;
+        MappedByteBuffer mapped;
+        for (int i=0; i<resources.length; ++i) {
+            file = TestGzipIndex.copyResource(resources[i]);
+            expected = TestGzipParallelReader.readSequential(file);
+            raf = new RandomAccessFile(file, "r");
+            channel = raf.getChannel();
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes = new byte[(int)channel.size()];
+            mapped.get(bytes);
+            for (int w=0; w<windowSizes.length; ++w) {
+                TestGzipParallelReader.compare(expected, readChannel(new GzipChannelReader(channel, 0, windowSizes[w])));
+                mapped.position(0);
+                TestGzipParallelReader.compare(expected, readChannel(new GzipChannelReader(mapped, windowSizes[w])));
+            }
+            TestGzipParallelReader.compare(expected, readChannel(new GzipChannelReader(ByteBuffer.wrap(bytes))));
+            TestGzipParallelReader.compare(expected, readChannel(new GzipChannelReader(channel, 0)));
+            raf.close();
+        }
+
+        /*
+         * Start at an entry offset, offsets are channel positions.
+         */
+        file = TestGzipIndex.copyResource(TestGzipIndex.FNAME);
+        expected = TestGzipParallelReader.readSequential(file);
+        raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+        long offset = expected.offsets.get(100);
+        ReadResult result = readChannel(new GzipChannelReader(channel, offset));
+        Assert.assertEquals(expected.offsets.subList(100, expected.offsets.size()), result.offsets);
+        for (int i=0; i<result.contents.size(); ++i) {
+            Assert.assertArrayEquals(expected.contents.get(100 + i), result.contents.get(i));
+        }
+        raf.close();
+
+        try {
+            new GzipChannelReader((FileChannel)null, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipChannelReader((ByteBuffer)null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipChannelReader(ByteBuffer.allocate(1), 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void test_gzipchannelreader_skiplength() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        writer.setSkipLength(true);
+        GzipEntry entry;
+        for (int i=0; i<10; ++i) {
+            entry = new GzipEntry();
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(new byte[i * 10000]));
+            entry.close();
+        }
+        writer.close();
+        byte[] gzBytes = out.toByteArray();
+        GzipChannelReader reader = new GzipChannelReader(ByteBuffer.wrap(gzBytes));
+        reader.setSkipLengthSeek(true);
+        int entries = 0;
+        while ((entry = reader.getNextEntry()) != null) {
+            entry.getInputStream().read(new byte[1]);
+            entry.close();
+            Assert.assertEquals(entry.skipLength, entry.consumed);
+            Assert.assertTrue(entry.isCompliant());
+            ++entries;
+        }
+        Assert.assertEquals(10, entries);
+        Assert.assertTrue(reader.isCompliant());
+        Assert.assertEquals(gzBytes.length, reader.getConsumed());
+        reader.close();
+    }
+
+    @Test
+    public void test_gzipchannelreader_transferentry() throws IOException {
+        File file = TestGzipIndex.copyResource(TestGzipIndex.FNAME);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        byte[] bytes = new byte[(int)channel.size()];
+        raf.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 10);
+        buffer.position(10);
+        buffer.put(bytes);
+        buffer.position(10);
+        GzipChannelReader[] readers = {
+                new GzipChannelReader(channel, 0),
+                new GzipChannelReader(buffer)
+        };
+        GzipEntry entry;
+        for (int i=0; i<readers.length; ++i) {
+            // Copy every other entry, without reading any of them.
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            int entries = 0;
+            while ((entry = readers[i].getNextEntry()) != null) {
+                if ((entries++ % 2) == 0) {
+                    long copied = readers[i].transferEntry(entry, target);
+                    Assert.assertEquals(entry.consumed, copied);
+                    expected.write(bytes, (int)entry.getStartOffset(), (int)copied);
+                } else {
+                    entry.close();
+                }
+            }
+            readers[i].close();
+            Assert.assertEquals(bytes.length, readers[i].getConsumed());
+            Assert.assertArrayEquals(expected.toByteArray(), out.toByteArray());
+            ReadResult result = readChannel(new GzipChannelReader(ByteBuffer.wrap(out.toByteArray())));
+            Assert.assertEquals((entries + 1) / 2, result.contents.size());
+            Assert.assertTrue(result.bIsCompliant);
+        }
+        try {
+            readers[0].transferEntry(null, Channels.newChannel(new ByteArrayOutputStream()));
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            readers[0].transferEntry(new GzipEntry(), null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(100, GzipChannelReader.transfer(channel, 50, 100, Channels.newChannel(out)));
+        Assert.assertEquals(100, out.size());
+        Assert.assertEquals(bytes[50], out.toByteArray()[0]);
+        try {
+            GzipChannelReader.transfer(channel, bytes.length - 10, 20, Channels.newChannel(out));
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        raf.close();
+    }
+
+}
@@ -147,7 +147,8 @@ public class TestGzipException {
             writer.close();
             Assert.fail("Exception expected!");
         } catch (IOException e) {
-            Assert.assertEquals("java.util.zip.DataFormatException: Deflater malfunction!", e.getMessage());
+            Assert.assertEquals("Deflater malfunction!", e.getMessage());
+            Assert.assertTrue(e.getCause() instanceof DataFormatException);
         }
     }
 
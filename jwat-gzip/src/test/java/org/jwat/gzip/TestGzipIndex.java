@@ -0,0 +1,224 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipIndex {
+
+    public static final String FNAME = "IAH-20080430204825-00000-blackbook.warc.gz";
+
+    public static File copyResource(String resource) throws IOException {
+        File file = File.createTempFile("jwat-testgzipindex-", ".gz");
+        file.deleteOnExit();
+        InputStream in = TestGzipIndex.class.getClassLoader().getResourceAsStream(resource);
+        OutputStream out = new FileOutputStream(file);
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        out.close();
+        in.close();
+        return file;
+    }
+
+    public static byte[] readEntry(GzipEntry entry) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = entry.getInputStream();
+        byte[] tmpBuf = new byte[1024];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        in.close();
+        entry.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void test_gzipindex() throws IOException {
+        File file = copyResource(FNAME);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        List<Long> offsets = new ArrayList<Long>();
+
+        InputStream in = this.getClass().getClassLoader().getResourceAsStream(FNAME);
+        GzipReader reader = new GzipReader(in);
+        GzipEntry entry;
+        while ((entry = reader.getNextEntry()) != null) {
+            offsets.add(entry.getStartOffset());
+            contents.add(readEntry(entry));
+        }
+        reader.close();
+        Assert.assertEquals(822, contents.size());
+
+        /*
+         * Build.
+         */
+        GzipIndex index = GzipIndex.buildSidecar(file);
+        Assert.assertEquals(822, index.size());
+        CRC32 crc = new CRC32();
+        for (int i=0; i<index.size(); ++i) {
+            Assert.assertEquals(offsets.get(i).longValue(), index.getStartOffset(i));
+            Assert.assertEquals(contents.get(i).length, index.getUncompressedLength(i));
+            if (i < index.size() - 1) {
+                Assert.assertEquals(offsets.get(i + 1) - offsets.get(i), index.getCompressedLength(i));
+            } else {
+                Assert.assertEquals(file.length() - offsets.get(i), index.getCompressedLength(i));
+            }
+            crc.reset();
+            crc.update(contents.get(i));
+            Assert.assertEquals((int)crc.getValue(), index.getCrc32(i));
+            Assert.assertEquals(i, index.indexOf(index.getStartOffset(i)));
+            Assert.assertEquals(i, index.floorIndexOf(index.getStartOffset(i) + 1));
+        }
+        Assert.assertEquals(-1, index.indexOf(1));
+        Assert.assertEquals(-1, index.floorIndexOf(-1));
+        try {
+            index.getStartOffset(index.size());
+            Assert.fail("Exception expected!");
+        } catch (IndexOutOfBoundsException e) {
+        }
+
+        /*
+         * Persist.
+         */
+        File sidecar = GzipIndex.getSidecarFile(file);
+        sidecar.deleteOnExit();
+        Assert.assertTrue(sidecar.exists());
+        Assert.assertEquals(12 + 822 * GzipIndex.INDEX_ENTRY_SIZE, sidecar.length());
+        GzipIndex loaded = GzipIndex.load(sidecar);
+        Assert.assertEquals(index.size(), loaded.size());
+        for (int i=0; i<index.size(); ++i) {
+            Assert.assertEquals(index.getStartOffset(i), loaded.getStartOffset(i));
+            Assert.assertEquals(index.getCompressedLength(i), loaded.getCompressedLength(i));
+            Assert.assertEquals(index.getUncompressedLength(i), loaded.getUncompressedLength(i));
+            Assert.assertEquals(index.getCrc32(i), loaded.getCrc32(i));
+        }
+
+        /*
+         * Random access.
+         */
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        reader = new GzipReader(raf, loaded);
+        Assert.assertSame(loaded, reader.getIndex());
+        int[] order = {500, 3, 821, 0, 499};
+        for (int i=0; i<order.length; ++i) {
+            entry = reader.getEntry(order[i]);
+            Assert.assertNotNull(entry);
+            Assert.assertEquals(offsets.get(order[i]).longValue(), entry.getStartOffset());
+            Assert.assertArrayEquals(contents.get(order[i]), readEntry(entry));
+            Assert.assertEquals(entry.crc32, entry.comp_crc32);
+            Assert.assertEquals(index.getCompressedLength(order[i]), entry.consumed);
+        }
+        // Abandon a partially read entry and continue sequentially.
+        entry = reader.getEntryAt(offsets.get(10));
+        Assert.assertEquals(contents.get(10)[0], (byte)entry.getInputStream().read());
+        entry = reader.getEntryAt(offsets.get(20));
+        Assert.assertArrayEquals(contents.get(20), readEntry(entry));
+        entry = reader.getNextEntry();
+        Assert.assertEquals(offsets.get(21).longValue(), entry.getStartOffset());
+        Assert.assertArrayEquals(contents.get(21), readEntry(entry));
+        try {
+            reader.getEntryAt(1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertTrue(reader.isCompliant());
+        reader.close();
+        raf.close();
+
+        reader = new GzipReader(new ByteArrayInputStream(new byte[0]));
+        try {
+            reader.getEntry(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        reader.close();
+    }
+
+    @Test
+    public void test_gzipindex_invalid() throws IOException {
+        GzipIndex index = new GzipIndex();
+        index.add(0, 100, 200, 1);
+        try {
+            index.add(50, 100, 200, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            index.add(100, -1, 200, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            index.add(100, 100, -1, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertEquals(1, index.size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        byte[] bytes = out.toByteArray();
+        Assert.assertEquals(1, GzipIndex.read(new ByteArrayInputStream(bytes)).size());
+
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        try {
+            GzipIndex.read(new ByteArrayInputStream(truncated));
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        // Corrupt entry count, larger than the data.
+        bytes[8] = 0x7f;
+        try {
+            GzipIndex.read(new ByteArrayInputStream(bytes), bytes.length);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        try {
+            GzipIndex.read(new ByteArrayInputStream(bytes));
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        bytes[8] = 0;
+        bytes[0] = 0;
+        try {
+            GzipIndex.read(new ByteArrayInputStream(bytes));
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+    }
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipInflateIndex {
+
+    @Test
+    public void test_gzip_inflateindex() throws IOException {
+        Random random = new Random(42);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        int[] levels = {6, 0, 1, 9, 6};
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<levels.length; ++i) {
+            data = new byte[i == 4 ? 100 : 1000000 + random.nextInt(1000000)];
+            // Mix of compressible runs and random data.
+            for (int j=0; j<data.length; ++j) {
+                if ((j / 4096) % 5 == 0) {
+                    data[j] = (byte)random.nextInt(256);
+                } else {
+                    data[j] = (byte)("abcdefgh".charAt(random.nextInt(8)) + (j % 3));
+                }
+            }
+            contents.add(data);
+            writer.setCompressionLevel(levels[i]);
+            entry = new GzipEntry();
+            if (i == 1) {
+                entry.fname = "entry" + i;
+                entry.fcomment = "comment";
+                entry.bFhCrc = true;
+                entry.extraData.add(new GzipExtraData((byte)'x', (byte)'y', new byte[] {1, 2, 3}));
+            }
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+        }
+        writer.close();
+        // An entry written by the JDK.
+        data = new byte[500000];
+        for (int j=0; j<data.length; ++j) {
+            data[j] = (byte)('a' + random.nextInt(3));
+        }
+        contents.add(data);
+        GZIPOutputStream gzout = new GZIPOutputStream(out);
+        gzout.write(data);
+        gzout.close();
+        byte[] gzBytes = out.toByteArray();
+        File file = File.createTempFile("jwat-testgzipinflateindex-", ".gz");
+        file.deleteOnExit();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(gzBytes);
+        fout.close();
+
+        GzipIndex gzipIndex = GzipIndex.build(new ByteArrayInputStream(gzBytes));
+        Assert.assertEquals(contents.size(), gzipIndex.size());
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        GzipInflateIndex index;
+        InputStream in;
+        long spacing = 65536;
+        for (int i=0; i<gzipIndex.size(); ++i) {
+            data = contents.get(i);
+            index = GzipInflateIndex.build(raf, gzipIndex.getStartOffset(i), spacing);
+            Assert.assertEquals(gzipIndex.getStartOffset(i), index.getStartOffset());
+            Assert.assertEquals(data.length, index.getUncompressedLength());
+            Assert.assertEquals(gzipIndex.getCrc32(i), index.getCrc32());
+            Assert.assertEquals(spacing, index.getSpacing());
+            Assert.assertTrue(index.size() >= 1);
+            Assert.assertEquals(0, index.getUncompressedOffset(0));
+            Assert.assertEquals(0, index.getBitOffset(0));
+            if (data.length > 4 * spacing) {
+                Assert.assertTrue(index.size() > 4);
+            }
+            for (int j=1; j<index.size(); ++j) {
+                Assert.assertTrue(index.getUncompressedOffset(j) - index.getUncompressedOffset(j - 1) >= spacing);
+            }
+
+            /*
+             * Persist and reload.
+             */
+            ByteArrayOutputStream indexOut = new ByteArrayOutputStream();
+            index.write(indexOut);
+            GzipInflateIndex index2 = GzipInflateIndex.read(new ByteArrayInputStream(indexOut.toByteArray()));
+            Assert.assertEquals(index.size(), index2.size());
+            Assert.assertEquals(index.getDataOffset(), index2.getDataOffset());
+            for (int j=0; j<index.size(); ++j) {
+                Assert.assertEquals(index.getUncompressedOffset(j), index2.getUncompressedOffset(j));
+                Assert.assertEquals(index.getBitOffset(j), index2.getBitOffset(j));
+            }
+
+            /*
+             * Random access, including checkpoint offsets and the end.
+             */
+            List<Long> offsets = new ArrayList<Long>();
+            offsets.add(0L);
+            offsets.add((long)data.length);
+            for (int j=0; j<index.size(); ++j) {
+                offsets.add(index.getUncompressedOffset(j));
+            }
+            for (int j=0; j<10; ++j) {
+                offsets.add((long)random.nextInt(data.length));
+            }
+            for (int j=0; j<offsets.size(); ++j) {
+                long offset = offsets.get(j);
+                in = index2.getInputStream(raf, offset);
+                int len = (int)Math.min(100000, data.length - offset);
+                byte[] range = new byte[len];
+                int pos = 0;
+                int read;
+                while (pos < len && (read = in.read(range, pos, len - pos)) != -1) {
+                    pos += read;
+                }
+                Assert.assertEquals(len, pos);
+                for (int k=0; k<len; ++k) {
+                    Assert.assertEquals(data[(int)offset + k], range[k]);
+                }
+                if (offset + len == data.length) {
+                    Assert.assertEquals(-1, in.read());
+                }
+                in.close();
+            }
+            try {
+                index.getInputStream(raf, data.length + 1);
+                Assert.fail("Exception expected!");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        raf.close();
+
+        /*
+         * Corrupt trailer.
+         */
+        long trailerOffset = gzipIndex.getStartOffset(4) + gzipIndex.getCompressedLength(4) - 8;
+        gzBytes[(int)trailerOffset] ^= 1;
+        fout = new FileOutputStream(file);
+        fout.write(gzBytes);
+        fout.close();
+        raf = new RandomAccessFile(file, "r");
+        try {
+            GzipInflateIndex.build(raf, gzipIndex.getStartOffset(4));
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        raf.close();
+
+        /*
+         * Invalid persisted index.
+         */
+        try {
+            GzipInflateIndex.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0, 0, 0, 1}));
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void test_gzip_inflateindex_incompressible() throws IOException {
+        Random random = new Random(7);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        int[] levels = {6, 6, 1};
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<levels.length; ++i) {
+            data = new byte[1500000];
+            for (int j=0; j<data.length; ++j) {
+                if (i != 1 || (j / 30000) % 2 == 0) {
+                    // Incompressible data, encoded as stored blocks.
+                    data[j] = (byte)random.nextInt(256);
+                } else {
+                    data[j] = (byte)("abcd".charAt(random.nextInt(4)));
+                }
+            }
+            contents.add(data);
+            writer.setCompressionLevel(levels[i]);
+            entry = new GzipEntry();
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+        }
+        writer.close();
+        byte[] gzBytes = out.toByteArray();
+        File file = File.createTempFile("jwat-testgzipinflateindex-", ".gz");
+        file.deleteOnExit();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(gzBytes);
+        fout.close();
+
+        GzipIndex gzipIndex = GzipIndex.build(new ByteArrayInputStream(gzBytes));
+        Assert.assertEquals(contents.size(), gzipIndex.size());
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        GzipInflateIndex index;
+        InputStream in;
+        int unaligned = 0;
+        byte[] range = new byte[1500000];
+        for (int i=0; i<gzipIndex.size(); ++i) {
+            data = contents.get(i);
+            index = GzipInflateIndex.build(raf, gzipIndex.getStartOffset(i), 32768);
+            Assert.assertTrue(index.size() > 10);
+            for (int j=0; j<index.size(); ++j) {
+                if ((index.getBitOffset(j) & 7) != 0) {
+                    ++unaligned;
+                }
+                // Read from every checkpoint to the end of the entry.
+                long offset = index.getUncompressedOffset(j);
+                in = index.getInputStream(raf, offset);
+                int len = (int)(data.length - offset);
+                int pos = 0;
+                int read;
+                while (pos < len && (read = in.read(range, pos, len - pos)) != -1) {
+                    pos += read;
+                }
+                Assert.assertEquals(len, pos);
+                Assert.assertEquals(-1, in.read());
+                for (int k=0; k<len; ++k) {
+                    Assert.assertEquals(data[(int)offset + k], range[k]);
+                }
+                in.close();
+            }
+        }
+        raf.close();
+        // Stored blocks following unaligned checkpoints are covered.
+        Assert.assertTrue(unaligned > 0);
+    }
+
+    @Test
+    public void test_gzip_inflateindex_prime() throws IOException {
+        Random random = new Random(3);
+        byte[] window = new byte[GzipInflateIndex.WINDOW_SIZE];
+        for (int i=0; i<window.length; ++i) {
+            window[i] = (byte)("abcdefgh".charAt(random.nextInt(8)));
+        }
+        byte[] data = new byte[200000];
+        for (int i=0; i<data.length; ++i) {
+            data[i] = window[random.nextInt(window.length)];
+        }
+        // Deflate data referring to the window, without stored blocks.
+        Deflater def = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        def.setDictionary(window);
+        def.setInput(data);
+        def.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        while (!def.finished()) {
+            out.write(tmpBuf, 0, def.deflate(tmpBuf));
+        }
+        def.end();
+        byte[] deflated = out.toByteArray();
+        File file = File.createTempFile("jwat-testgzipinflateindex-", ".deflate");
+        file.deleteOnExit();
+        byte[] shifted = new byte[deflated.length + 1];
+        byte[] range = new byte[data.length];
+        GzipInflateIndex.CheckpointInputStream in;
+        for (int shift=0; shift<8; ++shift) {
+            /*
+             * Start the data at a bit offset after some other bits.
+             */
+            shifted[0] = (byte)random.nextInt(256);
+            shifted[0] &= (1 << shift) - 1;
+            for (int i=0; i<deflated.length; ++i) {
+                shifted[i] |= (byte)((deflated[i] & 255) << shift);
+                shifted[i + 1] = (byte)((deflated[i] & 255) >>> (8 - shift));
+            }
+            FileOutputStream fout = new FileOutputStream(file);
+            fout.write(shifted);
+            fout.close();
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            in = new GzipInflateIndex.CheckpointInputStream(raf, 0, shift, window, data.length);
+            int pos = 0;
+            int read;
+            while (pos < range.length && (read = in.read(range, pos, range.length - pos)) != -1) {
+                pos += read;
+            }
+            Assert.assertEquals(data.length, pos);
+            Assert.assertArrayEquals(data, range);
+            Assert.assertEquals(-1, in.read());
+            in.close();
+            try {
+                in.read();
+                Assert.fail("Exception expected!");
+            } catch (IOException e) {
+            }
+            raf.close();
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipLevelController {
+
+    @Test
+    public void test_gzip_levelcontroller() {
+        try {
+            new GzipLevelController(-1, 9);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipLevelController(5, 4);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        GzipLevelController controller = new GzipLevelController(2, 5);
+        Assert.assertEquals(2, controller.getMinLevel());
+        Assert.assertEquals(5, controller.getMaxLevel());
+        Assert.assertEquals(5, controller.getLevel());
+        try {
+            controller.setQueueWatermarks(4, 4);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        controller.setQueueWatermarks(2, 8);
+        controller.setHysteresis(1, 2);
+        // No entries written at the level yet.
+        controller.reportQueueDepth(10);
+        Assert.assertEquals(5, controller.getLevel());
+        controller.entryWritten(5, 100, 0);
+        controller.reportQueueDepth(10);
+        Assert.assertEquals(4, controller.getLevel());
+        controller.reportQueueDepth(10);
+        Assert.assertEquals(4, controller.getLevel());
+        for (int i=0; i<10; ++i) {
+            controller.entryWritten(controller.getLevel(), 100, 0);
+            controller.reportQueueDepth(10);
+        }
+        Assert.assertEquals(2, controller.getLevel());
+        controller.reportQueueDepth(5);
+        Assert.assertEquals(2, controller.getLevel());
+        for (int i=0; i<10; ++i) {
+            controller.entryWritten(controller.getLevel(), 100, 0);
+            controller.reportQueueDepth(0);
+        }
+        Assert.assertEquals(5, controller.getLevel());
+        Assert.assertEquals(6, controller.getLevelChanges());
+        long[] distribution = controller.getLevelDistribution();
+        long total = 0;
+        for (int i=0; i<distribution.length; ++i) {
+            total += distribution[i];
+            Assert.assertEquals(distribution[i], controller.getLevelEntries(i));
+        }
+        Assert.assertEquals(21, total);
+        Assert.assertEquals(0, controller.getLevelEntries(0));
+        // Entries reported for a previous level are only counted.
+        controller.setQueueWatermarks(-1, -1);
+        controller.setTargetThroughput(Long.MAX_VALUE);
+        controller.setHysteresis(0, 0);
+        controller.entryWritten(3, 100000, 1000);
+        Assert.assertEquals(5, controller.getLevel());
+        controller.entryWritten(5, 100, 1000);
+        Assert.assertEquals(5, controller.getLevel());
+        controller.entryWritten(5, 100000, 1000);
+        Assert.assertEquals(4, controller.getLevel());
+    }
+
+    @Test
+    public void test_gzip_levelcontroller_writer() throws IOException {
+        Random random = new Random(42);
+        byte[] data = new byte[50000];
+        for (int i=0; i<data.length; ++i) {
+            data[i] = (byte)('a' + random.nextInt(10));
+        }
+        /*
+         * Unreachable throughput target lowers the level to the minimum.
+         */
+        GzipLevelController controller = new GzipLevelController(1, 9);
+        controller.setTargetThroughput(Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, controller.getTargetThroughput());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        writer.setLevelController(controller);
+        Assert.assertSame(controller, writer.getLevelController());
+        int entries = 60;
+        writeEntries(writer, data, entries);
+        writer.close();
+        Assert.assertEquals(1, controller.getLevel());
+        Assert.assertTrue(controller.getThroughput() >= 0.0);
+        Assert.assertEquals(8, controller.getLevelChanges());
+        Assert.assertEquals(GzipLevelController.DEFAULT_LOWER_AFTER_ENTRIES, controller.getLevelEntries(9));
+        Assert.assertEquals(entries, writer.getCompressionStats().getEntries());
+        for (int i=0; i<10; ++i) {
+            Assert.assertEquals(controller.getLevelEntries(i), writer.getCompressionStats().getLevelEntries(i));
+        }
+        assertValid(out.toByteArray(), data, entries);
+
+        /*
+         * Easily reached throughput target raises the level to the maximum.
+         */
+        controller = new GzipLevelController(1, 3);
+        controller.setTargetThroughput(1);
+        controller.setHysteresis(4, 4);
+        // Start from the minimum.
+        controller.setQueueWatermarks(0, 1);
+        controller.entryWritten(3, 0, 0);
+        controller.entryWritten(3, 0, 0);
+        controller.entryWritten(3, 0, 0);
+        controller.entryWritten(3, 0, 0);
+        controller.reportQueueDepth(1);
+        controller.entryWritten(2, 0, 0);
+        controller.entryWritten(2, 0, 0);
+        controller.entryWritten(2, 0, 0);
+        controller.entryWritten(2, 0, 0);
+        controller.reportQueueDepth(1);
+        Assert.assertEquals(1, controller.getLevel());
+        controller.setQueueWatermarks(-1, -1);
+        out = new ByteArrayOutputStream();
+        writer = new GzipWriter(out);
+        writer.setBlocked(true);
+        writer.setLevelController(controller);
+        writeEntries(writer, data, 20);
+        writer.close();
+        Assert.assertEquals(3, controller.getLevel());
+        assertValid(out.toByteArray(), data, 20);
+    }
+
+    @Test
+    public void test_gzip_levelcontroller_parallel() throws Exception {
+        byte[] data = new byte[20000];
+        for (int i=0; i<data.length; ++i) {
+            data[i] = (byte)('a' + (i % 7));
+        }
+        GzipLevelController controller = new GzipLevelController(0, 6);
+        controller.setQueueWatermarks(0, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipParallelWriter writer = new GzipParallelWriter(out, executor, 4);
+        writer.setLevelController(controller);
+        Assert.assertSame(controller, writer.getLevelController());
+        int entries = 100;
+        List<Future<GzipEntry>> futures = new ArrayList<Future<GzipEntry>>();
+        for (int i=0; i<entries; ++i) {
+            futures.add(writer.submit(new GzipEntry(), data));
+        }
+        for (int i=0; i<futures.size(); ++i) {
+            futures.get(i).get();
+        }
+        writer.close();
+        executor.shutdown();
+        long total = 0;
+        long[] distribution = controller.getLevelDistribution();
+        for (int i=0; i<distribution.length; ++i) {
+            total += distribution[i];
+        }
+        Assert.assertEquals(entries, total);
+        assertValid(out.toByteArray(), data, entries);
+    }
+
+    public static void writeEntries(GzipWriter writer, byte[] data, int entries) throws IOException {
+        GzipEntry entry;
+        for (int i=0; i<entries; ++i) {
+            entry = new GzipEntry();
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+        }
+    }
+
+    public static void assertValid(byte[] gzBytes, byte[] data, int entries) throws IOException {
+        GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(gzBytes));
+        byte[] all = TestGzipBgzf.readAll(gzin);
+        gzin.close();
+        Assert.assertEquals(data.length * entries, all.length);
+        for (int i=0; i<all.length; ++i) {
+            Assert.assertEquals(data[i % data.length], all[i]);
+        }
+    }
+
+}
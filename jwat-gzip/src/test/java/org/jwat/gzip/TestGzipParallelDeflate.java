@@ -0,0 +1,184 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipParallelDeflate {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_gzipcrc32_combine() {
+        Random random = new Random(1);
+        byte[] data = new byte[100000];
+        random.nextBytes(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        long expected = crc.getValue();
+        int[] splits = {0, 1, 2, 3, 4, 1000, 32768, 99999, 100000};
+        for (int i=0; i<splits.length; ++i) {
+            crc.reset();
+            crc.update(data, 0, splits[i]);
+            long crc1 = crc.getValue();
+            crc.reset();
+            crc.update(data, splits[i], data.length - splits[i]);
+            long crc2 = crc.getValue();
+            Assert.assertEquals(expected, GzipCrc32.combine(crc1, crc2, data.length - splits[i]));
+        }
+        Assert.assertEquals(expected, GzipCrc32.combine(0, expected, data.length));
+    }
+
+    @Test
+    public void test_gzipwriter_paralleldeflate() throws IOException {
+        Assert.assertTrue(GzipWriter.isParallelDeflateSupported());
+        Random random = new Random(2);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        int[] sizes = {0, 1, 999, 1000, 1001, 2000, 70000, 1024 * 1024};
+        byte[] data;
+        for (int i=0; i<sizes.length; ++i) {
+            data = new byte[sizes[i]];
+            for (int j=0; j<data.length; ++j) {
+                // Repetitive data which benefits from the dictionary.
+                data[j] = (byte)((j % 3000) < 1500 ? 'a' + random.nextInt(26) : data[j - 1500]);
+            }
+            contents.add(data);
+        }
+        Object[][] configs = {
+                // blockSize, maxInFlight, compressionLevel, skipLength
+                {1000, 1, -1, false},
+                {1000, 4, 1, true},
+                {65536, 2, 9, false},
+                {GzipWriter.DEFAULT_PARALLEL_BLOCK_SIZE, GzipWriter.DEFAULT_PARALLEL_MAX_IN_FLIGHT, 0, true}
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer;
+        GzipEntry entry;
+        OutputStream entryOut;
+        for (int c=0; c<configs.length; ++c) {
+            out.reset();
+            writer = new GzipWriter(out);
+            Assert.assertFalse(writer.isParallelDeflate());
+            writer.setParallelDeflate(executor, (Integer)configs[c][0], (Integer)configs[c][1]);
+            Assert.assertTrue(writer.isParallelDeflate());
+            writer.setCompressionLevel((Integer)configs[c][2]);
+            writer.setSkipLength((Boolean)configs[c][3]);
+            for (int i=0; i<contents.size(); ++i) {
+                entry = new GzipEntry();
+                writer.writeEntryHeader(entry);
+                entryOut = entry.getOutputStream();
+                Assert.assertTrue(entryOut instanceof GzipWriter.GzipParallelEntryOutputStream);
+                data = contents.get(i);
+                if (i % 2 == 1) {
+                    // Also deflated in parallel.
+                    entry.writeFrom(new ByteArrayInputStream(data));
+                } else {
+                    // Mixed write sizes.
+                    int pos = 0;
+                    int len;
+                    while (pos < data.length) {
+                        if (pos % 7 == 0) {
+                            entryOut.write(data[pos++]);
+                        } else {
+                            len = Math.min(random.nextInt(5000), data.length - pos);
+                            entryOut.write(data, pos, len);
+                            pos += len;
+                        }
+                    }
+                    entry.close();
+                }
+                Assert.assertTrue(entry.isCompliant());
+                Assert.assertEquals(data.length, entry.uncompressed_size);
+            }
+            writer.close();
+            Assert.assertTrue(writer.isCompliant());
+            byte[] gzBytes = out.toByteArray();
+
+            GzipReader reader = new GzipReader(new ByteArrayInputStream(gzBytes));
+            int idx = 0;
+            while ((entry = reader.getNextEntry()) != null) {
+                Assert.assertArrayEquals(contents.get(idx), TestGzipIndex.readEntry(entry));
+                Assert.assertTrue(entry.isCompliant());
+                ++idx;
+            }
+            Assert.assertEquals(contents.size(), idx);
+            Assert.assertTrue(reader.isCompliant());
+            reader.close();
+
+            GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(gzBytes));
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            byte[] tmpBuf = new byte[8192];
+            int read;
+            while ((read = gzin.read(tmpBuf)) != -1) {
+                all.write(tmpBuf, 0, read);
+            }
+            gzin.close();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int i=0; i<contents.size(); ++i) {
+                expected.write(contents.get(i));
+            }
+            Assert.assertArrayEquals(expected.toByteArray(), all.toByteArray());
+        }
+
+        writer = new GzipWriter(out);
+        try {
+            writer.setParallelDeflate(executor, 0, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            writer.setParallelDeflate(executor, 1, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        writer.setParallelDeflate(executor);
+        Assert.assertTrue(writer.isParallelDeflate());
+        writer.setParallelDeflate(null);
+        Assert.assertFalse(writer.isParallelDeflate());
+        writer.close();
+    }
+
+}
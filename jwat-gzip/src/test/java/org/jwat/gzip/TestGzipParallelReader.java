@@ -0,0 +1,299 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipParallelReader {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public static class ReadResult {
+        List<Long> offsets = new ArrayList<Long>();
+        List<byte[]> contents = new ArrayList<byte[]>();
+        List<Boolean> compliant = new ArrayList<Boolean>();
+        boolean bIsCompliant;
+        int errors;
+        boolean bException;
+    }
+
+    public static ReadResult readSequential(File file) throws IOException {
+        ReadResult result = new ReadResult();
+        InputStream in = new FileInputStream(file);
+        GzipReader reader = new GzipReader(in);
+        GzipEntry entry;
+        try {
+            while ((entry = reader.getNextEntry()) != null) {
+                result.offsets.add(entry.getStartOffset());
+                result.contents.add(TestGzipIndex.readEntry(entry));
+                result.compliant.add(entry.isCompliant());
+            }
+        } catch (IOException e) {
+            result.bException = true;
+        }
+        result.bIsCompliant = reader.isCompliant();
+        result.errors = reader.diagnostics.getErrors().size();
+        in.close();
+        return result;
+    }
+
+    public ReadResult readParallel(File file, GzipIndex index, int maxInFlight, int chunkSize, int maxBuffered) throws IOException {
+        ReadResult result = new ReadResult();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        GzipParallelReader reader = new GzipParallelReader(raf, index, executor, maxInFlight, chunkSize, maxBuffered);
+        GzipEntry entry;
+        try {
+            while ((entry = reader.getNextEntry()) != null) {
+                Assert.assertEquals(entry.getStartOffset(), reader.getStartOffset());
+                result.offsets.add(entry.getStartOffset());
+                result.contents.add(TestGzipIndex.readEntry(entry));
+                result.compliant.add(entry.isCompliant());
+            }
+        } catch (IOException e) {
+            result.bException = true;
+        }
+        result.bIsCompliant = reader.isCompliant();
+        result.errors = reader.diagnostics.getErrors().size();
+        reader.close();
+        raf.close();
+        return result;
+    }
+
+    public static void compare(ReadResult expected, ReadResult result) {
+        Assert.assertEquals(expected.offsets, result.offsets);
+        Assert.assertEquals(expected.contents.size(), result.contents.size());
+        for (int i=0; i<expected.contents.size(); ++i) {
+            Assert.assertArrayEquals(expected.contents.get(i), result.contents.get(i));
+        }
+        Assert.assertEquals(expected.compliant, result.compliant);
+        Assert.assertEquals(expected.bIsCompliant, result.bIsCompliant);
+        Assert.assertEquals(expected.errors, result.errors);
+        Assert.assertEquals(expected.bException, result.bException);
+    }
+
+    @Test
+    public void test_gzipparallelreader() throws IOException {
+        String[] resources = {
+                TestGzipIndex.FNAME,
+                "three-files.gz",
+                "sample.txt.gz",
+                "invalid-entries.gz",
+                "invalid-compression.gz",
+                "invalid-truncated.gz",
+                "invalid-magic.gz"
+        };
+        File file;
+        ReadResult expected;
+        for (int i=0; i<resources.length; ++i) {
+            file = TestGzipIndex.copyResource(resources[i]);
+            expected = readSequential(file);
+            compare(expected, readParallel(file, null, GzipParallelReader.DEFAULT_MAX_IN_FLIGHT, GzipParallelReader.DEFAULT_CHUNK_SIZE, GzipParallelReader.DEFAULT_MAX_BUFFERED_ENTRY_SIZE));
+            compare(expected, readParallel(file, null, 1, 1, 1));
+            compare(expected, readParallel(file, null, 3, 4096, 2048));
+        }
+
+        file = TestGzipIndex.copyResource(TestGzipIndex.FNAME);
+        expected = readSequential(file);
+        Assert.assertEquals(822, expected.offsets.size());
+        GzipIndex index = GzipIndex.build(new FileInputStream(file));
+        compare(expected, readParallel(file, index, 8, 65536, GzipParallelReader.DEFAULT_MAX_BUFFERED_ENTRY_SIZE));
+        compare(expected, readParallel(file, index, 8, 1, 2048));
+
+        /*
+         * Trailing data.
+         */
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+        expected = readSequential(file);
+        Assert.assertFalse(expected.bIsCompliant);
+        compare(expected, readParallel(file, null, 4, 65536, GzipParallelReader.DEFAULT_MAX_BUFFERED_ENTRY_SIZE));
+    }
+
+    @Test
+    public void test_gzipparallelreader_oversized() throws Exception {
+        int[] sizes = {100, 50000, 200, 300, 80000, 400};
+        for (int s=0; s<2; ++s) {
+            boolean bSkipLength = (s == 1);
+            File file = File.createTempFile("jwat-testgzipparallelreader-", ".gz");
+            file.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(file);
+            GzipWriter writer = new GzipWriter(out);
+            writer.setSkipLength(bSkipLength);
+            Random random = new Random(42);
+            GzipEntry entry;
+            byte[] data;
+            for (int i=0; i<sizes.length; ++i) {
+                data = new byte[sizes[i]];
+                random.nextBytes(data);
+                entry = new GzipEntry();
+                writer.writeEntryHeader(entry);
+                entry.writeFrom(new ByteArrayInputStream(data));
+                entry.close();
+            }
+            writer.close();
+            out.close();
+            ReadResult expected = readSequential(file);
+            Assert.assertEquals(sizes.length, expected.offsets.size());
+            compare(expected, readParallel(file, null, 2, 1 << 20, 1024));
+            compare(expected, readParallel(file, null, 4, 1, 1024));
+            /*
+             * The task stops inflating the first oversized entry and only
+             * continues past it using the skip-length.
+             */
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            List<GzipParallelReader.InflatedEntry> list = new GzipParallelReader.InflateTask(
+                    raf.getChannel(), 0, raf.length(), 1024).call();
+            raf.close();
+            if (bSkipLength) {
+                Assert.assertEquals(sizes.length, list.size());
+                for (int i=0; i<sizes.length; ++i) {
+                    Assert.assertEquals(expected.offsets.get(i).longValue(), list.get(i).entry.getStartOffset());
+                    if (sizes[i] > 1024) {
+                        Assert.assertNull(list.get(i).data);
+                    } else {
+                        Assert.assertArrayEquals(expected.contents.get(i), list.get(i).data);
+                    }
+                }
+            } else {
+                Assert.assertEquals(1, list.size());
+                Assert.assertArrayEquals(expected.contents.get(0), list.get(0).data);
+            }
+        }
+    }
+
+    @Test
+    public void test_gzipparallelreader_chunk_limit() throws Exception {
+        File file = File.createTempFile("jwat-testgzipparallelreader-", ".gz");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        GzipWriter writer = new GzipWriter(out);
+        Random random = new Random(42);
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<10; ++i) {
+            data = new byte[300];
+            random.nextBytes(data);
+            entry = new GzipEntry();
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+        }
+        writer.close();
+        out.close();
+        ReadResult expected = readSequential(file);
+        compare(expected, readParallel(file, null, 2, 1 << 20, 1024));
+        /*
+         * The task stops when the next entry would exceed the buffer limit
+         * of the chunk.
+         */
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        List<GzipParallelReader.InflatedEntry> list = new GzipParallelReader.InflateTask(
+                raf.getChannel(), 0, raf.length(), 1024).call();
+        Assert.assertEquals(3, list.size());
+        for (int i=0; i<list.size(); ++i) {
+            Assert.assertArrayEquals(expected.contents.get(i), list.get(i).data);
+        }
+        /*
+         * A failed task is reported instead of looking like an empty chunk.
+         */
+        GzipParallelReader reader = new GzipParallelReader(raf, executor);
+        GzipParallelReader.PendingChunk chunk = new GzipParallelReader.PendingChunk();
+        FutureTask<List<GzipParallelReader.InflatedEntry>> task = new FutureTask<List<GzipParallelReader.InflatedEntry>>(
+                new Callable<List<GzipParallelReader.InflatedEntry>>() {
+                    public List<GzipParallelReader.InflatedEntry> call() {
+                        throw new IllegalStateException("Failed!");
+                    }
+                });
+        task.run();
+        chunk.future = task;
+        try {
+            reader.getInflatedEntries(chunk);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        reader.close();
+        raf.close();
+    }
+
+    @Test
+    public void test_gzipparallelreader_empty() throws IOException {
+        File file = File.createTempFile("jwat-testgzipparallel-", ".gz");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            new GzipParallelReader(null, executor);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipParallelReader(raf, null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipParallelReader(raf, null, executor, 0, 1, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        GzipParallelReader reader = new GzipParallelReader(raf, executor);
+        Assert.assertNull(reader.getNextEntry());
+        Assert.assertFalse(reader.isCompliant());
+        Assert.assertEquals(1, reader.diagnostics.getErrors().size());
+        reader.close();
+        try {
+            reader.getNextEntry();
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        raf.close();
+    }
+
+}
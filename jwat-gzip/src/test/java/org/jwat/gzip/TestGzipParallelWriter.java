@@ -0,0 +1,274 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipParallelWriter {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_gzipparallelwriter() throws Exception {
+        final int producers = 8;
+        final int perProducer = 50;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] {'x', 'y', 'z'});
+        final GzipParallelWriter writer = new GzipParallelWriter(out, executor, 5);
+        writer.setOffset(3);
+        writer.setSkipLength(true);
+        Assert.assertTrue(writer.isSkipLength());
+        writer.setCompressionLevel(1);
+        Assert.assertEquals(1, writer.getCompressionLevel());
+        final List<Future<GzipEntry>> futures = Collections.synchronizedList(new ArrayList<Future<GzipEntry>>());
+        final Map<String, byte[]> contents = Collections.synchronizedMap(new HashMap<String, byte[]>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[producers];
+        for (int t=0; t<producers; ++t) {
+            final int id = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(id);
+                    try {
+                        for (int i=0; i<perProducer; ++i) {
+                            byte[] data = new byte[random.nextInt(20000)];
+                            for (int j=0; j<data.length; ++j) {
+                                data[j] = (byte)('a' + random.nextInt(8));
+                            }
+                            byte[] prefix = ("producer " + id + " entry " + i + "\n").getBytes();
+                            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                            expected.write(prefix);
+                            expected.write(data);
+                            GzipEntry entry = new GzipEntry();
+                            entry.fname = id + "-" + i;
+                            contents.put(entry.fname, expected.toByteArray());
+                            futures.add(writer.submit(entry, prefix, null, data));
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t=0; t<producers; ++t) {
+            threads[t].join();
+        }
+        Assert.assertEquals(0, failures.size());
+        writer.flush();
+        long flushedOffset = writer.getOffset();
+        Assert.assertEquals(out.size(), flushedOffset);
+        writer.close();
+        writer.close();
+        Assert.assertTrue(writer.isCompliant());
+        try {
+            writer.submit(new GzipEntry(), new byte[1]);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+
+        /*
+         * Every member is where its future says it is.
+         */
+        byte[] gzBytes = out.toByteArray();
+        Assert.assertEquals(producers * perProducer, futures.size());
+        GzipReader reader = new GzipReader(new ByteArrayInputStream(gzBytes, 3, gzBytes.length - 3));
+        GzipEntry entry;
+        int idx = 0;
+        List<Long> offsets = new ArrayList<Long>();
+        while ((entry = reader.getNextEntry()) != null) {
+            TestGzipIndex.readEntry(entry);
+            Assert.assertTrue(entry.isCompliant());
+            Assert.assertEquals(entry.consumed, entry.skipLength);
+            Assert.assertEquals(GzipConstants.DEFLATE_XFL_FASTEST_COMPRESSION, entry.xfl);
+            offsets.add(entry.getStartOffset() + 3);
+            ++idx;
+        }
+        Assert.assertTrue(reader.isCompliant());
+        reader.close();
+        Assert.assertEquals(futures.size(), idx);
+        GzipEntry written;
+        long length = 0;
+        for (int i=0; i<futures.size(); ++i) {
+            written = futures.get(i).get();
+            Assert.assertTrue(offsets.remove(Long.valueOf(written.startOffset)));
+            length += written.consumed;
+            reader = new GzipReader(new ByteArrayInputStream(gzBytes, (int)written.startOffset, (int)written.consumed));
+            entry = reader.getNextEntry();
+            Assert.assertEquals(written.fname, entry.fname);
+            Assert.assertArrayEquals(contents.get(written.fname), TestGzipIndex.readEntry(entry));
+            Assert.assertEquals(written.consumed, entry.consumed);
+            Assert.assertNull(reader.getNextEntry());
+            reader.close();
+        }
+        Assert.assertEquals(0, offsets.size());
+        Assert.assertEquals(gzBytes.length - 3, length);
+    }
+
+    @Test
+    public void test_gzipparallelwriter_failures() throws Exception {
+        try {
+            new GzipParallelWriter(null, executor);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipParallelWriter(new ByteArrayOutputStream(), null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new GzipParallelWriter(new ByteArrayOutputStream(), executor, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        GzipParallelWriter writer = new GzipParallelWriter(new ByteArrayOutputStream(), executor);
+        try {
+            writer.setCompressionLevel(10);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            writer.submit(null, new byte[1]);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        writer.submit(new GzipEntry(), new byte[1]).get();
+        try {
+            writer.setOffset(10);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        writer.close();
+
+        /*
+         * Write failures fail the current and all following entries.
+         */
+        OutputStream failingOut = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Write failed!");
+            }
+        };
+        writer = new GzipParallelWriter(failingOut, executor, 2);
+        Future<GzipEntry> future = writer.submit(new GzipEntry(), new byte[100]);
+        try {
+            future.get();
+            Assert.fail("Exception expected!");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        try {
+            writer.submit(new GzipEntry(), new byte[100]);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        try {
+            writer.flush();
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+
+        /*
+         * Rejected tasks fail the entry only.
+         */
+        ExecutorService shutdownExecutor = Executors.newSingleThreadExecutor();
+        shutdownExecutor.shutdown();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = new GzipParallelWriter(out, shutdownExecutor, 2);
+        future = writer.submit(new GzipEntry(), new byte[100]);
+        try {
+            future.get();
+            Assert.fail("Exception expected!");
+        } catch (ExecutionException e) {
+        }
+        writer.close();
+        Assert.assertEquals(0, out.size());
+    }
+
+    @Test
+    public void test_gzipparallelwriter_unlocked_write() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                super.write(b, off, len);
+            }
+        };
+        GzipParallelWriter writer = new GzipParallelWriter(out, executor, 4);
+        Future<GzipEntry> first = writer.submit(new GzipEntry(), new byte[1000]);
+        writing.await();
+        /*
+         * The writer lock is not held while a member is being written.
+         */
+        Assert.assertEquals(0, writer.getOffset());
+        Future<GzipEntry> second = writer.submit(new GzipEntry(), new byte[2000]);
+        GzipCompressionStats stats = writer.getCompressionStats();
+        Assert.assertTrue(stats.getEntries() >= 1);
+        proceed.countDown();
+        Assert.assertEquals(0, first.get().getStartOffset());
+        Assert.assertEquals(first.get().consumed, second.get().getStartOffset());
+        writer.flush();
+        Assert.assertEquals(out.size(), writer.getOffset());
+        stats = writer.getCompressionStats();
+        Assert.assertEquals(2, stats.getEntries());
+        Assert.assertEquals(3000, stats.getUncompressedBytes());
+        writer.close();
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipReader_EntryHead {
+
+    @Test
+    public void test_gzipreader_readentryhead() throws IOException {
+        Random random = new Random(1);
+        byte[] data = new byte[65536];
+        random.nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        GzipEntry entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        entry.writeFrom(new ByteArrayInputStream(data));
+        entry.close();
+        writer.close();
+        byte[] gzBytes = out.toByteArray();
+        File file = File.createTempFile("jwat-testgzipreader-entryhead-", ".gz");
+        file.deleteOnExit();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(gzBytes);
+        fout.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        byte[] head = GzipReader.readEntryHead(raf, 0, 16);
+        Assert.assertEquals(16, head.length);
+        for (int i=0; i<head.length; ++i) {
+            Assert.assertEquals(data[i], head[i]);
+        }
+        // Not the start of an entry.
+        Assert.assertNull(GzipReader.readEntryHead(raf, 1, 16));
+        raf.close();
+
+        /*
+         * Invalid compressed data after a valid header.
+         */
+        for (int i=10; i<gzBytes.length - 8; ++i) {
+            gzBytes[i] = (byte)0xff;
+        }
+        fout = new FileOutputStream(file);
+        fout.write(gzBytes);
+        fout.close();
+        raf = new RandomAccessFile(file, "r");
+        Assert.assertNull(GzipReader.readEntryHead(raf, 0, 16));
+        raf.close();
+
+        /*
+         * I/O errors are not mistaken for invalid data.
+         */
+        raf = new RandomAccessFile(file, "r") {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (getFilePointer() > 0) {
+                    throw new IOException("Read failed!");
+                }
+                return super.read(b, off, Math.min(len, 16));
+            }
+        };
+        try {
+            GzipReader.readEntryHead(raf, 0, 16);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+            Assert.assertEquals("Read failed!", e.getMessage());
+        }
+        raf.close();
+    }
+
+}
@@ -0,0 +1,312 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipSkipLength {
+
+    @Test
+    public void test_gzip_skiplength() throws IOException {
+        Random random = new Random(42);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        Assert.assertFalse(writer.isSkipLength());
+        writer.setSkipLength(true);
+        Assert.assertTrue(writer.isSkipLength());
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<20; ++i) {
+            data = new byte[random.nextInt(100000)];
+            // Compressible data.
+            for (int j=0; j<data.length; ++j) {
+                data[j] = (byte)('a' + random.nextInt(4));
+            }
+            contents.add(data);
+            entry = new GzipEntry();
+            if (i % 3 == 1) {
+                entry.bFhCrc = true;
+                entry.fname = "entry" + i;
+            }
+            if (i % 4 == 2) {
+                entry.extraData.add(new GzipExtraData((byte)'x', (byte)'y', new byte[] {1, 2, 3}));
+            }
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+            Assert.assertTrue(entry.isCompliant());
+            Assert.assertTrue(entry.skipLength > 0);
+        }
+        writer.close();
+        byte[] gzBytes = out.toByteArray();
+
+        /*
+         * Standard GZip decoders accept the extra subfield.
+         */
+        GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(gzBytes));
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = gzin.read(tmpBuf)) != -1) {
+            all.write(tmpBuf, 0, read);
+        }
+        gzin.close();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i=0; i<contents.size(); ++i) {
+            expected.write(contents.get(i));
+        }
+        Assert.assertArrayEquals(expected.toByteArray(), all.toByteArray());
+
+        /*
+         * Validate while reading everything.
+         */
+        List<Long> offsets = new ArrayList<Long>();
+        GzipReader reader = new GzipReader(new ByteArrayInputStream(gzBytes));
+        int idx = 0;
+        while ((entry = reader.getNextEntry()) != null) {
+            offsets.add(entry.getStartOffset());
+            Assert.assertArrayEquals(contents.get(idx), TestGzipIndex.readEntry(entry));
+            Assert.assertTrue(entry.isCompliant());
+            Assert.assertEquals(entry.consumed, entry.skipLength);
+            if (idx % 4 == 2) {
+                Assert.assertEquals(2, entry.extraData.size());
+            }
+            ++idx;
+        }
+        Assert.assertEquals(contents.size(), idx);
+        Assert.assertTrue(reader.isCompliant());
+        reader.close();
+
+        /*
+         * Skip entries without reading them, or after reading part of them.
+         */
+        int[] readLengths = {0, 1, 100, 8192, 30000};
+        for (int r=0; r<readLengths.length; ++r) {
+            reader = new GzipReader(new ByteArrayInputStream(gzBytes));
+            Assert.assertFalse(reader.isSkipLengthSeek());
+            reader.setSkipLengthSeek(true);
+            Assert.assertTrue(reader.isSkipLengthSeek());
+            idx = 0;
+            while ((entry = reader.getNextEntry()) != null) {
+                Assert.assertEquals(offsets.get(idx).longValue(), entry.getStartOffset());
+                InputStream in = entry.getInputStream();
+                int len = Math.min(readLengths[r], contents.get(idx).length);
+                byte[] partial = new byte[len];
+                int pos = 0;
+                while (pos < len && (read = in.read(partial, pos, len - pos)) != -1) {
+                    pos += read;
+                }
+                for (int i=0; i<pos; ++i) {
+                    Assert.assertEquals(contents.get(idx)[i], partial[i]);
+                }
+                entry.close();
+                Assert.assertEquals(entry.skipLength, entry.consumed);
+                Assert.assertTrue(entry.isCompliant());
+                ++idx;
+            }
+            Assert.assertEquals(contents.size(), idx);
+            Assert.assertTrue(reader.isCompliant());
+            Assert.assertEquals(gzBytes.length, reader.getConsumed());
+            reader.close();
+        }
+
+        /*
+         * Truncated file.
+         */
+        byte[] truncated = new byte[(int)(offsets.get(1) + 100)];
+        System.arraycopy(gzBytes, 0, truncated, 0, truncated.length);
+        reader = new GzipReader(new ByteArrayInputStream(truncated));
+        reader.setSkipLengthSeek(true);
+        entry = reader.getNextEntry();
+        entry.close();
+        Assert.assertTrue(entry.isCompliant());
+        entry = reader.getNextEntry();
+        entry.close();
+        Assert.assertFalse(entry.isCompliant());
+        Assert.assertFalse(reader.isCompliant());
+        reader.close();
+    }
+
+    public static void writeEntries(GzipWriter writer, List<Long> skipLengths) throws IOException {
+        Random random = new Random(42);
+        writer.setSkipLength(true);
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<10; ++i) {
+            data = new byte[random.nextInt(100000)];
+            random.nextBytes(data);
+            entry = new GzipEntry();
+            if (i % 3 == 1) {
+                entry.bFhCrc = true;
+                entry.fname = "entry" + i;
+            }
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+            Assert.assertTrue(entry.isCompliant());
+            skipLengths.add(entry.skipLength);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void test_gzip_skiplength_max_buffered() throws IOException {
+        Random random = new Random(42);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        Assert.assertEquals(GzipWriter.DEFAULT_MAX_BUFFERED_ENTRY_SIZE, writer.getMaxBufferedEntrySize());
+        try {
+            writer.setMaxBufferedEntrySize(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        writer.setMaxBufferedEntrySize(4096);
+        Assert.assertEquals(4096, writer.getMaxBufferedEntrySize());
+        writer.setSkipLength(true);
+        GzipEntry entry;
+        byte[] data;
+        for (int i=0; i<12; ++i) {
+            // Incompressible data, every other entry larger than the limit.
+            data = new byte[(i % 2 == 0) ? 1000 : 20000];
+            random.nextBytes(data);
+            contents.add(data);
+            entry = new GzipEntry();
+            if (i % 3 == 1) {
+                entry.bFhCrc = true;
+                entry.fname = "entry" + i;
+            }
+            if (i % 4 < 2) {
+                entry.extraData.add(new GzipExtraData((byte)'x', (byte)'y', new byte[] {1, 2, 3}));
+            }
+            writer.writeEntryHeader(entry);
+            entry.writeFrom(new ByteArrayInputStream(data));
+            entry.close();
+            Assert.assertTrue(entry.isCompliant());
+            if (i % 2 == 0) {
+                Assert.assertTrue(entry.skipLength > 0);
+            } else {
+                Assert.assertEquals(-1, entry.skipLength);
+            }
+        }
+        writer.close();
+        byte[] gzBytes = out.toByteArray();
+        /*
+         * Entries over the limit are written without the skip-length
+         * subfield, and without FEXTRA if it was the only subfield.
+         */
+        GzipReader reader = new GzipReader(new ByteArrayInputStream(gzBytes));
+        reader.setSkipLengthSeek(true);
+        int idx = 0;
+        while ((entry = reader.getNextEntry()) != null) {
+            Assert.assertArrayEquals(contents.get(idx), TestGzipIndex.readEntry(entry));
+            Assert.assertTrue(entry.isCompliant());
+            if (idx % 2 == 0) {
+                Assert.assertEquals(entry.consumed, entry.skipLength);
+                Assert.assertEquals((idx % 4 < 2) ? 2 : 1, entry.extraData.size());
+            } else {
+                Assert.assertEquals(-1, entry.skipLength);
+                if (idx % 4 < 2) {
+                    Assert.assertEquals(1, entry.extraData.size());
+                    Assert.assertEquals((byte)'x', entry.extraData.get(0).si1);
+                } else {
+                    Assert.assertEquals(0, entry.flg & GzipConstants.FLG_FEXTRA);
+                }
+            }
+            ++idx;
+        }
+        Assert.assertEquals(contents.size(), idx);
+        Assert.assertTrue(reader.isCompliant());
+        reader.close();
+        /*
+         * Only entries with a skip-length are skipped by closeEntryBySkipLength.
+         */
+        reader = new GzipReader(new ByteArrayInputStream(gzBytes));
+        try {
+            reader.closeEntryBySkipLength(null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        idx = 0;
+        while ((entry = reader.getNextEntry()) != null) {
+            Assert.assertEquals(idx % 2 == 0, reader.closeEntryBySkipLength(entry));
+            Assert.assertFalse(reader.isSkipLengthSeek());
+            entry.close();
+            ++idx;
+        }
+        Assert.assertEquals(contents.size(), idx);
+        reader.close();
+    }
+
+    @Test
+    public void test_gzip_skiplength_randomaccessfile() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> expectedSkipLengths = new ArrayList<Long>();
+        writeEntries(new GzipWriter(out), expectedSkipLengths);
+        byte[] expected = out.toByteArray();
+        /*
+         * Headers are patched in place when writing to a random access file,
+         * appending to any existing content.
+         */
+        File file = File.createTempFile("jwat-testgzipskiplength-", ".gz");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(expected);
+        List<Long> skipLengths = new ArrayList<Long>();
+        writeEntries(GzipWriter.getWriter(raf, 1024), skipLengths);
+        Assert.assertEquals(expectedSkipLengths, skipLengths);
+        Assert.assertEquals(expected.length * 2, raf.length());
+        byte[] written = new byte[(int)raf.length()];
+        raf.seek(0);
+        raf.readFully(written);
+        raf.close();
+        for (int i=0; i<expected.length; ++i) {
+            Assert.assertEquals(expected[i], written[expected.length + i]);
+        }
+        /*
+         * Buffered entries are limited in size.
+         */
+        GzipWriter.EntryBuffer entryBuffer = new GzipWriter.EntryBuffer();
+        entryBuffer.write(new byte[16], 0, 16);
+        Assert.assertEquals(16, entryBuffer.size());
+        entryBuffer.count = GzipWriter.MAX_BUFFERED_ENTRY_SIZE - 1;
+        try {
+            entryBuffer.write(new byte[2], 0, 2);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        Assert.assertEquals(GzipWriter.MAX_BUFFERED_ENTRY_SIZE - 1, entryBuffer.size());
+    }
+
+}
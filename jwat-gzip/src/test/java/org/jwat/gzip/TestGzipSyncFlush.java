@@ -0,0 +1,228 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipSyncFlush {
+
+    /**
+     * Inflate the data of a partially written entry with a 10 byte header.
+     */
+    public static byte[] inflatePartial(byte[] gzBytes) throws DataFormatException {
+        if (gzBytes.length < 10) {
+            return new byte[0];
+        }
+        Inflater inf = new Inflater(true);
+        inf.setInput(gzBytes, 10, gzBytes.length - 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        int inflated;
+        while ((inflated = inf.inflate(tmpBuf)) > 0) {
+            out.write(tmpBuf, 0, inflated);
+        }
+        inf.end();
+        return out.toByteArray();
+    }
+
+    public static void assertPrefix(byte[] data, int len, byte[] inflated) {
+        Assert.assertEquals(len, inflated.length);
+        for (int i=0; i<len; ++i) {
+            Assert.assertEquals(data[i], inflated[i]);
+        }
+    }
+
+    @Test
+    public void test_gzip_syncflush() throws Exception {
+        if (!GzipWriter.isSyncFlushSupported()) {
+            return;
+        }
+        Random random = new Random(42);
+        byte[] data = new byte[100000];
+        for (int i=0; i<data.length; ++i) {
+            data[i] = (byte)('a' + random.nextInt(8));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        Assert.assertEquals(0, writer.getSyncFlushBytes());
+        Assert.assertEquals(0, writer.getSyncFlushMillis());
+        try {
+            writer.setSyncFlush(-1, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            writer.setSyncFlush(0, -1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+
+        /*
+         * Explicit flush.
+         */
+        GzipEntry entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        OutputStream entryOut = entry.getOutputStream();
+        entryOut.write(data, 0, 1000);
+        writer.flush();
+        assertPrefix(data, 1000, inflatePartial(out.toByteArray()));
+        entryOut.write(data, 1000, 20000);
+        writer.flush();
+        assertPrefix(data, 21000, inflatePartial(out.toByteArray()));
+        entryOut.write(data, 21000, data.length - 21000);
+        entry.close();
+        // Flushing between entries only flushes the output stream.
+        writer.flush();
+
+        /*
+         * Flush every 5000 uncompressed bytes.
+         */
+        writer.setSyncFlush(5000, 0);
+        Assert.assertEquals(5000, writer.getSyncFlushBytes());
+        int startOffset = out.size();
+        entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        entryOut = entry.getOutputStream();
+        int pos = 0;
+        while (pos < 50000) {
+            entryOut.write(data, pos, 1000);
+            pos += 1000;
+            byte[] gzBytes = out.toByteArray();
+            byte[] partial = new byte[gzBytes.length - startOffset];
+            System.arraycopy(gzBytes, startOffset, partial, 0, partial.length);
+            assertPrefix(data, (pos / 5000) * 5000, inflatePartial(partial));
+        }
+        entryOut.write(data, pos, data.length - pos);
+        entry.close();
+        Assert.assertTrue(entry.isCompliant());
+
+        /*
+         * The flush policy also applies to writeFrom.
+         */
+        final int writeFromOffset = out.size();
+        final ByteArrayOutputStream finalOut = out;
+        final byte[] finalData = data;
+        entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        entry.writeFrom(new InputStream() {
+            int pos = 0;
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    byte[] gzBytes = finalOut.toByteArray();
+                    byte[] partial = new byte[gzBytes.length - writeFromOffset];
+                    System.arraycopy(gzBytes, writeFromOffset, partial, 0, partial.length);
+                    assertPrefix(finalData, (pos / 5000) * 5000, inflatePartial(partial));
+                } catch (DataFormatException e) {
+                    throw new IOException(e);
+                }
+                if (pos == finalData.length) {
+                    return -1;
+                }
+                len = Math.min(1000, finalData.length - pos);
+                System.arraycopy(finalData, pos, b, off, len);
+                pos += len;
+                return len;
+            }
+        });
+        Assert.assertTrue(entry.isCompliant());
+
+        /*
+         * Flush on the first write after 1 millisecond.
+         */
+        writer.setSyncFlush(0, 1);
+        startOffset = out.size();
+        entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        entryOut = entry.getOutputStream();
+        Thread.sleep(5);
+        entryOut.write(data, 0, 3000);
+        byte[] gzBytes = out.toByteArray();
+        byte[] partial = new byte[gzBytes.length - startOffset];
+        System.arraycopy(gzBytes, startOffset, partial, 0, partial.length);
+        assertPrefix(data, 3000, inflatePartial(partial));
+        entryOut.write(data, 3000, data.length - 3000);
+        entry.close();
+        writer.close();
+
+        GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        byte[] all = TestGzipBgzf.readAll(gzin);
+        gzin.close();
+        Assert.assertEquals(data.length * 4, all.length);
+        for (int i=0; i<all.length; ++i) {
+            Assert.assertEquals(data[i % data.length], all[i]);
+        }
+        GzipReader reader = new GzipReader(new ByteArrayInputStream(out.toByteArray()));
+        while ((entry = reader.getNextEntry()) != null) {
+            Assert.assertArrayEquals(data, TestGzipIndex.readEntry(entry));
+            Assert.assertTrue(entry.isCompliant());
+        }
+        reader.close();
+    }
+
+    @Test
+    public void test_gzip_syncflush_blocked() throws IOException {
+        byte[] data = new byte[100000];
+        for (int i=0; i<data.length; ++i) {
+            data[i] = (byte)('a' + (i % 13));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipWriter writer = new GzipWriter(out);
+        writer.setBlocked(true);
+        writer.setSyncFlush(7000, 0);
+        GzipEntry entry = new GzipEntry();
+        writer.writeEntryHeader(entry);
+        OutputStream entryOut = entry.getOutputStream();
+        entryOut.write(data, 0, 3000);
+        Assert.assertEquals(0, out.size());
+        writer.flush();
+        // One complete block.
+        GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(3000, TestGzipBgzf.readAll(gzin).length);
+        gzin.close();
+        entryOut.write(data, 3000, 7000);
+        gzin = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(10000, TestGzipBgzf.readAll(gzin).length);
+        gzin.close();
+        entryOut.write(data, 10000, data.length - 10000);
+        entry.close();
+        writer.close();
+        gzin = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertArrayEquals(data, TestGzipBgzf.readAll(gzin));
+        gzin.close();
+    }
+
+}
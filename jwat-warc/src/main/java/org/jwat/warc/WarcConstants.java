@@ -20,6 +20,8 @@ package org.jwat.warc;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.jwat.common.HeaderNameDictionary;
+
 /**
  * Class containing all relevant WARC constants and structures.
  * Including but not limited to field names and mime-types.
@@ -239,6 +241,9 @@ public class WarcConstants {
         fieldNameIdxMap.put(FN_WARC_REFERS_TO_DATE.toLowerCase(), FN_IDX_WARC_REFERS_TO_DATE);
     }
 
+    /** Case-insensitive dictionary of known WARC field names addressed by field name index. */
+    public static final HeaderNameDictionary fieldNameDictionary = new HeaderNameDictionary(FN_IDX_STRINGS);
+
     /** WARC String field datatype identifier. */
     public static final int FDT_STRING = 0;
     /** WARC Integer field datatype identifier. */
@@ -22,18 +22,25 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
+import org.jwat.common.TimestampCodec;
+
 /**
  * WARC-Date parser and format validator. The format "yyyy-MM-dd'T'HH:mm:ss'Z'"
- * is specified in the WARC ISO standard.
+ * is specified in the WARC ISO standard. WARC 1.1 fractions of a second
+ * are also accepted. Parsing and formatting is done by a per thread
+ * <code>TimestampCodec</code>.
  *
  * @author lbihanic, selghissassi, nicl
  */
 public final class WarcDateParser {
 
+    /** Timestamp codec used to parse and format WARC dates. */
+    private final TimestampCodec codec = new TimestampCodec();
+
     /** WARC <code>DateFormat</code> as specified in the WARC ISO standard. */
-    private final DateFormat dateFormat;
+    private DateFormat dateFormat;
 
-    /** Basic <code>DateFormat</code> is not thread safe. */
+    /** Timestamp codec and basic <code>DateFormat</code> are not thread safe. */
     private static final ThreadLocal<WarcDateParser> DateParserTL =
         new ThreadLocal<WarcDateParser>() {
         @Override
@@ -46,28 +53,6 @@ public final class WarcDateParser {
      * Creates a new <code>DateParser</code>.
      */
     private WarcDateParser() {
-        dateFormat = new SimpleDateFormat(WarcConstants.WARC_DATE_FORMAT);
-        dateFormat.setLenient(false);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
-    /**
-     * Parses a date.
-     * @param dateStr date to parse
-     * @return the formatted date or null if unable to parse date
-     */
-    private Date parseDate(String dateStr) {
-        Date date = null;
-        try {
-            // We subtract 4 from the format because of the ' characters.
-            // These characters are to specify constants in the format string.
-            if ((dateStr != null) && dateStr.length()
-                            == WarcConstants.WARC_DATE_FORMAT.length() - 4) {
-                // Support upper/lower-case.
-                date = dateFormat.parse(dateStr.toUpperCase());
-            }
-        } catch (Exception e) { /* Ignore */ }
-        return date;
     }
 
     /**
@@ -77,10 +62,18 @@ public final class WarcDateParser {
      * to parse is compliant with the format "yyyy-MM-ddTHH:mm:ssZ" or not
      */
     public static Date getDate(String dateStr) {
-        Date date = DateParserTL.get().parseDate(dateStr);
-        boolean isValid = (date == null) ? false
-                                         : (date.getTime() > 0);
-        return isValid ? date : null;
+        long millis = DateParserTL.get().codec.parseWarcDate(dateStr);
+        boolean isValid = (millis != TimestampCodec.INVALID) && (millis > 0);
+        return isValid ? new Date(millis) : null;
+    }
+
+    /**
+     * Format a date using the format "yyyy-MM-ddTHH:mm:ssZ".
+     * @param date the date to format
+     * @return WARC date string
+     */
+    public static String formatDate(Date date) {
+        return DateParserTL.get().codec.formatWarcDate(date.getTime());
     }
 
     /**
@@ -90,8 +83,13 @@ public final class WarcDateParser {
      * format WARC dates.
      */
     public static DateFormat getDateFormat() {
-        return DateParserTL.get().dateFormat;
+        WarcDateParser parser = DateParserTL.get();
+        if (parser.dateFormat == null) {
+            parser.dateFormat = new SimpleDateFormat(WarcConstants.WARC_DATE_FORMAT);
+            parser.dateFormat.setLenient(false);
+            parser.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        return parser.dateFormat;
     }
 
 }
-
@@ -22,6 +22,7 @@ import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
 import org.jwat.common.Diagnostics;
 import org.jwat.common.IPAddressParser;
+import org.jwat.common.ParsedValueCache;
 import org.jwat.common.Uri;
 import org.jwat.common.UriProfile;
 
@@ -41,6 +42,9 @@ public class WarcFieldParsers {
      * Must be set prior to calling the various methods. */
     protected Diagnostics<Diagnosis> diagnostics;
 
+    /** Optional cache of parsed URIs and content-types. */
+    protected ParsedValueCache parsedValueCache;
+
     /**
      * Add an error diagnosis on the given entity stating that it is invalid
      * and something else was expected. The optional information should provide
@@ -133,7 +137,11 @@ public class WarcFieldParsers {
     protected ContentType parseContentType(String contentTypeStr, String field) {
         ContentType contentType = null;
         if (contentTypeStr != null && contentTypeStr.length() != 0) {
-            contentType = ContentType.parseContentType(contentTypeStr);
+            if (parsedValueCache != null) {
+                contentType = parsedValueCache.getContentType(contentTypeStr);
+            } else {
+                contentType = ContentType.parseContentType(contentTypeStr);
+            }
             if (contentType == null) {
                 // Invalid content-type.
                 addInvalidExpectedError("'" + field + "' value",
@@ -230,7 +238,11 @@ public class WarcFieldParsers {
                 }
             }
             try {
-                uri = new Uri(uriStrClean, uriProfile);
+                if (parsedValueCache != null) {
+                    uri = parsedValueCache.getUri(uriStrClean, uriProfile);
+                } else {
+                    uri = Uri.parseLazy(uriStrClean, uriProfile);
+                }
             } catch (Exception e) {
                 // Invalid URI.
                 addInvalidExpectedError("'" + field + "' value",
@@ -115,6 +115,21 @@ public class WarcFileWriter {
         writer_raf.setLength(0L);
         writer_rafout = new RandomAccessFileOutputStream(writer_raf);
         writer = WarcWriterFactory.getWriter(writer_rafout, 8192, warcFileConfig.bCompression);
+        if (writer instanceof WarcWriterCompressed
+                && (warcFileConfig.syncFlushBytes > 0 || warcFileConfig.syncFlushMillis > 0)) {
+            ((WarcWriterCompressed)writer).setSyncFlush(warcFileConfig.syncFlushBytes, warcFileConfig.syncFlushMillis);
+        }
+    }
+
+    /**
+     * Flush everything written so far to the current file, sync flushing the
+     * current record if compressed, so it can be read while it is written.
+     * @throws IOException if an i/o exception occurs while flushing
+     */
+    public void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
     }
 
     public void nextWriter() throws Exception {
@@ -129,7 +144,7 @@ public class WarcFileWriter {
     		open();
             //byte[] warcFieldsBytes = warcFields.getBytes("ISO-8859-1");
             //ByteArrayInputStream bin = new ByteArrayInputStream(warcFieldsBytes);
-            warcinfoRecordId = new Uri("urn:uuid:" + UUID.randomUUID());
+            warcinfoRecordId = Uri.createUrnUuid(UUID.randomUUID());
             /*
             WarcRecord record = WarcRecord.createRecord(writer);
             WarcHeader header = record.header;
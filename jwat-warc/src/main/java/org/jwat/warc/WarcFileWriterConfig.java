@@ -31,6 +31,10 @@ public class WarcFileWriterConfig {
 
     public boolean bOverwrite;
 
+    protected long syncFlushBytes = 0;
+
+    protected long syncFlushMillis = 0;
+
     protected LinkedHashMap<String, Map.Entry<String, String>> metadata = new LinkedHashMap<String, Map.Entry<String, String>>();
 
     public WarcFileWriterConfig() {
@@ -43,6 +47,18 @@ public class WarcFileWriterConfig {
         this.bOverwrite = bOverwrite;
 	}
 
+    /**
+     * Sync flush compressed records after the given number of uncompressed
+     * bytes or on the first write after the given interval, so consumers
+     * tailing the file see records while they are written.
+     * @param syncFlushBytes uncompressed bytes between flushes or 0 to disable
+     * @param syncFlushMillis milliseconds between flushes or 0 to disable
+     */
+    public void setSyncFlush(long syncFlushBytes, long syncFlushMillis) {
+        this.syncFlushBytes = syncFlushBytes;
+        this.syncFlushMillis = syncFlushMillis;
+    }
+
     /*
     public void addMetadata(String key, String value) {
     	metadata.put( key, new SimpleEntry<String, String>(key, value) );
@@ -23,17 +23,17 @@ import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
 import org.jwat.common.Diagnostics;
 import org.jwat.common.HeaderLine;
-import org.jwat.common.MaxLengthRecordingInputStream;
+import org.jwat.common.HeaderNameDictionary;
 import org.jwat.common.Uri;
 import org.jwat.common.UriProfile;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.text.DateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +42,11 @@ import java.util.Map;
  * Central class for working with WARC headers. This class includes support for
  * reading and writing WARC headers. Methods are also available to validate
  * individual headers and a WARC header as a whole.
+ * When lazy field parsing is enabled on the reader, the public typed field
+ * values, such as <code>warcDate</code> and <code>warcRecordIdUri</code>,
+ * are only set once they have been requested through their getters or
+ * <code>parseFields()</code> has been called. The WARC-Type, Content-Length
+ * and Content-Type values and all the string values are always set.
  *
  * @author nicl
  */
@@ -71,9 +76,6 @@ public class WarcHeader {
      *  Must be set prior to calling the various methods. */
     protected WarcFieldParsers fieldParsers;
 
-    /** WARC <code>DateFormat</code> as specified by the WARC ISO standard. */
-    protected DateFormat warcDateFormat;
-
     /** WARC record starting offset relative to the source WARC file input
      *  stream. The offset is correct for both compressed and uncompressed streams. */
     protected long startOffset = -1;
@@ -235,9 +237,39 @@ public class WarcHeader {
     /** List of parsed header fields. */
     protected List<HeaderLine> headerList = new LinkedList<HeaderLine>();
 
-    /** Map of parsed header fields. */
+    /** Parsed known header fields addressed by field name index. */
+    protected HeaderLine[] fieldHeaderLines = new HeaderLine[WarcConstants.FN_INDEX_OF_LAST];
+
+    /** Map of parsed unknown header fields keyed by lower case name. */
     protected Map<String, HeaderLine> headerMap = new HashMap<String, HeaderLine>();
 
+    /*
+     * Lazy field parsing.
+     */
+
+    /** Are typed field values, except those needed to frame the record,
+     *  parsed when they are first requested. */
+    protected boolean bLazyFields;
+
+    /** Array used to flag fields with a typed value not parsed yet. */
+    protected boolean[] pending = new boolean[WarcConstants.FN_INDEX_OF_LAST];
+
+    /** Field value strings with a typed value not parsed yet. */
+    protected String[] pendingValues = new String[WarcConstants.FN_INDEX_OF_LAST];
+
+    /** WARC-Concurrent-To field value strings not parsed yet. */
+    protected List<String> pendingConcurrentTo;
+
+    /** Has the header been validated as a whole. */
+    protected boolean bFieldsChecked;
+
+    /** Have the record diagnoses been reported to the reader, in which case
+     *  diagnoses of values parsed later are reported to it separately. */
+    protected boolean bDiagnosesReported;
+
+    /** Have diagnoses been reported after the record diagnoses. */
+    protected boolean bLateDiagnoses;
+
     /**
      * Non public constructor to allow unit testing.
      */
@@ -258,7 +290,6 @@ public class WarcHeader {
         header.warcTargetUriProfile = writer.warcTargetUriProfile;
         header.uriProfile = writer.uriProfile;
         header.fieldParsers = writer.fieldParsers;
-        header.warcDateFormat = writer.warcDateFormat;
         header.diagnostics = diagnostics;
         return header;
     }
@@ -277,6 +308,7 @@ public class WarcHeader {
         header.uriProfile = reader.uriProfile;
         header.fieldParsers = reader.fieldParsers;
         header.diagnostics = diagnostics;
+        header.bLazyFields = reader.bLazyFieldParsing;
         // This is only relevant for uncompressed sequentially read records
         header.startOffset = startOffset;
         return header;
@@ -356,13 +388,13 @@ public class WarcHeader {
                                 "Magic Version string", versionStr));
             }
 
-            MaxLengthRecordingInputStream mrin = new MaxLengthRecordingInputStream(in, reader.recordHeaderMaxSize);
-            ByteCountingPushBackInputStream pbin = new ByteCountingPushBackInputStream(mrin, reader.recordHeaderMaxSize);
-
-            parseHeaders(pbin);
-            pbin.close();
+            parseHeaders(in);
 
-            checkFields();
+            if (!bLazyFields) {
+                checkFields();
+            } else {
+                checkMandatoryFields();
+            }
 
             headerBytes = headerBytesOut.toByteArray();
         }
@@ -446,16 +478,18 @@ public class WarcHeader {
     }
 
     /**
-     * Reads WARC header lines one line at a time until an empty line is
-     * encountered.
+     * Reads WARC header lines until an empty line is encountered.
+     * The header is read from the stream in blocks and any bytes read beyond
+     * the empty line are pushed back onto the stream afterwards.
      * @param in header input stream
      * @throws IOException if an error occurs while reading the WARC header
      */
     protected void parseHeaders(ByteCountingPushBackInputStream in) throws IOException {
         HeaderLine headerLine;
         boolean bLoop = true;
+        reader.headerLineReader.beginBlock(in, reader.recordHeaderMaxSize);
         while (bLoop) {
-            headerLine = reader.headerLineReader.readLine(in);
+            headerLine = reader.headerLineReader.readBlockLine();
             if (!reader.headerLineReader.bEof) {
                 headerBytesOut.write(headerLine.raw);
                 switch (headerLine.type) {
@@ -487,22 +521,43 @@ public class WarcHeader {
                 bLoop = false;
             }
         }
+        reader.headerLineReader.endBlock();
     }
 
     /**
      * Identify a (WARC) header name, validate the value and set the header.
+     * In lazy mode only the string value of most fields is set here and the
+     * typed value is parsed when it is first requested.
      * @param headerLine the headerLine
      */
     protected void addHeader(HeaderLine headerLine) {
         String fieldName = headerLine.name;
         String fieldValue = headerLine.value;
+        int fn_idx = WarcConstants.fieldNameDictionary.getIndex(fieldName);
+        addField(fn_idx, fieldName, fieldValue, false);
+        putHeaderLine(fn_idx, headerLine);
+        headerList.add(headerLine);
+    }
+
+    /**
+     * Validate the value of a known field and set both the string and typed
+     * values, or only the string value in lazy mode.
+     * @param fn_idx field name index or <code>HeaderNameDictionary.UNKNOWN</code>
+     * @param fieldName field name
+     * @param fieldValue field value string
+     * @param bPending parse a value postponed in lazy mode
+     */
+    protected void addField(int fn_idx, String fieldName, String fieldValue, boolean bPending) {
         WarcConcurrentTo warcConcurrentTo;
-        Integer fn_idx = WarcConstants.fieldNameIdxMap.get(fieldName.toLowerCase());
-        if (fn_idx != null) {
+        if (fn_idx != HeaderNameDictionary.UNKNOWN) {
             // WARC field name defined in WARC specification.
-            if (!seen[fn_idx] || WarcConstants.fieldNamesRepeatableLookup[fn_idx]) {
+            if (bPending || !seen[fn_idx] || WarcConstants.fieldNamesRepeatableLookup[fn_idx]) {
                 seen[fn_idx] = true;
-                switch (fn_idx.intValue()) {
+                if (!bPending && bLazyFields && !isFramingField(fn_idx)) {
+                    setFieldString(fn_idx, fieldValue);
+                    return;
+                }
+                switch (fn_idx) {
                 case WarcConstants.FN_IDX_WARC_TYPE:
                     warcTypeStr = fieldParsers.parseString(fieldValue,
                             WarcConstants.FN_WARC_TYPE);
@@ -634,13 +689,203 @@ public class WarcHeader {
                 addErrorDiagnosis(DiagnosisType.DUPLICATE, "'" + fieldName + "' header", fieldValue);
             }
         }
-        HeaderLine tmpLine = headerMap.get(fieldName.toLowerCase());
-        if (tmpLine == null) {
-            headerMap.put(fieldName.toLowerCase(), headerLine);
+    }
+
+    /**
+     * Store a header line in the array of known fields or the map of unknown
+     * fields. Additional lines with the same name are added to the list of
+     * lines of the first one.
+     * @param fn_idx field name index or <code>HeaderNameDictionary.UNKNOWN</code>
+     * @param headerLine header line to store
+     */
+    protected void putHeaderLine(int fn_idx, HeaderLine headerLine) {
+        HeaderLine tmpLine;
+        if (fn_idx != HeaderNameDictionary.UNKNOWN) {
+            tmpLine = fieldHeaderLines[fn_idx];
+            if (tmpLine == null) {
+                fieldHeaderLines[fn_idx] = headerLine;
+            } else {
+                tmpLine.lines.add(headerLine);
+            }
         } else {
-            tmpLine.lines.add(headerLine);
+            String key = headerLine.name.toLowerCase();
+            tmpLine = headerMap.get(key);
+            if (tmpLine == null) {
+                headerMap.put(key, headerLine);
+            } else {
+                tmpLine.lines.add(headerLine);
+            }
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether a field is needed to frame the
+     * record and is therefore parsed even when field parsing is lazy.
+     * @param fn_idx field name index
+     * @return boolean indicating whether the field is always parsed
+     */
+    protected static boolean isFramingField(int fn_idx) {
+        return fn_idx == WarcConstants.FN_IDX_WARC_TYPE
+                || fn_idx == WarcConstants.FN_IDX_CONTENT_LENGTH
+                || fn_idx == WarcConstants.FN_IDX_CONTENT_TYPE;
+    }
+
+    /**
+     * Set the string value of a field and postpone parsing of its typed
+     * value until it is requested.
+     * @param fn_idx field name index
+     * @param fieldValue field value string
+     */
+    protected void setFieldString(int fn_idx, String fieldValue) {
+        if (fn_idx == WarcConstants.FN_IDX_WARC_CONCURRENT_TO) {
+            if (pendingConcurrentTo == null) {
+                pendingConcurrentTo = new LinkedList<String>();
+            }
+            pendingConcurrentTo.add(fieldValue);
+        } else {
+            pendingValues[fn_idx] = fieldValue;
+            switch (fn_idx) {
+            case WarcConstants.FN_IDX_WARC_RECORD_ID:
+                warcRecordIdStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_DATE:
+                warcDateStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_BLOCK_DIGEST:
+                warcBlockDigestStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_PAYLOAD_DIGEST:
+                warcPayloadDigestStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_IP_ADDRESS:
+                warcIpAddress = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_REFERS_TO:
+                warcRefersToStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_TARGET_URI:
+                warcTargetUriStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_TRUNCATED:
+                warcTruncatedStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_WARCINFO_ID:
+                warcWarcinfoIdStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_FILENAME:
+                warcFilename = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_PROFILE:
+                warcProfileStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_IDENTIFIED_PAYLOAD_TYPE:
+                warcIdentifiedPayloadTypeStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_SEGMENT_ORIGIN_ID:
+                warcSegmentOriginIdStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_SEGMENT_NUMBER:
+                warcSegmentNumberStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_SEGMENT_TOTAL_LENGTH:
+                warcSegmentTotalLengthStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_REFERS_TO_TARGET_URI:
+                warcRefersToTargetUriStr = fieldValue;
+                break;
+            case WarcConstants.FN_IDX_WARC_REFERS_TO_DATE:
+                warcRefersToDateStr = fieldValue;
+                break;
+            }
+        }
+        pending[fn_idx] = true;
+    }
+
+    /**
+     * Parse the typed value of a field if it was postponed in lazy mode.
+     * Diagnoses are reported to the diagnostics of this header.
+     * @param fn_idx field name index
+     */
+    protected void parsePendingField(int fn_idx) {
+        if (pending[fn_idx]) {
+            pending[fn_idx] = false;
+            Diagnostics<Diagnosis> recordDiagnostics = beginLazyDiagnoses();
+            // The field parsers are shared with the records read after this one.
+            Diagnostics<Diagnosis> parserDiagnostics = fieldParsers.diagnostics;
+            fieldParsers.diagnostics = diagnostics;
+            String fieldName = WarcConstants.FN_IDX_STRINGS[fn_idx];
+            try {
+                if (fn_idx == WarcConstants.FN_IDX_WARC_CONCURRENT_TO) {
+                    Iterator<String> iter = pendingConcurrentTo.iterator();
+                    while (iter.hasNext()) {
+                        addField(fn_idx, fieldName, iter.next(), true);
+                    }
+                    pendingConcurrentTo = null;
+                } else {
+                    addField(fn_idx, fieldName, pendingValues[fn_idx], true);
+                    pendingValues[fn_idx] = null;
+                }
+            } finally {
+                fieldParsers.diagnostics = parserDiagnostics;
+                endLazyDiagnoses(recordDiagnostics);
+            }
+        }
+    }
+
+    /**
+     * Prepare for diagnoses found after the header has been read. Once the
+     * record diagnoses have been reported to the reader, these diagnoses are
+     * collected separately, so they can be reported on their own.
+     * @return diagnostics of the record
+     */
+    protected Diagnostics<Diagnosis> beginLazyDiagnoses() {
+        Diagnostics<Diagnosis> recordDiagnostics = diagnostics;
+        if (bDiagnosesReported) {
+            diagnostics = new Diagnostics<Diagnosis>();
+        }
+        return recordDiagnostics;
+    }
+
+    /**
+     * Report the diagnoses collected separately, if any, to the reader and
+     * add them to the diagnostics of the record, if the reader keeps them.
+     * @param recordDiagnostics diagnostics of the record
+     */
+    protected void endLazyDiagnoses(Diagnostics<Diagnosis> recordDiagnostics) {
+        Diagnostics<Diagnosis> lateDiagnostics = diagnostics;
+        diagnostics = recordDiagnostics;
+        if (lateDiagnostics != recordDiagnostics
+                && (lateDiagnostics.hasErrors() || lateDiagnostics.hasWarnings())) {
+            bLateDiagnoses = true;
+            if (reader.keepsDiagnoses()) {
+                recordDiagnostics.addAll(lateDiagnostics);
+            }
+            reader.addDiagnostics(lateDiagnostics);
+            reader.bIsCompliant = false;
+        }
+    }
+
+    /**
+     * Parse all the typed field values postponed in lazy mode and validate
+     * the header as a whole, unless this has already been done.
+     * In lazy mode validation diagnoses are only reported once the fields
+     * have been parsed.
+     */
+    public void parseFields() {
+        if (bLazyFields) {
+            for (int fn_idx=0; fn_idx<pending.length; ++fn_idx) {
+                parsePendingField(fn_idx);
+            }
+            if (!bFieldsChecked) {
+                bFieldsChecked = true;
+                Diagnostics<Diagnosis> recordDiagnostics = beginLazyDiagnoses();
+                try {
+                    checkFields();
+                } finally {
+                    endLazyDiagnoses(recordDiagnostics);
+                }
+            }
         }
-        headerList.add(headerLine);
     }
 
     /**
@@ -659,12 +904,213 @@ public class WarcHeader {
      */
     public HeaderLine getHeader(String field) {
         if (field != null && field.length() > 0) {
+            int fn_idx = WarcConstants.fieldNameDictionary.getIndex(field);
+            if (fn_idx != HeaderNameDictionary.UNKNOWN) {
+                return fieldHeaderLines[fn_idx];
+            }
             return headerMap.get(field.toLowerCase());
         } else {
             return null;
         }
     }
 
+    /**
+     * Returns the WARC-Record-Id converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Record-Id converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcRecordIdUri() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_RECORD_ID);
+        return warcRecordIdUri;
+    }
+
+    /**
+     * Returns the WARC-Date converted to a <code>Date</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Date converted to a <code>Date</code> object or null
+     */
+    public Date getWarcDate() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_DATE);
+        return warcDate;
+    }
+
+    /**
+     * Returns the list of WARC-Concurrent-To string values and converted <code>Uri</code> objects.
+     * The value is parsed first, if field parsing is lazy.
+     * @return list of WARC-Concurrent-To values
+     */
+    public List<WarcConcurrentTo> getWarcConcurrentToList() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_CONCURRENT_TO);
+        return warcConcurrentToList;
+    }
+
+    /**
+     * Returns the WARC-Block-Digest converted to a <code>WarcDigest</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Block-Digest converted to a <code>WarcDigest</code> object or null
+     */
+    public WarcDigest getWarcBlockDigest() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_BLOCK_DIGEST);
+        return warcBlockDigest;
+    }
+
+    /**
+     * Returns the WARC-Payload-Digest converted to a <code>WarcDigest</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Payload-Digest converted to a <code>WarcDigest</code> object or null
+     */
+    public WarcDigest getWarcPayloadDigest() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_PAYLOAD_DIGEST);
+        return warcPayloadDigest;
+    }
+
+    /**
+     * Returns the WARC-IP-Address converted to an <code>InetAddress</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-IP-Address converted to an <code>InetAddress</code> object or null
+     */
+    public InetAddress getWarcInetAddress() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_IP_ADDRESS);
+        return warcInetAddress;
+    }
+
+    /**
+     * Returns the WARC-Refers-To converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Refers-To converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcRefersToUri() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_REFERS_TO);
+        return warcRefersToUri;
+    }
+
+    /**
+     * Returns the WARC-Target-URI converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Target-URI converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcTargetUriUri() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_TARGET_URI);
+        return warcTargetUriUri;
+    }
+
+    /**
+     * Returns the WARC-Truncated converted to an integer id or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Truncated converted to an integer id or null
+     */
+    public Integer getWarcTruncatedIdx() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_TRUNCATED);
+        return warcTruncatedIdx;
+    }
+
+    /**
+     * Returns the WARC-Warcinfo-Id converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Warcinfo-Id converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcWarcinfoIdUri() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_WARCINFO_ID);
+        return warcWarcinfoIdUri;
+    }
+
+    /**
+     * Returns the WARC-Profile converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Profile converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcProfileUri() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_PROFILE);
+        return warcProfileUri;
+    }
+
+    /**
+     * Returns the WARC-Profile converted to an integer id or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Profile converted to an integer id or null
+     */
+    public Integer getWarcProfileIdx() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_PROFILE);
+        return warcProfileIdx;
+    }
+
+    /**
+     * Returns the WARC-Identified-Payload-Type converted to a <code>ContentType</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Identified-Payload-Type converted to a <code>ContentType</code> object or null
+     */
+    public ContentType getWarcIdentifiedPayloadType() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_IDENTIFIED_PAYLOAD_TYPE);
+        return warcIdentifiedPayloadType;
+    }
+
+    /**
+     * Returns the WARC-Segment-Origin-Id converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Segment-Origin-Id converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcSegmentOriginIdUrl() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_SEGMENT_ORIGIN_ID);
+        return warcSegmentOriginIdUrl;
+    }
+
+    /**
+     * Returns the WARC-Segment-Number converted to an <code>Integer</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Segment-Number converted to an <code>Integer</code> object or null
+     */
+    public Integer getWarcSegmentNumber() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_SEGMENT_NUMBER);
+        return warcSegmentNumber;
+    }
+
+    /**
+     * Returns the WARC-Segment-Total-Length converted to a <code>Long</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Segment-Total-Length converted to a <code>Long</code> object or null
+     */
+    public Long getWarcSegmentTotalLength() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_SEGMENT_TOTAL_LENGTH);
+        return warcSegmentTotalLength;
+    }
+
+    /**
+     * Returns the WARC-Refers-To-Target-URI converted to an <code>Uri</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Refers-To-Target-URI converted to an <code>Uri</code> object or null
+     */
+    public Uri getWarcRefersToTargetUriUri() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_REFERS_TO_TARGET_URI);
+        return warcRefersToTargetUriUri;
+    }
+
+    /**
+     * Returns the WARC-Refers-To-Date converted to a <code>Date</code> object or null,
+     * if missing or invalid.
+     * The value is parsed first, if field parsing is lazy.
+     * @return WARC-Refers-To-Date converted to a <code>Date</code> object or null
+     */
+    public Date getWarcRefersToDate() {
+        parsePendingField(WarcConstants.FN_IDX_WARC_REFERS_TO_DATE);
+        return warcRefersToDate;
+    }
+
     /**
      * Add a String header using the supplied string and return a
      * <code>HeaderLine</code> object corresponding to how the header would be
@@ -790,7 +1236,7 @@ public class WarcHeader {
         if (dateFieldValue == null && fieldValueStr != null) {
             dateFieldValue = fieldParsers.parseDate(fieldValueStr, fieldName);
         } else if (fieldValueStr == null && dateFieldValue != null) {
-            fieldValueStr = warcDateFormat.format(dateFieldValue);
+            fieldValueStr = WarcDateParser.formatDate(dateFieldValue);
         }
         return addHeader(fieldName, fieldValueStr, WarcConstants.FDT_DATE,
                 null, null, null, null, dateFieldValue, null, null);
@@ -879,8 +1325,8 @@ public class WarcHeader {
             WarcDigest digestFieldValue, ContentType contentTypeFieldValue,
             Date dateFieldValue, InetAddress inetAddrFieldValue,
             Uri uriFieldValue) {
-        Integer fn_idx = WarcConstants.fieldNameIdxMap.get(fieldName.toLowerCase());
-        if (fn_idx != null) {
+        int fn_idx = WarcConstants.fieldNameDictionary.getIndex(fieldName);
+        if (fn_idx != HeaderNameDictionary.UNKNOWN) {
             // Implicit cast from integer to long, if needed.
             if (WarcConstants.FN_IDX_DT[fn_idx] == WarcConstants.FDT_LONG
                     && dt == WarcConstants.FDT_INTEGER) {
@@ -896,7 +1342,7 @@ public class WarcHeader {
                             fieldValueStr);
                 }
                 seen[fn_idx] = true;
-                switch (fn_idx.intValue()) {
+                switch (fn_idx) {
                 /*
                  * Integer.
                  */
@@ -1015,21 +1461,48 @@ public class WarcHeader {
         HeaderLine headerLine = new HeaderLine();
         headerLine.name = fieldName;
         headerLine.value = fieldValueStr;
-        HeaderLine tmpLine = headerMap.get(fieldName.toLowerCase());
-        if (tmpLine == null) {
-            headerMap.put(fieldName.toLowerCase(), headerLine);
-        } else {
-            tmpLine.lines.add(headerLine);
-        }
+        putHeaderLine(fn_idx, headerLine);
         return headerLine;
     }
 
+    /**
+     * Check the presence of the mandatory fields while reading a header in
+     * lazy mode. The WARC-Type and Content-Length values, which are always
+     * parsed, must also be valid. The values of the other mandatory fields
+     * are validated by <code>checkFields</code> once they have been parsed.
+     */
+    protected void checkMandatoryFields() {
+        bMandatoryMissing = false;
+        if (warcTypeIdx == null) {
+            // Mandatory valid Warc-Type missing.
+            addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_WARC_TYPE + "' header", warcTypeStr);
+            bMandatoryMissing = true;
+        }
+        if (warcRecordIdStr == null) {
+            // Mandatory Warc-Record-Id missing.
+            addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_WARC_RECORD_ID + "' header", warcRecordIdStr);
+            bMandatoryMissing = true;
+        }
+        if (warcDateStr == null) {
+            // Mandatory Warc-Date missing.
+            addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_WARC_DATE + "' header", warcDateStr);
+            bMandatoryMissing = true;
+        }
+        if (contentLength == null) {
+            // Mandatory valid Content-Length missing.
+            addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_CONTENT_LENGTH + "' header", contentLengthStr);
+            bMandatoryMissing = true;
+        }
+    }
+
     /**
      * Validate the WARC header relative to the WARC-Type and according to the
      * WARC ISO standard.
      */
     protected void checkFields() {
-        bMandatoryMissing = false;
+        if (!bLazyFields) {
+            bMandatoryMissing = false;
+        }
 
         /*
          * Unknown Warc-Type and/or Warc-Profile.
@@ -1047,25 +1520,27 @@ public class WarcHeader {
 
         /*
          * Mandatory fields.
+         * In lazy mode missing fields have already been reported by
+         * checkMandatoryFields, only invalid values are reported here.
          */
 
         // TODO Required yes, but is it always invalid.
-        if (warcTypeIdx == null) {
+        if (warcTypeIdx == null && !bLazyFields) {
             // Mandatory valid Warc-Type missing.
             addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_WARC_TYPE + "' header", warcTypeStr);
             bMandatoryMissing = true;
         }
-        if (warcRecordIdUri == null) {
+        if (warcRecordIdUri == null && (!bLazyFields || warcRecordIdStr != null)) {
             // Mandatory valid Warc-Record-Id missing.
             addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_WARC_RECORD_ID + "' header", warcRecordIdStr);
             bMandatoryMissing = true;
         }
-        if (warcDate == null) {
+        if (warcDate == null && (!bLazyFields || warcDateStr != null)) {
             // Mandatory valid Warc-Date missing.
             addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_WARC_DATE + "' header", warcDateStr);
             bMandatoryMissing = true;
         }
-        if (contentLength == null) {
+        if (contentLength == null && !bLazyFields) {
             // Mandatory valid Content-Length missing.
             addErrorDiagnosis(DiagnosisType.REQUIRED_INVALID, "'" + WarcConstants.FN_CONTENT_LENGTH + "' header", contentLengthStr);
             bMandatoryMissing = true;
@@ -19,7 +19,9 @@ package org.jwat.warc;
 
 import org.jwat.common.Diagnosis;
 import org.jwat.common.Diagnostics;
+import org.jwat.common.DiagnosticsSink;
 import org.jwat.common.HeaderLineReader;
+import org.jwat.common.ParsedValueCache;
 import org.jwat.common.UriProfile;
 
 import java.io.Closeable;
@@ -67,6 +69,15 @@ public abstract class WarcReader implements Closeable {
     /** Block Digest enabled/disabled. */
     protected boolean bBlockDigest = false;
 
+    /** Header-only scan mode enabled/disabled. */
+    protected boolean bHeaderOnly = false;
+
+    /** Lazy header field parsing enabled/disabled. */
+    protected boolean bLazyFieldParsing = false;
+
+    /** Optional filter used to skip records while reading sequentially. */
+    protected WarcRecordFilter recordFilter;
+
     /** Max size allowed for a record header. */
     protected int recordHeaderMaxSize;
 
@@ -104,6 +115,12 @@ public abstract class WarcReader implements Closeable {
     /** Aggregate number of warnings encountered while parsing. */
     protected int warnings = 0;
 
+    /** Optional sink receiving all errors and warnings encountered. */
+    protected DiagnosticsSink diagnosticsSink;
+
+    /** Keep diagnoses in records and reader when a diagnostics sink is set. */
+    protected boolean bKeepDiagnoses = true;
+
     /** Current WARC record object. */
     protected WarcRecord currentRecord;
 
@@ -128,6 +145,7 @@ public abstract class WarcReader implements Closeable {
         headerLineReader.bLWS = true;
         headerLineReader.bQuotedText = true;
         headerLineReader.bEncodedWords = true;
+        headerLineReader.setCanonicalNames(WarcConstants.fieldNameDictionary);
         fieldParsers = new WarcFieldParsers();
     }
 
@@ -198,6 +216,96 @@ public abstract class WarcReader implements Closeable {
         return uriProfile;
     }
 
+    /**
+     * Set the cache of parsed URIs and content-types used when parsing
+     * headers. The same cache can be shared by several readers.
+     * If null, every value is parsed from scratch, which is the default.
+     * @param parsedValueCache parsed value cache or null
+     */
+    public void setParsedValueCache(ParsedValueCache parsedValueCache) {
+        fieldParsers.parsedValueCache = parsedValueCache;
+    }
+
+    /**
+     * Get the cache of parsed URIs and content-types used when parsing
+     * headers.
+     * @return the parsed value cache or null
+     */
+    public ParsedValueCache getParsedValueCache() {
+        return fieldParsers.parsedValueCache;
+    }
+
+    /**
+     * Set the sink which receives all errors and warnings encountered while
+     * reading, for instance a <code>DiagnosisHistogram</code> aggregating
+     * per-file statistics. Records keep their own diagnoses unless disabled
+     * with <code>setKeepDiagnoses</code>.
+     * @param diagnosticsSink diagnostics sink or null
+     */
+    public void setDiagnosticsSink(DiagnosticsSink diagnosticsSink) {
+        this.diagnosticsSink = diagnosticsSink;
+    }
+
+    /**
+     * Get the sink which receives all errors and warnings encountered while
+     * reading.
+     * @return the diagnostics sink or null
+     */
+    public DiagnosticsSink getDiagnosticsSink() {
+        return diagnosticsSink;
+    }
+
+    /**
+     * Set whether records and the reader keep their lists of diagnoses when
+     * a diagnostics sink is set. If disabled the diagnoses of a record are
+     * only forwarded to the sink and discarded when the record is closed.
+     * Compliance status and error/warning counts are still maintained.
+     * @param bKeepDiagnoses boolean indicating whether to keep diagnoses
+     */
+    public void setKeepDiagnoses(boolean bKeepDiagnoses) {
+        this.bKeepDiagnoses = bKeepDiagnoses;
+    }
+
+    /**
+     * Returns a boolean indicating whether records and the reader keep their
+     * lists of diagnoses when a diagnostics sink is set.
+     * @return a boolean indicating whether diagnoses are kept
+     */
+    public boolean isKeepDiagnoses() {
+        return bKeepDiagnoses;
+    }
+
+    /**
+     * Returns a boolean indicating whether diagnoses are kept in records and
+     * the reader, which is always the case without a diagnostics sink.
+     * @return a boolean indicating whether diagnoses are kept
+     */
+    protected boolean keepsDiagnoses() {
+        return bKeepDiagnoses || diagnosticsSink == null;
+    }
+
+    /**
+     * Add the errors and warnings to the aggregated counts and forward them
+     * to the diagnostics sink, if any. The diagnoses are discarded after
+     * forwarding if they are not kept.
+     * @param diagnostics errors and warnings of a record or header
+     */
+    protected void addDiagnostics(Diagnostics<Diagnosis> diagnostics) {
+        errors += diagnostics.getErrorCount();
+        warnings += diagnostics.getWarningCount();
+        if (diagnosticsSink != null) {
+            for (Diagnosis d : diagnostics.getErrors()) {
+                diagnosticsSink.addError(d);
+            }
+            for (Diagnosis d : diagnostics.getWarnings()) {
+                diagnosticsSink.addWarning(d);
+            }
+            if (!bKeepDiagnoses) {
+                diagnostics.reset();
+            }
+        }
+    }
+
     /**
      * Get the readers block digest on/off status.
      * @return boolean indicating block digest on/off
@@ -368,6 +476,77 @@ public abstract class WarcReader implements Closeable {
         payloadHeaderMaxSize = size;
     }
 
+    /**
+     * Get the readers header-only scan mode on/off status.
+     * @return boolean indicating header-only scan mode on/off
+     */
+    public boolean getHeaderOnlyEnabled() {
+        return bHeaderOnly;
+    }
+
+    /**
+     * Set the readers header-only scan mode on/off status.
+     * In header-only mode no block or payload digests are computed, so the
+     * unread part of a payload is skipped instead of read when a record is
+     * closed. For uncompressed records this is the same as disabling block
+     * and payload digests, since closing a record without digests already
+     * skips its payload. Skipping is a position jump if the underlying input
+     * stream seeks when skipping, as it does for files.
+     * Compressed records with a skip-length extra subfield in their GZip
+     * header are skipped without inflating the rest of the GZip entry, in
+     * which case neither payload truncation nor the trailing newlines of the
+     * record are validated.
+     * @param enabled boolean indicating header-only scan mode on/off
+     */
+    public void setHeaderOnlyEnabled(boolean enabled) {
+        bHeaderOnly = enabled;
+    }
+
+    /**
+     * Get the readers lazy header field parsing on/off status.
+     * @return boolean indicating lazy header field parsing on/off
+     */
+    public boolean getLazyFieldParsingEnabled() {
+        return bLazyFieldParsing;
+    }
+
+    /**
+     * Set the readers lazy header field parsing on/off status.
+     * When enabled only the WARC-Type, Content-Length and Content-Type
+     * fields are parsed while reading a header. The typed values of the
+     * other fields are parsed and validated when requested through the
+     * <code>WarcHeader</code> getters, and the header as a whole is only
+     * validated by <code>WarcHeader.parseFields()</code>. The string values
+     * of all fields are always set.
+     * @param enabled boolean indicating lazy header field parsing on/off
+     */
+    public void setLazyFieldParsingEnabled(boolean enabled) {
+        bLazyFieldParsing = enabled;
+    }
+
+    /**
+     * Get the optional filter used to skip records.
+     * @return record filter or null
+     */
+    public WarcRecordFilter getRecordFilter() {
+        return recordFilter;
+    }
+
+    /**
+     * Set an optional filter used to skip records while reading records
+     * sequentially. The filter is called as soon as a WARC header has been
+     * parsed. Rejected records are skipped without parsing HTTP headers,
+     * computing digests or constructing payload streams, and are never
+     * returned by <code>getNextRecord()</code> or the iterator.
+     * Use lazy header field parsing to also avoid parsing the header fields
+     * the filter does not need.
+     * Records read using <code>getNextRecordFrom</code> are not filtered.
+     * @param filter record filter or null
+     */
+    public void setRecordFilter(WarcRecordFilter filter) {
+        recordFilter = filter;
+    }
+
     /**
      * Close current record resource(s) and input stream(s).
      */
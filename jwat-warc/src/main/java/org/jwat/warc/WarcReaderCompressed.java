@@ -173,6 +173,9 @@ public class WarcReaderCompressed extends WarcReader {
     @Override
     public WarcRecord getNextRecord() throws IOException {
         if (currentRecord != null) {
+            if (bHeaderOnly && currentEntry != null && reader.closeEntryBySkipLength(currentEntry)) {
+                currentRecord.bEntrySkipped = true;
+            }
             currentRecord.close();
         }
         if (reader == null) {
@@ -181,8 +184,7 @@ public class WarcReaderCompressed extends WarcReader {
         }
         currentRecord = null;
         currentReader = reader;
-        currentEntry = reader.getNextEntry();
-        if (currentEntry != null) {
+        while ((currentEntry = reader.getNextEntry()) != null) {
             ByteCountingPushBackInputStream pbin;
             if (bufferSize > 0) {
                 pbin = new ByteCountingPushBackInputStream(
@@ -194,7 +196,16 @@ public class WarcReaderCompressed extends WarcReader {
                 pbin = new ByteCountingPushBackInputStream(
                         currentEntry.getInputStream(), PUSHBACK_BUFFER_SIZE);
             }
-            currentRecord = WarcRecord.parseRecord(pbin, this);
+            currentRecord = WarcRecord.parseRecord(pbin, this, recordFilter);
+            if (currentRecord == null || !currentRecord.bFiltered) {
+                break;
+            }
+            // Skip filtered record, without inflating it if possible.
+            if (reader.closeEntryBySkipLength(currentEntry)) {
+                currentRecord.bEntrySkipped = true;
+            }
+            currentRecord.close();
+            currentRecord = null;
         }
         if (currentRecord != null) {
             startOffset = currentEntry.getStartOffset();
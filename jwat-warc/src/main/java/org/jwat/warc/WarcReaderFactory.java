@@ -20,10 +20,13 @@ package org.jwat.warc;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 import org.jwat.archive.common.ReaderFactoryAbstract;
 import org.jwat.common.ByteCountingPushBackInputStream;
+import org.jwat.common.MappedPushBackInputStream;
 import org.jwat.gzip.GzipReader;
 
 /**
@@ -34,6 +37,10 @@ import org.jwat.gzip.GzipReader;
  * <code>WarcReader</code> instances for compressed or uncompressed records.
  * Readers are available for both sequential and random reading of records.
  * Use of buffered methods and/or buffering speeds up the reader considerably.
+ * <p>
+ * Large files can be read in parallel by starting readers at the record
+ * boundaries returned by <code>findRecordBoundary</code> or
+ * <code>planSplits</code>.
  *
  * @author nicl
  */
@@ -42,6 +49,16 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
     /** Buffer size used by <code>PushbackInputStream</code>. */
     public static final int PUSHBACK_BUFFER_SIZE = 32;
 
+    /** Maximum number of header bytes read to confirm a record boundary. */
+    public static final int SYNC_HEADER_MAX_SIZE = 32 * 1024;
+
+    /** WARC record boundary synchronization used by the split planner. */
+    protected static final BoundarySync BOUNDARY_SYNC = new BoundarySync() {
+        public long findRecordBoundary(RandomAccessFile raf, long offset) throws IOException {
+            return WarcReaderFactory.findRecordBoundary(raf, offset);
+        }
+    };
+
     /**
      * Private constructor to enforce factory methods.
      */
@@ -74,6 +91,135 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
         return (Arrays.equals(warcBytes, streamBytes));
     }
 
+    /**
+     * Returns the offset of the first WARC record starting at or after the
+     * supplied offset, or the length of the file if there are none.
+     * In a compressed file the next GZip member header is located and
+     * confirmed by inflating the start of a WARC record from it. In an
+     * uncompressed file the next "WARC/" line is located and confirmed by
+     * its Content-Length leading to another record or the end of the file.
+     * @param raf random access file of WARC file
+     * @param offset offset to start looking from
+     * @return offset of the next record or the length of the file
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    public static long findRecordBoundary(RandomAccessFile raf, long offset) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "The 'offset' is less than zero: " + offset);
+        }
+        long length = raf.length();
+        byte[] warcBytes = WarcConstants.WARC_MAGIC_HEADER.getBytes();
+        long candidate = offset;
+        if (isGzippedFile(raf)) {
+            byte[] head;
+            while (candidate < length && (candidate = indexOfGzipHeader(raf, candidate)) != -1) {
+                head = GzipReader.readEntryHead(raf, candidate, warcBytes.length);
+                if (head != null && startsWith(head, 0, head.length, warcBytes)) {
+                    return candidate;
+                }
+                ++candidate;
+            }
+        } else {
+            if (offset == 0 && isRecordBoundary(raf, 0, warcBytes)) {
+                return 0;
+            }
+            byte[] lineBytes = ("\n" + WarcConstants.WARC_MAGIC_HEADER).getBytes();
+            candidate = Math.max(offset - 1, 0);
+            while ((candidate = indexOf(raf, lineBytes, candidate)) != -1) {
+                if (isRecordBoundary(raf, candidate + 1, warcBytes)) {
+                    return candidate + 1;
+                }
+                ++candidate;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Check whether an uncompressed WARC record starts at the supplied
+     * offset. The record must start with "WARC/" and its Content-Length
+     * must lead to another record or the end of the file.
+     * @param raf random access file of uncompressed WARC file
+     * @param offset line start offset
+     * @param warcBytes WARC magic bytes
+     * @return boolean indicating whether a record starts at the offset
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    protected static boolean isRecordBoundary(RandomAccessFile raf, long offset, byte[] warcBytes) throws IOException {
+        byte[] bytes = new byte[warcBytes.length];
+        if (!startsWith(bytes, 0, read(raf, offset, bytes), warcBytes)) {
+            return false;
+        }
+        bytes = new byte[SYNC_HEADER_MAX_SIZE];
+        int read = read(raf, offset, bytes);
+        byte[] fieldBytes = (WarcConstants.FN_CONTENT_LENGTH.toLowerCase() + ":").getBytes();
+        long contentLength = -1;
+        int headerLength = -1;
+        int lineStart = 0;
+        int lf;
+        int i;
+        while (headerLength == -1) {
+            lf = lineStart;
+            while (lf < read && bytes[lf] != '\n') {
+                ++lf;
+            }
+            if (lf == read) {
+                return false;
+            }
+            if (lf == lineStart || (lf == lineStart + 1 && bytes[lineStart] == '\r')) {
+                headerLength = lf + 1;
+            } else if (lf - lineStart > fieldBytes.length) {
+                i = 0;
+                while (i < fieldBytes.length && Character.toLowerCase((char)bytes[lineStart + i]) == fieldBytes[i]) {
+                    ++i;
+                }
+                if (i == fieldBytes.length) {
+                    try {
+                        contentLength = Long.parseLong(new String(bytes, lineStart + i, lf - lineStart - i, "ISO-8859-1").trim());
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            lineStart = lf + 1;
+        }
+        if (contentLength < 0) {
+            return false;
+        }
+        long next = offset + headerLength + contentLength;
+        // Skip the CRLF CRLF trailing the record.
+        bytes = new byte[4 + warcBytes.length];
+        read = read(raf, next, bytes);
+        i = 0;
+        while (i < read && i < 4 && (bytes[i] == '\r' || bytes[i] == '\n')) {
+            ++i;
+        }
+        return next + i == raf.length() || startsWith(bytes, i, read - i, warcBytes);
+    }
+
+    /**
+     * Divide a WARC file into byte ranges at record boundaries. The returned
+     * array holds the start offset of each split followed by the length of
+     * the file, so split <code>i</code> consists of the records starting at
+     * or after <code>boundaries[i]</code> and before
+     * <code>boundaries[i + 1]</code>. No record is lost or read twice when
+     * each split is read from its start offset until a record starts at or
+     * after the end offset. A split is empty if its start and end offsets
+     * are equal, which happens when a record spans more than a nominal
+     * split.
+     * @param raf random access file of WARC file
+     * @param splits number of splits
+     * @return split boundaries
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    public static long[] planSplits(RandomAccessFile raf, int splits) throws IOException {
+        return planSplits(raf, splits, BOUNDARY_SYNC);
+    }
+
     /**
      * Creates a new <code>WarcReader</code> from an <code>InputStream</code>
      * wrapped by a <code>BufferedInputStream</code>.
@@ -186,6 +332,41 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
         return new WarcReaderUncompressed(pbin);
     }
 
+    /**
+     * Creates a new <code>WarcReader</code> reading uncompressed records
+     * through memory-mapped regions of a <code>FileChannel</code> starting
+     * at the supplied position.
+     * @param channel WARC file channel
+     * @param position position of the first record
+     * @return <code>WarcReader</code> for uncompressed records read from
+     * the mapped file
+     * @throws IOException i/o exception while mapping the file
+     */
+    public static WarcReaderMapped getReaderMapped(FileChannel channel, long position)
+                                                        throws IOException {
+        return getReaderMapped(channel, position, MappedPushBackInputStream.DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Creates a new <code>WarcReader</code> reading uncompressed records
+     * through memory-mapped regions of the supplied size of a
+     * <code>FileChannel</code> starting at the supplied position.
+     * @param channel WARC file channel
+     * @param position position of the first record
+     * @param regionSize size of a mapped region
+     * @return <code>WarcReader</code> for uncompressed records read from
+     * the mapped file
+     * @throws IOException i/o exception while mapping the file
+     */
+    public static WarcReaderMapped getReaderMapped(FileChannel channel, long position,
+                                        int regionSize) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException(
+                    "The channel 'channel' is null");
+        }
+        return new WarcReaderMapped(new MappedPushBackInputStream(channel, position, regionSize));
+    }
+
     /**
      * Creates a new <code>WarcReader</code> without any associated
      * <code>InputStream</code> for random access to GZip compressed records.
@@ -0,0 +1,77 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jwat.common.MappedPushBackInputStream;
+
+/**
+ * WARC Reader implementation for reading uncompressed files through
+ * memory-mapped regions of a <code>FileChannel</code>.
+ * Headers are parsed straight from the mapping and payloads which are not
+ * read are skipped by moving the position, unless digests are computed.
+ * The payload of the current record is also available as a zero-copy
+ * buffer of the mapped file. Files larger than 2GB are read through a chain
+ * of mappings. Record offsets are file positions.
+ * Use WarcReaderFactory to get an instance of this class.
+ *
+ * @author nicl
+ */
+public class WarcReaderMapped extends WarcReaderUncompressed {
+
+    /** Mapped WARC file input stream. */
+    protected MappedPushBackInputStream min;
+
+    /**
+     * Construct reader mapping the supplied channel from the supplied
+     * position.
+     * @param in mapped WARC file input stream
+     */
+    public WarcReaderMapped(MappedPushBackInputStream in) {
+        super(in);
+        min = in;
+        startOffset = in.getConsumed();
+    }
+
+    /**
+     * Returns a read-only buffer with the complete payload of the current
+     * record, including any HTTP header, without copying it. Reading the
+     * buffer does not affect the payload stream of the record.
+     * If the file ends before the payload, the buffer only holds the part
+     * present in the file and the truncation is reported by the record.
+     * @return buffer with the payload of the current record or null, if
+     * there is no current record or it has no payload
+     * @throws IOException if an i/o error occurs while mapping the payload
+     */
+    public ByteBuffer getPayloadBuffer() throws IOException {
+        if (currentRecord == null || min == null || currentRecord.getPayload() == null) {
+            return null;
+        }
+        return min.slice(currentRecord.payloadOffset, currentRecord.header.contentLength);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        min = null;
+    }
+
+}
@@ -126,7 +126,11 @@ public class WarcReaderUncompressed extends WarcReader {
             throw new IllegalStateException(
                     "This reader has been initialized with an incompatible constructor, 'in' is null");
         }
-        currentRecord = WarcRecord.parseRecord(in, this);
+        currentRecord = WarcRecord.parseRecord(in, this, recordFilter);
+        while (currentRecord != null && currentRecord.bFiltered) {
+            currentRecord.close();
+            currentRecord = WarcRecord.parseRecord(in, this, recordFilter);
+        }
         if (currentRecord != null) {
             startOffset = currentRecord.getStartOffset();
         }
@@ -60,6 +60,10 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
      *  stream. Used to keep track of the uncompressed amount of bytes consumed. */
     protected long startOffset = -1;
 
+    /** Offset of the record payload relative to the source WARC file input
+     *  stream, which is the uncompressed stream for compressed files. */
+    protected long payloadOffset = -1;
+
     /** Uncompressed bytes consumed while validating this record. */
     protected long consumed;
 
@@ -92,6 +96,15 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
     /** Has payload been closed before. */
     protected boolean bPayloadClosed;
 
+    /** Has the rest of the record been skipped together with its GZip entry,
+     *  in which case the payload length and trailing newlines are not
+     *  validated. */
+    protected boolean bEntrySkipped;
+
+    /** Has the record been rejected by a record filter, in which case no
+     *  payload is processed and the block is skipped when closed. */
+    protected boolean bFiltered;
+
     /** Has record been closed before. */
     protected boolean bClosed;
 
@@ -136,6 +149,22 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
      */
     public static WarcRecord parseRecord(ByteCountingPushBackInputStream in,
                                     WarcReader reader) throws IOException {
+        return parseRecord(in, reader, null);
+    }
+
+    /**
+     * Given an <code>InputStream</code> it tries to read and validate a WARC
+     * header block. If the header is rejected by the optional filter the
+     * record is returned without processing its payload.
+     * @param in <code>InputStream</code> containing WARC record data
+     * @param reader <code>WarcReader</code> used, with access to user defined
+     * options
+     * @param filter optional record filter or null
+     * @return <code>WarcRecord</code> or <code>null</code>
+     * @throws IOException i/o exception in the process of reading record
+     */
+    public static WarcRecord parseRecord(ByteCountingPushBackInputStream in,
+                WarcReader reader, WarcRecordFilter filter) throws IOException {
         WarcRecord record = new WarcRecord();
         record.in = in;
         record.reader = reader;
@@ -147,16 +176,18 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
         reader.fieldParsers.diagnostics = record.diagnostics;
         if (header.parseHeader(in)) {
             ++reader.records;
+            record.payloadOffset = in.getConsumed();
+            record.bFiltered = filter != null && !filter.accept(header);
             /*
              * Payload processing.
              */
-            if (header.contentLength != null && header.contentLength > 0) {
+            if (!record.bFiltered && header.contentLength != null && header.contentLength > 0) {
                 /*
                  * Payload.
                  */
                 String digestAlgorithm = null;
-                if (reader.bBlockDigest) {
-                    if (header.warcBlockDigest != null && header.warcBlockDigest.algorithm != null) {
+                if (reader.bBlockDigest && !reader.bHeaderOnly) {
+                    if (header.getWarcBlockDigest() != null && header.warcBlockDigest.algorithm != null) {
                         // If a WARC block digest header is present in the
                         // record, use that algorithm.
                         digestAlgorithm = header.warcBlockDigest.algorithm;
@@ -186,8 +217,8 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
                     }
                     if (httpHeaderType != 0) {
                         digestAlgorithm = null;
-                        if (reader.bPayloadDigest) {
-                            if (header.warcPayloadDigest != null && header.warcPayloadDigest.algorithm != null) {
+                        if (reader.bPayloadDigest && !reader.bHeaderOnly) {
+                            if (header.getWarcPayloadDigest() != null && header.warcPayloadDigest.algorithm != null) {
                                 // If a WARC payload digest header is present in the
                                 // record, use that algorithm.
                                 digestAlgorithm = header.warcPayloadDigest.algorithm;
@@ -226,16 +257,23 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
         } else {
             // In case no record is found the errors/warnings in the record
             // object are transfered to the Reader.
-            reader.diagnostics.addAll(record.diagnostics);
+            if (reader.keepsDiagnoses()) {
+                reader.diagnostics.addAll(record.diagnostics);
+            }
             if (record.diagnostics.hasErrors() || record.diagnostics.hasWarnings()) {
-                reader.errors += record.diagnostics.getErrors().size();
-                reader.warnings += record.diagnostics.getWarnings().size();
+                reader.addDiagnostics(record.diagnostics);
                 reader.bIsCompliant = false;
             }
             // Require one or more records to be present.
             if (reader.records == 0) {
-                reader.diagnostics.addError(new Diagnosis(DiagnosisType.ERROR_EXPECTED, "WARC file", "One or more records"));
+                Diagnosis diagnosis = new Diagnosis(DiagnosisType.ERROR_EXPECTED, "WARC file", "One or more records");
+                if (reader.keepsDiagnoses()) {
+                    reader.diagnostics.addError(diagnosis);
+                }
                 ++reader.errors;
+                if (reader.diagnosticsSink != null) {
+                    reader.diagnosticsSink.addError(diagnosis);
+                }
                 reader.bIsCompliant = false;
             }
             // EOF
@@ -254,7 +292,7 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
         if (!bPayloadClosed) {
             if (payload != null) {
                 // Check for truncated payload.
-                if (payload.getUnavailable() > 0) {
+                if (payload.getUnavailable() > 0 && !bEntrySkipped) {
                     // Payload length mismatch - Payload truncated
                     addErrorDiagnosis(DiagnosisType.INVALID_DATA, "Payload length mismatch", "Payload truncated");
                 }
@@ -268,7 +306,7 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
                     computedBlockDigest.digestBytes = digest;
                 }
                 // Auto detect encoding used in WARC header.
-                if (header.warcBlockDigest != null && header.warcBlockDigest.digestString != null) {
+                if (header.getWarcBlockDigest() != null && header.warcBlockDigest.digestString != null) {
                     isValidBlockDigest = processWarcDigest(header.warcBlockDigest, computedBlockDigest, "block");
                 }
                 // Adjust information about computed block digest.
@@ -287,7 +325,7 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
                         computedPayloadDigest.digestBytes = digest;
                     }
                     // Auto detect encoding used in WARC header.
-                    if (header.warcPayloadDigest != null && header.warcPayloadDigest.digestString != null ) {
+                    if (header.getWarcPayloadDigest() != null && header.warcPayloadDigest.digestString != null ) {
                         isValidPayloadDigest = processWarcDigest(header.warcPayloadDigest, computedPayloadDigest, "payload");
                     }
                     // Adjust information about computed payload digest.
@@ -298,22 +336,25 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
                 }
             }
             // Check for trailing newlines.
-            trailingNewlines = nlp.parseCRLFs(in, diagnostics);
-            if (trailingNewlines != WarcConstants.WARC_RECORD_TRAILING_NEWLINES) {
-                addErrorDiagnosis(DiagnosisType.INVALID_EXPECTED,
-                        "Trailing newlines",
-                        Integer.toString(trailingNewlines),
-                        Integer.toString(WarcConstants.WARC_RECORD_TRAILING_NEWLINES));
+            if (!bEntrySkipped) {
+                trailingNewlines = nlp.parseCRLFs(in, diagnostics);
+                if (trailingNewlines != WarcConstants.WARC_RECORD_TRAILING_NEWLINES) {
+                    addErrorDiagnosis(DiagnosisType.INVALID_EXPECTED,
+                            "Trailing newlines",
+                            Integer.toString(trailingNewlines),
+                            Integer.toString(WarcConstants.WARC_RECORD_TRAILING_NEWLINES));
+                }
             }
             // isCompliant status update.
             if (diagnostics.hasErrors() || diagnostics.hasWarnings()) {
                 bIsCompliant = false;
-                reader.errors += diagnostics.getErrors().size();
-                reader.warnings += diagnostics.getWarnings().size();
+                reader.addDiagnostics(diagnostics);
             } else {
                 bIsCompliant = true;
             }
             reader.bIsCompliant &= bIsCompliant;
+            // Diagnoses of lazily parsed fields are reported separately from now on.
+            header.bDiagnosesReported = true;
             // Updated consumed after payload has been consumed.
             consumed = in.getConsumed() - startOffset;
             // Don't not close payload again.
@@ -435,6 +476,8 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
             // Ensure input stream is at the end of the record payload.
             if (payload != null) {
                 payload.close();
+            } else if (bFiltered && !bEntrySkipped) {
+                skipBlock();
             }
             payloadClosed();
             reader = null;
@@ -443,12 +486,35 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
         }
     }
 
+    /**
+     * Skip the unprocessed block of a filtered record.
+     * @throws IOException i/o exception while skipping the block
+     */
+    protected void skipBlock() throws IOException {
+        long remaining = (header.contentLength != null) ? header.contentLength : 0;
+        long skipped;
+        while (remaining > 0) {
+            skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    break;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        if (remaining > 0) {
+            // Payload length mismatch - Payload truncated
+            addErrorDiagnosis(DiagnosisType.INVALID_DATA, "Payload length mismatch", "Payload truncated");
+        }
+    }
+
     /**
      * Returns a boolean indicating the ISO compliance status of this record.
      * @return a boolean indicating the ISO compliance status of this record
      */
     public boolean isCompliant() {
-        return bIsCompliant;
+        return bIsCompliant && !header.bLateDiagnoses;
     }
 
     /**
@@ -460,6 +526,15 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
         return header.startOffset;
     }
 
+    /**
+     * Get the offset of the record payload relative to the start of the WARC
+     * file <code>InputStream</code>, or the GZip entry for compressed files.
+     * @return the offset of the record payload
+     */
+    public long getPayloadOffset() {
+        return payloadOffset;
+    }
+
     /**
      * Return number of uncompressed bytes consumed validating this record.
      * @return number of uncompressed bytes consumed validating this record
@@ -484,11 +559,7 @@ public class WarcRecord implements PayloadOnClosedHandler, Closeable {
      * @return <code>HeaderLine</code> structure or null
      */
     public HeaderLine getHeader(String field) {
-        if (field != null && field.length() > 0) {
-            return header.headerMap.get(field.toLowerCase());
-        } else {
-            return null;
-        }
+        return header.getHeader(field);
     }
 
     /**
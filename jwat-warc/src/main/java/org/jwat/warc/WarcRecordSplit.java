@@ -0,0 +1,375 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jwat.common.FileChannelInputStream;
+
+/**
+ * A range of a WARC file starting and ending at record boundaries, which
+ * can be iterated independently of the other splits of the same file.
+ * Splits can be divided further on record boundaries with
+ * <code>trySplit</code> and processed concurrently on an executor with
+ * <code>processRecords</code>, so simple per-record jobs scale with the
+ * number of threads. Records are read through positional reads on the file
+ * channel, so splits of the same file never share a file pointer.
+ * A split iterates the records starting at or after its start offset and
+ * before its end offset. Record start offsets are file offsets.
+ * The <code>RandomAccessFile</code> is not closed by this class.
+ *
+ * @author nicl
+ */
+public class WarcRecordSplit implements Iterable<WarcRecord> {
+
+    /** Buffer size used when reading the records of a split. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Random access file of the WARC file. */
+    protected RandomAccessFile raf;
+
+    /** Start offset of the split, a record boundary. */
+    protected long start;
+
+    /** End offset of the split, a record boundary or the end of the file. */
+    protected long end;
+
+    /** Exception thrown while using the iterator. */
+    protected Exception iteratorExceptionThrown;
+
+    /**
+     * Construct a split covering the whole file.
+     * @param raf random access file of the WARC file
+     * @throws IOException if an i/o error occurs while reading the file length
+     */
+    public WarcRecordSplit(RandomAccessFile raf) throws IOException {
+        this(raf, 0, raf != null ? raf.length() : 0);
+    }
+
+    /**
+     * Construct a split of a file. The offsets must be record boundaries.
+     * @param raf random access file of the WARC file
+     * @param start start offset of the split
+     * @param end end offset of the split
+     */
+    public WarcRecordSplit(RandomAccessFile raf, long start, long end) {
+        if (raf == null) {
+            throw new IllegalArgumentException("'raf' is null!");
+        }
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+        }
+        this.raf = raf;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Divide a file into at most the supplied number of non-empty splits
+     * using <code>WarcReaderFactory.planSplits</code>.
+     * @param raf random access file of the WARC file
+     * @param splits number of splits
+     * @return list of splits in file order
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    public static List<WarcRecordSplit> split(RandomAccessFile raf, int splits) throws IOException {
+        long[] boundaries;
+        synchronized (raf) {
+            boundaries = WarcReaderFactory.planSplits(raf, splits);
+        }
+        List<WarcRecordSplit> list = new ArrayList<WarcRecordSplit>(splits);
+        for (int i=0; i<splits; ++i) {
+            if (boundaries[i] < boundaries[i + 1]) {
+                list.add(new WarcRecordSplit(raf, boundaries[i], boundaries[i + 1]));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the start offset of this split.
+     * @return start offset of this split
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end offset of this split.
+     * @return end offset of this split
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of bytes covered by this split.
+     * @return number of bytes covered by this split
+     */
+    public long getLength() {
+        return end - start;
+    }
+
+    /**
+     * Divide this split at the record boundary nearest after its middle.
+     * The first part is returned as a new split and this split is reduced
+     * to the remaining part.
+     * @return new split with the first part or null, if this split can not
+     * be divided
+     * @throws IOException if an i/o error occurs while reading the file
+     */
+    public WarcRecordSplit trySplit() throws IOException {
+        long middle;
+        synchronized (raf) {
+            middle = WarcReaderFactory.findRecordBoundary(raf, start + (end - start) / 2 + 1);
+        }
+        if (middle >= end) {
+            return null;
+        }
+        WarcRecordSplit prefix = new WarcRecordSplit(raf, start, middle);
+        start = middle;
+        return prefix;
+    }
+
+    /**
+     * Create the reader used to read the records of this split. Override to
+     * configure the reader, i.e. digest or URI profile settings.
+     * @param in input stream positioned at the start of the split
+     * @return WARC reader
+     * @throws IOException if an i/o error occurs while creating the reader
+     */
+    protected WarcReader createReader(InputStream in) throws IOException {
+        return WarcReaderFactory.getReader(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Read the next record of this split.
+     * @param reader WARC reader positioned in this split
+     * @return next record or null, if there are no more records in this split
+     * @throws IOException if an i/o error occurs while reading the record
+     */
+    protected WarcRecord getNextRecord(WarcReader reader) throws IOException {
+        WarcRecord record = reader.getNextRecord();
+        if (record != null) {
+            if (start + record.header.startOffset >= end) {
+                record = null;
+            } else {
+                record.header.startOffset += start;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Process all the records of this split with the supplied handler on the
+     * calling thread.
+     * @param handler record handler
+     * @throws IOException if an i/o error occurs while reading the records
+     */
+    public void processRecords(WarcRecordHandler handler) throws IOException {
+        processRecords(handler, new AtomicBoolean());
+    }
+
+    /**
+     * Process the records of this split with the supplied handler on the
+     * calling thread until all records are processed or the abort flag is
+     * set.
+     * @param handler record handler
+     * @param bAbort flag checked before each record
+     * @throws IOException if an i/o error occurs while reading the records
+     */
+    protected void processRecords(WarcRecordHandler handler, AtomicBoolean bAbort) throws IOException {
+        if (handler == null) {
+            throw new IllegalArgumentException("'handler' is null!");
+        }
+        WarcReader reader = createReader(new FileChannelInputStream(raf.getChannel(), start));
+        try {
+            WarcRecord record;
+            while (!bAbort.get() && (record = getNextRecord(reader)) != null) {
+                handler.handleRecord(record);
+                record.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Process the records of a list of splits concurrently on the supplied
+     * executor. Each split is processed by one task and the handler must be
+     * thread safe. Returns when all splits have been processed.
+     * If a split fails, the other splits stop before their next record and
+     * the first exception is thrown once every task has ended, so the
+     * handler is never called after this method returns.
+     * @param splits list of splits
+     * @param executor executor used to process the splits
+     * @param handler thread safe record handler
+     * @throws IOException if an i/o error occurs in any of the splits
+     */
+    public static void processRecords(List<? extends WarcRecordSplit> splits, ExecutorService executor,
+                               final WarcRecordHandler handler) throws IOException {
+        if (splits == null) {
+            throw new IllegalArgumentException("'splits' is null!");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("'executor' is null!");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("'handler' is null!");
+        }
+        final AtomicBoolean bAbort = new AtomicBoolean();
+        List<Future<Void>> futures = new LinkedList<Future<Void>>();
+        Throwable failure = null;
+        try {
+            for (final WarcRecordSplit split : splits) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        split.processRecords(handler, bAbort);
+                        return null;
+                    }
+                }));
+            }
+        } catch (RuntimeException e) {
+            // Task rejected by the executor.
+            bAbort.set(true);
+            failure = e;
+        }
+        // Wait for every submitted task, also after a failure or interrupt.
+        boolean bInterrupted = false;
+        boolean bDone;
+        for (Future<Void> future : futures) {
+            bDone = false;
+            while (!bDone) {
+                try {
+                    future.get();
+                    bDone = true;
+                } catch (InterruptedException e) {
+                    bAbort.set(true);
+                    bInterrupted = true;
+                } catch (ExecutionException e) {
+                    bAbort.set(true);
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    bDone = true;
+                }
+            }
+        }
+        if (bInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException)failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        } else if (bInterrupted) {
+            throw new InterruptedIOException("Interrupted while processing splits!");
+        }
+    }
+
+    /**
+     * Gets an exception thrown in the iterator if any or null.
+     * @return exception thrown in the iterator if any or null
+     */
+    public Exception getIteratorExceptionThrown() {
+        return iteratorExceptionThrown;
+    }
+
+    /**
+     * Returns an <code>Iterator</code> over the records of this split. The
+     * reader is closed when the last record has been returned. Any exception
+     * thrown during parsing is accessible through the
+     * <code>getIteratorExceptionThrown</code> method.
+     * @return <code>Iterator</code> over the records of this split
+     */
+    public Iterator<WarcRecord> iterator() {
+        return new Iterator<WarcRecord>() {
+
+            /** Reader of this split, null when the end has been reached. */
+            private WarcReader reader;
+
+            /** Boolean indicating whether the reader has been created. */
+            private boolean bStarted;
+
+            /** Internal next record updated by either hasNext() or next(). */
+            private WarcRecord next;
+
+            /**
+             * Read the next record, if necessary.
+             */
+            private void readNext() {
+                if (next == null) {
+                    iteratorExceptionThrown = null;
+                    try {
+                        if (!bStarted) {
+                            reader = createReader(new FileChannelInputStream(raf.getChannel(), start));
+                            bStarted = true;
+                        }
+                        if (reader != null) {
+                            next = getNextRecord(reader);
+                            if (next == null) {
+                                reader.close();
+                                reader = null;
+                            }
+                        }
+                    } catch (IOException e) {
+                        iteratorExceptionThrown = e;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                readNext();
+                return (next != null);
+            }
+
+            @Override
+            public WarcRecord next() {
+                readNext();
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                WarcRecord current = next;
+                next = null;
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -27,7 +27,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.DateFormat;
+import java.util.Date;
 
 /**
  * Base class for WARC writer implementations.
@@ -61,9 +61,6 @@ public abstract class WarcWriter implements Closeable {
     /** Block Digesting enabled/disabled. */
     //protected boolean bDigestBlock = false;
 
-    /** WARC <code>DateFormat</code> as specified by the WARC ISO standard. */
-    protected DateFormat warcDateFormat;
-
     /** WARC field parser used. */
     protected WarcFieldParsers fieldParsers;
 
@@ -103,7 +100,6 @@ public abstract class WarcWriter implements Closeable {
     protected void init() {
         warcTargetUriProfile = UriProfile.RFC3986;
         uriProfile = UriProfile.RFC3986;
-        warcDateFormat = WarcDateParser.getDateFormat();
         fieldParsers = new WarcFieldParsers();
         stream_copy_buffer = new byte[8192];
         bExceptionOnContentLengthMismatch = true;
@@ -199,6 +195,17 @@ public abstract class WarcWriter implements Closeable {
      */
     public abstract void close() throws IOException;
 
+    /**
+     * Flush everything written so far to the underlying output stream,
+     * without closing the current record.
+     * @throws IOException if an i/o exception occurs while flushing
+     */
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
     /**
      * Close the WARC record in an implementation specific way.
      * @throws IOException if an i/o exception occurs while closing the record
@@ -291,6 +298,81 @@ public abstract class WarcWriter implements Closeable {
     protected byte[] writeHeader_impl(WarcRecord record) throws IOException {
         header = record.header;
         headerContentLength = header.contentLength;
+        byte[] headerBytes = getHeaderBytes(record);
+        out.write(headerBytes);
+        state = S_HEADER_WRITTEN;
+        payloadWrittenTotal = 0;
+        return headerBytes;
+    }
+
+    /**
+     * Returns the value to write for a date header field. The date object is
+     * formatted, but the original string is kept when it is the same date
+     * with a fraction of a second, so that the fraction is not lost when a
+     * record is rewritten.
+     * @param date parsed date or <code>null</code>
+     * @param dateStr original date string or <code>null</code>
+     * @return value to write or <code>null</code> if the field is not present
+     */
+    protected static String getDateFieldValue(Date date, String dateStr) {
+        if (date != null) {
+            String formatted = WarcDateParser.formatDate(date);
+            if (dateStr != null && isFractionalDate(dateStr, formatted, date.getTime())) {
+                return dateStr;
+            }
+            return formatted;
+        }
+        // Warning...
+        return dateStr;
+    }
+
+    /**
+     * Check whether a date string is a formatted date followed by a fraction
+     * of a second which matches the milliseconds of the date. Fraction digits
+     * beyond millisecond precision can not be compared and are accepted.
+     * @param dateStr date string
+     * @param formatted date formatted without fraction
+     * @param millis date in epoch milliseconds
+     * @return true if the date string is the formatted date with a fraction
+     */
+    protected static boolean isFractionalDate(String dateStr, String formatted, long millis) {
+        int len = formatted.length() - 1;
+        int strLen = dateStr.length();
+        if (strLen < len + 3 || !dateStr.regionMatches(0, formatted, 0, len)
+                || dateStr.charAt(len) != '.' || dateStr.charAt(strLen - 1) != 'Z') {
+            return false;
+        }
+        int fraction = (int)(millis % 1000);
+        if (fraction < 0) {
+            fraction += 1000;
+        }
+        int divisor = 100;
+        char c;
+        for (int i=len + 1; i<strLen - 1; ++i) {
+            c = dateStr.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            if (divisor > 0) {
+                if (c - '0' != (fraction / divisor) % 10) {
+                    return false;
+                }
+                divisor /= 10;
+            }
+        }
+        // Milliseconds not in the string must be zero.
+        return divisor == 0 || fraction % (divisor * 10) == 0;
+    }
+
+    /**
+     * Serialize a WARC header without writing it or changing the writer state.
+     * The WARC header is not required to be valid.
+     * @param record WARC record to serialize
+     * @return byte array version of header
+     * @throws IOException if an i/o exception occurs while serializing header data
+     */
+    protected byte[] getHeaderBytes(WarcRecord record) throws IOException {
+        WarcHeader header = record.header;
         ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
         /*
          * Version Line
@@ -337,13 +419,7 @@ public abstract class WarcWriter implements Closeable {
         /*
          * Warc-Date
          */
-        String warcDateStr = null;
-        if (header.warcDate != null) {
-            warcDateStr = warcDateFormat.format(header.warcDate);
-        } else if (header.warcDateStr != null) {
-            warcDateStr = header.warcDateStr;
-            // Warning...
-        }
+        String warcDateStr = getDateFieldValue(header.warcDate, header.warcDateStr);
         if (warcDateStr != null) {
             outBuf.write(WarcConstants.FN_WARC_DATE.getBytes());
             outBuf.write(": ".getBytes());
@@ -637,13 +713,7 @@ public abstract class WarcWriter implements Closeable {
         /*
          * Warc-Refers-To-Date
          */
-        String warcRefersToDateStr = null;
-        if (header.warcRefersToDate != null) {
-            warcRefersToDateStr = warcDateFormat.format(header.warcRefersToDate);
-        } else if (header.warcRefersToDateStr != null) {
-            warcRefersToDateStr = header.warcRefersToDateStr;
-            // Warning...
-        }
+        String warcRefersToDateStr = getDateFieldValue(header.warcRefersToDate, header.warcRefersToDateStr);
         if (warcRefersToDateStr != null) {
             outBuf.write(WarcConstants.FN_WARC_REFERS_TO_DATE.getBytes());
             outBuf.write(": ".getBytes());
@@ -654,11 +724,7 @@ public abstract class WarcWriter implements Closeable {
          * End Of Header
          */
         outBuf.write("\r\n".getBytes());
-        byte[] headerBytes = outBuf.toByteArray();
-        out.write(headerBytes);
-        state = S_HEADER_WRITTEN;
-        payloadWrittenTotal = 0;
-        return headerBytes;
+        return outBuf.toByteArray();
     }
 
     /**
@@ -21,14 +21,26 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.gzip.GzipCompressionStats;
 import org.jwat.gzip.GzipConstants;
 import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipLevelController;
+import org.jwat.gzip.GzipParallelWriter;
 import org.jwat.gzip.GzipWriter;
 
 /**
  * WARC Writer implementation for writing GZip compressed files.
  * Use WarcWriterFactory to get an instance of this class.
+ * <p>
+ * In parallel compression mode complete records are submitted from any
+ * number of threads using <code>submitRecord</code>. Each record is deflated
+ * into its own GZip entry on an executor and the entries are appended to the
+ * file in submission order.
  *
  * @author nicl
  */
@@ -40,6 +52,12 @@ public class WarcWriterCompressed extends WarcWriter {
     /** Current GZip entry. */
     protected GzipEntry entry;
 
+    /** Output stream the GZip entries are written to. */
+    protected OutputStream gzipOut;
+
+    /** Parallel GZip writer used in parallel compression mode. */
+    protected GzipParallelWriter parallelWriter;
+
     /**
      * Construct an unbuffered WARC writer used to write compressed records.
      * @param out outputstream to write to
@@ -49,7 +67,8 @@ public class WarcWriterCompressed extends WarcWriter {
             throw new IllegalArgumentException(
                     "The 'out' parameter is null!");
         }
-        writer = new GzipWriter(out);
+        gzipOut = out;
+        writer = new GzipWriter(gzipOut);
         init();
     }
 
@@ -68,7 +87,8 @@ public class WarcWriterCompressed extends WarcWriter {
             throw new IllegalArgumentException(
                     "The 'buffer_size' parameter is less than or equal to zero!");
         }
-        writer = new GzipWriter(new BufferedOutputStream(out, buffer_size));
+        gzipOut = new BufferedOutputStream(out, buffer_size);
+        writer = new GzipWriter(gzipOut);
         init();
     }
 
@@ -77,8 +97,229 @@ public class WarcWriterCompressed extends WarcWriter {
         return true;
     }
 
+    /**
+     * Enable or disable skip-length extra subfields in the GZip header of
+     * each record, allowing readers to skip records without inflating them.
+     * Each record is buffered in memory in compressed form when enabled. A
+     * record whose compressed size exceeds the maximum buffered entry size
+     * of the GZip writer is written without a skip-length instead.
+     * @param bSkipLength boolean indicating whether to write skip-lengths
+     */
+    public void setSkipLength(boolean bSkipLength) {
+        writer.setSkipLength(bSkipLength);
+        if (parallelWriter != null) {
+            parallelWriter.setSkipLength(bSkipLength);
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether skip-length extra subfields are
+     * written.
+     * @return a boolean indicating whether skip-lengths are written
+     */
+    public boolean isSkipLength() {
+        return writer.isSkipLength();
+    }
+
+    /**
+     * Enable or disable adaptive compression, which stores or deflates at
+     * the fastest level records whose payload is already compressed.
+     * @param bAdaptive boolean indicating whether to sample record data
+     */
+    public void setAdaptiveCompression(boolean bAdaptive) {
+        writer.setAdaptiveCompression(bAdaptive);
+        if (parallelWriter != null) {
+            parallelWriter.setAdaptiveCompression(bAdaptive);
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether adaptive compression is enabled.
+     * @return a boolean indicating whether adaptive compression is enabled
+     */
+    public boolean isAdaptiveCompression() {
+        return writer.isAdaptiveCompression();
+    }
+
+    /**
+     * Set a controller to choose the compression level of each record from
+     * the observed deflate throughput or queue depth, or null to use the
+     * fixed compression level.
+     * @param levelController compression level controller or null
+     */
+    public void setLevelController(GzipLevelController levelController) {
+        writer.setLevelController(levelController);
+        if (parallelWriter != null) {
+            parallelWriter.setLevelController(levelController);
+        }
+    }
+
+    /**
+     * Returns the controller choosing the compression level of each record.
+     * @return compression level controller or null
+     */
+    public GzipLevelController getLevelController() {
+        return writer.getLevelController();
+    }
+
+    /**
+     * Set the sync flush policy of records. The current record is sync
+     * flushed after the given number of uncompressed bytes or on the first
+     * write after the given interval, so consumers tailing the file see the
+     * data without waiting for the record to be closed.
+     * Records compressed in parallel mode are not sync flushed.
+     * @param syncFlushBytes uncompressed bytes between flushes or 0 to disable
+     * @param syncFlushMillis milliseconds between flushes or 0 to disable
+     */
+    public void setSyncFlush(long syncFlushBytes, long syncFlushMillis) {
+        writer.setSyncFlush(syncFlushBytes, syncFlushMillis);
+    }
+
+    /**
+     * Sync flush the current record, if any, and flush the file. In parallel
+     * compression mode this waits until the submitted records have been
+     * written, like <code>flushRecords</code>.
+     * @throws IOException if an i/o exception occurs while flushing
+     */
+    @Override
+    public void flush() throws IOException {
+        if (parallelWriter != null) {
+            parallelWriter.flush();
+        } else {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Returns the compression statistics of the records written so far.
+     * In parallel compression mode a copy of the statistics of the records
+     * compressed so far is returned.
+     * @return compression statistics
+     */
+    public GzipCompressionStats getCompressionStats() {
+        if (parallelWriter != null) {
+            return parallelWriter.getCompressionStats();
+        }
+        return writer.getCompressionStats();
+    }
+
+    /**
+     * Switch this writer to parallel compression mode. Must be called before
+     * any records are written. Records must then be written using
+     * <code>submitRecord</code> and the streaming header and payload methods
+     * can no longer be used.
+     * The executor is not shut down when this writer is closed.
+     * @param executor executor used to compress records
+     * @param maxInFlight maximum number of records compressed or waiting to be written
+     */
+    public void setParallelCompression(ExecutorService executor, int maxInFlight) {
+        if (state != S_INIT) {
+            throw new IllegalStateException("Records already written!");
+        }
+        if (parallelWriter != null) {
+            throw new IllegalStateException("Parallel compression already enabled!");
+        }
+        parallelWriter = new GzipParallelWriter(gzipOut, executor, maxInFlight);
+        parallelWriter.setCompressionLevel(writer.getCompressionLevel());
+        parallelWriter.setSkipLength(writer.isSkipLength());
+        parallelWriter.setAdaptiveCompression(writer.isAdaptiveCompression());
+        parallelWriter.setLevelController(writer.getLevelController());
+    }
+
+    /**
+     * Returns a boolean indicating whether parallel compression mode is enabled.
+     * @return a boolean indicating whether parallel compression mode is enabled
+     */
+    public boolean isParallelCompression() {
+        return parallelWriter != null;
+    }
+
+    /**
+     * Submit a complete WARC record for compression in parallel compression
+     * mode. May be called concurrently from any number of threads and blocks
+     * while the maximum number of records are in flight.
+     * The payload must not be modified until the returned <code>Future</code>
+     * completes. Once it completes the GZip entry's <code>startOffset</code>
+     * and <code>consumed</code> fields hold the offset and length of the
+     * record in the file.
+     * Errors and warnings are reported on the records diagnostics object.
+     * @param record WARC record to write
+     * @param payload record payload or null, if the record has no payload
+     * @return <code>Future</code> which returns the GZip entry once written
+     * @throws IOException if an i/o exception occurs while writing records
+     */
+    public Future<GzipEntry> submitRecord(WarcRecord record, byte[] payload) throws IOException {
+        if (parallelWriter == null) {
+            throw new IllegalStateException("Parallel compression is not enabled!");
+        }
+        if (record == null) {
+            throw new IllegalArgumentException(
+                    "The 'record' parameter is null!");
+        }
+        long payloadLength = (payload != null) ? payload.length : 0;
+        Diagnosis diagnosis = null;
+        if (record.header.contentLength == null) {
+            diagnosis = new Diagnosis(
+                    DiagnosisType.ERROR_EXPECTED,
+                    "'" + WarcConstants.FN_CONTENT_LENGTH + "' header",
+                    "Mandatory!");
+        } else if (record.header.contentLength != payloadLength) {
+            diagnosis = new Diagnosis(
+                    DiagnosisType.INVALID_EXPECTED,
+                    "'" + WarcConstants.FN_CONTENT_LENGTH + "' header",
+                    Long.toString(payloadLength),
+                    record.header.contentLength.toString());
+        }
+        if (diagnosis != null) {
+            record.header.diagnostics.addError(diagnosis);
+            if (bExceptionOnContentLengthMismatch) {
+                throw new IllegalStateException("Payload size does not match content-length!");
+            }
+        }
+        byte[] headerBytes;
+        // The date format used to serialize headers is not thread safe.
+        synchronized (this) {
+            headerBytes = getHeaderBytes(record);
+            state = S_RECORD_CLOSED;
+        }
+        GzipEntry entry = new GzipEntry();
+        entry.magic = GzipConstants.GZIP_MAGIC;
+        entry.cm = GzipConstants.CM_DEFLATE;
+        entry.flg = 0;
+        entry.mtime = System.currentTimeMillis() / 1000;
+        entry.xfl = 0;
+        entry.os = GzipConstants.OS_UNKNOWN;
+        return parallelWriter.submit(entry, headerBytes, payload, WarcConstants.endMark);
+    }
+
+    /**
+     * Wait until all records submitted in parallel compression mode have
+     * been written and flush the file.
+     * @throws IOException if an i/o exception occurs while writing records
+     */
+    public void flushRecords() throws IOException {
+        if (parallelWriter == null) {
+            throw new IllegalStateException("Parallel compression is not enabled!");
+        }
+        parallelWriter.flush();
+    }
+
     @Override
     public void close() throws IOException {
+        if (parallelWriter != null) {
+            try {
+                // Wait for the submitted records before the unused GZip
+                // writer flushes the file and releases its deflater.
+                parallelWriter.flush();
+            } finally {
+                try {
+                    writer.close();
+                } finally {
+                    parallelWriter.close();
+                }
+            }
+            return;
+        }
         if (entry != null) {
             closeRecord();
         }
@@ -108,6 +349,9 @@ public class WarcWriterCompressed extends WarcWriter {
      */
     @Override
     public void writeRawHeader(byte[] header_bytes, Long contentLength) throws IOException {
+        if (parallelWriter != null) {
+            throw new IllegalStateException("Use submitRecord() in parallel compression mode!");
+        }
         if (header_bytes == null) {
             throw new IllegalArgumentException(
                     "The 'header_bytes' parameter is null!");
@@ -146,6 +390,9 @@ public class WarcWriterCompressed extends WarcWriter {
      */
     @Override
     public byte[] writeHeader(WarcRecord record) throws IOException {
+        if (parallelWriter != null) {
+            throw new IllegalStateException("Use submitRecord() in parallel compression mode!");
+        }
         if (record == null) {
             throw new IllegalArgumentException(
                     "The 'record' parameter is null!");
@@ -28,6 +28,17 @@ public class TestBaseUtils {
     private TestBaseUtils() {
     }
 
+    public static WarcRecord createRecord(WarcWriter writer, int id, byte[] payload) {
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "resource");
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:35f02b38-eb19-4f0d-86e4-" + String.format("%012d", id) + ">");
+        record.header.addHeader("WARC-Date", "2008-04-30T20:48:25Z");
+        record.header.addHeader("WARC-Target-URI", "http://jwat.org/" + id);
+        record.header.addHeader("Content-Length", Integer.toString(payload.length));
+        record.header.addHeader("Content-Type", "text/plain");
+        return record;
+    }
+
     public static void compareDiagnoses(Object[][] expectedDiagnoses, List<Diagnosis> diagnosisList) {
         Diagnosis diagnosis;
         // debug
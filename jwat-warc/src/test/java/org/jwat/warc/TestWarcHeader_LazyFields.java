@@ -0,0 +1,182 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcHeader_LazyFields {
+
+    @Test
+    public void test_warcheader_lazyfields() throws IOException {
+        File file = new TestWarcReaderFactory_Sync().copyResource(TestWarcReaderFactory_Sync.FNAME, false);
+        InputStream eagerIn = new FileInputStream(file);
+        InputStream lazyIn = new FileInputStream(file);
+        WarcReader eagerReader = WarcReaderFactory.getReader(eagerIn);
+        WarcReader lazyReader = WarcReaderFactory.getReader(lazyIn);
+        Assert.assertFalse(lazyReader.getLazyFieldParsingEnabled());
+        lazyReader.setLazyFieldParsingEnabled(true);
+        Assert.assertTrue(lazyReader.getLazyFieldParsingEnabled());
+        lazyReader.setBlockDigestEnabled(true);
+        lazyReader.setPayloadDigestEnabled(true);
+        eagerReader.setBlockDigestEnabled(true);
+        eagerReader.setPayloadDigestEnabled(true);
+        WarcRecord eager;
+        WarcRecord lazy;
+        int records = 0;
+        while ((eager = eagerReader.getNextRecord()) != null) {
+            lazy = lazyReader.getNextRecord();
+            Assert.assertNotNull(lazy);
+            ++records;
+            WarcHeader e = eager.header;
+            WarcHeader l = lazy.header;
+            Assert.assertEquals(e.getStartOffset(), l.getStartOffset());
+            // Framing fields.
+            Assert.assertEquals(e.warcTypeIdx, l.warcTypeIdx);
+            Assert.assertEquals(e.contentLength, l.contentLength);
+            Assert.assertEquals(e.contentTypeStr, l.contentTypeStr);
+            Assert.assertNotNull(l.contentType);
+            // String values are always set.
+            Assert.assertEquals(e.warcRecordIdStr, l.warcRecordIdStr);
+            Assert.assertEquals(e.warcDateStr, l.warcDateStr);
+            Assert.assertEquals(e.warcTargetUriStr, l.warcTargetUriStr);
+            Assert.assertEquals(e.warcIpAddress, l.warcIpAddress);
+            // Typed values are parsed on request.
+            Assert.assertNull(l.warcRecordIdUri);
+            Assert.assertNull(l.warcDate);
+            Assert.assertNotNull(l.getWarcRecordIdUri());
+            Assert.assertEquals(e.warcRecordIdUri.toString(), l.getWarcRecordIdUri().toString());
+            Assert.assertEquals(e.warcDate, l.getWarcDate());
+            Assert.assertEquals(e.warcDate, l.warcDate);
+            Assert.assertEquals(e.warcInetAddress, l.getWarcInetAddress());
+            if (e.warcTargetUriUri != null) {
+                Assert.assertNull(l.warcTargetUriUri);
+                Assert.assertEquals(e.warcTargetUriUri.toString(), l.getWarcTargetUriUri().toString());
+            }
+            Assert.assertEquals(e.warcConcurrentToList.size(), l.getWarcConcurrentToList().size());
+            Assert.assertEquals(e.getWarcSegmentNumber(), l.getWarcSegmentNumber());
+            eager.close();
+            lazy.close();
+            Assert.assertEquals(e.warcBlockDigestStr, l.warcBlockDigestStr);
+            Assert.assertEquals(eager.isValidBlockDigest, lazy.isValidBlockDigest);
+            Assert.assertEquals(eager.isValidPayloadDigest, lazy.isValidPayloadDigest);
+            // Validation is postponed until all fields are parsed.
+            Assert.assertFalse(l.bMandatoryMissing);
+            l.parseFields();
+            l.parseFields();
+            Assert.assertEquals(e.bMandatoryMissing, l.bMandatoryMissing);
+            Assert.assertEquals(eager.diagnostics.getErrors().size(), lazy.diagnostics.getErrors().size());
+            Assert.assertEquals(eager.diagnostics.getWarnings().size(), lazy.diagnostics.getWarnings().size());
+        }
+        Assert.assertNull(lazyReader.getNextRecord());
+        Assert.assertTrue(records > 0);
+        eagerReader.close();
+        lazyReader.close();
+        eagerIn.close();
+        lazyIn.close();
+    }
+
+    @Test
+    public void test_warcheader_lazyfields_invalid() throws IOException {
+        String warc = "WARC/1.0\r\n"
+                + "WARC-Type: resource\r\n"
+                + "WARC-Record-ID: <urn:uuid:35f02b38-eb19-4f0d-86e4-bfe95815069c>\r\n"
+                + "WARC-Date: yesterday\r\n"
+                + "WARC-Target-URI: http://jwat.org/\r\n"
+                + "Content-Length: 4\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "jwat\r\n"
+                + "\r\n";
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(warc.getBytes()));
+        reader.setLazyFieldParsingEnabled(true);
+        WarcRecord record = reader.getNextRecord();
+        Assert.assertEquals(0, record.diagnostics.getErrors().size());
+        Assert.assertEquals("yesterday", record.header.warcDateStr);
+        Assert.assertNull(record.header.getWarcDate());
+        Assert.assertEquals(1, record.diagnostics.getErrors().size());
+        record.header.parseFields();
+        Assert.assertTrue(record.header.bMandatoryMissing);
+        Assert.assertEquals(2, record.diagnostics.getErrors().size());
+        Assert.assertNotNull(record.header.warcRecordIdUri);
+        Assert.assertNotNull(record.header.warcTargetUriUri);
+        reader.close();
+    }
+
+    @Test
+    public void test_warcheader_lazyfields_late() throws IOException {
+        String warc = "WARC/1.0\r\n"
+                + "WARC-Type: resource\r\n"
+                + "WARC-Record-ID: <urn:uuid:35f02b38-eb19-4f0d-86e4-bfe95815069c>\r\n"
+                + "WARC-Date: yesterday\r\n"
+                + "WARC-Target-URI: http://jwat.org/\r\n"
+                + "Content-Length: 4\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "jwat\r\n"
+                + "\r\n"
+                + "WARC/1.0\r\n"
+                + "WARC-Type: resource\r\n"
+                + "WARC-Record-ID: <urn:uuid:35f02b38-eb19-4f0d-86e4-bfe95815069d>\r\n"
+                + "Content-Length: 4\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "jwat\r\n"
+                + "\r\n";
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(warc.getBytes()));
+        reader.setLazyFieldParsingEnabled(true);
+        WarcRecord first = reader.getNextRecord();
+        Assert.assertFalse(first.header.bMandatoryMissing);
+        Assert.assertTrue(first.isCompliant());
+        Assert.assertTrue(reader.isCompliant());
+        /*
+         * Missing mandatory fields are reported while the header is read.
+         */
+        WarcRecord second = reader.getNextRecord();
+        Assert.assertTrue(second.header.bMandatoryMissing);
+        Assert.assertEquals(1, second.diagnostics.getErrors().size());
+        Assert.assertEquals(0, reader.errors);
+        /*
+         * Diagnoses of fields parsed after the record has been closed are
+         * reported to the reader.
+         */
+        Assert.assertNull(first.header.getWarcDate());
+        Assert.assertEquals(1, first.diagnostics.getErrors().size());
+        Assert.assertEquals(1, reader.errors);
+        Assert.assertFalse(first.isCompliant());
+        Assert.assertSame(second.diagnostics, reader.fieldParsers.diagnostics);
+        first.header.parseFields();
+        Assert.assertTrue(first.header.bMandatoryMissing);
+        Assert.assertEquals(2, first.diagnostics.getErrors().size());
+        Assert.assertEquals(2, reader.errors);
+        Assert.assertEquals(1, second.diagnostics.getErrors().size());
+        second.close();
+        Assert.assertEquals(3, reader.errors);
+        reader.close();
+    }
+
+}
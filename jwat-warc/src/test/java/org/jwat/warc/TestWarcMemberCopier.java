@@ -0,0 +1,204 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipReader;
+
+@RunWith(JUnit4.class)
+public class TestWarcMemberCopier {
+
+    public static byte[] createPayload(int id) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<100 + id * 50; ++i) {
+            sb.append("Payload of record ");
+            sb.append(id);
+            sb.append('\n');
+        }
+        return sb.toString().getBytes();
+    }
+
+    /**
+     * Write records and return the offsets of the members with the total
+     * length as the last element.
+     */
+    public static List<Long> writeRecords(File file, int records, boolean bSkipLength) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        WarcWriterCompressed writer = (WarcWriterCompressed)WarcWriterFactory.getWriter(out, 8192, true);
+        writer.setSkipLength(bSkipLength);
+        for (int id=0; id<records; ++id) {
+            byte[] payload = createPayload(id);
+            writer.writeHeader(TestBaseUtils.createRecord(writer, id, payload));
+            writer.writePayload(payload);
+            writer.closeRecord();
+        }
+        writer.close();
+        out.close();
+        List<Long> offsets = new ArrayList<Long>();
+        GzipReader reader = new GzipReader(new FileInputStream(file));
+        GzipEntry entry;
+        while ((entry = reader.getNextEntry()) != null) {
+            offsets.add(entry.getStartOffset());
+            entry.close();
+        }
+        reader.close();
+        offsets.add(file.length());
+        return offsets;
+    }
+
+    public static byte[] readAll(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        byte[] bytes = new byte[(int)raf.length()];
+        raf.readFully(bytes);
+        raf.close();
+        return bytes;
+    }
+
+    public static List<String> readTargetUris(byte[] bytes) throws IOException {
+        List<String> uris = new ArrayList<String>();
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(bytes));
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            uris.add(record.header.warcTargetUriStr);
+            int id = Integer.parseInt(record.header.warcTargetUriStr.substring(16));
+            Assert.assertArrayEquals(createPayload(id), readPayload(record));
+            record.close();
+            Assert.assertTrue(record.isCompliant());
+        }
+        reader.close();
+        return uris;
+    }
+
+    public static byte[] readPayload(WarcRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = record.getPayloadContent().read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void test_warcmembercopier() throws IOException {
+        boolean[] skipLengths = {true, false};
+        for (int i=0; i<skipLengths.length; ++i) {
+            File file = File.createTempFile("jwat-testwarcmembercopier-", ".warc.gz");
+            file.deleteOnExit();
+            List<Long> offsets = writeRecords(file, 10, skipLengths[i]);
+            byte[] fileBytes = readAll(file);
+
+            /*
+             * Filter.
+             */
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcMemberCopier copier = new WarcMemberCopier(channel, 0);
+            long copied = copier.copy(new WarcRecordFilter() {
+                public boolean accept(WarcHeader header) {
+                    return Integer.parseInt(header.warcTargetUriStr.substring(16)) % 2 == 1;
+                }
+            }, Channels.newChannel(out));
+            copier.close();
+            Assert.assertEquals(5, copier.getRecordsCopied());
+            Assert.assertEquals(5, copier.getRecordsDropped());
+            Assert.assertEquals(copied, copier.getBytesCopied());
+            Assert.assertEquals(copied, out.size());
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int id=1; id<10; id+=2) {
+                long start = offsets.get(id);
+                expected.write(fileBytes, (int)start, (int)(offsets.get(id + 1) - start));
+            }
+            Assert.assertArrayEquals(expected.toByteArray(), out.toByteArray());
+            List<String> uris = readTargetUris(out.toByteArray());
+            Assert.assertEquals(5, uris.size());
+            for (int j=0; j<uris.size(); ++j) {
+                Assert.assertEquals("http://jwat.org/" + (j * 2 + 1), uris.get(j));
+            }
+
+            /*
+             * Split into a file channel and a stream channel.
+             */
+            File splitFile = File.createTempFile("jwat-testwarcmembercopier-", ".warc.gz");
+            splitFile.deleteOnExit();
+            FileOutputStream splitOut = new FileOutputStream(splitFile);
+            out = new ByteArrayOutputStream();
+            copier = new WarcMemberCopier(channel, 0);
+            int records = 0;
+            WarcRecord record;
+            while ((record = copier.getNextRecord()) != null) {
+                Assert.assertEquals(offsets.get(records).longValue(), copier.getStartOffset());
+                Assert.assertEquals("http://jwat.org/" + records, record.header.warcTargetUriStr);
+                if (records < 4) {
+                    copier.transferRecord(splitOut.getChannel());
+                } else {
+                    copier.transferRecord(Channels.newChannel(out));
+                }
+                ++records;
+            }
+            Assert.assertNull(copier.getNextRecord());
+            copier.close();
+            splitOut.close();
+            Assert.assertEquals(10, records);
+            Assert.assertEquals(fileBytes.length, copier.getBytesCopied());
+            byte[] splitBytes = readAll(splitFile);
+            Assert.assertEquals(offsets.get(4).longValue(), splitBytes.length);
+            Assert.assertEquals(4, readTargetUris(splitBytes).size());
+            Assert.assertEquals(6, readTargetUris(out.toByteArray()).size());
+
+            /*
+             * Merge.
+             */
+            out = new ByteArrayOutputStream();
+            for (int j=0; j<2; ++j) {
+                copier = new WarcMemberCopier(channel, offsets.get(8));
+                copier.copy(null, Channels.newChannel(out));
+                copier.close();
+            }
+            uris = readTargetUris(out.toByteArray());
+            Assert.assertEquals(4, uris.size());
+            Assert.assertEquals("http://jwat.org/9", uris.get(3));
+            Assert.assertEquals(0, channel.position());
+            raf.close();
+
+            try {
+                new WarcMemberCopier(null, 0);
+                Assert.fail("Exception expected!");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+}
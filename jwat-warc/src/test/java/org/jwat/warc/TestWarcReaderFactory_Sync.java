@@ -0,0 +1,186 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RandomAccessFileInputStream;
+
+@RunWith(JUnit4.class)
+public class TestWarcReaderFactory_Sync {
+
+    public static final String FNAME = "IAH-20080430204825-00000-blackbook.warc.gz";
+
+    public File copyResource(String resource, boolean bUncompress) throws IOException {
+        File file = File.createTempFile("jwat-testwarcreaderfactory-sync-", bUncompress ? ".warc" : ".warc.gz");
+        file.deleteOnExit();
+        InputStream in = this.getClass().getClassLoader().getResourceAsStream(resource);
+        if (bUncompress) {
+            in = new GZIPInputStream(in);
+        }
+        OutputStream out = new FileOutputStream(file);
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        out.close();
+        in.close();
+        return file;
+    }
+
+    /**
+     * Uncompressed WARC file with payloads containing lines which look like
+     * the start of a record, but whose Content-Length does not lead to
+     * another record. Embedded records which do chain are indistinguishable
+     * from real records.
+     */
+    public static File createTrickyFile() throws IOException {
+        File file = File.createTempFile("jwat-testwarcreaderfactory-sync-", ".warc");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        for (int id=0; id<20; ++id) {
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<id * 10; ++i) {
+                sb.append("line ");
+                sb.append(i);
+                sb.append("\r\nWARC/1.0\r\nContent-Length: ");
+                sb.append(i + 1000000);
+                sb.append("\r\n\r\n");
+            }
+            byte[] payload = sb.toString().getBytes();
+            writer.writeHeader(TestBaseUtils.createRecord(writer, id, payload));
+            writer.writePayload(payload);
+            writer.closeRecord();
+        }
+        writer.close();
+        out.close();
+        return file;
+    }
+
+    public static List<Long> readOffsets(File file) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(file);
+        WarcReader reader = WarcReaderFactory.getReader(in, 8192);
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            offsets.add(record.getStartOffset());
+        }
+        reader.close();
+        in.close();
+        return offsets;
+    }
+
+    public static long expectedBoundary(List<Long> offsets, long offset, long length) {
+        for (int i=0; i<offsets.size(); ++i) {
+            if (offsets.get(i) >= offset) {
+                return offsets.get(i);
+            }
+        }
+        return length;
+    }
+
+    @Test
+    public void test_warcreaderfactory_sync() throws IOException {
+        File[] files = {
+                copyResource(FNAME, false),
+                copyResource(FNAME, true),
+                createTrickyFile()
+        };
+        for (int f=0; f<files.length; ++f) {
+            List<Long> offsets = readOffsets(files[f]);
+            Assert.assertTrue(offsets.size() > 10);
+            RandomAccessFile raf = new RandomAccessFile(files[f], "r");
+            long length = raf.length();
+            /*
+             * Boundaries.
+             */
+            long offset;
+            long next;
+            for (int i=0; i<offsets.size(); i+=3) {
+                offset = offsets.get(i);
+                next = (i + 1 < offsets.size()) ? offsets.get(i + 1) : length;
+                Assert.assertEquals(offset, WarcReaderFactory.findRecordBoundary(raf, offset));
+                Assert.assertEquals(next, WarcReaderFactory.findRecordBoundary(raf, offset + 1));
+                Assert.assertEquals(next, WarcReaderFactory.findRecordBoundary(raf, (offset + next) / 2 + 1));
+            }
+            Assert.assertEquals(length, WarcReaderFactory.findRecordBoundary(raf, length));
+            Assert.assertEquals(length, WarcReaderFactory.findRecordBoundary(raf, length + 10));
+            /*
+             * Splits.
+             */
+            int[] splitCounts = {1, 2, 3, 7, 16};
+            for (int s=0; s<splitCounts.length; ++s) {
+                long[] boundaries = WarcReaderFactory.planSplits(raf, splitCounts[s]);
+                Assert.assertEquals(splitCounts[s] + 1, boundaries.length);
+                Assert.assertEquals(0, boundaries[0]);
+                Assert.assertEquals(length, boundaries[splitCounts[s]]);
+                List<Long> splitOffsets = new ArrayList<Long>();
+                for (int i=0; i<splitCounts[s]; ++i) {
+                    Assert.assertTrue(boundaries[i] <= boundaries[i + 1]);
+                    Assert.assertEquals(boundaries[i], expectedBoundary(offsets, boundaries[i], length));
+                    if (boundaries[i] == boundaries[i + 1]) {
+                        continue;
+                    }
+                    raf.seek(boundaries[i]);
+                    WarcReader reader = WarcReaderFactory.getReader(new RandomAccessFileInputStream(raf), 8192);
+                    WarcRecord record;
+                    while ((record = reader.getNextRecord()) != null
+                            && boundaries[i] + record.getStartOffset() < boundaries[i + 1]) {
+                        splitOffsets.add(boundaries[i] + record.getStartOffset());
+                    }
+                    reader.close();
+                }
+                Assert.assertEquals(offsets, splitOffsets);
+            }
+            raf.close();
+        }
+        try {
+            WarcReaderFactory.findRecordBoundary(null, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        RandomAccessFile raf = new RandomAccessFile(files[0], "r");
+        try {
+            WarcReaderFactory.findRecordBoundary(raf, -1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            WarcReaderFactory.planSplits(raf, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        raf.close();
+    }
+
+}
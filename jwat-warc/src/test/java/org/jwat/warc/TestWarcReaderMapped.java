@@ -0,0 +1,179 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.MappedPushBackInputStream;
+
+@RunWith(JUnit4.class)
+public class TestWarcReaderMapped {
+
+    @Test
+    public void test_warcreadermapped() throws IOException {
+        TestWarcReaderFactory_Sync sync = new TestWarcReaderFactory_Sync();
+        File file = sync.copyResource(TestWarcReaderFactory_Sync.FNAME, true);
+        List<Long> offsets = TestWarcReaderFactory_Sync.readOffsets(file);
+        List<byte[]> payloads = readPayloads(file);
+        Assert.assertEquals(offsets.size(), payloads.size());
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // Default region, small regions forcing remaps and a start offset.
+            int[] regionSizes = {MappedPushBackInputStream.DEFAULT_REGION_SIZE, 8192, 4096};
+            for (int r=0; r<regionSizes.length; ++r) {
+                for (int s=0; s<2; ++s) {
+                    int first = s * (offsets.size() / 2);
+                    WarcReaderMapped reader = WarcReaderFactory.getReaderMapped(raf.getChannel(), offsets.get(first), regionSizes[r]);
+                    Assert.assertFalse(reader.isCompressed());
+                    Assert.assertNull(reader.getPayloadBuffer());
+                    List<Long> iterated = new ArrayList<Long>();
+                    int idx = first;
+                    WarcRecord record;
+                    while ((record = reader.getNextRecord()) != null) {
+                        iterated.add(record.getStartOffset());
+                        Assert.assertTrue(record.isCompliant());
+                        byte[] expected = payloads.get(idx);
+                        ByteBuffer buffer = reader.getPayloadBuffer();
+                        if (expected != null) {
+                            Assert.assertNotNull(buffer);
+                            Assert.assertEquals(record.getStartOffset() + record.header.headerBytes.length, record.getPayloadOffset());
+                            byte[] bytes = new byte[buffer.remaining()];
+                            buffer.get(bytes);
+                            Assert.assertArrayEquals(expected, bytes);
+                            // Alternate between reading and skipping payloads.
+                            if ((idx & 1) == 0) {
+                                Assert.assertArrayEquals(expected, readFully(record.getPayload().getInputStreamComplete()));
+                            }
+                        } else {
+                            Assert.assertNull(buffer);
+                        }
+                        ++idx;
+                    }
+                    Assert.assertEquals(offsets.subList(first, offsets.size()), iterated);
+                    Assert.assertEquals(raf.length(), reader.getConsumed());
+                    reader.close();
+                    Assert.assertNull(reader.getPayloadBuffer());
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void test_warcreadermapped_truncated() throws IOException {
+        TestWarcReaderFactory_Sync sync = new TestWarcReaderFactory_Sync();
+        File file = sync.copyResource(TestWarcReaderFactory_Sync.FNAME, true);
+        List<Long> offsets = TestWarcReaderFactory_Sync.readOffsets(file);
+        List<byte[]> payloads = readPayloads(file);
+        int last = offsets.size() - 1;
+        byte[] expected = payloads.get(last);
+        Assert.assertTrue(expected.length > 1);
+
+        /*
+         * Cut the file in the middle of the payload of the last record.
+         */
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 4 - expected.length / 2);
+        long truncatedLength = raf.length();
+        try {
+            WarcReaderMapped reader = WarcReaderFactory.getReaderMapped(raf.getChannel(), offsets.get(last), 4096);
+            WarcRecord record = reader.getNextRecord();
+            Assert.assertNotNull(record);
+            ByteBuffer buffer = reader.getPayloadBuffer();
+            Assert.assertEquals(truncatedLength - record.getPayloadOffset(), buffer.remaining());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            for (int i=0; i<bytes.length; ++i) {
+                Assert.assertEquals(expected[i], bytes[i]);
+            }
+            Assert.assertNull(reader.getNextRecord());
+            Assert.assertFalse(reader.isCompliant());
+            reader.close();
+
+            /*
+             * Closed stream.
+             */
+            MappedPushBackInputStream in = new MappedPushBackInputStream(raf.getChannel(), 0);
+            Assert.assertEquals(truncatedLength, in.slice(0, truncatedLength + 10).remaining());
+            Assert.assertEquals(0, in.slice(truncatedLength + 10, 10).remaining());
+            in.close();
+            try {
+                in.read();
+                Assert.fail("Exception expected!");
+            } catch (IOException e) {
+            }
+            try {
+                in.read(bytes, 0, 1);
+                Assert.fail("Exception expected!");
+            } catch (IOException e) {
+            }
+            try {
+                in.slice(0, 1);
+                Assert.fail("Exception expected!");
+            } catch (IOException e) {
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    public static List<byte[]> readPayloads(File file) throws IOException {
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        InputStream in = new FileInputStream(file);
+        try {
+            WarcReader reader = WarcReaderFactory.getReaderUncompressed(in);
+            WarcRecord record;
+            while ((record = reader.getNextRecord()) != null) {
+                if (record.getPayload() != null) {
+                    payloads.add(readFully(record.getPayload().getInputStreamComplete()));
+                } else {
+                    payloads.add(null);
+                }
+            }
+            reader.close();
+        } finally {
+            in.close();
+        }
+        return payloads;
+    }
+
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisHistogram;
+import org.jwat.common.DiagnosisType;
+
+@RunWith(JUnit4.class)
+public class TestWarcReader_DiagnosticsSink {
+
+    @Test
+    public void test_warcreader_diagnosticssink() throws IOException {
+        String[] files = {
+                "invalid-warcfile-fields-invalidformat.warc",
+                "invalid-warcfile-fields-missing.warc",
+                "valid-warcfile-fields-warcinfo.warc"
+        };
+        for (int f=0; f<files.length; ++f) {
+            InputStream in = this.getClass().getClassLoader().getResourceAsStream(files[f]);
+            WarcReader reader = WarcReaderFactory.getReader(in);
+            Assert.assertNull(reader.getDiagnosticsSink());
+            DiagnosisHistogram histogram = new DiagnosisHistogram();
+            reader.setDiagnosticsSink(histogram);
+            Assert.assertEquals(histogram, reader.getDiagnosticsSink());
+            int errors = 0;
+            int warnings = 0;
+            int[] typeErrors = new int[DiagnosisType.values().length];
+            WarcRecord record;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                errors += record.diagnostics.getErrorCount();
+                warnings += record.diagnostics.getWarningCount();
+                for (Diagnosis d : record.diagnostics.getErrors()) {
+                    ++typeErrors[d.type.ordinal()];
+                }
+            }
+            errors += reader.diagnostics.getErrorCount();
+            warnings += reader.diagnostics.getWarningCount();
+            for (Diagnosis d : reader.diagnostics.getErrors()) {
+                ++typeErrors[d.type.ordinal()];
+            }
+            reader.close();
+            in.close();
+            Assert.assertEquals(errors, reader.errors);
+            Assert.assertEquals(warnings, reader.warnings);
+            Assert.assertEquals(errors, histogram.getErrors());
+            Assert.assertEquals(warnings, histogram.getWarnings());
+            for (DiagnosisType type : DiagnosisType.values()) {
+                Assert.assertEquals(typeErrors[type.ordinal()], histogram.getErrorCount(type));
+            }
+            Assert.assertEquals(reader.isCompliant(), errors == 0 && warnings == 0);
+            Assert.assertEquals(f == files.length - 1, reader.isCompliant());
+        }
+    }
+
+    @Test
+    public void test_warcreader_diagnosticssink_only() throws IOException {
+        String[] files = {
+                "invalid-warcfile-fields-invalidformat.warc",
+                "invalid-warcfile-fields-missing.warc",
+                "valid-warcfile-fields-warcinfo.warc"
+        };
+        for (int f=0; f<files.length; ++f) {
+            DiagnosisHistogram[] histograms = new DiagnosisHistogram[2];
+            boolean[] compliance = new boolean[2];
+            for (int k=0; k<2; ++k) {
+                InputStream in = this.getClass().getClassLoader().getResourceAsStream(files[f]);
+                WarcReader reader = WarcReaderFactory.getReader(in);
+                Assert.assertTrue(reader.isKeepDiagnoses());
+                histograms[k] = new DiagnosisHistogram();
+                reader.setDiagnosticsSink(histograms[k]);
+                reader.setKeepDiagnoses(k == 0);
+                Assert.assertEquals(k == 0, reader.isKeepDiagnoses());
+                WarcRecord record;
+                while ((record = reader.getNextRecord()) != null) {
+                    record.close();
+                    if (k == 1) {
+                        // Only the sink receives the diagnoses.
+                        Assert.assertEquals(0, record.diagnostics.getErrorCount());
+                        Assert.assertEquals(0, record.diagnostics.getWarningCount());
+                    }
+                }
+                if (k == 1) {
+                    Assert.assertEquals(0, reader.diagnostics.getErrorCount());
+                    Assert.assertEquals(0, reader.diagnostics.getWarningCount());
+                }
+                reader.close();
+                in.close();
+                Assert.assertEquals(histograms[k].getErrors(), reader.errors);
+                Assert.assertEquals(histograms[k].getWarnings(), reader.warnings);
+                compliance[k] = reader.isCompliant();
+            }
+            Assert.assertEquals(compliance[0], compliance[1]);
+            Assert.assertEquals(histograms[0].getErrors(), histograms[1].getErrors());
+            Assert.assertEquals(histograms[0].getWarnings(), histograms[1].getWarnings());
+            Assert.assertEquals(histograms[0].toString(), histograms[1].toString());
+        }
+    }
+
+}
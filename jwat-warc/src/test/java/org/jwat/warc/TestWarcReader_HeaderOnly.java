@@ -0,0 +1,132 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RandomAccessFileInputStream;
+
+@RunWith(JUnit4.class)
+public class TestWarcReader_HeaderOnly {
+
+    public static final int RECORDS = 16;
+
+    public static final int PAYLOAD_SIZE = 256 * 1024;
+
+    /**
+     * <code>RandomAccessFileInputStream</code> counting the bytes read.
+     */
+    public static class CountingInputStream extends RandomAccessFileInputStream {
+        public long read;
+        public CountingInputStream(RandomAccessFile raf) {
+            super(raf);
+        }
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                ++read;
+            }
+            return b;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                read += n;
+            }
+            return n;
+        }
+        @Override
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+    }
+
+    public static File writeRecords(boolean bCompressed) throws IOException {
+        File file = File.createTempFile("jwat-headeronly-", bCompressed ? ".warc.gz" : ".warc");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        WarcWriter writer = WarcWriterFactory.getWriter(out, 8192, bCompressed);
+        if (bCompressed) {
+            ((WarcWriterCompressed)writer).setSkipLength(true);
+        }
+        Random random = new Random(42);
+        for (int id=0; id<RECORDS; ++id) {
+            byte[] payload = new byte[PAYLOAD_SIZE];
+            random.nextBytes(payload);
+            writer.writeHeader(TestBaseUtils.createRecord(writer, id, payload));
+            writer.writePayload(payload);
+            writer.closeRecord();
+        }
+        writer.close();
+        out.close();
+        return file;
+    }
+
+    public static long scan(File file, boolean bCompressed, boolean bHeaderOnly) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        CountingInputStream in = new CountingInputStream(raf);
+        WarcReader reader;
+        if (bCompressed) {
+            reader = WarcReaderFactory.getReaderCompressed(in, 8192);
+        } else {
+            reader = WarcReaderFactory.getReaderUncompressed(in, 8192);
+        }
+        reader.setBlockDigestEnabled(true);
+        reader.setBlockDigestAlgorithm("sha1");
+        Assert.assertFalse(reader.getHeaderOnlyEnabled());
+        reader.setHeaderOnlyEnabled(bHeaderOnly);
+        Assert.assertEquals(bHeaderOnly, reader.getHeaderOnlyEnabled());
+        WarcRecord record;
+        int records = 0;
+        while ((record = reader.getNextRecord()) != null) {
+            Assert.assertEquals("http://jwat.org/" + records, record.header.warcTargetUriStr);
+            Assert.assertEquals(Long.valueOf(PAYLOAD_SIZE), record.header.contentLength);
+            ++records;
+        }
+        reader.close();
+        Assert.assertTrue(reader.isCompliant());
+        Assert.assertEquals(RECORDS, records);
+        Assert.assertEquals(file.length(), reader.getConsumed());
+        raf.close();
+        return in.read;
+    }
+
+    @Test
+    public void test_warcreader_headeronly() throws IOException {
+        boolean[] compressed = {false, true};
+        for (int i=0; i<compressed.length; ++i) {
+            File file = writeRecords(compressed[i]);
+            Assert.assertEquals(file.length(), scan(file, compressed[i], false));
+            long read = scan(file, compressed[i], true);
+            Assert.assertTrue(read < RECORDS * 32 * 1024);
+            Assert.assertTrue(read < file.length() / 8);
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.ContentType;
+import org.jwat.common.ParsedValueCache;
+import org.jwat.common.UriProfile;
+
+@RunWith(JUnit4.class)
+public class TestWarcReader_ParsedValueCache {
+
+    public static List<Object> readValues(File file, ParsedValueCache cache) throws IOException {
+        List<Object> values = new ArrayList<Object>();
+        InputStream in = new FileInputStream(file);
+        WarcReader reader = WarcReaderFactory.getReader(in, 8192);
+        Assert.assertNull(reader.getParsedValueCache());
+        reader.setParsedValueCache(cache);
+        Assert.assertEquals(cache, reader.getParsedValueCache());
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            values.add(record.header.warcRecordIdUri);
+            values.add(record.header.warcTargetUriUri);
+            values.add(record.header.warcWarcinfoIdUri);
+            if (record.header.contentType != null) {
+                values.add(record.header.contentType.toString());
+            } else {
+                values.add(null);
+            }
+            values.add(record.diagnostics.getErrors().size());
+            values.add(record.diagnostics.getWarnings().size());
+        }
+        values.add(reader.isCompliant());
+        reader.close();
+        in.close();
+        return values;
+    }
+
+    @Test
+    public void test_warcreader_parsedvaluecache() throws IOException {
+        TestWarcReaderFactory_Sync sync = new TestWarcReaderFactory_Sync();
+        File file = sync.copyResource(TestWarcReaderFactory_Sync.FNAME, false);
+        List<Object> expected = readValues(file, null);
+        ParsedValueCache cache = new ParsedValueCache();
+        Assert.assertEquals(expected, readValues(file, cache));
+        long misses = cache.getUriMisses();
+        Assert.assertTrue(misses > 0);
+        Assert.assertTrue(cache.getContentTypeCache().getHits() > 0);
+        Assert.assertTrue(cache.getContentTypeCache().size() < cache.getContentTypeCache().getMisses() + cache.getContentTypeCache().getHits());
+        // Second pass with a shared cache only hits.
+        Assert.assertEquals(expected, readValues(file, cache));
+        Assert.assertEquals(misses, cache.getUriMisses());
+        Assert.assertTrue(cache.getUriHits() >= misses);
+        Assert.assertTrue(cache.getUriCache(UriProfile.RFC3986).size() > 0);
+        // Cached content-types are shared and unmodifiable.
+        ContentType contentType = cache.getContentType("text/html; charset=UTF-8");
+        Assert.assertSame(contentType, cache.getContentType("text/html; charset=UTF-8"));
+        Assert.assertEquals(ContentType.parseContentType("text/html; charset=UTF-8"), contentType);
+        Assert.assertEquals("UTF-8", contentType.getParameter("charset"));
+        try {
+            contentType.setParameter("charset", "ISO-8859-1");
+            Assert.fail("Exception expected!");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            contentType.parameters.put("charset", "ISO-8859-1");
+            Assert.fail("Exception expected!");
+        } catch (UnsupportedOperationException e) {
+        }
+        Assert.assertEquals("UTF-8", contentType.getParameter("charset"));
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcReader_RecordFilter {
+
+    public static final WarcRecordFilter RESPONSE_FILTER = new WarcRecordFilter() {
+        @Override
+        public boolean accept(WarcHeader header) {
+            return header.warcTypeIdx != null && header.warcTypeIdx == WarcConstants.RT_IDX_RESPONSE;
+        }
+    };
+
+    public static List<Long> readAccepted(File file, WarcRecordFilter filter) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(file);
+        WarcReader reader = WarcReaderFactory.getReader(in, 8192);
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            if (filter.accept(record.header)) {
+                offsets.add(record.getStartOffset());
+            }
+        }
+        reader.close();
+        in.close();
+        return offsets;
+    }
+
+    public static List<Long> readOffsets(File file, WarcRecordFilter filter, boolean bLazy) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(file);
+        WarcReader reader = WarcReaderFactory.getReader(in, 8192);
+        reader.setBlockDigestEnabled(true);
+        reader.setPayloadDigestEnabled(true);
+        reader.setLazyFieldParsingEnabled(bLazy);
+        Assert.assertNull(reader.getRecordFilter());
+        reader.setRecordFilter(filter);
+        Assert.assertEquals(filter, reader.getRecordFilter());
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            offsets.add(record.getStartOffset());
+            if (filter != null) {
+                Assert.assertTrue(filter.accept(record.header));
+                Assert.assertNotNull(record.getPayload());
+            }
+        }
+        Assert.assertTrue(reader.isCompliant());
+        reader.close();
+        in.close();
+        return offsets;
+    }
+
+    @Test
+    public void test_warcreader_recordfilter() throws IOException {
+        TestWarcReaderFactory_Sync sync = new TestWarcReaderFactory_Sync();
+        File[] files = {
+                sync.copyResource(TestWarcReaderFactory_Sync.FNAME, false),
+                sync.copyResource(TestWarcReaderFactory_Sync.FNAME, true)
+        };
+        for (int f=0; f<files.length; ++f) {
+            List<Long> all = readOffsets(files[f], null, false);
+            List<Long> expected = readAccepted(files[f], RESPONSE_FILTER);
+            List<Long> accepted = readOffsets(files[f], RESPONSE_FILTER, false);
+            Assert.assertTrue(expected.size() > 0);
+            Assert.assertTrue(expected.size() < all.size());
+            Assert.assertTrue(all.containsAll(expected));
+            Assert.assertEquals(expected, accepted);
+            Assert.assertEquals(expected, readOffsets(files[f], RESPONSE_FILTER, true));
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcRecordSplit {
+
+    @Test
+    public void test_warcrecordsplit() throws Exception {
+        TestWarcReaderFactory_Sync sync = new TestWarcReaderFactory_Sync();
+        File[] files = {
+                sync.copyResource(TestWarcReaderFactory_Sync.FNAME, false),
+                sync.copyResource(TestWarcReaderFactory_Sync.FNAME, true)
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int f=0; f<files.length; ++f) {
+                List<Long> offsets = TestWarcReaderFactory_Sync.readOffsets(files[f]);
+                RandomAccessFile raf = new RandomAccessFile(files[f], "r");
+
+                /*
+                 * Iterate the whole file and splits of it.
+                 */
+                WarcRecordSplit whole = new WarcRecordSplit(raf);
+                Assert.assertEquals(raf.length(), whole.getLength());
+                List<Long> iterated = new ArrayList<Long>();
+                for (WarcRecord record : whole) {
+                    iterated.add(record.getStartOffset());
+                }
+                Assert.assertNull(whole.getIteratorExceptionThrown());
+                Assert.assertEquals(offsets, iterated);
+
+                WarcRecordSplit prefix = whole.trySplit();
+                Assert.assertNotNull(prefix);
+                Assert.assertEquals(0, prefix.getStart());
+                Assert.assertEquals(prefix.getEnd(), whole.getStart());
+                Assert.assertEquals(raf.length(), whole.getEnd());
+                Assert.assertTrue(offsets.contains(whole.getStart()));
+                iterated.clear();
+                for (WarcRecord record : prefix) {
+                    iterated.add(record.getStartOffset());
+                }
+                for (WarcRecord record : whole) {
+                    iterated.add(record.getStartOffset());
+                }
+                Assert.assertEquals(offsets, iterated);
+
+                // Split down to single records.
+                WarcRecordSplit single = new WarcRecordSplit(raf, offsets.get(0), offsets.get(1));
+                Assert.assertNull(single.trySplit());
+
+                /*
+                 * Concurrent processing.
+                 */
+                int[] splitCounts = {1, 3, 8};
+                for (int s=0; s<splitCounts.length; ++s) {
+                    List<WarcRecordSplit> splits = WarcRecordSplit.split(raf, splitCounts[s]);
+                    Assert.assertTrue(splits.size() <= splitCounts[s]);
+                    final List<Long> handled = Collections.synchronizedList(new ArrayList<Long>());
+                    WarcRecordSplit.processRecords(splits, executor, new WarcRecordHandler() {
+                        public void handleRecord(WarcRecord record) throws IOException {
+                            handled.add(record.getStartOffset());
+                        }
+                    });
+                    Collections.sort(handled);
+                    Assert.assertEquals(offsets, handled);
+                }
+
+                /*
+                 * Exceptions from handlers are passed on.
+                 */
+                try {
+                    WarcRecordSplit.processRecords(WarcRecordSplit.split(raf, 4), executor, new WarcRecordHandler() {
+                        public void handleRecord(WarcRecord record) throws IOException {
+                            throw new IOException("handler");
+                        }
+                    });
+                    Assert.fail("Exception expected!");
+                } catch (IOException e) {
+                    Assert.assertEquals("handler", e.getMessage());
+                }
+
+                /*
+                 * The other splits have stopped when a failure is thrown.
+                 */
+                final AtomicInteger calls = new AtomicInteger();
+                try {
+                    WarcRecordSplit.processRecords(WarcRecordSplit.split(raf, 4), executor, new WarcRecordHandler() {
+                        public void handleRecord(WarcRecord record) throws IOException {
+                            if (calls.incrementAndGet() == 1) {
+                                throw new IllegalStateException("handler");
+                            }
+                            try {
+                                Thread.sleep(10);
+                            } catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                        }
+                    });
+                    Assert.fail("Exception expected!");
+                } catch (IllegalStateException e) {
+                    Assert.assertEquals("handler", e.getMessage());
+                }
+                int callCount = calls.get();
+                Thread.sleep(50);
+                Assert.assertEquals(callCount, calls.get());
+                raf.close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            new WarcRecordSplit(null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -389,4 +389,45 @@ public class TestWarcWriter_Headers {
         }
     }
 
+    @Test
+    public void test_warcwriter_fractional_dates() throws IOException {
+        String dateStr = "2010-06-23T13:33:21.123456Z";
+        String refersToDateStr = "2010-06-23T12:23:11.5Z";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        WarcRecord record = WarcRecord.createRecord(writer);
+        WarcHeader header = record.header;
+        header.addHeader(WarcConstants.FN_WARC_DATE, dateStr);
+        header.addHeader(WarcConstants.FN_WARC_REFERS_TO_DATE, refersToDateStr);
+        Assert.assertNotNull(header.warcDate);
+        Assert.assertNotNull(header.warcRefersToDate);
+        String headerStr = new String(writer.getHeaderBytes(record), "ISO-8859-1");
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_DATE + ": " + dateStr + "\r\n"));
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_REFERS_TO_DATE + ": " + refersToDateStr + "\r\n"));
+        /*
+         * A date object which differs from the string is formatted.
+         */
+        header.warcDate = WarcDateParser.getDate("2011-01-01T00:00:00Z");
+        headerStr = new String(writer.getHeaderBytes(record), "ISO-8859-1");
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_DATE + ": 2011-01-01T00:00:00Z\r\n"));
+        /*
+         * Non-canonical strings and fractions which differ from the date are
+         * replaced by the formatted date.
+         */
+        header.warcDateStr = "2011-01-01t00:00:00z";
+        headerStr = new String(writer.getHeaderBytes(record), "ISO-8859-1");
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_DATE + ": 2011-01-01T00:00:00Z\r\n"));
+        header.warcDateStr = "2011-01-01T00:00:00.000Z";
+        headerStr = new String(writer.getHeaderBytes(record), "ISO-8859-1");
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_DATE + ": 2011-01-01T00:00:00.000Z\r\n"));
+        header.warcDate = WarcDateParser.getDate("2011-01-01T00:00:00.25Z");
+        header.warcDateStr = "2011-01-01T00:00:00.2Z";
+        headerStr = new String(writer.getHeaderBytes(record), "ISO-8859-1");
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_DATE + ": 2011-01-01T00:00:00Z\r\n"));
+        header.warcDateStr = "2011-01-01T00:00:00.2500001Z";
+        headerStr = new String(writer.getHeaderBytes(record), "ISO-8859-1");
+        Assert.assertTrue(headerStr.contains(WarcConstants.FN_WARC_DATE + ": 2011-01-01T00:00:00.2500001Z\r\n"));
+        writer.close();
+    }
+
 }
@@ -0,0 +1,188 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.Payload;
+import org.jwat.gzip.GzipCompressionStats;
+import org.jwat.gzip.GzipEntry;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriter_Parallel {
+
+    @Test
+    public void test_warcwriter_parallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final WarcWriterCompressed writer = (WarcWriterCompressed)WarcWriterFactory.getWriter(out, 8192, true);
+            Assert.assertFalse(writer.isParallelCompression());
+            try {
+                writer.submitRecord(TestBaseUtils.createRecord(writer, 0, new byte[0]), new byte[0]);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            writer.setSkipLength(true);
+            writer.setParallelCompression(executor, 4);
+            Assert.assertTrue(writer.isParallelCompression());
+            try {
+                writer.setParallelCompression(executor, 4);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            try {
+                writer.writeHeader(TestBaseUtils.createRecord(writer, 0, new byte[0]));
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            try {
+                writer.writeRawHeader(new byte[0], null);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+
+            final int producers = 4;
+            final int perProducer = 25;
+            final Map<Integer, Future<GzipEntry>> futures = new HashMap<Integer, Future<GzipEntry>>();
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            Thread[] threads = new Thread[producers];
+            for (int t=0; t<producers; ++t) {
+                final int producer = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i=0; i<perProducer; ++i) {
+                                int id = producer * perProducer + i;
+                                byte[] payload = ("Payload of record " + id).getBytes();
+                                Future<GzipEntry> future = writer.submitRecord(TestBaseUtils.createRecord(writer, id, payload), payload);
+                                synchronized (futures) {
+                                    futures.put(id, future);
+                                }
+                            }
+                        } catch (Throwable t) {
+                            synchronized (failures) {
+                                failures.add(t);
+                            }
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t=0; t<producers; ++t) {
+                threads[t].join();
+            }
+            Assert.assertEquals(0, failures.size());
+            writer.flushRecords();
+            GzipCompressionStats stats = writer.getCompressionStats();
+            Assert.assertEquals(producers * perProducer, stats.getEntries());
+            Assert.assertTrue(stats.getUncompressedBytes() > 0);
+            Assert.assertTrue(stats.getCompressedBytes() > 0);
+
+            /*
+             * Content-Length mismatch.
+             */
+            byte[] payload = "mismatch".getBytes();
+            WarcRecord record = TestBaseUtils.createRecord(writer, 1000, new byte[1]);
+            try {
+                writer.submitRecord(record, payload);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            Assert.assertEquals(1, record.header.diagnostics.getErrors().size());
+            writer.close();
+
+            /*
+             * Read back sequentially and at the offsets returned.
+             */
+            byte[] warcBytes = out.toByteArray();
+            WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(warcBytes));
+            Map<String, Long> offsets = new HashMap<String, Long>();
+            while ((record = reader.getNextRecord()) != null) {
+                Assert.assertTrue(record.isCompliant());
+                offsets.put(record.header.warcTargetUriStr, record.getStartOffset());
+            }
+            Assert.assertTrue(reader.isCompliant());
+            reader.close();
+            Assert.assertEquals(producers * perProducer, offsets.size());
+            long length = 0;
+            GzipEntry entry;
+            for (int id=0; id<producers * perProducer; ++id) {
+                entry = futures.get(id).get();
+                Assert.assertEquals(offsets.get("http://jwat.org/" + id).longValue(), entry.getStartOffset());
+                Assert.assertEquals(entry.consumed, entry.skipLength);
+                length += entry.consumed;
+                reader = WarcReaderFactory.getReaderCompressed();
+                record = reader.getNextRecordFrom(new ByteArrayInputStream(warcBytes,
+                        (int)entry.getStartOffset(), (int)entry.consumed), entry.getStartOffset());
+                Assert.assertEquals("http://jwat.org/" + id, record.header.warcTargetUriStr);
+                Payload recordPayload = record.getPayload();
+                byte[] content = new byte[(int)recordPayload.getTotalLength()];
+                int pos = 0;
+                int read;
+                while (pos < content.length && (read = recordPayload.getInputStream().read(content, pos, content.length - pos)) != -1) {
+                    pos += read;
+                }
+                Assert.assertEquals("Payload of record " + id, new String(content));
+                reader.close();
+            }
+            Assert.assertEquals(warcBytes.length, length);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_warcwriter_parallel_state() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriterCompressed writer = (WarcWriterCompressed)WarcWriterFactory.getWriter(out, true);
+            byte[] payload = new byte[0];
+            writer.writeHeader(TestBaseUtils.createRecord(writer, 0, payload));
+            try {
+                writer.setParallelCompression(executor, 4);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            try {
+                writer.flushRecords();
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            writer.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Inflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.gzip.GzipWriter;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriter_SyncFlush {
+
+    @Test
+    public void test_warcwriter_syncflush() throws Exception {
+        if (!GzipWriter.isSyncFlushSupported()) {
+            return;
+        }
+        byte[] payload = new byte[50000];
+        for (int i=0; i<payload.length; ++i) {
+            payload[i] = (byte)('a' + (i % 17));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriterCompressed writer = (WarcWriterCompressed)WarcWriterFactory.getWriter(out, 8192, true);
+        writer.setSyncFlush(10000, 0);
+        writer.writeHeader(TestBaseUtils.createRecord(writer, 1, payload));
+        writer.writePayload(payload, 0, 25000);
+        /*
+         * The header and the first 20000 bytes of the payload can be read
+         * while the record is being written.
+         */
+        byte[] gzBytes = out.toByteArray();
+        Inflater inf = new Inflater(true);
+        inf.setInput(gzBytes, 10, gzBytes.length - 10);
+        byte[] inflated = new byte[100000];
+        int len = 0;
+        int read;
+        while ((read = inf.inflate(inflated, len, inflated.length - len)) > 0) {
+            len += read;
+        }
+        inf.end();
+        String text = new String(inflated, 0, len, "ISO-8859-1");
+        Assert.assertTrue(text.startsWith("WARC/1.0\r\n"));
+        int payloadStart = text.indexOf("\r\n\r\n") + 4;
+        Assert.assertTrue(len - payloadStart >= 20000);
+        for (int i=payloadStart; i<len; ++i) {
+            Assert.assertEquals(payload[i - payloadStart], inflated[i]);
+        }
+        /*
+         * Explicit flush makes all of the payload written so far readable.
+         */
+        writer.flush();
+        gzBytes = out.toByteArray();
+        inf = new Inflater(true);
+        inf.setInput(gzBytes, 10, gzBytes.length - 10);
+        len = 0;
+        while ((read = inf.inflate(inflated, len, inflated.length - len)) > 0) {
+            len += read;
+        }
+        inf.end();
+        Assert.assertEquals(payloadStart + 25000, len);
+        writer.writePayload(payload, 25000, payload.length - 25000);
+        writer.closeRecord();
+        writer.close();
+
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+        WarcRecord record = reader.getNextRecord();
+        Assert.assertNotNull(record);
+        ByteArrayOutputStream payloadOut = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        while ((read = record.getPayloadContent().read(tmpBuf)) != -1) {
+            payloadOut.write(tmpBuf, 0, read);
+        }
+        Assert.assertArrayEquals(payload, payloadOut.toByteArray());
+        record.close();
+        Assert.assertNull(reader.getNextRecord());
+        reader.close();
+    }
+
+}